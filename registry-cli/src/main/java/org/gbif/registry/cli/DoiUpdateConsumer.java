@@ -0,0 +1,39 @@
+package org.gbif.registry.cli;
+
+import java.io.IOException;
+
+import com.rabbitmq.client.AMQP;
+import com.rabbitmq.client.Channel;
+import com.rabbitmq.client.DefaultConsumer;
+import com.rabbitmq.client.Envelope;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Consumes the queue of one DOI update consumer. Deliveries of a channel are handled one at a time, so each consumer
+ * has its own channel and listener and a message is only acknowledged once its update is completed.
+ */
+class DoiUpdateConsumer extends DefaultConsumer {
+
+  private static final Logger LOG = LoggerFactory.getLogger(DoiUpdateConsumer.class);
+
+  private final DoiUpdateListener listener;
+
+  DoiUpdateConsumer(Channel channel, DoiUpdateListener listener) {
+    super(channel);
+    this.listener = listener;
+  }
+
+  @Override
+  public void handleDelivery(String consumerTag, Envelope envelope, AMQP.BasicProperties properties, byte[] body)
+    throws IOException {
+    try {
+      listener.handleMessage(DoiUpdateQueues.read(body));
+    } catch (IOException e) {
+      LOG.error("Dropping unreadable DOI update message", e);
+    } catch (RuntimeException e) {
+      LOG.error("Failed to handle DOI update message", e);
+    }
+    getChannel().basicAck(envelope.getDeliveryTag(), false);
+  }
+}
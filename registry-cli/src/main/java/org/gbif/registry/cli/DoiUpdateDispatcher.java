@@ -0,0 +1,33 @@
+package org.gbif.registry.cli;
+
+import org.gbif.common.messaging.AbstractMessageCallback;
+import org.gbif.common.messaging.api.messages.ChangeDoiMessage;
+
+import java.io.IOException;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Message callback of the main DOI update queue, dispatching each update to the queue of the consumer of its DOI.
+ */
+public class DoiUpdateDispatcher extends AbstractMessageCallback<ChangeDoiMessage> {
+
+  private static final Logger LOG = LoggerFactory.getLogger(DoiUpdateDispatcher.class);
+
+  private final DoiUpdateQueues queues;
+
+  public DoiUpdateDispatcher(DoiUpdateQueues queues) {
+    this.queues = queues;
+  }
+
+  @Override
+  public void handleMessage(ChangeDoiMessage msg) {
+    LOG.debug("Dispatching change DOI to {} message for {}", msg.getStatus(), msg.getDoi());
+    try {
+      queues.dispatch(msg);
+    } catch (IOException e) {
+      throw new IllegalStateException("Failed to dispatch the update of DOI " + msg.getDoi(), e);
+    }
+  }
+}
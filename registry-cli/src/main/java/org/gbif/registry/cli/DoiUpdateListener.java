@@ -13,8 +13,15 @@ import org.gbif.doi.service.InvalidMetadataException;
 import org.gbif.registry.persistence.mapper.DoiMapper;
 import org.gbif.registry.ws.util.DataCiteConverter;
 
+import java.io.IOException;
 import java.net.URI;
+import java.util.Iterator;
+import java.util.Map;
 
+import com.google.common.base.Objects;
+import com.google.common.collect.ArrayListMultimap;
+import com.google.common.collect.ListMultimap;
+import com.google.common.collect.Maps;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.slf4j.Marker;
@@ -23,25 +30,83 @@ import org.slf4j.MarkerFactory;
 /**
  * Message callback implementation to take DOI updates and send them to DataCite. Updates the status of the DOI in
  * the registry database.
+ * <p/>
+ * Each listener serves the queue of one consumer, which receives all updates of its DOIs (see {@link DoiUpdateQueues}),
+ * so updates of the same DOI never race. A failed update is not retried in process: it is published to the retry
+ * queue and comes back through the main queue after the retry time, while the messages queued meanwhile are processed.
+ * A retry is dropped if a newer message for the same DOI arrived in the meantime, as that carries the latest state of
+ * the DOI.
+ * <p/>
+ * The attempts of a retried message are kept in memory only, so a restart of the listener starts counting again.
  */
 public class DoiUpdateListener extends AbstractMessageCallback<ChangeDoiMessage> {
 
   private static final Logger LOG = LoggerFactory.getLogger(DoiUpdateListener.class);
   private static final Marker DOI_SMTP = MarkerFactory.getMarker("DOI_SMTP");
-  private final long timeToRetryInMs;
+  private static final int MAX_ATTEMPTS = 3;
 
   private final DoiService doiService;
   private final DoiMapper doiMapper;
+  private final DoiUpdateQueues queues;
+  // the update published for a retry per DOI, only accessed by the consumer of this listener
+  private final Map<DOI, Retry> retries = Maps.newHashMap();
+  // published updates superseded by a newer message before they came back, dropped on arrival
+  private final ListMultimap<DOI, ChangeDoiMessage> supersededRetries = ArrayListMultimap.create();
 
-  public DoiUpdateListener(DoiService doiService, DoiMapper doiMapper, long timeToRetryInMs) {
+  private long received;
+  private long succeeded;
+  private long retried;
+  private long superseded;
+  private long failed;
+
+  /**
+   * @param queues used to send failed updates to the retry queue
+   */
+  public DoiUpdateListener(DoiService doiService, DoiMapper doiMapper, DoiUpdateQueues queues) {
     this.doiService = doiService;
     this.doiMapper = doiMapper;
-    this.timeToRetryInMs = timeToRetryInMs;
+    this.queues = queues;
   }
 
   @Override
   public void handleMessage(ChangeDoiMessage msg) {
     LOG.debug("Handling change DOI to {} message for {}", msg.getStatus(), msg.getDoi());
+    received++;
+    if (removeSuperseded(msg)) {
+      superseded++;
+      LOG.info("Dropping retry to update DOI {} to {} as a newer update exists", msg.getDoi(), msg.getStatus());
+      return;
+    }
+    int attempt = 1;
+    Retry retry = retries.remove(msg.getDoi());
+    if (retry != null) {
+      if (sameUpdate(retry.msg, msg)) {
+        attempt = retry.attempt + 1;
+      } else {
+        // the published retry is older than this message and dropped once it comes back
+        supersededRetries.put(msg.getDoi(), retry.msg);
+      }
+    }
+    process(msg, attempt);
+  }
+
+  private boolean removeSuperseded(ChangeDoiMessage msg) {
+    Iterator<ChangeDoiMessage> iter = supersededRetries.get(msg.getDoi()).iterator();
+    while (iter.hasNext()) {
+      if (sameUpdate(iter.next(), msg)) {
+        iter.remove();
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private static boolean sameUpdate(ChangeDoiMessage a, ChangeDoiMessage b) {
+    return a.getStatus() == b.getStatus() && Objects.equal(a.getMetadata(), b.getMetadata())
+           && Objects.equal(a.getTarget(), b.getTarget());
+  }
+
+  private void process(ChangeDoiMessage msg, int attempt) {
     final DoiData currState = doiMapper.get(msg.getDoi());
     if (currState == null) {
       // this is bad, we should have an entry for the DOI in our registry table!
@@ -49,63 +114,123 @@ public class DoiUpdateListener extends AbstractMessageCallback<ChangeDoiMessage>
       return;
     }
 
-    for (int retry = 1; retry < 4; retry++){
-      try {
-        switch (msg.getStatus()) {
-          case REGISTERED:
-            registerOrUpdate(msg.getDoi(), msg.getTarget(), msg.getMetadata(), currState);
-            break;
-          case RESERVED:
-            reserve(msg.getDoi(), msg.getMetadata(), currState);
-            break;
-          case DELETED:
-            delete(msg.getDoi(), currState);
-            break;
-          default:
-            LOG.warn("Cannot update {} to illegal state {}.", msg.getDoi(), msg.getStatus());
-            break;
-        }
-        break;
+    try {
+      switch (msg.getStatus()) {
+        case REGISTERED:
+          registerOrUpdate(msg.getDoi(), msg.getTarget(), msg.getMetadata(), currState);
+          break;
+        case RESERVED:
+          reserve(msg.getDoi(), msg.getMetadata(), currState);
+          break;
+        case DELETED:
+          delete(msg.getDoi(), currState);
+          break;
+        default:
+          LOG.warn("Cannot update {} to illegal state {}.", msg.getDoi(), msg.getStatus());
+          break;
+      }
+      succeeded++;
 
-      } catch (DoiExistsException e) {
-        writeFailedStatus(msg.getDoi(), msg.getTarget(), msg.getMetadata());
-        LOG.warn(DOI_SMTP, "DOI {} existed already when trying to change status to {}. Ignore", msg.getDoi(), msg.getStatus(), e);
-        break;
+    } catch (DoiExistsException e) {
+      writeFailedStatus(msg.getDoi(), msg.getTarget(), msg.getMetadata());
+      LOG.warn(DOI_SMTP, "DOI {} existed already when trying to change status to {}. Ignore", msg.getDoi(), msg.getStatus(), e);
+      failed++;
 
-      } catch (DoiHttpException e) {
-        writeFailedStatus(msg.getDoi(), msg.getTarget(), msg.getMetadata());
-        if (e.getStatus() == 413) {
-          LOG.warn(DOI_SMTP, "Metadata of length {} is exceeding max datacite limit in attempt #{} "
-                             + "while updating {} to {} with target {}. "
-                             + "Trying again with truncated metadata", msg.getMetadata().length(), retry,
-            msg.getDoi(), msg.getStatus(), msg.getTarget(), e);
-          try {
-            LOG.debug("Original metadata for DOI {}:\n\n{}", msg.getDoi(), msg.getMetadata());
-            String truncatedXml = DataCiteConverter.truncateDescription(msg.getDoi(), msg.getMetadata(), msg.getTarget());
-            msg = new ChangeDoiMessage(msg.getStatus(), msg.getDoi(), truncatedXml, msg.getTarget());
-          } catch (InvalidMetadataException e1) {
-            LOG.warn("Failed to deserialize xml metadata for DOI {}", msg.getDoi(), e1);
-          }
-        } else {
-          LOG.warn(DOI_SMTP, "DOI http {} exception updating {} to {} with target {}. Attempt #{}",
-            e.getStatus(), msg.getDoi(), msg.getStatus(), msg.getTarget(), retry, e);
-          sleep();
+    } catch (DoiHttpException e) {
+      writeFailedStatus(msg.getDoi(), msg.getTarget(), msg.getMetadata());
+      if (e.getStatus() == 413 && attempt < MAX_ATTEMPTS) {
+        LOG.warn(DOI_SMTP, "Metadata of length {} is exceeding max datacite limit in attempt #{} "
+                           + "while updating {} to {} with target {}. "
+                           + "Trying again with truncated metadata", msg.getMetadata().length(), attempt,
+          msg.getDoi(), msg.getStatus(), msg.getTarget(), e);
+        try {
+          LOG.debug("Original metadata for DOI {}:\n\n{}", msg.getDoi(), msg.getMetadata());
+          String truncatedXml = DataCiteConverter.truncateDescription(msg.getDoi(), msg.getMetadata(), msg.getTarget());
+          msg = new ChangeDoiMessage(msg.getStatus(), msg.getDoi(), truncatedXml, msg.getTarget());
+        } catch (InvalidMetadataException e1) {
+          LOG.warn("Failed to deserialize xml metadata for DOI {}", msg.getDoi(), e1);
         }
-
-      } catch (DoiException e) {
-        writeFailedStatus(msg.getDoi(), msg.getTarget(), msg.getMetadata());
-        LOG.warn(DOI_SMTP, "DOI exception updating {} to {} with target {}. Attempt #{}",
-          msg.getDoi(), msg.getStatus(), msg.getTarget(), retry, e);
-        sleep();
+        // the truncated metadata is tried again right away
+        retried++;
+        process(msg, attempt + 1);
+      } else {
+        LOG.warn(DOI_SMTP, "DOI http {} exception updating {} to {} with target {}. Attempt #{}",
+          e.getStatus(), msg.getDoi(), msg.getStatus(), msg.getTarget(), attempt, e);
+        retry(msg, attempt);
       }
+
+    } catch (DoiException e) {
+      writeFailedStatus(msg.getDoi(), msg.getTarget(), msg.getMetadata());
+      LOG.warn(DOI_SMTP, "DOI exception updating {} to {} with target {}. Attempt #{}",
+        msg.getDoi(), msg.getStatus(), msg.getTarget(), attempt, e);
+      retry(msg, attempt);
     }
   }
 
-  private void sleep() {
+  /**
+   * Publishes the message to the retry queue, so it is retried once it comes back after the retry time.
+   */
+  private void retry(ChangeDoiMessage msg, int attempt) {
+    if (attempt >= MAX_ATTEMPTS) {
+      LOG.warn("Giving up updating DOI {} to {} after {} attempts", msg.getDoi(), msg.getStatus(), attempt);
+      failed++;
+      return;
+    }
     try {
-      Thread.sleep(timeToRetryInMs);
-    } catch (InterruptedException e1) {
-      LOG.info("Interrupted retries");
+      queues.retry(msg);
+      retries.put(msg.getDoi(), new Retry(msg, attempt));
+      retried++;
+    } catch (IOException e) {
+      LOG.error(DOI_SMTP, "Failed to publish the retry of updating DOI {} to {}, leaving it failed", msg.getDoi(),
+        msg.getStatus(), e);
+      failed++;
+    }
+  }
+
+  /**
+   * @return the number of DOIs with an update published for a retry
+   */
+  public int getPending() {
+    return retries.size();
+  }
+
+  public long getReceived() {
+    return received;
+  }
+
+  public long getSucceeded() {
+    return succeeded;
+  }
+
+  public long getRetried() {
+    return retried;
+  }
+
+  /**
+   * @return the number of retries dropped because a newer message for the same DOI arrived
+   */
+  public long getSuperseded() {
+    return superseded;
+  }
+
+  /**
+   * @return the number of messages given up
+   */
+  public long getFailed() {
+    return failed;
+  }
+
+  /**
+   * An update published for a retry after a failed attempt.
+   */
+  private static class Retry {
+
+    private final ChangeDoiMessage msg;
+    private final int attempt;
+
+    private Retry(ChangeDoiMessage msg, int attempt) {
+      this.msg = msg;
+      this.attempt = attempt;
     }
   }
 
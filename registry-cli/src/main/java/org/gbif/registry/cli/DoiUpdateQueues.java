@@ -0,0 +1,104 @@
+package org.gbif.registry.cli;
+
+import org.gbif.api.model.common.DOI;
+import org.gbif.common.messaging.api.messages.ChangeDoiMessage;
+
+import java.io.IOException;
+import java.util.Map;
+
+import com.google.common.collect.ImmutableMap;
+import com.rabbitmq.client.AMQP;
+import com.rabbitmq.client.Channel;
+import com.rabbitmq.client.MessageProperties;
+import org.codehaus.jackson.map.ObjectMapper;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * The queues of the DOI updater next to its main queue.
+ * <p/>
+ * Messages of the main queue are dispatched to one queue per consumer by the hash of their DOI, so all updates of a
+ * DOI are applied in order by the same consumer while different DOIs are updated in parallel. Failed updates are
+ * published to a retry queue which has no consumers. They expire there after the retry time and are dead-lettered
+ * back to the main queue, from where they are dispatched again.
+ * <p/>
+ * Publishing is synchronized as the channel is shared by the dispatcher and all consumers.
+ */
+public class DoiUpdateQueues {
+
+  private static final ObjectMapper MAPPER = new ObjectMapper();
+
+  private final Channel channel;
+  private final String queueName;
+  private final int consumers;
+  private final long timeToRetryInMs;
+
+  /**
+   * @param channel         used to declare the queues and publish to them
+   * @param queueName       the main queue the DOI updates are sent to
+   * @param consumers       the number of consumer queues
+   * @param timeToRetryInMs the time a failed update waits in the retry queue
+   */
+  public DoiUpdateQueues(Channel channel, String queueName, int consumers, long timeToRetryInMs) {
+    checkArgument(consumers > 0, "consumers has to be greater than 0");
+    checkArgument(timeToRetryInMs >= 0, "timeToRetryInMs can't be negative");
+    this.channel = checkNotNull(channel, "channel can't be null");
+    this.queueName = checkNotNull(queueName, "queueName can't be null");
+    this.consumers = consumers;
+    this.timeToRetryInMs = timeToRetryInMs;
+  }
+
+  /**
+   * Declares the consumer queues and the retry queue. The retry time is set per message, so it can be changed without
+   * redeclaring the retry queue.
+   */
+  public synchronized void declare() throws IOException {
+    for (int consumer = 0; consumer < consumers; consumer++) {
+      channel.queueDeclare(consumerQueue(consumer), true, false, false, null);
+    }
+    Map<String, Object> args =
+      ImmutableMap.<String, Object>of("x-dead-letter-exchange", "", "x-dead-letter-routing-key", queueName);
+    channel.queueDeclare(retryQueue(), true, false, false, args);
+  }
+
+  public int getConsumers() {
+    return consumers;
+  }
+
+  public String consumerQueue(int consumer) {
+    return queueName + "." + consumer;
+  }
+
+  public String retryQueue() {
+    return queueName + ".retry";
+  }
+
+  /**
+   * Publishes the update to the queue of the consumer of its DOI.
+   */
+  public synchronized void dispatch(ChangeDoiMessage msg) throws IOException {
+    channel.basicPublish("", consumerQueue(consumerOf(msg.getDoi(), consumers)), MessageProperties.PERSISTENT_BASIC,
+      MAPPER.writeValueAsBytes(msg));
+  }
+
+  /**
+   * Publishes a failed update to the retry queue, from where it returns to the main queue after the retry time.
+   */
+  public synchronized void retry(ChangeDoiMessage msg) throws IOException {
+    AMQP.BasicProperties props =
+      new AMQP.BasicProperties.Builder().deliveryMode(2).expiration(String.valueOf(timeToRetryInMs)).build();
+    channel.basicPublish("", retryQueue(), props, MAPPER.writeValueAsBytes(msg));
+  }
+
+  static ChangeDoiMessage read(byte[] body) throws IOException {
+    return MAPPER.readValue(body, ChangeDoiMessage.class);
+  }
+
+  /**
+   * @return the consumer of the DOI, the same for all updates of the DOI as long as the number of consumers is kept
+   */
+  static int consumerOf(DOI doi, int consumers) {
+    return (doi.hashCode() & Integer.MAX_VALUE) % consumers;
+  }
+}
@@ -1,22 +1,34 @@
 package org.gbif.registry.cli;
 
 import org.gbif.common.messaging.MessageListener;
+import org.gbif.common.messaging.config.ConnectionParameters;
+import org.gbif.doi.service.DoiService;
 import org.gbif.registry.cli.configuration.DoiUpdaterConfiguration;
 import org.gbif.registry.persistence.mapper.DoiMapper;
 
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
 import com.google.common.util.concurrent.AbstractIdleService;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import com.google.inject.Guice;
 import com.google.inject.Injector;
+import com.rabbitmq.client.Channel;
+import com.rabbitmq.client.Connection;
+import com.rabbitmq.client.ConnectionFactory;
 
 /**
- * A CLI service that starts and stops a listener of DoiUpdate messages. Must always be only one thread - multiple
- * will introduce a possible race (e.g. delete before create).
+ * A CLI service that starts and stops a listener of DoiUpdate messages. Updates of the same DOI must never race
+ * (e.g. delete before create), so the listener only dispatches the messages by DOI to the queues of the configured
+ * number of consumers, each of them handling one message at a time. Failed updates return through a retry queue.
  */
 public class DoiUpdaterService extends AbstractIdleService {
 
   private final DoiUpdaterConfiguration config;
 
   private MessageListener listener;
+  private Connection connection;
+  private ExecutorService consumerExecutor;
 
   public DoiUpdaterService(DoiUpdaterConfiguration config) {
     this.config = config;
@@ -27,9 +39,32 @@ public class DoiUpdaterService extends AbstractIdleService {
     config.ganglia.start();
 
     Injector inj = Guice.createInjector(config.db.createMyBatisModule());
-    listener = new MessageListener(config.messaging.getConnectionParameters());
-    listener.listen(config.queueName, 1,
-      new DoiUpdateListener(config.datacite.createService(), inj.getInstance(DoiMapper.class), config.timeToRetryInMs));
+    DoiMapper doiMapper = inj.getInstance(DoiMapper.class);
+    DoiService doiService = config.datacite.createService();
+
+    ConnectionParameters params = config.messaging.getConnectionParameters();
+    ConnectionFactory factory = new ConnectionFactory();
+    factory.setHost(params.getHost());
+    factory.setPort(params.getPort());
+    factory.setUsername(params.getUsername());
+    factory.setPassword(params.getPassword());
+    factory.setVirtualHost(params.getVirtualHost());
+    consumerExecutor = Executors.newFixedThreadPool(config.threads,
+      new ThreadFactoryBuilder().setNameFormat("doi-updater-%d").setDaemon(true).build());
+    connection = factory.newConnection(consumerExecutor);
+
+    DoiUpdateQueues queues =
+      new DoiUpdateQueues(connection.createChannel(), config.queueName, config.threads, config.timeToRetryInMs);
+    queues.declare();
+    for (int consumer = 0; consumer < queues.getConsumers(); consumer++) {
+      Channel channel = connection.createChannel();
+      channel.basicQos(1);
+      channel.basicConsume(queues.consumerQueue(consumer), false,
+        new DoiUpdateConsumer(channel, new DoiUpdateListener(doiService, doiMapper, queues)));
+    }
+
+    listener = new MessageListener(params);
+    listener.listen(config.queueName, 1, new DoiUpdateDispatcher(queues));
   }
 
   @Override
@@ -37,5 +72,12 @@ public class DoiUpdaterService extends AbstractIdleService {
     if (listener != null) {
       listener.close();
     }
+    if (connection != null) {
+      // unacknowledged updates are delivered again on the next start
+      connection.close();
+    }
+    if (consumerExecutor != null) {
+      consumerExecutor.shutdown();
+    }
   }
 }
@@ -4,6 +4,7 @@ import org.gbif.common.messaging.config.MessagingConfiguration;
 
 import java.util.concurrent.TimeUnit;
 import javax.validation.Valid;
+import javax.validation.constraints.Min;
 import javax.validation.constraints.NotNull;
 
 import com.beust.jcommander.Parameter;
@@ -37,4 +38,12 @@ public class DoiUpdaterConfiguration {
 
   @Parameter(names = "--retry-time")
   public long timeToRetryInMs = TimeUnit.MINUTES.toMillis(5);
+
+  /**
+   * Number of parallel consumers, each with its own queue. Updates of the same DOI always go to the same consumer.
+   * Messages left on the queue of a consumer are only processed again once the number is restored.
+   */
+  @Parameter(names = "--threads")
+  @Min(1)
+  public int threads = 4;
 }
@@ -10,18 +10,55 @@ import org.gbif.doi.service.DoiExistsException;
 import org.gbif.doi.service.DoiService;
 import org.gbif.registry.persistence.mapper.DoiMapper;
 
+import java.io.IOException;
 import java.net.URI;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
 import javax.annotation.Nullable;
 
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
 import org.junit.Test;
+import org.mockito.ArgumentCaptor;
 
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
 import static org.mockito.Mockito.any;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 public class DoiUpdateListenerTest {
 
-  class MockImpl implements DoiService {
+  /**
+   * A local DataCite stub failing selected calls.
+   * It records the metadata of all successful reservations.
+   */
+  static class FlakyDataCite extends MockImpl {
+    private final int failEvery;
+    private final AtomicInteger calls = new AtomicInteger();
+    final List<String> failing = Lists.newCopyOnWriteArrayList();
+    final List<String> reserved = Lists.newCopyOnWriteArrayList();
+
+    /**
+     * @param failEvery fail every nth call, 0 for never
+     */
+    FlakyDataCite(int failEvery) {
+      this.failEvery = failEvery;
+    }
+
+    @Override
+    public void reserve(DOI doi, String metadata) throws DoiException {
+      int call = calls.incrementAndGet();
+      if (failing.remove(metadata) || (failEvery > 0 && call % failEvery == 0)) {
+        throw new DoiException("Injected failure of call " + call);
+      }
+      reserved.add(metadata);
+    }
+  }
+
+  static class MockImpl implements DoiService {
 
     @Nullable
     @Override
@@ -70,16 +107,89 @@ public class DoiUpdateListenerTest {
     }
   }
 
+  private final DoiUpdateQueues queues = mock(DoiUpdateQueues.class);
+
   @Test
   public void testHandleMessage() throws Exception {
     DoiMapper doiMapper = mock(DoiMapper.class);
     when(doiMapper.get(any(DOI.class))).thenReturn(new DoiData(DoiStatus.NEW, null));
 
-    DoiUpdateListener listener = new DoiUpdateListener(new MockImpl(), doiMapper, 10);
+    DoiUpdateListener listener = new DoiUpdateListener(new MockImpl(), doiMapper, queues);
     ChangeDoiMessage msg = new ChangeDoiMessage(DoiStatus.REGISTERED,
       new DOI("10.5072/1234"),
       "",
       URI.create("http:??gbif.org"));
     listener.handleMessage(msg);
   }
-}
\ No newline at end of file
+
+  @Test
+  public void testFailedUpdateIsPublishedAgain() throws Exception {
+    FlakyDataCite datacite = new FlakyDataCite(0);
+    datacite.failing.add("a1");
+    DoiUpdateListener listener = new DoiUpdateListener(datacite, mapper(), queues);
+
+    listener.handleMessage(reserve("10.5072/a", "a1"));
+    ChangeDoiMessage retry = retries(1).get(0);
+    assertEquals("a1", retry.getMetadata());
+    assertEquals(1, listener.getPending());
+
+    // b is not held up by the retry of a, which is processed once it comes back from the retry queue
+    listener.handleMessage(reserve("10.5072/b", "b1"));
+    listener.handleMessage(retry);
+
+    assertEquals(ImmutableList.of("b1", "a1"), datacite.reserved);
+    assertEquals(2, listener.getSucceeded());
+    assertEquals(1, listener.getRetried());
+    assertEquals(0, listener.getPending());
+  }
+
+  @Test
+  public void testNewerMessageSupersedesRetry() throws Exception {
+    FlakyDataCite datacite = new FlakyDataCite(0);
+    datacite.failing.add("a1");
+    DoiUpdateListener listener = new DoiUpdateListener(datacite, mapper(), queues);
+
+    listener.handleMessage(reserve("10.5072/a", "a1"));
+    ChangeDoiMessage retry = retries(1).get(0);
+    listener.handleMessage(reserve("10.5072/a", "a2"));
+    // the retry is dropped once it comes back
+    listener.handleMessage(retry);
+
+    assertEquals(ImmutableList.of("a2"), datacite.reserved);
+    assertEquals(1, listener.getSuperseded());
+    assertEquals(0, listener.getPending());
+  }
+
+  @Test
+  public void testGiveUpAfterMaxAttempts() throws Exception {
+    FlakyDataCite datacite = new FlakyDataCite(1);
+    DoiUpdateListener listener = new DoiUpdateListener(datacite, mapper(), queues);
+
+    listener.handleMessage(reserve("10.5072/a", "a1"));
+    listener.handleMessage(retries(1).get(0));
+    listener.handleMessage(retries(2).get(1));
+
+    // the third attempt is not published again
+    retries(2);
+    assertEquals(2, listener.getRetried());
+    assertEquals(1, listener.getFailed());
+    assertEquals(0, listener.getPending());
+    assertTrue(datacite.reserved.isEmpty());
+  }
+
+  private List<ChangeDoiMessage> retries(int times) throws IOException {
+    ArgumentCaptor<ChangeDoiMessage> messages = ArgumentCaptor.forClass(ChangeDoiMessage.class);
+    verify(queues, times(times)).retry(messages.capture());
+    return messages.getAllValues();
+  }
+
+  private static DoiMapper mapper() {
+    DoiMapper doiMapper = mock(DoiMapper.class);
+    when(doiMapper.get(any(DOI.class))).thenReturn(new DoiData(DoiStatus.NEW, null));
+    return doiMapper;
+  }
+
+  private static ChangeDoiMessage reserve(String doi, String metadata) {
+    return new ChangeDoiMessage(DoiStatus.RESERVED, new DOI(doi), metadata, URI.create("http://www.gbif.org"));
+  }
+}
@@ -0,0 +1,72 @@
+package org.gbif.registry.cli;
+
+import org.gbif.api.model.common.DOI;
+import org.gbif.api.model.common.DoiStatus;
+import org.gbif.common.messaging.api.messages.ChangeDoiMessage;
+
+import java.net.URI;
+import java.util.Map;
+
+import com.rabbitmq.client.AMQP;
+import com.rabbitmq.client.Channel;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Matchers;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+public class DoiUpdateQueuesTest {
+
+  private final Channel channel = mock(Channel.class);
+  private final DoiUpdateQueues queues = new DoiUpdateQueues(channel, "doi_updater", 4, 1000);
+
+  @Test
+  public void testDeclare() throws Exception {
+    queues.declare();
+
+    for (int consumer = 0; consumer < 4; consumer++) {
+      verify(channel).queueDeclare("doi_updater." + consumer, true, false, false, null);
+    }
+    ArgumentCaptor<Map> args = ArgumentCaptor.forClass(Map.class);
+    verify(channel).queueDeclare(Matchers.eq("doi_updater.retry"), Matchers.eq(true), Matchers.eq(false),
+      Matchers.eq(false), args.capture());
+    // expired retries go back to the main queue
+    assertEquals("", args.getValue().get("x-dead-letter-exchange"));
+    assertEquals("doi_updater", args.getValue().get("x-dead-letter-routing-key"));
+  }
+
+  @Test
+  public void testDispatchByDoi() throws Exception {
+    DOI doi = new DOI("10.5072/abc");
+    int consumer = DoiUpdateQueues.consumerOf(doi, 4);
+    assertTrue(consumer >= 0 && consumer < 4);
+    // case insensitive like the DOI itself
+    assertEquals(consumer, DoiUpdateQueues.consumerOf(new DOI("10.5072/ABC"), 4));
+
+    queues.dispatch(reserve(doi));
+    queues.dispatch(new ChangeDoiMessage(DoiStatus.DELETED, doi, null, null));
+    verify(channel, times(2)).basicPublish(Matchers.eq(""),
+      Matchers.eq("doi_updater." + consumer), Matchers.any(AMQP.BasicProperties.class), Matchers.any(byte[].class));
+  }
+
+  @Test
+  public void testRetryExpires() throws Exception {
+    ChangeDoiMessage msg = reserve(new DOI("10.5072/abc"));
+    queues.retry(msg);
+
+    ArgumentCaptor<AMQP.BasicProperties> props = ArgumentCaptor.forClass(AMQP.BasicProperties.class);
+    ArgumentCaptor<byte[]> body = ArgumentCaptor.forClass(byte[].class);
+    verify(channel).basicPublish(Matchers.eq(""), Matchers.eq("doi_updater.retry"), props.capture(), body.capture());
+    assertEquals("1000", props.getValue().getExpiration());
+    assertEquals(Integer.valueOf(2), props.getValue().getDeliveryMode());
+    assertEquals(msg.getDoi(), DoiUpdateQueues.read(body.getValue()).getDoi());
+  }
+
+  private static ChangeDoiMessage reserve(DOI doi) {
+    return new ChangeDoiMessage(DoiStatus.RESERVED, doi, "<resource/>", URI.create("http://www.gbif.org"));
+  }
+}
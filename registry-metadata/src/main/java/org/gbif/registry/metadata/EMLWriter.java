@@ -17,6 +17,7 @@ import com.google.common.collect.Maps;
 import freemarker.cache.ClassTemplateLoader;
 import freemarker.cache.TemplateLoader;
 import freemarker.template.Configuration;
+import freemarker.template.Template;
 import freemarker.template.TemplateException;
 
 /**
@@ -27,6 +28,8 @@ public class EMLWriter {
   private static final String TEMPLATE_PATH = "/gbif-eml-profile-template";
   private static final String EML_TEMPLATE = "eml-dataset.ftl";
   private static final Configuration FTL = provideFreemarker();
+  // templates are thread safe once parsed, so a single instance is shared by all writers
+  private static final Template TEMPLATE = loadTemplate();
 
   private EMLWriter() {
     // static utils class
@@ -116,6 +119,14 @@ public class EMLWriter {
     return fm;
   }
 
+  private static Template loadTemplate() {
+    try {
+      return FTL.getTemplate(EML_TEMPLATE);
+    } catch (IOException e) {
+      throw new IllegalStateException("Cannot load the EML freemarker template " + EML_TEMPLATE, e);
+    }
+  }
+
   public static void write(Dataset dataset, Writer writer) throws IOException {
     write(dataset,writer,false);
   }
@@ -136,7 +147,7 @@ public class EMLWriter {
 
 
     try {
-      FTL.getTemplate(EML_TEMPLATE).process(map, writer);
+      TEMPLATE.process(map, writer);
     } catch (TemplateException e) {
       throw new IOException("Error while processing the EML freemarker template for dataset " + dataset.getKey(), e);
     }
@@ -3,7 +3,8 @@ package org.gbif.registry.metadata.parse;
 import org.gbif.api.model.registry.Dataset;
 import org.gbif.api.vocabulary.MetadataType;
 
-import java.io.ByteArrayInputStream;
+import java.io.BufferedInputStream;
+import java.io.FilterInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.util.LinkedList;
@@ -13,6 +14,7 @@ import com.google.common.io.ByteStreams;
 import com.google.common.io.Closeables;
 import org.apache.commons.beanutils.ConversionException;
 import org.apache.commons.digester3.Digester;
+import org.apache.commons.digester3.RuleSet;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.xml.sax.Attributes;
@@ -31,6 +33,30 @@ import org.xml.sax.helpers.XMLReaderFactory;
 public class DatasetParser {
 
   private static final Logger LOG = LoggerFactory.getLogger(DatasetParser.class);
+  private static final ThreadLocal<Digester> EML_DIGESTER = new ThreadLocal<Digester>() {
+    @Override
+    protected Digester initialValue() {
+      return newDigester(new EMLRuleSet());
+    }
+  };
+  private static final ThreadLocal<Digester> DC_DIGESTER = new ThreadLocal<Digester>() {
+    @Override
+    protected Digester initialValue() {
+      return newDigester(new DublinCoreRuleSet());
+    }
+  };
+
+  /**
+   * The number of bytes at the start of a document read to detect its type, which is buffered to parse the document
+   * afterwards.
+   */
+  private static final int DETECTION_LIMIT = 64 * 1024;
+
+  /**
+   * Thrown to stop parsing as soon as the parser type is detected.
+   */
+  private static class ParserTypeDetected extends SAXException {
+  }
 
   private static class ParserDetectionHandler extends DefaultHandler {
     private static final String DC_NAMESPACE = "http://purl.org/dc/terms/";
@@ -49,6 +75,10 @@ public class DatasetParser {
         parserType = MetadataType.DC;
       }
 
+      if (parserType != null) {
+        // no need to read the rest of the document
+        throw new ParserTypeDetected();
+      }
       path.add(localName);
     }
 
@@ -61,8 +91,17 @@ public class DatasetParser {
     }
   }
 
+  private static Digester newDigester(RuleSet ruleSet) {
+    Digester digester = new Digester();
+    digester.setNamespaceAware(true);
+    digester.addRuleSet(ruleSet);
+    return digester;
+  }
+
   /**
-   * @return the detected parser type or null
+   * Detects the type of a document, reading only as far as the element that gives the type away.
+   *
+   * @return the detected parser type
    * @throws java.lang.IllegalArgumentException in case no parser exists for this document
    */
   public static MetadataType detectParserType(InputStream xml) {
@@ -71,7 +110,11 @@ public class DatasetParser {
       ParserDetectionHandler handler = new ParserDetectionHandler();
       xmlReader.setContentHandler(handler);
       InputSource inputSource = new InputSource(xml);
-      xmlReader.parse(inputSource);
+      try {
+        xmlReader.parse(inputSource);
+      } catch (ParserTypeDetected e) {
+        // stopped early
+      }
       if (handler.parserType != null) {
         return handler.parserType;
       }
@@ -94,27 +137,47 @@ public class DatasetParser {
    * @throws IllegalArgumentException If the XML is not well formed or is not understood
    */
   public static Dataset build(InputStream xml) throws IOException {
-    // buffer entire stream first. We need it several times
-    final byte[] data = ByteStreams.toByteArray(xml);
-    // detect the parser type
-    return parse(detectParserType(new ByteArrayInputStream(data)), new ByteArrayInputStream(data));
+    // only the start of the document is buffered to detect the parser type, the rest is parsed while it is read
+    InputStream in = xml.markSupported() ? xml : new BufferedInputStream(xml);
+    in.mark(DETECTION_LIMIT);
+    MetadataType type;
+    try {
+      type = detectParserType(new FilterInputStream(ByteStreams.limit(in, DETECTION_LIMIT)) {
+        @Override
+        public void close() {
+          // the SAX parser closes its input, but the document is parsed again afterwards
+        }
+      });
+    } catch (IllegalArgumentException e) {
+      Closeables.closeQuietly(in);
+      throw e;
+    }
+    in.reset();
+    return parse(type, in);
   }
 
+  /**
+   * Parses a metadata document of the given type.
+   * <p/>
+   * Digesters are expensive to configure, but not thread safe. Each thread therefore keeps a configured digester per
+   * metadata type which is cleared and reused for every document parsed.
+   */
   public static Dataset parse(MetadataType type, InputStream xml) throws IOException {
-    Digester digester = new Digester();
-    digester.setNamespaceAware(true);
-
-    // add digester rules based on parser type
+    Digester digester;
     switch (type) {
       case EML:
         LOG.debug("Parsing EML document");
-        digester.addRuleSet(new EMLRuleSet());
+        digester = EML_DIGESTER.get();
         break;
       case DC:
         LOG.debug("Parsing DC document");
-        digester.addRuleSet(new DublinCoreRuleSet());
+        digester = DC_DIGESTER.get();
         break;
+      default:
+        throw new IllegalArgumentException("No parser found for metadata type " + type);
     }
+    // reset any state left by a previous, possibly failed parse
+    digester.clear();
 
     // push the Delegating object onto the stack
     DatasetWrapper delegator = new DatasetWrapper();
@@ -131,6 +194,8 @@ public class DatasetParser {
         throw new IllegalArgumentException("Invalid metadata xml document", e);
       }
     } finally {
+      // do not hold on to the parsed dataset until the next parse
+      digester.clear();
       delegator.postProcess();
       Closeables.closeQuietly(xml);
     }
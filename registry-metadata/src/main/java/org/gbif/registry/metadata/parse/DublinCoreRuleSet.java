@@ -1,12 +1,9 @@
 package org.gbif.registry.metadata.parse;
 
-import org.gbif.api.vocabulary.Language;
-import org.gbif.registry.metadata.parse.converter.GreedyUriConverter;
-import org.gbif.registry.metadata.parse.converter.LanguageTypeConverter;
+import org.gbif.registry.metadata.parse.converter.ParserConverters;
 
 import java.net.URI;
 
-import org.apache.commons.beanutils.ConvertUtils;
 import org.apache.commons.digester3.Digester;
 import org.apache.commons.digester3.RuleSetBase;
 
@@ -19,17 +16,8 @@ public class DublinCoreRuleSet extends RuleSetBase {
         super("http://purl.org/dc/terms/");
     }
 
-  private void setupTypeConverters() {
-
-    GreedyUriConverter uriConverter = new GreedyUriConverter();
-    ConvertUtils.register(uriConverter, URI.class);
-
-    LanguageTypeConverter langConverter = new LanguageTypeConverter();
-    ConvertUtils.register(langConverter, Language.class);
-  }
-
     public void addRuleInstances(Digester digester) {
-      setupTypeConverters();
+      ParserConverters.register();
 
       // add the rules
       digester.addCallMethod("*/protocol", "throwIllegalArgumentException");
@@ -18,26 +18,12 @@ import org.gbif.api.model.registry.eml.temporal.DateRange;
 import org.gbif.api.model.registry.eml.temporal.SingleDate;
 import org.gbif.api.model.registry.eml.temporal.VerbatimTimePeriod;
 import org.gbif.api.model.registry.eml.temporal.VerbatimTimePeriodType;
-import org.gbif.api.vocabulary.ContactType;
-import org.gbif.api.vocabulary.Country;
-import org.gbif.api.vocabulary.IdentifierType;
 import org.gbif.api.vocabulary.Language;
-import org.gbif.api.vocabulary.PreservationMethodType;
 import org.gbif.api.vocabulary.Rank;
-import org.gbif.registry.metadata.parse.converter.ContactTypeConverter;
-import org.gbif.registry.metadata.parse.converter.CountryTypeConverter;
-import org.gbif.registry.metadata.parse.converter.DateConverter;
-import org.gbif.registry.metadata.parse.converter.GreedyUriConverter;
-import org.gbif.registry.metadata.parse.converter.IdentifierTypeConverter;
-import org.gbif.registry.metadata.parse.converter.LanguageTypeConverter;
-import org.gbif.registry.metadata.parse.converter.PreservationMethodTypeConverter;
+import org.gbif.registry.metadata.parse.converter.ParserConverters;
 
 import java.net.URI;
-import java.util.Date;
 
-import org.apache.commons.beanutils.ConvertUtils;
-import org.apache.commons.beanutils.Converter;
-import org.apache.commons.beanutils.converters.IntegerConverter;
 import org.apache.commons.digester3.AbstractObjectCreationFactory;
 import org.apache.commons.digester3.Digester;
 import org.apache.commons.digester3.RuleSetBase;
@@ -51,42 +37,12 @@ import org.xml.sax.Attributes;
  */
 public class EMLRuleSet extends RuleSetBase {
 
-  private void setupTypeConverters() {
-
-    GreedyUriConverter uriConverter = new GreedyUriConverter();
-    ConvertUtils.register(uriConverter, URI.class);
-
-    LanguageTypeConverter langConverter = new LanguageTypeConverter();
-    ConvertUtils.register(langConverter, Language.class);
-
-
-    // handles the Identifier.type string -> IdentifierType conversion
-    IdentifierTypeConverter identifierTypeConverter = new IdentifierTypeConverter(IdentifierType.UNKNOWN);
-    ConvertUtils.register(identifierTypeConverter, IdentifierType.class);
-
-    DateConverter dateConverter = new DateConverter();
-    ConvertUtils.register(dateConverter, Date.class);
-
-    CountryTypeConverter countryTypeConverter = new CountryTypeConverter();
-    ConvertUtils.register(countryTypeConverter, Country.class);
-
-    ContactTypeConverter typeConverter = new ContactTypeConverter(ContactType.ADMINISTRATIVE_POINT_OF_CONTACT);
-    ConvertUtils.register(typeConverter, ContactType.class);
-
-    // Collection with CuratorialUnits
-    Converter intConverter = new IntegerConverter();
-    ConvertUtils.register(intConverter, Integer.class);
-
-    // handles the Collection.specimenPreservationType string -> PreservationMethodType enum conversion
-    PreservationMethodTypeConverter preservationMethodTypeConverter = new PreservationMethodTypeConverter(PreservationMethodType.OTHER);
-    ConvertUtils.register(preservationMethodTypeConverter, PreservationMethodType.class);
-  }
   /**
    * Creates a new digester with all rules to parse an EML document.
    */
   public void addRuleInstances(Digester digester) {
 
-    setupTypeConverters();
+    ParserConverters.register();
 
     // language as xml:lang attribute
     digester.addCallMethod("eml", "setLanguage", 1, new Class[]{Language.class} );
@@ -0,0 +1,49 @@
+package org.gbif.registry.metadata.parse.converter;
+
+import org.gbif.api.vocabulary.ContactType;
+import org.gbif.api.vocabulary.Country;
+import org.gbif.api.vocabulary.IdentifierType;
+import org.gbif.api.vocabulary.Language;
+import org.gbif.api.vocabulary.PreservationMethodType;
+
+import java.net.URI;
+import java.util.Date;
+
+import org.apache.commons.beanutils.ConvertUtils;
+import org.apache.commons.beanutils.converters.IntegerConverter;
+
+/**
+ * Registers the type converters used by the metadata digester rules.
+ * <p/>
+ * The digester rules convert values through the static BeanUtils converters, so the converters have to be registered
+ * globally. Registering converters is not thread safe, so this is done once only instead of for every document parsed.
+ */
+public final class ParserConverters {
+
+  private static boolean registered;
+
+  private ParserConverters() {
+  }
+
+  /**
+   * Registers all converters, unless they have been registered already.
+   */
+  public static synchronized void register() {
+    if (registered) {
+      return;
+    }
+    ConvertUtils.register(new GreedyUriConverter(), URI.class);
+    ConvertUtils.register(new LanguageTypeConverter(), Language.class);
+    // handles the Identifier.type string -> IdentifierType conversion
+    ConvertUtils.register(new IdentifierTypeConverter(IdentifierType.UNKNOWN), IdentifierType.class);
+    ConvertUtils.register(new DateConverter(), Date.class);
+    ConvertUtils.register(new CountryTypeConverter(), Country.class);
+    ConvertUtils.register(new ContactTypeConverter(ContactType.ADMINISTRATIVE_POINT_OF_CONTACT), ContactType.class);
+    // Collection with CuratorialUnits
+    ConvertUtils.register(new IntegerConverter(), Integer.class);
+    // handles the Collection.specimenPreservationType string -> PreservationMethodType enum conversion
+    ConvertUtils.register(new PreservationMethodTypeConverter(PreservationMethodType.OTHER),
+      PreservationMethodType.class);
+    registered = true;
+  }
+}
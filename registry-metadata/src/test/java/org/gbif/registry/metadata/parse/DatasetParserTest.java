@@ -20,6 +20,8 @@ import org.gbif.api.vocabulary.Rank;
 import org.gbif.registry.metadata.EMLWriter;
 import org.gbif.utils.file.FileUtils;
 
+import java.io.ByteArrayInputStream;
+import java.io.FilterInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.StringReader;
@@ -31,7 +33,16 @@ import java.net.URL;
 import java.nio.charset.Charset;
 import java.util.Calendar;
 import java.util.List;
-
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import com.google.common.base.Charsets;
+import com.google.common.base.Strings;
+import com.google.common.collect.Lists;
+import com.google.common.io.ByteStreams;
+import org.apache.commons.digester3.Digester;
 import org.apache.commons.io.input.ReaderInputStream;
 import org.junit.Test;
 
@@ -502,6 +513,89 @@ public class DatasetParserTest {
     assertEquals(buildURI("http://www.wii.gov.in"), dataset.getHomepage());
   }
 
+  /**
+   * Detection stops at the element giving away the type, so the rest of the document is never read.
+   */
+  @Test
+  public void testDetectParserTypeStopsEarly() throws Exception {
+    String eml = new String(ByteStreams.toByteArray(FileUtils.classpathStream("eml/sample.xml")), Charsets.UTF_8);
+    String truncated = eml.substring(0, eml.indexOf("<dataset>") + "<dataset>".length());
+    assertEquals(MetadataType.EML,
+      DatasetParser.detectParserType(new ByteArrayInputStream(truncated.getBytes(Charsets.UTF_8))));
+  }
+
+  /**
+   * Builds a dataset from a multi megabyte document which cannot be marked, so only its start is buffered.
+   */
+  @Test
+  public void testBuildLargeDocument() throws Exception {
+    String eml = new String(ByteStreams.toByteArray(FileUtils.classpathStream("eml/sample.xml")), Charsets.UTF_8);
+    int start = eml.indexOf("<dataset>") + "<dataset>".length();
+    String padding = "<!--" + Strings.repeat("padding ", 500000) + "-->";
+    String large = eml.substring(0, start) + padding + eml.substring(start);
+    InputStream in = new FilterInputStream(new ByteArrayInputStream(large.getBytes(Charsets.UTF_8))) {
+      @Override
+      public boolean markSupported() {
+        return false;
+      }
+    };
+    verifySample(DatasetParser.build(in), false);
+  }
+
+  /**
+   * The digester of a thread is reused, so a broken document must not affect the next one.
+   */
+  @Test
+  public void testEmlParsingAfterBreaking() throws IOException {
+    DatasetParser.parse(MetadataType.EML, FileUtils.classpathStream("eml/sample-breaking.xml"));
+    Dataset dataset = DatasetParser.parse(MetadataType.EML, FileUtils.classpathStream("eml/sample.xml"));
+    verifySample(dataset, false);
+  }
+
+  @Test
+  public void testConcurrentParsing() throws Exception {
+    final byte[] eml = ByteStreams.toByteArray(FileUtils.classpathStream("eml/sample.xml"));
+    ExecutorService executor = Executors.newFixedThreadPool(8);
+    List<Future<Dataset>> futures = Lists.newArrayList();
+    for (int i = 0; i < 64; i++) {
+      futures.add(executor.submit(new Callable<Dataset>() {
+        @Override
+        public Dataset call() throws Exception {
+          return DatasetParser.parse(MetadataType.EML, new ByteArrayInputStream(eml));
+        }
+      }));
+    }
+    for (Future<Dataset> future : futures) {
+      verifySample(future.get(), false);
+    }
+    executor.shutdown();
+  }
+
+  /**
+   * A reused digester must build the same datasets as a digester configured for a single document, whatever documents
+   * it parsed before.
+   */
+  @Test
+  public void testReusedDigesterMatchesNewDigester() throws Exception {
+    String[] documents = {"eml/sample.xml", "eml/ipt_eml.xml", "eml/wikipedia.xml", "eml/sample.xml"};
+    for (String document : documents) {
+      byte[] eml = ByteStreams.toByteArray(FileUtils.classpathStream(document));
+      assertEquals(document, parseWithNewDigester(eml),
+        DatasetParser.parse(MetadataType.EML, new ByteArrayInputStream(eml)));
+    }
+  }
+
+  private static Dataset parseWithNewDigester(byte[] eml) throws Exception {
+    Digester digester = new Digester();
+    digester.setNamespaceAware(true);
+    digester.addRuleSet(new EMLRuleSet());
+    DatasetWrapper delegator = new DatasetWrapper();
+    digester.push(delegator);
+    digester.parse(new ByteArrayInputStream(eml));
+    delegator.postProcess();
+    return delegator.getTarget();
+  }
+
   private URI buildURI(String uri) {
     try {
       return new URL(uri).toURI();
@@ -3,6 +3,7 @@ package org.gbif.registry.metasync;
 import org.gbif.api.model.common.paging.PagingRequest;
 import org.gbif.api.model.common.paging.PagingResponse;
 import org.gbif.api.model.registry.Dataset;
+import org.gbif.api.model.registry.Endpoint;
 import org.gbif.api.model.registry.Installation;
 import org.gbif.api.service.registry.InstallationService;
 import org.gbif.registry.metasync.api.ErrorCode;
@@ -10,20 +11,26 @@ import org.gbif.registry.metasync.api.MetadataException;
 import org.gbif.registry.metasync.api.MetadataProtocolHandler;
 import org.gbif.registry.metasync.api.MetadataSynchroniser;
 import org.gbif.registry.metasync.api.SyncResult;
+import org.gbif.registry.metasync.api.SyncResultHandler;
 
 import java.util.List;
+import java.util.Map;
 import java.util.UUID;
-import java.util.concurrent.Callable;
-import java.util.concurrent.CompletionService;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.ExecutionException;
-import java.util.concurrent.ExecutorCompletionService;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
 
+import com.google.common.base.Stopwatch;
 import com.google.common.base.Throwables;
+import com.google.common.collect.LinkedListMultimap;
+import com.google.common.collect.ListMultimap;
 import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import com.google.inject.Inject;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -40,8 +47,10 @@ public class MetadataSynchroniserImpl implements MetadataSynchroniser {
 
   private static final Logger LOG = LoggerFactory.getLogger(MetadataSynchroniserImpl.class);
   private static final int PAGING_LIMIT = 10000;
+  private static final long PROGRESS_INTERVAL_MILLIS = TimeUnit.SECONDS.toMillis(30);
   private final InstallationService installationService;
   private final List<MetadataProtocolHandler> protocolHandlers = Lists.newArrayList();
+  private volatile SyncMetrics metrics = new SyncMetrics();
 
   @Inject
   public MetadataSynchroniserImpl(InstallationService installationService) {
@@ -71,58 +80,65 @@ public class MetadataSynchroniserImpl implements MetadataSynchroniser {
 
   @Override
   public List<SyncResult> synchroniseAllInstallations(int parallel) {
-    checkArgument(parallel > 0, "parallel has to be greater than 0");
-    ExecutorService executor = Executors.newFixedThreadPool(parallel);
-    CompletionService<SyncResult> completionService = new ExecutorCompletionService<SyncResult>(executor);
-
-    // Submit all sync jobs to the Completion service
-    PagingResponse<Installation> results;
-    PagingRequest page = new PagingRequest();
-    int count = 0;
-    do {
-      results = installationService.list(page);
-      // TODO:Check for null result
-      for (final Installation installation : results.getResults()) {
-        completionService.submit(new Callable<SyncResult>() {
-
-          @Override
-          public SyncResult call() throws Exception {
-            try {
-              return synchroniseInstallation(installation.getKey());
-            } catch (IllegalArgumentException e) {
-              return new SyncResult(installation, new MetadataException(e, ErrorCode.OTHER_ERROR));
-            }
-          }
-        });
-        count++;
+    final List<SyncResult> syncResults = Lists.newArrayList();
+    synchroniseAllInstallations(parallel, parallel, new SyncResultHandler() {
+      @Override
+      public void handle(SyncResult result) {
+        syncResults.add(result);
       }
-      page.nextPage();
-    } while (!results.isEndOfRecords());
+    });
+    return syncResults;
+  }
 
-    // Wait for all to finish and collect results
-    List<SyncResult> syncResults = Lists.newArrayList();
-    for (int i = 0; i < count; i++) {
-      try {
-        Future<SyncResult> future = completionService.take();
-        syncResults.add(future.get());
-      } catch (InterruptedException ignored) {
-        Thread.currentThread().interrupt();
-      } catch (ExecutionException e) {
-        Throwables.propagateIfPossible(e.getCause());
-      }
-    }
+  /**
+   * Runs the synchronisation as a pipeline: Installations are listed page by page and handed to the worker threads,
+   * limited per host so a single server hosting many Installations isn't hit by all threads at once. Each result is
+   * passed to a single writer thread as soon as it's available, through a small queue blocking the workers should the
+   * handler fall behind. So no matter how many Installations there are only a few results are held in memory.
+   */
+  @Override
+  public void synchroniseAllInstallations(int parallel, int perHost, SyncResultHandler handler) {
+    checkArgument(parallel > 0, "parallel has to be greater than 0");
+    checkArgument(perHost > 0, "perHost has to be greater than 0");
+    checkNotNull(handler, "handler can't be null");
+    metrics = new SyncMetrics();
+    ExecutorService workers = Executors.newFixedThreadPool(parallel,
+      new ThreadFactoryBuilder().setNameFormat("metasync-worker-%d").setDaemon(true).build());
+    ExecutorService writerExecutor = Executors.newSingleThreadExecutor(
+      new ThreadFactoryBuilder().setNameFormat("metasync-writer").setDaemon(true).build());
+    Scheduler scheduler = new Scheduler(workers, perHost, new ArrayBlockingQueue<SyncResult>(parallel * 2));
+    Future<?> writer = writerExecutor.submit(new Writer(scheduler, handler));
 
-    executor.shutdown();
-    while (!executor.isTerminated()) {
-      LOG.info("Waiting for synchronisations to finish");
-      try {
-        executor.awaitTermination(1, TimeUnit.MINUTES);
-      } catch (InterruptedException ignored) {
-        Thread.currentThread().interrupt();
-      }
+    try {
+      PagingResponse<Installation> results;
+      PagingRequest page = new PagingRequest();
+      do {
+        results = installationService.list(page);
+        for (Installation installation : results.getResults()) {
+          scheduler.submit(installation);
+        }
+        page.nextPage();
+      } while (!results.isEndOfRecords());
+      scheduler.allSubmitted();
+      writer.get();
+      LOG.info("Synchronisation of all installations done: {}", metrics);
+
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IllegalStateException("Interrupted while synchronising installations", e);
+    } catch (ExecutionException e) {
+      throw Throwables.propagate(e.getCause());
+    } finally {
+      workers.shutdownNow();
+      writerExecutor.shutdownNow();
     }
+  }
 
-    return syncResults;
+  /**
+   * @return the metrics of the currently running or last synchronisation of all Installations
+   */
+  public SyncMetrics getMetrics() {
+    return metrics;
   }
 
   public void registerProtocolHandler(MetadataProtocolHandler handler) {
@@ -144,6 +160,164 @@ public class MetadataSynchroniserImpl implements MetadataSynchroniser {
     }
   }
 
+  /**
+   * Synchronises a single Installation as part of synchronising all, never failing but returning the error instead.
+   */
+  private SyncResult synchroniseListed(Installation installation) {
+    Stopwatch stopwatch = Stopwatch.createStarted();
+    SyncResult result;
+    try {
+      result = synchroniseInstallation(installation.getKey());
+    } catch (RuntimeException e) {
+      result = new SyncResult(installation, new MetadataException(e, ErrorCode.OTHER_ERROR));
+    }
+    metrics.completed(protocolOf(installation), stopwatch.elapsed(TimeUnit.MILLISECONDS), result.exception == null);
+    return result;
+  }
+
+  private static String protocolOf(Installation installation) {
+    return installation.getType() == null ? "UNKNOWN" : installation.getType().name();
+  }
+
+  /**
+   * @return the host serving the Installation, used to limit the concurrent requests per host
+   */
+  private static String hostOf(Installation installation) {
+    if (installation.getEndpoints() != null) {
+      for (Endpoint endpoint : installation.getEndpoints()) {
+        if (endpoint.getUrl() != null && endpoint.getUrl().getHost() != null) {
+          return endpoint.getUrl().getHost().toLowerCase();
+        }
+      }
+    }
+    // nothing to call, so nothing to limit either
+    return installation.getKey().toString();
+  }
+
+  /**
+   * Hands Installations to the workers, holding back those of hosts already busy with as many Installations as
+   * allowed until one of them is done.
+   */
+  private class Scheduler {
+
+    private final ExecutorService workers;
+    private final int perHost;
+    private final BlockingQueue<SyncResult> results;
+    private final Map<String, Integer> running = Maps.newHashMap();
+    private final ListMultimap<String, Installation> waiting = LinkedListMultimap.create();
+    private volatile boolean allSubmitted;
+
+    private Scheduler(ExecutorService workers, int perHost, BlockingQueue<SyncResult> results) {
+      this.workers = workers;
+      this.perHost = perHost;
+      this.results = results;
+    }
+
+    private synchronized void submit(Installation installation) {
+      metrics.submitted();
+      String host = hostOf(installation);
+      Integer count = running.get(host);
+      if (count == null || count < perHost) {
+        running.put(host, count == null ? 1 : count + 1);
+        start(host, installation);
+      } else {
+        waiting.put(host, installation);
+      }
+    }
+
+    private void start(final String host, final Installation installation) {
+      workers.execute(new Runnable() {
+        @Override
+        public void run() {
+          SyncResult result = null;
+          try {
+            result = synchroniseListed(installation);
+          } finally {
+            if (result == null) {
+              // an Error escaped, a result is still queued so the writer does not wait for it forever
+              result = new SyncResult(installation,
+                new MetadataException("Synchronisation failed with an error", ErrorCode.OTHER_ERROR));
+              metrics.completed(protocolOf(installation), 0, false);
+            }
+            try {
+              results.put(result);
+              done(host);
+            } catch (InterruptedException e) {
+              Thread.currentThread().interrupt();
+            }
+          }
+        }
+      });
+    }
+
+    private synchronized void done(String host) {
+      List<Installation> next = waiting.get(host);
+      if (next.isEmpty()) {
+        int count = running.get(host);
+        if (count == 1) {
+          running.remove(host);
+        } else {
+          running.put(host, count - 1);
+        }
+      } else {
+        start(host, next.remove(0));
+      }
+    }
+
+    private void allSubmitted() {
+      allSubmitted = true;
+    }
+
+    private boolean isDone() {
+      return allSubmitted && metrics.getHandled() == metrics.getSubmitted();
+    }
+
+    private synchronized int waiting() {
+      return waiting.size();
+    }
+  }
+
+  /**
+   * Passes the results to the handler one by one until all submitted Installations are handled. A result the handler
+   * fails on is logged and counted, without stopping the synchronisation of the remaining Installations.
+   */
+  private class Writer implements Runnable {
+
+    private final Scheduler scheduler;
+    private final SyncResultHandler handler;
+
+    private Writer(Scheduler scheduler, SyncResultHandler handler) {
+      this.scheduler = scheduler;
+      this.handler = handler;
+    }
+
+    @Override
+    public void run() {
+      long lastReport = System.currentTimeMillis();
+      try {
+        while (!scheduler.isDone()) {
+          SyncResult result = scheduler.results.poll(1, TimeUnit.SECONDS);
+          if (result != null) {
+            try {
+              handler.handle(result);
+            } catch (RuntimeException e) {
+              metrics.handlerFailed();
+              LOG.error("Failed to handle the synchronisation result of Installation [{}]",
+                        result.installation == null ? null : result.installation.getKey(), e);
+            }
+            metrics.handled();
+          }
+          if (System.currentTimeMillis() - lastReport > PROGRESS_INTERVAL_MILLIS) {
+            LOG.info("Synchronisation progress: {}, {} held back by host", metrics, scheduler.waiting());
+            lastReport = System.currentTimeMillis();
+          }
+        }
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+    }
+  }
+
   /**
    * Does some checks whether we can synchronise this Installation or not. They are not exhaustive as some things can
    * only be determined by the protocol handlers.
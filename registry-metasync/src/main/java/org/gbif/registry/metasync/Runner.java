@@ -15,6 +15,7 @@ package org.gbif.registry.metasync;
 import org.gbif.api.service.registry.DatasetService;
 import org.gbif.api.service.registry.MetasyncHistoryService;
 import org.gbif.registry.metasync.api.SyncResult;
+import org.gbif.registry.metasync.api.SyncResultHandler;
 import org.gbif.registry.metasync.protocols.biocase.BiocaseMetadataSynchroniser;
 import org.gbif.registry.metasync.protocols.digir.DigirMetadataSynchroniser;
 import org.gbif.registry.metasync.protocols.tapir.TapirMetadataSynchroniser;
@@ -24,7 +25,6 @@ import org.gbif.registry.metasync.util.HttpClientFactory;
 import org.gbif.registry.ws.client.guice.RegistryWsClientModule;
 import org.gbif.ws.client.guice.SingleUserAuthModule;
 
-import java.util.List;
 import java.util.Properties;
 import java.util.concurrent.TimeUnit;
 
@@ -66,14 +66,18 @@ public final class Runner {
     synchroniser.registerProtocolHandler(new TapirMetadataSynchroniser(clientFactory.provideHttpClient()));
     synchroniser.registerProtocolHandler(new BiocaseMetadataSynchroniser(clientFactory.provideHttpClient()));
 
-    List<SyncResult> syncResults = synchroniser.synchroniseAllInstallations(100);
-    LOG.info("Done syncing. Processing results");
-    DebugHandler.processResults(syncResults);
-
     DatasetService datasetService = injector.getInstance(DatasetService.class);
     MetasyncHistoryService historyService = injector.getInstance(MetasyncHistoryService.class);
-    RegistryUpdater updater = new RegistryUpdater(datasetService, historyService);
-    updater.saveSyncResultsToRegistry(syncResults);
+    final RegistryUpdater updater = new RegistryUpdater(datasetService, historyService);
+    // results are saved while the synchronisation is still running
+    synchroniser.synchroniseAllInstallations(100, 2, new SyncResultHandler() {
+      @Override
+      public void handle(SyncResult result) {
+        DebugHandler.processResult(result);
+        updater.handle(result);
+      }
+    });
+    LOG.info("Done syncing: {}", synchroniser.getMetrics());
   }
 
   private Runner() {
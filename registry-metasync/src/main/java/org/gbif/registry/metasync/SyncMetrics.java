@@ -0,0 +1,138 @@
+package org.gbif.registry.metasync;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Maps;
+
+/**
+ * Progress of a synchronisation of all Installations and the time spent per protocol, safe to read while the
+ * synchronisation is running.
+ */
+public class SyncMetrics {
+
+  /**
+   * Number and duration of the synchronisations of a single protocol.
+   */
+  public static class Timing {
+
+    private final AtomicLong count = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private final AtomicLong totalMillis = new AtomicLong();
+    private final AtomicLong maxMillis = new AtomicLong();
+
+    private void add(long millis, boolean success) {
+      count.incrementAndGet();
+      if (!success) {
+        failed.incrementAndGet();
+      }
+      totalMillis.addAndGet(millis);
+      long max;
+      do {
+        max = maxMillis.get();
+      } while (millis > max && !maxMillis.compareAndSet(max, millis));
+    }
+
+    public long getCount() {
+      return count.get();
+    }
+
+    public long getFailed() {
+      return failed.get();
+    }
+
+    public long getTotalMillis() {
+      return totalMillis.get();
+    }
+
+    public long getMaxMillis() {
+      return maxMillis.get();
+    }
+
+    public long getMeanMillis() {
+      long n = count.get();
+      return n == 0 ? 0 : totalMillis.get() / n;
+    }
+
+    @Override
+    public String toString() {
+      return count + " synced (" + failed + " failed), mean " + getMeanMillis() + "ms, max " + maxMillis + "ms";
+    }
+  }
+
+  private final AtomicLong submitted = new AtomicLong();
+  private final AtomicLong completed = new AtomicLong();
+  private final AtomicLong failed = new AtomicLong();
+  private final AtomicLong handled = new AtomicLong();
+  private final AtomicLong handlerFailed = new AtomicLong();
+  private final ConcurrentMap<String, Timing> protocols = Maps.newConcurrentMap();
+
+  void submitted() {
+    submitted.incrementAndGet();
+  }
+
+  void completed(String protocol, long millis, boolean success) {
+    completed.incrementAndGet();
+    if (!success) {
+      failed.incrementAndGet();
+    }
+    Timing timing = protocols.get(protocol);
+    if (timing == null) {
+      protocols.putIfAbsent(protocol, new Timing());
+      timing = protocols.get(protocol);
+    }
+    timing.add(millis, success);
+  }
+
+  void handled() {
+    handled.incrementAndGet();
+  }
+
+  void handlerFailed() {
+    handlerFailed.incrementAndGet();
+  }
+
+  /**
+   * @return the number of Installations listed for synchronisation so far
+   */
+  public long getSubmitted() {
+    return submitted.get();
+  }
+
+  /**
+   * @return the number of Installations synchronised, including failures
+   */
+  public long getCompleted() {
+    return completed.get();
+  }
+
+  public long getFailed() {
+    return failed.get();
+  }
+
+  /**
+   * @return the number of results passed to the result handler
+   */
+  public long getHandled() {
+    return handled.get();
+  }
+
+  /**
+   * @return the number of results the result handler failed on, which are included in the handled results
+   */
+  public long getHandlerFailed() {
+    return handlerFailed.get();
+  }
+
+  public Map<String, Timing> getProtocols() {
+    return ImmutableMap.copyOf(protocols);
+  }
+
+  @Override
+  public String toString() {
+    return "submitted " + submitted + ", completed " + completed + " (" + failed + " failed), handled " + handled
+           + " (" + handlerFailed + " failed), protocols " + protocols;
+  }
+}
@@ -38,4 +38,14 @@ public interface MetadataSynchroniser {
    */
   List<SyncResult> synchroniseAllInstallations(int parallel);
 
+  /**
+   * Synchronises all registered Installations ignoring any failures like {@link #synchroniseAllInstallations(int)},
+   * but passes every result to the handler as soon as it is available instead of collecting all of them.
+   *
+   * @param parallel how many threads to run in parallel
+   * @param perHost how many Installations of the same host to synchronise at the same time at most
+   * @param handler receiving the results one by one from a single thread
+   */
+  void synchroniseAllInstallations(int parallel, int perHost, SyncResultHandler handler);
+
 }
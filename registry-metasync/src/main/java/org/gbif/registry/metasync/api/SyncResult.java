@@ -8,6 +8,7 @@ import org.gbif.api.model.registry.metasync.MetasyncResult;
 import java.util.Collection;
 import java.util.List;
 import java.util.Map;
+import java.util.UUID;
 
 import com.google.common.base.Preconditions;
 
@@ -18,16 +19,32 @@ import com.google.common.base.Preconditions;
 public class SyncResult {
 
   /**
-   * Maps from the existing Dataset in the Registry to a new object that we just parsed from the Endpoint.
+   * An existing Dataset in the Registry together with the new object that we just parsed from the Endpoint.
    */
-  public Map<Dataset, Dataset> existingDatasets;
+  public static class DatasetUpdate {
+
+    public final Dataset existing;
+    public final Dataset updated;
+
+    public DatasetUpdate(Dataset existing, Dataset updated) {
+      this.existing = existing;
+      this.updated = updated;
+    }
+  }
+
+  /**
+   * Maps from the key of the existing Dataset in the Registry to the existing Dataset and the new object that we just
+   * parsed from the Endpoint. Keying by the Dataset itself would hash and compare whole Datasets including all their
+   * sub resources.
+   */
+  public Map<UUID, DatasetUpdate> existingDatasets;
   public List<Dataset> addedDatasets;
   public List<Dataset> deletedDatasets;
   public Installation installation;
   public MetadataException exception;
 
   public SyncResult(
-    Map<Dataset, Dataset> existingDatasets,
+    Map<UUID, DatasetUpdate> existingDatasets,
     List<Dataset> addedDatasets,
     List<Dataset> deletedDatasets,
     Installation installation
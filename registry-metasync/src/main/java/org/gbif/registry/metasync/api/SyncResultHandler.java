@@ -0,0 +1,11 @@
+package org.gbif.registry.metasync.api;
+
+/**
+ * Receives the results of a synchronisation of many Installations one by one as soon as each Installation is done.
+ * Results are passed from a single thread, so implementations don't need to be thread safe.
+ */
+public interface SyncResultHandler {
+
+  void handle(SyncResult result);
+
+}
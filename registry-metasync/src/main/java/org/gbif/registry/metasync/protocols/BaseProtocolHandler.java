@@ -26,6 +26,9 @@ import java.io.IOException;
 import java.net.URI;
 import java.util.List;
 
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.LoadingCache;
 import com.google.common.collect.Lists;
 import org.apache.commons.beanutils.ConvertUtils;
 import org.apache.commons.digester3.Digester;
@@ -51,6 +54,36 @@ import static org.apache.commons.digester3.binder.DigesterLoader.newLoader;
 public abstract class BaseProtocolHandler implements MetadataProtocolHandler {
 
   private static final Logger LOG = LoggerFactory.getLogger(BaseProtocolHandler.class);
+
+  /**
+   * Digester rules compiled from the annotations of each model class. A loader is thread safe once it has created its
+   * first Digester, which is done while loading it.
+   */
+  private static final LoadingCache<Class<?>, DigesterLoader> LOADERS =
+    CacheBuilder.newBuilder().build(new CacheLoader<Class<?>, DigesterLoader>() {
+      @Override
+      public DigesterLoader load(final Class<?> clazz) {
+        DigesterLoader loader = newLoader(new FromAnnotationsRuleModule() {
+
+          @Override
+          protected void configureRules() {
+            bindRulesFrom(clazz);
+          }
+        });
+        loader.setNamespaceAware(true);
+        loader.newDigester();
+        return loader;
+      }
+    });
+
+  static {
+    // the converters are registered globally and registering them is not thread safe, so this is done once only
+    ConvertUtils.register(new DateTimeConverter(), DateTime.class);
+    ConvertUtils.register(new LanguageConverter(), Language.class);
+    ConvertUtils.register(new PeriodConverter(), Period.class);
+    ConvertUtils.register(new UriConverter(), URI.class);
+  }
+
   private final HttpClient httpClient;
 
   protected BaseProtocolHandler(HttpClient httpClient) {
@@ -133,23 +166,11 @@ public abstract class BaseProtocolHandler implements MetadataProtocolHandler {
   }
 
   /**
-   * Returns a new Digester which is configured with the annotation rules from the passed in class.
+   * Returns a new Digester which is configured with the annotation rules from the passed in class. The rules are read
+   * from the annotations once per class only.
    */
-  protected Digester newDigester(final Class<?> clazz) {
-    DigesterLoader loader = newLoader(new FromAnnotationsRuleModule() {
-
-      @Override
-      protected void configureRules() {
-        bindRulesFrom(clazz);
-      }
-    });
-
-    loader.setNamespaceAware(true);
-    ConvertUtils.register(new DateTimeConverter(), DateTime.class);
-    ConvertUtils.register(new LanguageConverter(), Language.class);
-    ConvertUtils.register(new PeriodConverter(), Period.class);
-    ConvertUtils.register(new UriConverter(), URI.class);
-    return loader.newDigester();
+  protected Digester newDigester(Class<?> clazz) {
+    return LOADERS.getUnchecked(clazz).newDigester();
   }
 
 }
@@ -26,6 +26,7 @@ import org.gbif.api.vocabulary.InstallationType;
 import org.gbif.registry.metasync.api.ErrorCode;
 import org.gbif.registry.metasync.api.MetadataException;
 import org.gbif.registry.metasync.api.SyncResult;
+import org.gbif.registry.metasync.api.SyncResult.DatasetUpdate;
 import org.gbif.registry.metasync.protocols.BaseProtocolHandler;
 import org.gbif.registry.metasync.protocols.biocase.model.InventoryDataset;
 import org.gbif.registry.metasync.protocols.biocase.model.NewDatasetInventory;
@@ -39,8 +40,7 @@ import java.net.URI;
 import java.net.URISyntaxException;
 import java.util.List;
 import java.util.Map;
-
-import javax.annotation.Nullable;
+import java.util.UUID;
 
 import org.slf4j.LoggerFactory;
 
@@ -88,7 +88,8 @@ public class BiocaseMetadataSynchroniser extends BaseProtocolHandler {
 
     List<Dataset> added = Lists.newArrayList();
     List<Dataset> deleted = Lists.newArrayList();
-    Map<Dataset, Dataset> updated = Maps.newHashMap();
+    Map<UUID, DatasetUpdate> updated = Maps.newHashMap();
+    Map<String, Dataset> datasetsByTitle = indexByTitle(datasets);
 
     for (Endpoint endpoint : installation.getEndpoints()) {
       LOG.info("Starting synchronization of endpoint: {}", endpoint.getUrl());
@@ -109,18 +110,18 @@ public class BiocaseMetadataSynchroniser extends BaseProtocolHandler {
           newDataset = convertToDataset(metadata, endpoint, capabilities);
         }
 
-        Dataset existingDataset = findDataset(datasetTitle, datasets);
+        Dataset existingDataset = datasetsByTitle.get(datasetTitle);
         if (existingDataset == null) {
           added.add(newDataset);
         } else {
-          updated.put(existingDataset, newDataset);
+          updated.put(existingDataset.getKey(), new DatasetUpdate(existingDataset, newDataset));
         }
       }
     }
 
     // All Datasets that weren't updated must have been deleted
     for (Dataset dataset : datasets) {
-      if (!updated.containsKey(dataset)) {
+      if (!updated.containsKey(dataset.getKey())) {
         deleted.add(dataset);
       }
     }
@@ -297,19 +298,17 @@ public class BiocaseMetadataSynchroniser extends BaseProtocolHandler {
   }
 
   /**
-   * Tries to find a matching Dataset in the list of provided Datasets by looking at the title.
-   *
-   * @return the matching Dataset or {@code null} if it could not be found
+   * Indexes the provided Datasets by their title, so each Dataset of the inventory is matched with a single lookup. If
+   * several Datasets share a title the first one wins.
    */
-  @Nullable
-  private Dataset findDataset(String datasetTitle, Iterable<Dataset> datasets) {
+  private Map<String, Dataset> indexByTitle(Iterable<Dataset> datasets) {
+    Map<String, Dataset> index = Maps.newHashMap();
     for (Dataset dataset : datasets) {
-      if (dataset.getTitle().equals(datasetTitle)) {
-        return dataset;
+      if (dataset.getTitle() != null && !index.containsKey(dataset.getTitle())) {
+        index.put(dataset.getTitle(), dataset);
       }
     }
-
-    return null;
+    return index;
   }
 
 }
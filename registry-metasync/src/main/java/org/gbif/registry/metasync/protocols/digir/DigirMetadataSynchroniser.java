@@ -28,6 +28,7 @@ import org.gbif.api.vocabulary.InstallationType;
 import org.gbif.registry.metasync.api.ErrorCode;
 import org.gbif.registry.metasync.api.MetadataException;
 import org.gbif.registry.metasync.api.SyncResult;
+import org.gbif.registry.metasync.api.SyncResult.DatasetUpdate;
 import org.gbif.registry.metasync.protocols.BaseProtocolHandler;
 import org.gbif.registry.metasync.protocols.digir.model.DigirContact;
 import org.gbif.registry.metasync.protocols.digir.model.DigirMetadata;
@@ -37,6 +38,7 @@ import org.gbif.registry.metasync.util.Constants;
 import java.net.URI;
 import java.util.List;
 import java.util.Map;
+import java.util.UUID;
 
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
@@ -123,7 +125,7 @@ public class DigirMetadataSynchroniser extends BaseProtocolHandler {
   ) {
     List<Dataset> added = Lists.newArrayList();
     List<Dataset> deleted = Lists.newArrayList();
-    Map<Dataset, Dataset> updated = Maps.newHashMap();
+    Map<UUID, DatasetUpdate> updated = Maps.newHashMap();
 
     // Maps currently existing DiGIR codes to the Datasets from our Registry that use those codes
     Map<String, Dataset> codeMap = Maps.newHashMap();
@@ -141,7 +143,8 @@ public class DigirMetadataSynchroniser extends BaseProtocolHandler {
     for (DigirResource resource : metadata.getResources()) {
       Dataset newDataset = convertToDataset(resource, url);
       if (codeMap.containsKey(resource.getCode())) {
-        updated.put(codeMap.get(resource.getCode()), newDataset);
+        Dataset existingDataset = codeMap.get(resource.getCode());
+        updated.put(existingDataset.getKey(), new DatasetUpdate(existingDataset, newDataset));
       } else {
         added.add(newDataset);
       }
@@ -149,7 +152,7 @@ public class DigirMetadataSynchroniser extends BaseProtocolHandler {
 
     // All Datasets that weren't updated must have been deleted
     for (Dataset dataset : datasets) {
-      if (!updated.containsKey(dataset)) {
+      if (!updated.containsKey(dataset.getKey())) {
         deleted.add(dataset);
       }
     }
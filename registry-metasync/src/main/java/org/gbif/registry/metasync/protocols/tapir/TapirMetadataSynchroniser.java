@@ -26,6 +26,7 @@ import org.gbif.api.vocabulary.InstallationType;
 import org.gbif.registry.metasync.api.ErrorCode;
 import org.gbif.registry.metasync.api.MetadataException;
 import org.gbif.registry.metasync.api.SyncResult;
+import org.gbif.registry.metasync.api.SyncResult.DatasetUpdate;
 import org.gbif.registry.metasync.protocols.BaseProtocolHandler;
 import org.gbif.registry.metasync.protocols.tapir.model.capabilities.Capabilities;
 import org.gbif.registry.metasync.protocols.tapir.model.capabilities.Schema;
@@ -39,8 +40,10 @@ import java.net.URI;
 import java.net.URISyntaxException;
 import java.util.List;
 import java.util.Map;
+import java.util.UUID;
 import javax.annotation.Nullable;
 
+import com.google.common.annotations.VisibleForTesting;
 import com.google.common.collect.LinkedListMultimap;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
@@ -65,8 +68,8 @@ import static com.google.common.base.Preconditions.checkArgument;
  * <ol>
  * <li>For every Endpoint do a {@code capabilities} as well as a {@code metadata} request</li>
  * <li>Convert the data into a {@link Dataset} object</li>
- * <li>When we have all new {@code Dataset} objects try to map them to existing ones using the
- * {@code local id} (which is the last part of the URL)</li>
+ * <li>Map each new {@code Dataset} to an existing one using the {@code local id} (which is the last part of
+ * the URL), looked up in an index of the existing Datasets built once per Installation</li>
  * </ol>
  * Note: If there is an exception during processing one of the Endpoints the whole synchronisation process will be
  * aborted. I'm doing this to prevent inconsistencies.
@@ -114,7 +117,8 @@ public class TapirMetadataSynchroniser extends BaseProtocolHandler {
 
     List<Dataset> added = Lists.newArrayList();
     List<Dataset> deleted = Lists.newArrayList();
-    Map<Dataset, Dataset> updated = Maps.newHashMap();
+    Map<UUID, DatasetUpdate> updated = Maps.newHashMap();
+    Map<String, Dataset> datasetsByLocalId = indexByLocalId(datasets);
 
     // This metadata will be used to update the Installation itself
     TapirMetadata updaterMetadata = null;
@@ -137,11 +141,11 @@ public class TapirMetadataSynchroniser extends BaseProtocolHandler {
       TapirSearch search = getTapirSearch(searchRequestUrl);
 
       Dataset newDataset = convertToDataset(capabilities, metadata, search);
-      Dataset existingDataset = findDataset(localId, datasets);
+      Dataset existingDataset = datasetsByLocalId.get(localId);
       if (existingDataset == null) {
         added.add(newDataset);
       } else {
-        updated.put(existingDataset, newDataset);
+        updated.put(existingDataset.getKey(), new DatasetUpdate(existingDataset, newDataset));
       }
 
       updaterMetadata = metadata;
@@ -149,7 +153,7 @@ public class TapirMetadataSynchroniser extends BaseProtocolHandler {
 
     // All Datasets that weren't updated must have been deleted
     for (Dataset dataset : datasets) {
-      if (!updated.containsKey(dataset)) {
+      if (!updated.containsKey(dataset.getKey())) {
         deleted.add(dataset);
       }
     }
@@ -280,20 +284,21 @@ public class TapirMetadataSynchroniser extends BaseProtocolHandler {
   }
 
   /**
-   * Tries to find a matching Dataset in the list of provided Datasets.
-   *
-   * @return the matching Dataset or {@code null} if it could not be found
+   * Indexes the provided Datasets by the local ids of all their Endpoints, so each Endpoint of the Installation is
+   * matched with a single lookup. If several Datasets share a local id the first one wins.
    */
-  @Nullable
-  private Dataset findDataset(String localId, Iterable<Dataset> datasets) throws MetadataException {
+  @VisibleForTesting
+  Map<String, Dataset> indexByLocalId(Iterable<Dataset> datasets) throws MetadataException {
+    Map<String, Dataset> index = Maps.newHashMap();
     for (Dataset dataset : datasets) {
       for (Endpoint endpoint : dataset.getEndpoints()) {
-        if (localId.equals(getLocalId(endpoint))) {
-          return dataset;
+        String localId = getLocalId(endpoint);
+        if (!index.containsKey(localId)) {
+          index.put(localId, dataset);
         }
       }
     }
-    return null;
+    return index;
   }
 
   /**
@@ -10,26 +10,39 @@ import org.gbif.api.service.registry.MetasyncHistoryService;
 import org.gbif.api.vocabulary.DatasetType;
 import org.gbif.api.vocabulary.EndpointType;
 import org.gbif.registry.metasync.api.SyncResult;
+import org.gbif.registry.metasync.api.SyncResult.DatasetUpdate;
+import org.gbif.registry.metasync.api.SyncResultHandler;
 import org.gbif.registry.metasync.util.Constants;
+import org.gbif.registry.ws.client.DatasetChangeset;
+import org.gbif.registry.ws.client.DatasetWsClient;
 
-import java.util.Map;
+import java.util.List;
 import java.util.UUID;
 
 import com.google.common.annotations.VisibleForTesting;
+import com.google.common.collect.Iterables;
+import com.google.common.collect.Lists;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 /**
  * Takes synchronisation results and saves those back to the registry.
+ * <p/>
+ * When talking to the registry web services all changes of an installation are sent as dataset changesets with a
+ * few requests, each dataset being changed in a single transaction. Other dataset services are updated with one call
+ * per dataset and sub resource.
  */
-public class RegistryUpdater {
+public class RegistryUpdater implements SyncResultHandler {
 
   private static final Logger LOG = LoggerFactory.getLogger(RegistryUpdater.class);
+  private static final int CHANGESETS_PER_REQUEST = 100;
   private final DatasetService datasetService;
+  private final DatasetWsClient changesetClient;
   private final MetasyncHistoryService historyService;
 
   public RegistryUpdater(DatasetService datasetService, MetasyncHistoryService historyService) {
     this.datasetService = datasetService;
+    this.changesetClient = datasetService instanceof DatasetWsClient ? (DatasetWsClient) datasetService : null;
     this.historyService = historyService;
   }
 
@@ -44,6 +57,11 @@ public class RegistryUpdater {
     }
   }
 
+  @Override
+  public void handle(SyncResult result) {
+    saveSyncResults(result);
+  }
+
   /**
    * Iterate through the updated datasets. For each dataset, update the dataset itself, and then update its contacts,
    * identifiers, machine tags, and endpoints. Tags remain unchanged by the metadata synchronizer, and therefore aren't
@@ -60,8 +78,8 @@ public class RegistryUpdater {
    * @param result SyncResult
    */
   void saveUpdatedDatasets(SyncResult result) {
-    for (Map.Entry<Dataset, Dataset> entry : result.existingDatasets.entrySet()) {
-      Dataset existingDataset = entry.getKey();
+    for (DatasetUpdate datasetUpdate : result.existingDatasets.values()) {
+      Dataset existingDataset = datasetUpdate.existing;
       UUID datasetKey = existingDataset.getKey();
       if (skipDatasetUpdate(existingDataset)) {
         LOG.info("Dataset [{}] updated at source untouched in Registry because it's locked or contains a DwC-A "
@@ -70,7 +88,7 @@ public class RegistryUpdater {
         LOG.info("Updating dataset [{}]", datasetKey);
 
         // the updated dataset created from the metadata synchronization
-        Dataset updated = entry.getValue();
+        Dataset updated = datasetUpdate.updated;
 
         // safest, preserve existing dataset, copying over only those properties that could have changed from the sync
         existingDataset.setHomepage(updated.getHomepage());
@@ -143,7 +161,9 @@ public class RegistryUpdater {
    * </ul>
    */
   private void saveSyncResults(SyncResult result) {
-    if (result.exception == null) {
+    if (result.exception == null && changesetClient != null) {
+      applyChangesets(result);
+    } else if (result.exception == null) {
       saveAddedDatasets(result);
       saveDeletedDatasets(result);
       saveUpdatedDatasets(result);
@@ -213,4 +233,67 @@ public class RegistryUpdater {
     }
   }
 
+  /**
+   * Sends the added, deleted and updated datasets of a result as changesets, following the same rules as
+   * {@link #saveAddedDatasets(SyncResult)}, {@link #saveDeletedDatasets(SyncResult)} and
+   * {@link #saveUpdatedDatasets(SyncResult)}.
+   */
+  @VisibleForTesting
+  void applyChangesets(SyncResult result) {
+    List<DatasetChangeset> changesets = Lists.newArrayList();
+    for (Dataset dataset : result.addedDatasets) {
+      dataset.setPublishingOrganizationKey(result.installation.getOrganizationKey());
+      dataset.setInstallationKey(result.installation.getKey());
+      dataset.setType(DatasetType.OCCURRENCE);
+      DatasetChangeset changeset = new DatasetChangeset();
+      changeset.setDataset(dataset);
+      changeset.setContacts(dataset.getContacts());
+      changeset.setMachineTags(dataset.getMachineTags());
+      changeset.setEndpoints(dataset.getEndpoints());
+      changeset.setIdentifiers(dataset.getIdentifiers());
+      changesets.add(changeset);
+    }
+
+    for (Dataset dataset : result.deletedDatasets) {
+      if (dataset.isLockedForAutoUpdate()) {
+        LOG.info("Dataset [{}] deleted at source but left in Registry because it's locked", dataset.getKey());
+      } else {
+        DatasetChangeset changeset = new DatasetChangeset();
+        changeset.setDataset(dataset);
+        changeset.setDeleted(true);
+        changesets.add(changeset);
+      }
+    }
+
+    for (DatasetUpdate datasetUpdate : result.existingDatasets.values()) {
+      Dataset existingDataset = datasetUpdate.existing;
+      if (skipDatasetUpdate(existingDataset)) {
+        LOG.info("Dataset [{}] updated at source untouched in Registry because it's locked or contains a DwC-A "
+          + "endpoint, which takes precedence", existingDataset.getKey());
+      } else {
+        Dataset updated = datasetUpdate.updated;
+        existingDataset.setHomepage(updated.getHomepage());
+        existingDataset.setLanguage(updated.getLanguage());
+        existingDataset.setCitation(updated.getCitation());
+        existingDataset.setTitle(updated.getTitle());
+        existingDataset.setDescription(updated.getDescription());
+        existingDataset.setLogoUrl(updated.getLogoUrl());
+        existingDataset.setRights(updated.getRights());
+        DatasetChangeset changeset = new DatasetChangeset();
+        changeset.setDataset(existingDataset);
+        changeset.setContacts(updated.getContacts());
+        changeset.setMachineTagNamespace(Constants.METADATA_NAMESPACE);
+        changeset.setMachineTags(updated.getMachineTags());
+        changeset.setEndpoints(updated.getEndpoints());
+        changeset.setIdentifiers(updated.getIdentifiers());
+        changesets.add(changeset);
+      }
+    }
+
+    for (List<DatasetChangeset> batch : Iterables.partition(changesets, CHANGESETS_PER_REQUEST)) {
+      List<UUID> keys = changesetClient.applyChangesets(batch);
+      LOG.info("Applied changes to {} datasets of installation [{}]: {}", keys.size(), result.installation.getKey(),
+        keys);
+    }
+  }
 }
@@ -0,0 +1,169 @@
+package org.gbif.registry.metasync;
+
+import org.gbif.api.model.common.paging.Pageable;
+import org.gbif.api.model.common.paging.PagingResponse;
+import org.gbif.api.model.registry.Dataset;
+import org.gbif.api.model.registry.Endpoint;
+import org.gbif.api.model.registry.Installation;
+import org.gbif.api.service.registry.InstallationService;
+import org.gbif.api.vocabulary.EndpointType;
+import org.gbif.api.vocabulary.InstallationType;
+import org.gbif.registry.metasync.api.MetadataException;
+import org.gbif.registry.metasync.api.MetadataProtocolHandler;
+import org.gbif.registry.metasync.api.SyncResult;
+import org.gbif.registry.metasync.api.SyncResultHandler;
+
+import java.net.URI;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Matchers;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class MetadataSynchroniserImplTest {
+
+  private static final int INSTALLATIONS = 40;
+
+  /**
+   * Records the highest number of concurrent synchronisations per host.
+   */
+  private static class SlowHandler implements MetadataProtocolHandler {
+
+    private final ConcurrentMap<String, AtomicInteger> running = Maps.newConcurrentMap();
+    private final Map<String, Integer> maxRunning = Maps.newHashMap();
+
+    @Override
+    public boolean canHandle(Installation installation) {
+      return true;
+    }
+
+    @Override
+    public SyncResult syncInstallation(Installation installation, List<Dataset> datasets) throws MetadataException {
+      String host = installation.getEndpoints().get(0).getUrl().getHost();
+      running.putIfAbsent(host, new AtomicInteger());
+      int concurrent = running.get(host).incrementAndGet();
+      synchronized (maxRunning) {
+        Integer max = maxRunning.get(host);
+        maxRunning.put(host, max == null ? concurrent : Math.max(max, concurrent));
+      }
+      try {
+        Thread.sleep(20);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+      running.get(host).decrementAndGet();
+      return new SyncResult(Maps.<UUID, SyncResult.DatasetUpdate>newHashMap(), Lists.<Dataset>newArrayList(),
+        Lists.<Dataset>newArrayList(), installation);
+    }
+  }
+
+  private final InstallationService installationService = mock(InstallationService.class);
+  private final SlowHandler protocolHandler = new SlowHandler();
+  private MetadataSynchroniserImpl synchroniser;
+
+  @Before
+  public void setup() {
+    List<Installation> installations = Lists.newArrayList();
+    for (int i = 0; i < INSTALLATIONS; i++) {
+      // most installations on a single host
+      Installation installation = installation(i % 4 == 0 ? "other" + i + ".org" : "big.org");
+      installations.add(installation);
+      when(installationService.get(installation.getKey())).thenReturn(installation);
+    }
+    PagingResponse<Installation> page =
+      new PagingResponse<Installation>(0, INSTALLATIONS, (long) INSTALLATIONS, installations);
+    page.setEndOfRecords(true);
+    when(installationService.list(Matchers.<Pageable>any())).thenReturn(page);
+    PagingResponse<Dataset> noDatasets = new PagingResponse<Dataset>(0, 10, 0L, Lists.<Dataset>newArrayList());
+    noDatasets.setEndOfRecords(true);
+    when(installationService.getHostedDatasets(Matchers.<UUID>any(), Matchers.<Pageable>any())).thenReturn(noDatasets);
+    synchroniser = new MetadataSynchroniserImpl(installationService);
+    synchroniser.registerProtocolHandler(protocolHandler);
+  }
+
+  @Test
+  public void testPerHostLimit() {
+    final Set<UUID> handled = Sets.newHashSet();
+    synchroniser.synchroniseAllInstallations(8, 2, new SyncResultHandler() {
+      @Override
+      public void handle(SyncResult result) {
+        assertTrue("Results must not be handled concurrently", handled.add(result.installation.getKey()));
+      }
+    });
+
+    assertEquals(INSTALLATIONS, handled.size());
+    assertTrue(protocolHandler.maxRunning.get("big.org") <= 2);
+    SyncMetrics metrics = synchroniser.getMetrics();
+    assertEquals(INSTALLATIONS, metrics.getSubmitted());
+    assertEquals(INSTALLATIONS, metrics.getHandled());
+    assertEquals(0, metrics.getFailed());
+    assertNotNull(metrics.getProtocols().get(InstallationType.TAPIR_INSTALLATION.name()));
+    assertEquals(INSTALLATIONS, metrics.getProtocols().get(InstallationType.TAPIR_INSTALLATION.name()).getCount());
+  }
+
+  @Test
+  public void testHandlerFailuresDoNotStopSync() {
+    final AtomicInteger calls = new AtomicInteger();
+    synchroniser.synchroniseAllInstallations(4, 2, new SyncResultHandler() {
+      @Override
+      public void handle(SyncResult result) {
+        if (calls.incrementAndGet() % 2 == 0) {
+          throw new IllegalStateException("Failing on purpose");
+        }
+      }
+    });
+
+    assertEquals(INSTALLATIONS, calls.get());
+    SyncMetrics metrics = synchroniser.getMetrics();
+    assertEquals(INSTALLATIONS, metrics.getHandled());
+    assertEquals(INSTALLATIONS / 2, metrics.getHandlerFailed());
+  }
+
+  @Test
+  public void testErrorsStillProduceResults() {
+    synchroniser = new MetadataSynchroniserImpl(installationService);
+    synchroniser.registerProtocolHandler(new SlowHandler() {
+      @Override
+      public SyncResult syncInstallation(Installation installation, List<Dataset> datasets) {
+        throw new AssertionError("Failing on purpose");
+      }
+    });
+
+    List<SyncResult> results = synchroniser.synchroniseAllInstallations(4);
+    assertEquals(INSTALLATIONS, results.size());
+    for (SyncResult result : results) {
+      assertNotNull(result.exception);
+    }
+    assertEquals(INSTALLATIONS, synchroniser.getMetrics().getFailed());
+  }
+
+  @Test
+  public void testCollectedResults() {
+    assertEquals(INSTALLATIONS, synchroniser.synchroniseAllInstallations(4).size());
+  }
+
+  private static Installation installation(String host) {
+    Installation installation = new Installation();
+    installation.setKey(UUID.randomUUID());
+    installation.setType(InstallationType.TAPIR_INSTALLATION);
+    Endpoint endpoint = new Endpoint();
+    endpoint.setType(EndpointType.TAPIR);
+    endpoint.setUrl(URI.create("http://" + host + "/tapir"));
+    installation.setEndpoints(Lists.newArrayList(endpoint));
+    return installation;
+  }
+}
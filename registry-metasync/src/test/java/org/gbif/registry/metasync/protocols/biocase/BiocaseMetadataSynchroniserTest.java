@@ -26,6 +26,7 @@ import org.gbif.registry.metasync.api.SyncResult;
 import java.io.IOException;
 import java.net.URI;
 import java.util.ArrayList;
+import java.util.UUID;
 
 import com.google.common.collect.Lists;
 import com.google.common.io.Resources;
@@ -163,6 +164,7 @@ public class BiocaseMetadataSynchroniserTest {
   @Test
   public void testUpdatedDataset() throws Exception {
     Dataset dataset = new Dataset();
+    dataset.setKey(UUID.randomUUID());
     dataset.setTitle("Pontaurus");
 
     when(client.execute(any(HttpGet.class))).thenReturn(prepareResponse(200, "biocase/capabilities1.xml"))
@@ -173,7 +175,7 @@ public class BiocaseMetadataSynchroniserTest {
     assertThat(syncResult.existingDatasets).hasSize(1);
     assertThat(syncResult.addedDatasets).isEmpty();
 
-    assertThat(syncResult.existingDatasets.get(dataset).getTitle()).isEqualTo("Pontaurus");
+    assertThat(syncResult.existingDatasets.get(dataset.getKey()).updated.getTitle()).isEqualTo("Pontaurus");
   }
 
   /**
@@ -28,10 +28,15 @@ import org.gbif.registry.metasync.util.Constants;
 import java.io.IOException;
 import java.net.URI;
 import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
 
+import com.google.common.base.Charsets;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
 import com.google.common.io.Resources;
 import org.apache.http.HttpResponse;
 import org.apache.http.ProtocolVersion;
@@ -131,6 +136,7 @@ public class DigirMetadataSynchroniserTest {
   @Test
   public void testUpdatedDataset() throws Exception {
     Dataset dataset = new Dataset();
+    dataset.setKey(UUID.randomUUID());
     dataset.addMachineTag(MachineTag.newInstance(Constants.METADATA_NAMESPACE,
                                                  Constants.DIGIR_CODE,
                                                  "doi:10.1594/PANGAEA.51131"));
@@ -142,10 +148,72 @@ public class DigirMetadataSynchroniserTest {
     assertThat(syncResult.existingDatasets).hasSize(1);
     assertThat(syncResult.addedDatasets).isEmpty();
 
-    assertThat(syncResult.existingDatasets.get(dataset).getTitle()).isEqualTo(
+    assertThat(syncResult.existingDatasets.get(dataset.getKey()).updated.getTitle()).isEqualTo(
       "Distribution of benthic foraminifera of sediment core PS1388-3");
   }
 
+  /**
+   * Synchronises a synthetic installation with 10k resources, half of them matching some of its 10k hosted datasets
+   * by their DiGIR code.
+   */
+  @Test
+  public void testLargeInstallationMatching() throws Exception {
+    int resources = 10000;
+    String document = Resources.toString(Resources.getResource("digir/test2.xml"), Charsets.UTF_8);
+    int start = document.indexOf("<resource>");
+    int end = document.indexOf("</resource>") + "</resource>".length();
+    String resource = document.substring(start, end).replace("doi:10.1594/PANGAEA.51131", "CODE");
+    StringBuilder resourcesXml = new StringBuilder();
+    for (int i = 0; i < resources; i++) {
+      resourcesXml.append(resource.replace("CODE", "resource" + i));
+    }
+    byte[] bytes = (document.substring(0, start) + resourcesXml + document.substring(end)).getBytes(Charsets.UTF_8);
+
+    // the hosted datasets are resources 5000 to 14999
+    List<Dataset> datasets = Lists.newArrayList();
+    for (int i = 0; i < resources; i++) {
+      Dataset dataset = new Dataset();
+      dataset.setKey(UUID.randomUUID());
+      dataset.addMachineTag(MachineTag.newInstance(Constants.METADATA_NAMESPACE, Constants.DIGIR_CODE,
+                                                   "resource" + (i + resources / 2)));
+      datasets.add(dataset);
+    }
+
+    HttpResponse response = new BasicHttpResponse(new BasicStatusLine(new ProtocolVersion("HTTP", 1, 1), 200, ""));
+    response.setEntity(new ByteArrayEntity(bytes));
+    when(client.execute(any(HttpGet.class))).thenReturn(response);
+
+    SyncResult syncResult = synchroniser.syncInstallation(installation, datasets);
+    assertThat(syncResult.existingDatasets).hasSize(resources / 2);
+    assertThat(syncResult.addedDatasets).hasSize(resources / 2);
+    assertThat(syncResult.deletedDatasets).hasSize(resources / 2);
+
+    for (Dataset dataset : datasets.subList(0, resources / 2)) {
+      SyncResult.DatasetUpdate update = syncResult.existingDatasets.get(dataset.getKey());
+      assertThat(update).describedAs("Update of " + digirCode(dataset)).isNotNull();
+      assertThat(digirCode(update.updated)).isEqualTo(digirCode(dataset));
+    }
+    for (Dataset added : syncResult.addedDatasets) {
+      assertThat(Integer.parseInt(digirCode(added).substring("resource".length()))).isLessThan(resources / 2);
+    }
+    Set<UUID> deleted = Sets.newHashSet();
+    for (Dataset dataset : syncResult.deletedDatasets) {
+      deleted.add(dataset.getKey());
+    }
+    for (Dataset dataset : datasets.subList(resources / 2, resources)) {
+      assertThat(deleted).contains(dataset.getKey());
+    }
+  }
+
+  private static String digirCode(Dataset dataset) {
+    for (MachineTag tag : dataset.getMachineTags()) {
+      if (Constants.METADATA_NAMESPACE.equals(tag.getNamespace()) && Constants.DIGIR_CODE.equals(tag.getName())) {
+        return tag.getValue();
+      }
+    }
+    return null;
+  }
+
   /**
    * Make sure the determination of DiGIR endpoint type is catching DIGIR_MANIS.
    */
@@ -13,6 +13,9 @@ import org.gbif.registry.metasync.util.Constants;
 import java.io.IOException;
 import java.net.URI;
 import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
 
 import com.google.common.collect.Lists;
 import com.google.common.io.Resources;
@@ -118,6 +121,7 @@ public class TapirMetadataSynchroniserTest {
   @Test
   public void testUpdatedDataset() throws Exception {
     Dataset dataset = new Dataset();
+    dataset.setKey(UUID.randomUUID());
     dataset.setTitle("Foobar");
     Endpoint endpoint = new Endpoint();
     endpoint.setUrl(URI.create("http://localhost/nmr"));
@@ -139,10 +143,40 @@ public class TapirMetadataSynchroniserTest {
     assertThat(syncResult.addedDatasets).isEmpty();
 
     assertThat(syncResult.existingDatasets
-      .get(dataset)
+      .get(dataset.getKey()).updated
       .getTitle()).isEqualTo("Natural History Museum Rotterdam");
   }
 
+  /**
+   * Indexes 10k hosted datasets by the local ids of their endpoints, keeping the first dataset of a local id shared by
+   * several datasets.
+   */
+  @Test
+  public void testLocalIdMatching() throws Exception {
+    int resources = 10000;
+    List<Dataset> datasets = Lists.newArrayList();
+    for (int i = 0; i < resources; i++) {
+      Dataset dataset = new Dataset();
+      dataset.setKey(UUID.randomUUID());
+      Endpoint endpoint = new Endpoint();
+      endpoint.setUrl(URI.create("http://localhost/tapir/resource" + i));
+      dataset.addEndpoint(endpoint);
+      datasets.add(dataset);
+    }
+    Dataset duplicate = new Dataset();
+    duplicate.setKey(UUID.randomUUID());
+    Endpoint endpoint = new Endpoint();
+    endpoint.setUrl(URI.create("http://localhost/tapir/resource0"));
+    duplicate.addEndpoint(endpoint);
+    datasets.add(duplicate);
+
+    Map<String, Dataset> index = synchroniser.indexByLocalId(datasets);
+    assertThat(index).hasSize(resources);
+    for (int i = 0; i < resources; i++) {
+      assertThat(index.get("resource" + i).getKey()).isEqualTo(datasets.get(i).getKey());
+    }
+  }
+
   public HttpResponse prepareResponse(int responseStatus, String fileName) throws IOException {
     HttpResponse response =
       new BasicHttpResponse(new BasicStatusLine(new ProtocolVersion("HTTP", 1, 1), responseStatus, ""));
@@ -7,6 +7,7 @@ import org.gbif.api.model.registry.Identifier;
 import org.gbif.api.model.registry.Installation;
 import org.gbif.api.model.registry.MachineTag;
 import org.gbif.api.model.registry.Tag;
+import org.gbif.api.model.registry.metasync.MetasyncHistory;
 import org.gbif.api.service.registry.DatasetService;
 import org.gbif.api.service.registry.MetasyncHistoryService;
 import org.gbif.api.vocabulary.EndpointType;
@@ -16,6 +17,8 @@ import org.gbif.registry.metasync.api.SyncResult;
 import org.gbif.registry.metasync.protocols.HttpGetMatcher;
 import org.gbif.registry.metasync.protocols.tapir.TapirMetadataSynchroniser;
 import org.gbif.registry.metasync.util.Constants;
+import org.gbif.registry.ws.client.DatasetChangeset;
+import org.gbif.registry.ws.client.DatasetWsClient;
 
 import java.io.IOException;
 import java.net.URI;
@@ -34,10 +37,14 @@ import org.junit.Before;
 import org.junit.BeforeClass;
 import org.junit.Test;
 import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
 import org.mockito.Mock;
 import org.mockito.runners.MockitoJUnitRunner;
 
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyListOf;
 import static org.mockito.Matchers.anyInt;
 import static org.mockito.Matchers.argThat;
 import static org.mockito.Mockito.mock;
@@ -159,6 +166,37 @@ public class RegistryUpdaterTest {
     verify(updater.getDatasetService(), times(0)).update(any(Dataset.class));
   }
 
+  /**
+   * Synchronize a TAPIR installation against the registry web service client, which receives all changes of the
+   * updated Dataset as a single changeset instead of one call per sub resource.
+   */
+  @Test
+  public void testApplyChangesets() throws Exception {
+    DatasetWsClient client = mock(DatasetWsClient.class);
+    when(client.applyChangesets(anyListOf(DatasetChangeset.class))).thenReturn(Lists.newArrayList(dataset.getKey()));
+    updater = new RegistryUpdater(client, metasyncHistoryService);
+
+    SyncResult syncResult = synchroniser.syncInstallation(installation, Lists.newArrayList(dataset));
+    updater.handle(syncResult);
+
+    ArgumentCaptor<List> changesets = ArgumentCaptor.forClass(List.class);
+    verify(client, times(1)).applyChangesets(changesets.capture());
+    assertEquals(1, changesets.getValue().size());
+    DatasetChangeset changeset = (DatasetChangeset) changesets.getValue().get(0);
+    assertEquals(dataset.getKey(), changeset.getDataset().getKey());
+    assertFalse(changeset.isDeleted());
+    assertEquals(Constants.METADATA_NAMESPACE, changeset.getMachineTagNamespace());
+    assertEquals(2, changeset.getMachineTags().size());
+    assertEquals(2, changeset.getContacts().size());
+    assertEquals(1, changeset.getEndpoints().size());
+
+    // no calls per sub resource
+    verify(client, times(0)).update(any(Dataset.class));
+    verify(client, times(0)).addContact(any(UUID.class), any(Contact.class));
+    verify(client, times(0)).addMachineTag(any(UUID.class), any(MachineTag.class));
+    verify(metasyncHistoryService, times(1)).createMetasync(any(MetasyncHistory.class));
+  }
+
   /**
    * Prepare TAPIR Dataset for use in tests, having 1 contact, 1 identifier, 2 machine tags, 1 tag, and 1 endpoint.
    */
@@ -15,15 +15,23 @@ import org.gbif.ws.client.BaseWsGetClient;
 import org.gbif.ws.client.QueryParamBuilder;
 
 import java.io.IOException;
+import java.io.InputStream;
+import java.util.Calendar;
+import java.util.Date;
 import java.util.List;
 import java.util.Locale;
 import java.util.UUID;
+import java.util.zip.GZIPInputStream;
 import javax.annotation.Nullable;
 import javax.validation.constraints.NotNull;
+import javax.ws.rs.core.HttpHeaders;
 import javax.ws.rs.core.MediaType;
+import javax.xml.bind.DatatypeConverter;
 
 import com.google.common.base.Preconditions;
+import com.sun.jersey.api.client.ClientResponse;
 import com.sun.jersey.api.client.GenericType;
+import com.sun.jersey.api.client.UniformInterfaceException;
 import com.sun.jersey.api.client.WebResource;
 import com.sun.jersey.api.client.filter.ClientFilter;
 import org.codehaus.jackson.map.ObjectMapper;
@@ -31,12 +39,16 @@ import org.codehaus.jackson.map.ObjectMapper;
 public class BaseNetworkEntityClient<T extends NetworkEntity> extends BaseWsGetClient<T, UUID>
   implements NetworkEntityService<T> {
 
+  private static final String CONTINUATION_TOKEN_HEADER = "X-Continuation-Token";
+
+  private final Class<T> resourceClass;
   private final GenericType<PagingResponse<T>> pagingType;
   private final ObjectMapper mapper = new ObjectMapper();
 
   public BaseNetworkEntityClient(Class<T> resourceClass, WebResource resource, @Nullable ClientFilter authFilter,
     GenericType<PagingResponse<T>> pagingType) {
     super(resourceClass, resource, authFilter);
+    this.resourceClass = resourceClass;
     this.pagingType = pagingType;
   }
 
@@ -55,6 +67,57 @@ public class BaseNetworkEntityClient<T extends NetworkEntity> extends BaseWsGetC
     return get(pagingType, null, null, page);
   }
 
+  /**
+   * Lists entities newest first by keyset, which unlike {@link #list(Pageable)} costs the same for every page.
+   *
+   * @param continuationToken the token of the previous page, null for the first page
+   * @param count whether to include the approximate total number of entities
+   */
+  public ContinuationPage<T> listAfter(@Nullable String continuationToken, int limit, boolean count) {
+    WebResource resource = getResource("keyset")
+      .queryParam("limit", String.valueOf(limit))
+      .queryParam("count", String.valueOf(count));
+    if (continuationToken != null) {
+      resource = resource.queryParam("continuationToken", continuationToken);
+    }
+    ClientResponse response = resource.accept(MediaType.APPLICATION_JSON).get(ClientResponse.class);
+    if (response.getStatus() != ClientResponse.Status.OK.getStatusCode()) {
+      throw new UniformInterfaceException(response);
+    }
+    PagingResponse<T> page = response.getEntity(pagingType);
+    return new ContinuationPage<T>(page.getResults(),
+      response.getHeaders().getFirst(CONTINUATION_TOKEN_HEADER), page.getCount());
+  }
+
+  /**
+   * Streams all entities, or only those modified since the given date, in a single request. The returned iterator
+   * reads the entities while they are downloaded and should be closed if it is not read to the end.
+   *
+   * @param modifiedSince only entities modified at or after this date, all if null
+   */
+  public NdjsonIterator<T> export(@Nullable Date modifiedSince) {
+    WebResource resource = getResource("export");
+    if (modifiedSince != null) {
+      Calendar cal = Calendar.getInstance();
+      cal.setTime(modifiedSince);
+      resource = resource.queryParam("modifiedSince", DatatypeConverter.printDateTime(cal));
+    }
+    ClientResponse response = resource.header(HttpHeaders.ACCEPT_ENCODING, "gzip").get(ClientResponse.class);
+    if (response.getStatus() != ClientResponse.Status.OK.getStatusCode()) {
+      throw new UniformInterfaceException(response);
+    }
+    try {
+      InputStream stream = response.getEntityInputStream();
+      if ("gzip".equalsIgnoreCase(response.getHeaders().getFirst(HttpHeaders.CONTENT_ENCODING))) {
+        stream = new GZIPInputStream(stream);
+      }
+      return new NdjsonIterator<T>(resourceClass, stream);
+    } catch (IOException e) {
+      response.close();
+      throw new IllegalStateException("Failed to open the export", e);
+    }
+  }
+
   @Override
   public void update(T entity) {
     put(entity, entity.getKey().toString());
@@ -0,0 +1,44 @@
+package org.gbif.registry.ws.client;
+
+import java.util.List;
+import javax.annotation.Nullable;
+
+/**
+ * A page of entities listed by keyset, see {@link BaseNetworkEntityClient#listAfter(String, int, boolean)}.
+ */
+public class ContinuationPage<T> {
+
+  private final List<T> results;
+  private final String continuationToken;
+  private final Long count;
+
+  public ContinuationPage(List<T> results, @Nullable String continuationToken, @Nullable Long count) {
+    this.results = results;
+    this.continuationToken = continuationToken;
+    this.count = count;
+  }
+
+  public List<T> getResults() {
+    return results;
+  }
+
+  /**
+   * @return the token to request the next page with, null if this is the last page
+   */
+  @Nullable
+  public String getContinuationToken() {
+    return continuationToken;
+  }
+
+  public boolean isEndOfRecords() {
+    return continuationToken == null;
+  }
+
+  /**
+   * @return the approximate total number of entities if requested, null otherwise
+   */
+  @Nullable
+  public Long getCount() {
+    return count;
+  }
+}
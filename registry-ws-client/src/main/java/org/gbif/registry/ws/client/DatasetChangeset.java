@@ -0,0 +1,109 @@
+package org.gbif.registry.ws.client;
+
+import org.gbif.api.model.registry.Contact;
+import org.gbif.api.model.registry.Dataset;
+import org.gbif.api.model.registry.Endpoint;
+import org.gbif.api.model.registry.Identifier;
+import org.gbif.api.model.registry.MachineTag;
+
+import java.util.List;
+import javax.annotation.Nullable;
+
+/**
+ * All changes to a single dataset and its sub resources, applied by the registry at once in a single transaction,
+ * see {@link DatasetWsClient#applyChangesets(List)}. Also read by the web service, so both sides share one model.
+ * <p/>
+ * Sub resources left null are not changed at all.
+ */
+public class DatasetChangeset {
+
+  private Dataset dataset;
+  private boolean deleted;
+  private List<Contact> contacts;
+  private String machineTagNamespace;
+  private List<MachineTag> machineTags;
+  private List<Endpoint> endpoints;
+  private List<Identifier> identifiers;
+
+  /**
+   * @return the dataset to create if it has no key yet, otherwise the dataset to update or delete
+   */
+  public Dataset getDataset() {
+    return dataset;
+  }
+
+  public void setDataset(Dataset dataset) {
+    this.dataset = dataset;
+  }
+
+  /**
+   * @return true to delete the dataset, ignoring all other changes
+   */
+  public boolean isDeleted() {
+    return deleted;
+  }
+
+  public void setDeleted(boolean deleted) {
+    this.deleted = deleted;
+  }
+
+  /**
+   * @return the contacts replacing all existing contacts
+   */
+  @Nullable
+  public List<Contact> getContacts() {
+    return contacts;
+  }
+
+  public void setContacts(List<Contact> contacts) {
+    this.contacts = contacts;
+  }
+
+  /**
+   * @return the namespace of the existing machine tags replaced, all existing machine tags are replaced if null
+   */
+  @Nullable
+  public String getMachineTagNamespace() {
+    return machineTagNamespace;
+  }
+
+  public void setMachineTagNamespace(String machineTagNamespace) {
+    this.machineTagNamespace = machineTagNamespace;
+  }
+
+  /**
+   * @return the machine tags replacing the existing ones of the machine tag namespace
+   */
+  @Nullable
+  public List<MachineTag> getMachineTags() {
+    return machineTags;
+  }
+
+  public void setMachineTags(List<MachineTag> machineTags) {
+    this.machineTags = machineTags;
+  }
+
+  /**
+   * @return the endpoints replacing all existing endpoints
+   */
+  @Nullable
+  public List<Endpoint> getEndpoints() {
+    return endpoints;
+  }
+
+  public void setEndpoints(List<Endpoint> endpoints) {
+    this.endpoints = endpoints;
+  }
+
+  /**
+   * @return identifiers added unless an equal identifier exists already, existing identifiers are never removed
+   */
+  @Nullable
+  public List<Identifier> getIdentifiers() {
+    return identifiers;
+  }
+
+  public void setIdentifiers(List<Identifier> identifiers) {
+    this.identifiers = identifiers;
+  }
+}
@@ -8,13 +8,17 @@ import org.gbif.api.service.registry.DatasetOccurrenceDownloadUsageService;
 import org.gbif.registry.ws.client.guice.RegistryWs;
 import org.gbif.ws.client.BaseWsGetClient;
 
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
 import java.util.UUID;
 
 import javax.annotation.Nullable;
 
+import com.google.common.base.Preconditions;
 import com.google.inject.Inject;
 import com.sun.jersey.api.client.WebResource;
 import com.sun.jersey.api.client.filter.ClientFilter;
+import org.codehaus.jackson.map.ObjectMapper;
 
 /**
  * OccurrenceDownloadService web service client.
@@ -22,6 +26,10 @@ import com.sun.jersey.api.client.filter.ClientFilter;
 public class DatasetOccurrenceDownloadUsageWsClient extends BaseWsGetClient<Download, String> implements
   DatasetOccurrenceDownloadUsageService {
 
+  private static final String NDJSON = "application/x-ndjson";
+
+  private final ObjectMapper mapper = new ObjectMapper();
+
   @Inject
   public DatasetOccurrenceDownloadUsageWsClient(@RegistryWs WebResource resource, @Nullable ClientFilter authFilter) {
     super(Download.class, resource.path("occurrence/download"), authFilter);
@@ -32,6 +40,33 @@ public class DatasetOccurrenceDownloadUsageWsClient extends BaseWsGetClient<Down
     post(downloadDataset, "dataset");
   }
 
+  /**
+   * Creates all dataset usages of a download with a single request, which the server stores in a single transaction.
+   * The usages are sent as newline delimited JSON.
+   *
+   * @param downloadKey the download all usages belong to
+   * @param usages the dataset usages of the download
+   *
+   * @return the number of usages created
+   */
+  public int createAll(String downloadKey, Iterable<DatasetOccurrenceDownloadUsage> usages) {
+    Preconditions.checkNotNull(downloadKey, "Download key is required");
+    Preconditions.checkNotNull(usages, "Usages are required");
+    // allow post through varnish (no chunked encoding needed)
+    try {
+      ByteArrayOutputStream body = new ByteArrayOutputStream();
+      for (DatasetOccurrenceDownloadUsage usage : usages) {
+        body.write(mapper.writeValueAsBytes(usage));
+        body.write('\n');
+      }
+      return getResource("dataset", "bulk", downloadKey)
+        .type(NDJSON)
+        .post(Integer.class, body.toByteArray());
+    } catch (IOException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
   @Override
   public PagingResponse<DatasetOccurrenceDownloadUsage> listByDataset(UUID datasetKey, Pageable page) {
     return get(GenericTypes.PAGING_DATASET_OCCURRENCE_DOWNLOAD, page, "dataset", String.valueOf(datasetKey));
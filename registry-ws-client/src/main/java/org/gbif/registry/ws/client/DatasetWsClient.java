@@ -40,6 +40,7 @@ import com.google.common.io.ByteStreams;
 import com.google.inject.Inject;
 import com.sun.jersey.api.client.WebResource;
 import com.sun.jersey.api.client.filter.ClientFilter;
+import org.codehaus.jackson.map.ObjectMapper;
 
 /**
  * Client-side implementation to the DatasetService.
@@ -47,6 +48,8 @@ import com.sun.jersey.api.client.filter.ClientFilter;
 public class DatasetWsClient extends BaseNetworkEntityClient<Dataset> implements DatasetService,
   DatasetProcessStatusService {
 
+  private final ObjectMapper mapper = new ObjectMapper();
+
   @Inject
   public DatasetWsClient(@RegistryWs WebResource resource, @Nullable ClientFilter authFilter) {
     super(Dataset.class, resource.path("dataset"), authFilter, GenericTypes.PAGING_DATASET);
@@ -109,7 +112,7 @@ public class DatasetWsClient extends BaseNetworkEntityClient<Dataset> implements
 
   @Override
   public InputStream getMetadataDocument(int metadataKey) {
-    return InputStreamUtils.wrapStream(getResource("metadata", String.valueOf(metadataKey)));
+    return InputStreamUtils.wrapStream(getResource("metadata", String.valueOf(metadataKey), "document"));
   }
 
   @Override
@@ -170,4 +173,24 @@ public class DatasetWsClient extends BaseNetworkEntityClient<Dataset> implements
     return get(GenericTypes.LIST_NETWORK, datasetKey.toString(), "networks");
   }
 
+  /**
+   * Applies all changes to several datasets and their sub resources with a single request. Each changeset is applied
+   * in a single transaction on the server, which notifies subscribers like the search index once per dataset.
+   *
+   * @param changesets the changes to apply
+   *
+   * @return the keys of the datasets changed, in the order of the changesets
+   */
+  public List<UUID> applyChangesets(List<DatasetChangeset> changesets) {
+    Preconditions.checkNotNull(changesets, "Changesets are required");
+    // allow post through varnish (no chunked encoding needed)
+    try {
+      return getResource("changeset")
+        .type(MediaType.APPLICATION_JSON)
+        .post(GenericTypes.LIST_UUID, mapper.writeValueAsBytes(changesets));
+    } catch (IOException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
 }
@@ -32,6 +32,7 @@ import org.gbif.api.model.registry.metasync.MetasyncHistory;
 import org.gbif.api.vocabulary.Country;
 
 import java.util.List;
+import java.util.UUID;
 
 import com.sun.jersey.api.client.GenericType;
 
@@ -70,6 +71,8 @@ class GenericTypes {
   };
   public static final GenericType<List<Metadata>> LIST_METADATA = new GenericType<List<Metadata>>() {
   };
+  public static final GenericType<List<UUID>> LIST_UUID = new GenericType<List<UUID>>() {
+  };
   public static final GenericType<Metadata> METADATA = new GenericType<Metadata>() {
   };
   public static final GenericType<DatasetProcessStatus> DATASET_PROCESS_STATUS =
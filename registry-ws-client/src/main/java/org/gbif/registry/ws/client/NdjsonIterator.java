@@ -0,0 +1,55 @@
+package org.gbif.registry.ws.client;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+
+import com.google.common.base.Charsets;
+import com.google.common.collect.AbstractIterator;
+import com.google.common.io.Closeables;
+import org.codehaus.jackson.map.DeserializationConfig;
+import org.codehaus.jackson.map.ObjectMapper;
+
+/**
+ * Iterates over the entities of a newline delimited JSON export while it is downloaded, so the entities never need
+ * to be held in memory all at once. The stream is closed once all entities are read, otherwise it must be closed
+ * by the caller.
+ */
+public class NdjsonIterator<T> extends AbstractIterator<T> implements Closeable {
+
+  private static final ObjectMapper MAPPER =
+    new ObjectMapper().configure(DeserializationConfig.Feature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+
+  private final Class<T> type;
+  private final BufferedReader reader;
+
+  public NdjsonIterator(Class<T> type, InputStream stream) {
+    this.type = type;
+    reader = new BufferedReader(new InputStreamReader(stream, Charsets.UTF_8));
+  }
+
+  @Override
+  protected T computeNext() {
+    try {
+      String line;
+      do {
+        line = reader.readLine();
+      } while (line != null && line.isEmpty());
+      if (line == null) {
+        close();
+        return endOfData();
+      }
+      return MAPPER.readValue(line, type);
+    } catch (IOException e) {
+      Closeables.closeQuietly(reader);
+      throw new IllegalStateException("Failed to read the export", e);
+    }
+  }
+
+  @Override
+  public void close() throws IOException {
+    reader.close();
+  }
+}
@@ -55,6 +55,7 @@ public interface DoiGenerator {
    * Schedules a DOI metadata update with DataCite and registers the DOI if needed.
    * For subsequent calls with the same DOI only the metadata in DataCite will be updated.
    * If it is called for the very first time the DOI will also be properly registered with DataCite.
+   * The target of a new DOI is stored once its registration is scheduled, flagging it as queued.
    *
    * @param doi the GBIF DOI to registerDataset
    * @param metadata the metadata to post to datacite. Mandatory fields are validated immediately
@@ -124,12 +124,22 @@ public class DoiGeneratorMQ implements DoiGenerator {
     Preconditions.checkNotNull(messagePublisher,"No message publisher configured to send DoiChangeMessage");
 
     String xml = DataCiteValidator.toXml(doi, metadata);
-    Message message = new ChangeDoiMessage(DoiStatus.REGISTERED, doi, xml, downloadTarget.resolve(downloadKey));
-
+    URI target = downloadTarget.resolve(downloadKey);
+    Message message = new ChangeDoiMessage(DoiStatus.REGISTERED, doi, xml, target);
+
+    // flagged as queued before sending, so the update by the DOI updater is never overwritten
+    DoiData current = mapper.get(doi);
+    boolean isNew = current != null && current.getStatus() == DoiStatus.NEW;
+    if (isNew) {
+      mapper.update(doi, new DoiData(DoiStatus.NEW, target), xml);
+    }
     try {
       messagePublisher.send(message, true);
     } catch (IOException e) {
       LOG.error("Failed sending DoiChangeMessage for {} and download {}", doi, downloadKey, e);
+      if (isNew) {
+        mapper.update(doi, new DoiData(DoiStatus.NEW, null), null);
+      }
     }
 
   }
@@ -23,6 +23,10 @@ import com.google.inject.name.Names;
  * Exposes a DoiGenerator service requiring an existing MessagePublisher and DoiMapper being bound.
  */
 public class DoiModule extends AbstractModule {
+  // the maximum number of datasets listed individually in the DOI metadata of a download
+  private static final String DOWNLOAD_MAX_DATASETS = "doi.download.maxDatasets";
+  private static final String DEFAULT_DOWNLOAD_MAX_DATASETS = "1000";
+
   private final Properties properties;
 
   public DoiModule(Properties properties) {
@@ -35,6 +39,8 @@ public class DoiModule extends AbstractModule {
 
     bind(String.class).annotatedWith(Names.named("doi.prefix")).toInstance(properties.getProperty("doi.prefix"));
     bind(URI.class).annotatedWith(Names.named("portal.url")).toInstance(URI.create(properties.getProperty("portal.url")));
+    bindConstant().annotatedWith(Names.named(DOWNLOAD_MAX_DATASETS))
+      .to(Integer.parseInt(properties.getProperty(DOWNLOAD_MAX_DATASETS, DEFAULT_DOWNLOAD_MAX_DATASETS)));
   }
 
 }
@@ -34,11 +34,36 @@ public class EventModule extends AbstractModule {
   private static final Logger LOG = LoggerFactory.getLogger(EventModule.class);
   public static final String MESSAGING_ENABLED_PROPERTY = "registry.postalservice.enabled";
   public static final String EMBARGO_SECONDS_PROPERTY = "registry.postalservice.embargoSeconds";
-  private final EventBus eventBus = new EventBus();
+  public static final String ASYNC_PROPERTY = "registry.events.async";
+  public static final String LANES_PROPERTY = "registry.events.lanes";
+  public static final String QUEUE_CAPACITY_PROPERTY = "registry.events.queueCapacity";
+  public static final String OFFER_TIMEOUT_PROPERTY = "registry.events.offerTimeoutMillis";
+  private final EventBus eventBus;
   private final Properties properties;
 
   public EventModule(Properties properties) {
     this.properties = properties;
+    eventBus = newEventBus(properties);
+  }
+
+  /**
+   * Creates an asynchronous bus delivering events in order per entity, unless explicitly configured to deliver them
+   * synchronously within the posting thread.
+   */
+  private static EventBus newEventBus(Properties properties) {
+    if (!properties.getProperty(ASYNC_PROPERTY, "true").trim().equals("true")) {
+      LOG.info("Events are delivered synchronously");
+      return new EventBus();
+    }
+    try {
+      return new OrderedAsyncEventBus(Integer.valueOf(properties.getProperty(LANES_PROPERTY, "4").trim()),
+                                      Integer.valueOf(properties.getProperty(QUEUE_CAPACITY_PROPERTY, "10000").trim()),
+                                      Long.valueOf(properties.getProperty(OFFER_TIMEOUT_PROPERTY, "1000").trim()));
+    } catch (NumberFormatException e) {
+      LOG.error("Event bus properties {}, {} and {} must be numbers", LANES_PROPERTY, QUEUE_CAPACITY_PROPERTY,
+                OFFER_TIMEOUT_PROPERTY);
+      throw e;
+    }
   }
 
   @Override
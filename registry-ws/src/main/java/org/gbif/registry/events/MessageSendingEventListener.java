@@ -15,116 +15,378 @@
  */
 package org.gbif.registry.events;
 
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
 import com.google.common.eventbus.EventBus;
 import com.google.common.eventbus.Subscribe;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import com.google.inject.Inject;
 import org.gbif.api.model.registry.NetworkEntity;
-import org.gbif.common.messaging.api.Message;
 import org.gbif.common.messaging.api.MessagePublisher;
 import org.gbif.common.messaging.api.messages.RegistryChangeMessage;
+import org.gbif.common.messaging.api.messages.RegistryChangeMessage.ChangeType;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
-import javax.annotation.Nullable;
-
+import static com.google.common.base.Preconditions.checkArgument;
 import static com.google.common.base.Preconditions.checkNotNull;
 
 /**
  * A Guava event bus listener that propagates messages to the postal service.
  * This can optionally be configured with an embargo period, which will apply to all messages and result in a delay
- * before sending to the postal service.  This deferral happens in a separate thread pool to ensure it is non blocking.
+ * before sending to the postal service.  This deferral happens in a separate thread to ensure it is non blocking.
+ * <p/>
+ * Only the latest state of an entity is sent once its embargo is over: all changes of the same entity within the
+ * embargo are coalesced into a single message from the state before the first change to the state after the last one.
+ * The messages due are published in batches by a single thread. At most one message per entity is kept and the number
+ * of entities waiting is bounded, so a bulk update keeps neither thousands of tasks nor entity copies in memory.
+ * When the bound is reached the publishing thread sends the oldest messages before their embargo is over, while the
+ * thread posting the event waits for room, so the broker is never called from within the event delivery.
+ * <p/>
+ * The counters are logged once an hour and on shutdown, which sends all messages still waiting right away.
  */
 public class MessageSendingEventListener {
 
   private static final Logger LOG = LoggerFactory.getLogger(MessageSendingEventListener.class);
+  private static final int DEFAULT_MAX_PENDING = 50000;
+  private static final long FLUSH_INTERVAL_MILLIS = 250;
+  private static final long REPORT_INTERVAL_MILLIS = TimeUnit.HOURS.toMillis(1);
+
   private final MessagePublisher messagePublisher;
   private final int embargoSeconds;
+  private final int maxPending;
+
+  // messages waiting for their embargo in order of their first change, guarded by itself
+  private final LinkedHashMap<Map.Entry<Class<?>, UUID>, PendingChange> pending = Maps.newLinkedHashMap();
+  // true while the publishing thread is asked to make room in pending, guarded by pending
+  private boolean overflowScheduled;
+  // true once shut down, messages are then sent right away, guarded by pending
+  private boolean stopped;
+  // only accessed by the publishing thread
+  private long lastReport = System.currentTimeMillis();
 
-  // a scheduler allowing for deferred, asynchronous operations that will not block the caller
-  private final ScheduledExecutorService scheduler = Executors.newScheduledThreadPool(3);
+  private final AtomicLong received = new AtomicLong();
+  private final AtomicLong coalesced = new AtomicLong();
+  private final AtomicLong sent = new AtomicLong();
+  private final AtomicLong failed = new AtomicLong();
+  private final AtomicLong forced = new AtomicLong();
+  private final AtomicLong totalLatencyMillis = new AtomicLong();
+  private final AtomicLong maxLatencyMillis = new AtomicLong();
+
+  // a single thread publishing the messages due, so the caller is never blocked
+  private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(
+    new ThreadFactoryBuilder().setNameFormat("registry-messages").setDaemon(true).build());
 
   @Inject
   public MessageSendingEventListener(MessagePublisher messagePublisher, EventBus eventBus,
                                      @EmbargoDuration Integer durationInSeconds) {
+    this(messagePublisher, eventBus, durationInSeconds, DEFAULT_MAX_PENDING);
+  }
+
+  /**
+   * @param maxPending the maximum number of entities with messages waiting for their embargo
+   */
+  @VisibleForTesting
+  MessageSendingEventListener(MessagePublisher messagePublisher, EventBus eventBus, Integer durationInSeconds,
+                              int maxPending) {
     checkNotNull(messagePublisher, "messagePublisher can't be null");
+    checkArgument(maxPending > 0, "maxPending must be positive");
     embargoSeconds = durationInSeconds == null ? 0 : durationInSeconds;
     LOG.info("Message sending configured with an embargo durations of {} seconds", embargoSeconds);
     this.messagePublisher = messagePublisher;
+    this.maxPending = maxPending;
+    scheduler.scheduleWithFixedDelay(new Runnable() {
+      @Override
+      public void run() {
+        try {
+          publishDue(System.currentTimeMillis());
+          if (System.currentTimeMillis() - lastReport >= REPORT_INTERVAL_MILLIS) {
+            lastReport = System.currentTimeMillis();
+            LOG.info("Registry change messages: {}", MessageSendingEventListener.this);
+          }
+        } catch (RuntimeException e) {
+          LOG.error("Failed to publish registry change messages", e);
+        }
+      }
+    }, FLUSH_INTERVAL_MILLIS, FLUSH_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
     eventBus.register(this);
   }
 
   @Subscribe
   public <T extends NetworkEntity> void sendCreatedEvent(final CreateEvent<T> event) {
-    final Message message = new RegistryChangeMessage(RegistryChangeMessage.ChangeType.CREATED,
-                                                event.getObjectClass(),
-                                                null,
-                                                event.getNewObject());
-      LOG.debug("Scheduling notification of CreateEvent [{}] with an embargo durations of {} seconds", event.getObjectClass().getSimpleName(), embargoSeconds);
-      scheduler.schedule(new Runnable() {
-        @Override
-        public void run() {
-          try {
-            LOG.debug("Broadcasting to postal service CreateEvent [{}]",
-                     event.getObjectClass().getSimpleName(), embargoSeconds);
-
-            messagePublisher.send(message);
-          } catch (IOException e) {
-            LOG.warn("Failed sending RegistryChangeMessage for CreateEvent [{}]",
-                     event.getObjectClass().getSimpleName(), e);
-          }
-        }
-      }, embargoSeconds, TimeUnit.SECONDS);
-
+    enqueue(ChangeType.CREATED, event.getObjectClass(), event.getNewObject().getKey(), null, event.getNewObject());
   }
 
   @Subscribe
   public <T extends NetworkEntity> void sendUpdatedEvent(final UpdateEvent<T> event) {
-    final Message message = new RegistryChangeMessage(RegistryChangeMessage.ChangeType.UPDATED,
-                                                event.getObjectClass(),
-                                                event.getOldObject(),
-                                                event.getNewObject());
-    LOG.debug("Scheduling notification of UpdateEvent [{}] with an embargo durations of {} seconds", event.getObjectClass().getSimpleName(), embargoSeconds);
-
-    scheduler.schedule(new Runnable() {
-      @Override
-      public void run() {
-        try {
-          LOG.debug("Broadcasting to postal service UpdateEvent [{}]",
-                    event.getObjectClass().getSimpleName(), embargoSeconds);
-          messagePublisher.send(message);
-        } catch (IOException e) {
-          LOG.warn("Failed sending RegistryChangeMessage for UpdateEvent [{}]",
-                   event.getObjectClass().getSimpleName(), e);
-        }
-      }
-    }, embargoSeconds, TimeUnit.SECONDS);
+    enqueue(ChangeType.UPDATED, event.getObjectClass(), event.getOldObject().getKey(), event.getOldObject(),
+            event.getNewObject());
   }
 
   @Subscribe
   public <T extends NetworkEntity> void sendDeletedEvent(final DeleteEvent<T> event) {
-    final Message message = new RegistryChangeMessage(RegistryChangeMessage.ChangeType.DELETED,
-                                                event.getObjectClass(),
-                                                event.getOldObject(),
-                                                null);
-    LOG.debug("Scheduling notification of DeleteEvent [{}] with an embargo durations of {} seconds", event.getObjectClass().getSimpleName(), embargoSeconds);
+    enqueue(ChangeType.DELETED, event.getObjectClass(), event.getOldObject().getKey(), event.getOldObject(), null);
+  }
 
-    scheduler.schedule(new Runnable() {
-      @Override
-      public void run() {
-        try {
-          LOG.debug("Broadcasting to postal service DeleteEvent [{}]",
-                    event.getObjectClass().getSimpleName(), embargoSeconds);
-          messagePublisher.send(message);
-        } catch (IOException e) {
-          LOG.warn("Failed sending RegistryChangeMessage for DeleteEvent [{}]",
-                   event.getObjectClass().getSimpleName(), e);
+  private void enqueue(ChangeType type, Class<?> objectClass, UUID key, Object oldObject, Object newObject) {
+    LOG.debug("Scheduling notification of {} [{}] with an embargo durations of {} seconds", type,
+              objectClass.getSimpleName(), embargoSeconds);
+    received.incrementAndGet();
+    Map.Entry<Class<?>, UUID> entity = Maps.<Class<?>, UUID>immutableEntry(objectClass, key);
+    PendingChange change;
+    synchronized (pending) {
+      awaitRoom(entity);
+      change = pending.get(entity);
+      if (change != null) {
+        change.merge(type, oldObject, newObject);
+        coalesced.incrementAndGet();
+        return;
+      }
+      change = new PendingChange(type, objectClass, oldObject, newObject, System.currentTimeMillis());
+      if (!stopped) {
+        pending.put(entity, change);
+        return;
+      }
+    }
+    // events delivered after the shutdown are not kept
+    publish(Collections.singletonList(change), System.currentTimeMillis());
+  }
+
+  /**
+   * Waits until the publishing thread made room for a new entity, unless the entity is already waiting. Must be called
+   * holding the lock of pending.
+   */
+  private void awaitRoom(Map.Entry<Class<?>, UUID> entity) {
+    while (!stopped && pending.size() >= maxPending && !pending.containsKey(entity)) {
+      if (!overflowScheduled) {
+        overflowScheduled = true;
+        scheduler.execute(new Runnable() {
+          @Override
+          public void run() {
+            publishOverflow();
+          }
+        });
+      }
+      try {
+        pending.wait();
+      } catch (InterruptedException e) {
+        LOG.warn("Interrupted while waiting to queue a registry change message, exceeding the {} entities waiting",
+                 maxPending);
+        Thread.currentThread().interrupt();
+        return;
+      }
+    }
+  }
+
+  /**
+   * Sends the oldest messages before their embargo is over to make room for the posting threads.
+   */
+  private void publishOverflow() {
+    List<PendingChange> oldest;
+    int waiting;
+    synchronized (pending) {
+      overflowScheduled = false;
+      waiting = pending.size();
+      oldest = removeOldest(Math.max(1, pending.size() - maxPending + maxPending / 10));
+      forced.addAndGet(oldest.size());
+      pending.notifyAll();
+    }
+    LOG.warn("{} entities waiting for their embargo, sending {} messages early", waiting, oldest.size());
+    publish(oldest, System.currentTimeMillis());
+  }
+
+  private List<PendingChange> removeOldest(int count) {
+    List<PendingChange> oldest = Lists.newArrayListWithCapacity(count);
+    Iterator<PendingChange> iter = pending.values().iterator();
+    while (iter.hasNext() && oldest.size() < count) {
+      oldest.add(iter.next());
+      iter.remove();
+    }
+    return oldest;
+  }
+
+  /**
+   * Publishes all messages whose embargo is over at the given time.
+   */
+  @VisibleForTesting
+  void publishDue(long now) {
+    long firstChangedBefore = now - TimeUnit.SECONDS.toMillis(embargoSeconds);
+    List<PendingChange> due = Lists.newArrayList();
+    synchronized (pending) {
+      Iterator<PendingChange> iter = pending.values().iterator();
+      // ordered by their first change, so all messages due are at the start
+      while (iter.hasNext()) {
+        PendingChange change = iter.next();
+        if (change.firstChanged > firstChangedBefore) {
+          break;
         }
+        due.add(change);
+        iter.remove();
+      }
+      if (!due.isEmpty()) {
+        pending.notifyAll();
+      }
+    }
+    publish(due, now);
+  }
+
+  private void publish(List<PendingChange> changes, long now) {
+    for (PendingChange change : changes) {
+      try {
+        LOG.debug("Broadcasting to postal service {} [{}]", change.type, change.objectClass.getSimpleName());
+        messagePublisher.send(change.toMessage());
+        sent.incrementAndGet();
+        long latency = now - change.firstChanged;
+        totalLatencyMillis.addAndGet(latency);
+        long max;
+        do {
+          max = maxLatencyMillis.get();
+        } while (latency > max && !maxLatencyMillis.compareAndSet(max, latency));
+      } catch (IOException e) {
+        failed.incrementAndGet();
+        LOG.warn("Failed sending RegistryChangeMessage for {} [{}]", change.type, change.objectClass.getSimpleName(),
+                 e);
+      }
+    }
+    if (!changes.isEmpty()) {
+      LOG.debug("Published {} registry change messages, {} waiting", changes.size(), getPending());
+    }
+  }
+
+  /**
+   * Stops the publishing thread and sends all messages still waiting for their embargo, so no change is lost when the
+   * registry stops.
+   */
+  public void shutdown() {
+    scheduler.shutdownNow();
+    try {
+      if (!scheduler.awaitTermination(10, TimeUnit.SECONDS)) {
+        LOG.warn("Registry change messages still being published on shutdown");
       }
-    }, embargoSeconds, TimeUnit.SECONDS);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+    List<PendingChange> remaining;
+    synchronized (pending) {
+      stopped = true;
+      remaining = Lists.newArrayList(pending.values());
+      pending.clear();
+      pending.notifyAll();
+    }
+    LOG.info("Sending {} registry change messages before their embargo is over", remaining.size());
+    publish(remaining, System.currentTimeMillis());
+    LOG.info("Registry change messages stopped: {}", this);
+  }
+
+  @Override
+  public String toString() {
+    return "received " + received + ", coalesced " + coalesced + ", sent " + sent + ", failed " + failed + ", forced "
+           + forced + ", waiting " + getPending() + ", mean latency " + getMeanLatencyMillis() + "ms, max latency "
+           + maxLatencyMillis + "ms";
+  }
+
+  /**
+   * @return the number of entities with a message waiting for its embargo
+   */
+  public int getPending() {
+    synchronized (pending) {
+      return pending.size();
+    }
+  }
+
+  public long getReceived() {
+    return received.get();
+  }
+
+  /**
+   * @return the number of changes merged into the message of an earlier change of the same entity
+   */
+  public long getCoalesced() {
+    return coalesced.get();
+  }
+
+  public long getSent() {
+    return sent.get();
+  }
+
+  public long getFailed() {
+    return failed.get();
+  }
+
+  /**
+   * @return the number of messages sent before their embargo was over because too many entities were waiting
+   */
+  public long getForced() {
+    return forced.get();
+  }
+
+  /**
+   * @return the mean time between the first change of an entity and sending its message, including the embargo
+   */
+  public long getMeanLatencyMillis() {
+    long n = sent.get();
+    return n == 0 ? 0 : totalLatencyMillis.get() / n;
+  }
+
+  public long getMaxLatencyMillis() {
+    return maxLatencyMillis.get();
+  }
+
+  /**
+   * The coalesced changes of a single entity.
+   */
+  private static class PendingChange {
+
+    private final Class<?> objectClass;
+    private final long firstChanged;
+    private ChangeType type;
+    private Object oldObject;
+    private Object newObject;
+
+    private PendingChange(ChangeType type, Class<?> objectClass, Object oldObject, Object newObject,
+                          long firstChanged) {
+      this.type = type;
+      this.objectClass = objectClass;
+      this.oldObject = oldObject;
+      this.newObject = newObject;
+      this.firstChanged = firstChanged;
+    }
+
+    /**
+     * Merges a later change, keeping the state before the first change and after the latest one.
+     */
+    private void merge(ChangeType laterType, Object laterOldObject, Object laterNewObject) {
+      if (laterType == ChangeType.DELETED) {
+        // an entity created and deleted within the embargo is still announced as deleted
+        type = ChangeType.DELETED;
+        oldObject = oldObject == null ? laterOldObject : oldObject;
+        newObject = null;
+      } else if (type == ChangeType.CREATED || laterType == ChangeType.CREATED) {
+        type = ChangeType.CREATED;
+        oldObject = null;
+        newObject = laterNewObject;
+      } else {
+        type = ChangeType.UPDATED;
+        oldObject = oldObject == null ? laterOldObject : oldObject;
+        newObject = laterNewObject;
+      }
+    }
+
+    private RegistryChangeMessage toMessage() {
+      return new RegistryChangeMessage(type, objectClass, oldObject, newObject);
+    }
   }
 }
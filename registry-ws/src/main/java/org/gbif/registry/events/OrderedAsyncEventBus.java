@@ -0,0 +1,340 @@
+/*
+ * Copyright 2013 Global Biodiversity Information Facility (GBIF)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gbif.registry.events;
+
+import java.lang.reflect.Method;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.google.common.base.Objects;
+import com.google.common.base.Preconditions;
+import com.google.common.collect.Maps;
+import com.google.common.eventbus.AllowConcurrentEvents;
+import com.google.common.eventbus.EventBus;
+import com.google.common.eventbus.SubscriberExceptionContext;
+import com.google.common.eventbus.Subscribe;
+import com.google.common.eventbus.SubscriberExceptionHandler;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * An event bus that delivers events asynchronously, so posting an event never waits for the subscribers to process it.
+ * <p/>
+ * Every registered listener gets its own delivery lanes, each served by a single thread with a bounded queue.
+ * Events of the same entity (see {@link #orderingKey(Object)}) always go through the same lane of a listener, so each
+ * listener sees the changes of an entity in the order they were posted, while a slow listener (e.g. varnish purging
+ * or messaging waiting for an unavailable server) does not delay the other listeners.
+ * <p/>
+ * As with the guava event bus, only listeners whose subscriber methods are all marked with
+ * {@link AllowConcurrentEvents} are called from several threads. All other listeners get a single lane, so they
+ * receive one event at a time in the order posted.
+ * <p/>
+ * Events are never dropped. When a lane is full the poster waits for it to drain, logging a warning whenever this
+ * takes longer than the configured offer timeout. Posted, delivered, failed and blocked events are counted per
+ * listener and are available through {@link #stats()}.
+ * <p/>
+ * Listeners that must have seen an event before the poster continues, e.g. to invalidate cached authorization data,
+ * can be registered with {@link #registerSynchronous(Object)} instead, which delivers their events within the posting
+ * thread.
+ */
+public class OrderedAsyncEventBus extends EventBus {
+
+  private static final Logger LOG = LoggerFactory.getLogger(OrderedAsyncEventBus.class);
+
+  private final int lanes;
+  private final int queueCapacity;
+  private final long offerTimeoutMillis;
+  private final List<Subscriber> subscribers = new CopyOnWriteArrayList<Subscriber>();
+  private final EventBus synchronous = new EventBus("synchronous");
+
+  /**
+   * @param lanes the number of delivery threads per listener allowing concurrent events
+   * @param queueCapacity the maximum number of undelivered events per lane
+   * @param offerTimeoutMillis how long a poster waits for a full lane before a warning is logged
+   */
+  public OrderedAsyncEventBus(int lanes, int queueCapacity, long offerTimeoutMillis) {
+    Preconditions.checkArgument(lanes > 0, "At least one lane per listener is required");
+    Preconditions.checkArgument(queueCapacity > 0, "The lane queue capacity must be positive");
+    Preconditions.checkArgument(offerTimeoutMillis >= 0, "The offer timeout cannot be negative");
+    this.lanes = lanes;
+    this.queueCapacity = queueCapacity;
+    this.offerTimeoutMillis = offerTimeoutMillis;
+  }
+
+  @Override
+  public void register(Object listener) {
+    Preconditions.checkNotNull(listener, "listener can't be null");
+    Subscriber subscriber = new Subscriber(listener, allowsConcurrentEvents(listener.getClass()) ? lanes : 1);
+    subscribers.add(subscriber);
+    LOG.info("Registered {} for asynchronous events with {} lanes of {} queued events",
+             listener.getClass().getSimpleName(), subscriber.buses.length, queueCapacity);
+  }
+
+  /**
+   * Registers a listener to receive events within the posting thread, before they are handed to the asynchronous
+   * listeners. Such listeners must be fast, as they delay every poster.
+   */
+  public void registerSynchronous(Object listener) {
+    synchronous.register(listener);
+    LOG.info("Registered {} for synchronous events", listener.getClass().getSimpleName());
+  }
+
+  @Override
+  public void unregister(Object listener) {
+    for (Subscriber subscriber : subscribers) {
+      if (subscriber.listener == listener) {
+        subscribers.remove(subscriber);
+        subscriber.shutdown();
+        return;
+      }
+    }
+    // fails for unknown listeners
+    synchronous.unregister(listener);
+  }
+
+  @Override
+  public void post(Object event) {
+    Preconditions.checkNotNull(event, "event can't be null");
+    synchronous.post(event);
+    Object key = orderingKey(event);
+    for (Subscriber subscriber : subscribers) {
+      subscriber.offer(event, key);
+    }
+  }
+
+  /**
+   * @return the number of events posted but not yet processed by the given listener, 0 for unknown listeners
+   */
+  public long pending(Object listener) {
+    for (Subscriber subscriber : subscribers) {
+      if (subscriber.listener == listener) {
+        return subscriber.pending.get();
+      }
+    }
+    return 0;
+  }
+
+  /**
+   * @return the delivery statistics of all listeners, keyed by their class name
+   */
+  public Map<String, DispatchStats> stats() {
+    Map<String, DispatchStats> stats = Maps.newLinkedHashMap();
+    for (Subscriber subscriber : subscribers) {
+      stats.put(subscriber.name, subscriber.stats());
+    }
+    return stats;
+  }
+
+  /**
+   * Stops all delivery threads, discarding the events not yet delivered.
+   */
+  public void shutdown() {
+    for (Subscriber subscriber : subscribers) {
+      subscriber.shutdown();
+    }
+    subscribers.clear();
+  }
+
+  /**
+   * @return true if the listener has subscriber methods and all of them are marked as thread safe
+   */
+  static boolean allowsConcurrentEvents(Class<?> listenerClass) {
+    boolean subscribes = false;
+    for (Class<?> clazz = listenerClass; clazz != null; clazz = clazz.getSuperclass()) {
+      for (Method method : clazz.getDeclaredMethods()) {
+        if (method.isAnnotationPresent(Subscribe.class)) {
+          if (!method.isAnnotationPresent(AllowConcurrentEvents.class)) {
+            return false;
+          }
+          subscribes = true;
+        }
+      }
+    }
+    return subscribes;
+  }
+
+  /**
+   * Returns the key of the entity an event is about, which decides the lane the event is delivered through.
+   * Events of unknown types all share the same lane.
+   */
+  static Object orderingKey(Object event) {
+    if (event instanceof CreateEvent) {
+      return ((CreateEvent<?>) event).getNewObject().getKey();
+    } else if (event instanceof UpdateEvent) {
+      UpdateEvent<?> update = (UpdateEvent<?>) event;
+      return update.getNewObject() == null ? update.getOldObject().getKey() : update.getNewObject().getKey();
+    } else if (event instanceof DeleteEvent) {
+      return ((DeleteEvent<?>) event).getOldObject().getKey();
+    } else if (event instanceof ChangedComponentEvent) {
+      return ((ChangedComponentEvent) event).getTargetEntityKey();
+    }
+    return null;
+  }
+
+  /**
+   * The lanes of a single listener, each of them a synchronous event bus called from a single thread.
+   */
+  private class Subscriber implements SubscriberExceptionHandler {
+
+    private final Object listener;
+    private final String name;
+    private final EventBus[] buses;
+    private final ThreadPoolExecutor[] executors;
+    private final AtomicLong posted = new AtomicLong();
+    private final AtomicLong delivered = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private final AtomicLong blocked = new AtomicLong();
+    // incremented before an event is queued and decremented once processed, unlike the queue sizes
+    private final AtomicLong pending = new AtomicLong();
+
+    private Subscriber(Object listener, int laneCount) {
+      this.listener = listener;
+      name = listener.getClass().getName();
+      buses = new EventBus[laneCount];
+      executors = new ThreadPoolExecutor[laneCount];
+      for (int lane = 0; lane < laneCount; lane++) {
+        buses[lane] = new EventBus(this);
+        buses[lane].register(listener);
+        executors[lane] = new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS,
+          new ArrayBlockingQueue<Runnable>(queueCapacity),
+          new ThreadFactoryBuilder().setNameFormat(listener.getClass().getSimpleName() + "-events-" + lane + "-%d")
+            .setDaemon(true).build());
+        // events are put on the queue directly to wait for free capacity, so the thread must exist already
+        executors[lane].prestartAllCoreThreads();
+      }
+    }
+
+    private void offer(final Object event, Object key) {
+      final int lane = key == null ? 0 : (key.hashCode() & Integer.MAX_VALUE) % buses.length;
+      posted.incrementAndGet();
+      pending.incrementAndGet();
+      Runnable delivery = new Runnable() {
+        @Override
+        public void run() {
+          try {
+            buses[lane].post(event);
+            delivered.incrementAndGet();
+          } finally {
+            pending.decrementAndGet();
+          }
+        }
+      };
+
+      try {
+        if (!executors[lane].getQueue().offer(delivery, offerTimeoutMillis, TimeUnit.MILLISECONDS)) {
+          LOG.warn("Waiting to queue {} for {} as lane {} is full. Blocked {} events in total",
+                   event.getClass().getSimpleName(), name, lane, blocked.incrementAndGet());
+          executors[lane].getQueue().put(delivery);
+        }
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        // rather deliver out of order than lose the event
+        LOG.warn("Interrupted while queueing {} for {}, delivering it synchronously", event.getClass().getSimpleName(),
+                 name);
+        delivery.run();
+      }
+    }
+
+    @Override
+    public void handleException(Throwable exception, SubscriberExceptionContext context) {
+      failed.incrementAndGet();
+      LOG.error("Listener {} failed to process {}", name, context.getEvent(), exception);
+    }
+
+    private DispatchStats stats() {
+      int queued = 0;
+      for (ThreadPoolExecutor executor : executors) {
+        queued += executor.getQueue().size();
+      }
+      return new DispatchStats(posted.get(), delivered.get(), failed.get(), blocked.get(), queued);
+    }
+
+    private void shutdown() {
+      for (ThreadPoolExecutor executor : executors) {
+        executor.shutdownNow();
+      }
+    }
+  }
+
+  /**
+   * The delivery counters of a listener since its registration.
+   */
+  public static class DispatchStats {
+
+    private final long posted;
+    private final long delivered;
+    private final long failed;
+    private final long blocked;
+    private final int queued;
+
+    DispatchStats(long posted, long delivered, long failed, long blocked, int queued) {
+      this.posted = posted;
+      this.delivered = delivered;
+      this.failed = failed;
+      this.blocked = blocked;
+      this.queued = queued;
+    }
+
+    public long getPosted() {
+      return posted;
+    }
+
+    /**
+     * @return the number of events processed by the listener, including those whose processing failed
+     */
+    public long getDelivered() {
+      return delivered;
+    }
+
+    /**
+     * @return the number of events the listener threw an exception for
+     */
+    public long getFailed() {
+      return failed;
+    }
+
+    /**
+     * @return the number of events whose poster waited longer than the offer timeout as the lane was full
+     */
+    public long getBlocked() {
+      return blocked;
+    }
+
+    /**
+     * @return the number of events currently waiting for delivery
+     */
+    public int getQueued() {
+      return queued;
+    }
+
+    @Override
+    public String toString() {
+      return Objects.toStringHelper(this)
+        .add("posted", posted)
+        .add("delivered", delivered)
+        .add("failed", failed)
+        .add("blocked", blocked)
+        .add("queued", queued)
+        .toString();
+    }
+  }
+}
@@ -8,24 +8,21 @@ import org.gbif.api.service.registry.DatasetService;
 import org.gbif.api.service.registry.InstallationService;
 import org.gbif.api.service.registry.OrganizationService;
 
-import java.io.IOException;
 import java.net.URI;
 import java.util.HashSet;
 import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.TimeUnit;
 import javax.ws.rs.core.UriBuilder;
 
-import com.google.common.base.Joiner;
+import com.google.common.base.Optional;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.LoadingCache;
 import com.google.common.eventbus.EventBus;
 import com.google.common.eventbus.Subscribe;
 import com.google.inject.Inject;
 import com.google.inject.Singleton;
-import org.apache.http.annotation.NotThreadSafe;
-import org.apache.http.client.methods.CloseableHttpResponse;
-import org.apache.http.client.methods.HttpRequestBase;
-import org.apache.http.impl.client.CloseableHttpClient;
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
 
 /**
  * A event bus listener that will flush varnish if registry entities like datasets and organizations have been
@@ -37,6 +34,10 @@ import org.slf4j.LoggerFactory;
  *
  * @see <h ref="https://www.varnish-software.com/static/book/Cache_invalidation.html">Varnish Book</h>
  *
+ * The invalidations are handed to a {@link VarnishPurger} which merges and sends them asynchronously.
+ * The parents of datasets and installations needed for the cascade are cached for a short time, so a bulk change of
+ * many datasets of one organization does not look up the same organization again for every dataset.
+ *
  * <h3>Purging cascade logic</h3>
  * A quick overview of the logic how entity changes trigger purges on other resources.
  * In case of updates all keys used from the changed objects need be taken from both the old and new version.
@@ -87,27 +88,54 @@ import org.slf4j.LoggerFactory;
  */
 @Singleton
 public class VarnishPurgeListener {
-  private static final Logger LOG = LoggerFactory.getLogger(VarnishPurgeListener.class);
-  private final CloseableHttpClient client;
-  private final UriBuilder uriBuilder;
+  private static final long PARENTS_TTL_SECONDS = 60;
+  private static final int MAX_CACHED_PARENTS = 10000;
+
+  private final VarnishPurger purger;
+  private final URI apiBaseUrl;
   private final String apiRoot;
-  private final OrganizationService organizationService;
-  private final InstallationService installationService;
   private final DatasetService datasetService;
+  private final InstallationService installationService;
+  private final OrganizationService organizationService;
+  // organization key to endorsing node key
+  private final LoadingCache<UUID, Optional<UUID>> endorsingNodes;
+  // installation key to hosting organization key
+  private final LoadingCache<UUID, Optional<UUID>> hostingOrganizations;
 
   @Inject
-  public VarnishPurgeListener(CloseableHttpClient client, EventBus eventBus, URI apiBaseUrl,
-                              OrganizationService organizationService,InstallationService installationService,
-                              DatasetService datasetService) {
-    this.client = client;
+  public VarnishPurgeListener(VarnishPurger purger, EventBus eventBus, URI apiBaseUrl,
+                              final OrganizationService organizationService,
+                              final InstallationService installationService, DatasetService datasetService) {
+    this.purger = purger;
     this.organizationService = organizationService;
     this.installationService = installationService;
     this.datasetService = datasetService;
-    uriBuilder = UriBuilder.fromUri(apiBaseUrl);
+    this.apiBaseUrl = apiBaseUrl;
     apiRoot = apiBaseUrl.getPath();
+    endorsingNodes = newParentCache(new CacheLoader<UUID, Optional<UUID>>() {
+      @Override
+      public Optional<UUID> load(UUID key) {
+        Organization o = organizationService.get(key);
+        return Optional.fromNullable(o == null ? null : o.getEndorsingNodeKey());
+      }
+    });
+    hostingOrganizations = newParentCache(new CacheLoader<UUID, Optional<UUID>>() {
+      @Override
+      public Optional<UUID> load(UUID key) {
+        Installation i = installationService.get(key);
+        return Optional.fromNullable(i == null ? null : i.getOrganizationKey());
+      }
+    });
     eventBus.register(this);
   }
 
+  private static LoadingCache<UUID, Optional<UUID>> newParentCache(CacheLoader<UUID, Optional<UUID>> loader) {
+    return CacheBuilder.newBuilder()
+      .expireAfterWrite(PARENTS_TTL_SECONDS, TimeUnit.SECONDS)
+      .maximumSize(MAX_CACHED_PARENTS)
+      .build(loader);
+  }
+
   @Subscribe
   public final <T extends NetworkEntity> void created(CreateEvent<T> event) {
     purgeEntityAndBanLists(event.getObjectClass(), event.getNewObject().getKey());
@@ -124,6 +152,7 @@ public class VarnishPurgeListener {
   @Subscribe
   public final <T extends NetworkEntity> void updated(UpdateEvent<T> event) {
     purgeEntityAndBanLists(event.getObjectClass(), event.getOldObject().getKey());
+    invalidateParents(event.getObjectClass(), event.getOldObject().getKey());
 
     if (event.getObjectClass().equals(Organization.class)) {
       cascadeOrganizationChange((Organization)event.getOldObject(), (Organization)event.getNewObject());
@@ -137,6 +166,7 @@ public class VarnishPurgeListener {
   @Subscribe
   public final <T extends NetworkEntity> void deleted(DeleteEvent<T> event) {
     purgeEntityAndBanLists(event.getObjectClass(), event.getOldObject().getKey());
+    invalidateParents(event.getObjectClass(), event.getOldObject().getKey());
 
     if (event.getObjectClass().equals(Organization.class)) {
       cascadeOrganizationChange((Organization) event.getOldObject());
@@ -160,6 +190,14 @@ public class VarnishPurgeListener {
     }
   }
 
+  private void invalidateParents(Class<?> objectClass, UUID key) {
+    if (Organization.class.equals(objectClass)) {
+      endorsingNodes.invalidate(key);
+    } else if (Installation.class.equals(objectClass)) {
+      hostingOrganizations.invalidate(key);
+    }
+  }
+
   // group bans by entity class to avoid too many ban rules and thus bad varnish performance
   private void cascadeDatasetChange(Dataset ... datasets) {
     // UUIDHashSet ignores null values
@@ -168,31 +206,29 @@ public class VarnishPurgeListener {
     Set<UUID> nodeKeys = new UUIDHashSet();
     Set<UUID> parentKeys = new UUIDHashSet();
     for (Dataset d : datasets) {
-      if (!orgKeys.contains(d.getPublishingOrganizationKey())) {
-        Organization o = organizationService.get(d.getPublishingOrganizationKey());
-        nodeKeys.add(o.getEndorsingNodeKey());
+      if (d.getPublishingOrganizationKey() != null) {
+        orgKeys.add(d.getPublishingOrganizationKey());
+        nodeKeys.add(endorsingNodes.getUnchecked(d.getPublishingOrganizationKey()).orNull());
       }
-      if (!instKeys.contains(d.getInstallationKey())) {
+      if (d.getInstallationKey() != null) {
         instKeys.add(d.getInstallationKey());
-        Installation i = installationService.get(d.getInstallationKey());
-        orgKeys.add(i.getOrganizationKey());
+        orgKeys.add(hostingOrganizations.getUnchecked(d.getInstallationKey()).orNull());
       }
-      orgKeys.add(d.getPublishingOrganizationKey());
       if (d.getParentDatasetKey() != null) {
         parentKeys.add(d.getParentDatasetKey());
-        purge(uriBuilder.path("dataset").path(d.getParentDatasetKey().toString()).build());
+        purger.purge(UriBuilder.fromUri(apiBaseUrl).path("dataset").path(d.getParentDatasetKey().toString()).build());
       }
     }
-    banRegex(String.format("%s/dataset/%s/constituents", apiRoot, anyKey(parentKeys)));
+    purger.ban(apiRoot + "/dataset/%s/constituents", parentKeys);
     // /installation/{d.installationKey}/dataset BAN
-    banRegex(String.format("%s/installation/%s/dataset", apiRoot, anyKey(instKeys)));
+    purger.ban(apiRoot + "/installation/%s/dataset", instKeys);
     // /organization/{d.publishingOrganizationKey}/publishedDataset BAN
     // /organization/{d.installation.organizationKey}/hostedDataset BAN
-    banRegex(String.format("%s/organization/%s/(published|hosted)Dataset", apiRoot, anyKey(orgKeys)));
+    purger.ban(apiRoot + "/organization/%s/(published|hosted)Dataset", orgKeys);
     // /node/{d.publishingOrganization.endorsingNodeKey}/dataset BAN
-    banRegex(String.format("%s/node/%s/dataset", apiRoot, anyKey(nodeKeys)));
+    purger.ban(apiRoot + "/node/%s/dataset", nodeKeys);
     // /network/{any UUID}/constituents BAN
-    banRegex(String.format("%s/network/.+/constituents", apiRoot));
+    purger.ban(apiRoot + "/network/.+/constituents");
   }
 
   private void cascadeOrganizationChange(Organization ... orgs) {
@@ -201,7 +237,7 @@ public class VarnishPurgeListener {
     for (Organization o : orgs) {
       nodeKeys.add(o.getEndorsingNodeKey());
     }
-    banRegex(String.format("%s/node/%s/organization", apiRoot, anyKey(nodeKeys)));
+    purger.ban(apiRoot + "/node/%s/organization", nodeKeys);
   }
 
   private void cascadeInstallationChange(Installation ... installations) {
@@ -210,23 +246,16 @@ public class VarnishPurgeListener {
     for (Installation i : installations) {
       keys.add(i.getOrganizationKey());
     }
-    banRegex(String.format("%s/organization/%s/installation", apiRoot, anyKey(keys)));
+    purger.ban(apiRoot + "/organization/%s/installation", keys);
 
     // /node/{i.organization.endorsingNodeKey}/installation BAN
     Set<UUID> nodekeys = new UUIDHashSet();
     for (UUID orgKey : keys) {
-      Organization o = organizationService.get(orgKey);
-      nodekeys.add(o.getEndorsingNodeKey());
+      nodekeys.add(endorsingNodes.getUnchecked(orgKey).orNull());
     }
-    banRegex(String.format("%s/node/%s/organization", apiRoot, anyKey(nodekeys)));
+    purger.ban(apiRoot + "/node/%s/organization", nodekeys);
   }
 
-  private String anyKey(Set<UUID> keys) {
-    if (keys.size() == 1) {
-      return keys.iterator().next().toString();
-    }
-    return "(" + Joiner.on("|").skipNulls().join(keys) + ")";
-  }
   /**
    * Removes the specific entity from varnish and bans search & list pages.
    * This method does not check which entity class was supplied, but as it is some type of NetworkEntity
@@ -234,71 +263,10 @@ public class VarnishPurgeListener {
    */
   private void purgeEntityAndBanLists(Class cl, UUID key) {
     // purge entity detail
-    purge(uriBuilder.path(cl.getSimpleName().toLowerCase()).path(key.toString()).build());
+    purger.purge(UriBuilder.fromUri(apiBaseUrl).path(cl.getSimpleName().toLowerCase()).path(key.toString()).build());
 
     // banRegex lists and searches
-    banRegex(String.format("%s/%s(/search|/suggest)?[^/]*$", apiRoot, cl.getSimpleName().toLowerCase()));
-  }
-
-  private void purge(URI uri) {
-    try {
-      CloseableHttpResponse resp = client.execute(new HttpPurge(uri));
-      resp.close();
-    } catch (IOException e) {
-      LOG.error("Failed to purge {}", uri, e);
-    }
-  }
-
-  private void banRegex(String regex) {
-    try {
-      CloseableHttpResponse resp = client.execute(new HttpBan(regex));
-      resp.close();
-    } catch (IOException e) {
-      LOG.error("Failed to ban {}", regex, e);
-    }
-  }
-
-  /**
-   * The HTTP PURGE method is used by varnish to flush its cache via http.
-   */
-  @NotThreadSafe
-  public class HttpPurge extends HttpRequestBase {
-
-    public static final String METHOD_NAME = "PURGE";
-
-
-    public HttpPurge(final URI uri) {
-      super();
-      setURI(uri);
-    }
-
-    @Override
-    public String getMethod() {
-      return METHOD_NAME;
-    }
-
-  }
-
-  /**
-   * The HTTP BAN method is used by varnish to flush its cache via http.
-   */
-  @NotThreadSafe
-  public class HttpBan extends HttpRequestBase {
-
-    public static final String METHOD_NAME = "BAN";
-    public static final String BAN_HEADER = "x-ban-url";
-
-    public HttpBan(String banRegex) {
-      super();
-      setURI(uriBuilder.build());
-      setHeader(BAN_HEADER, banRegex);
-    }
-
-    @Override
-    public String getMethod() {
-      return METHOD_NAME;
-    }
-
+    purger.ban(String.format("%s/%s(/search|/suggest)?[^/]*$", apiRoot, cl.getSimpleName().toLowerCase()));
   }
 
   /**
@@ -18,12 +18,16 @@ public class VarnishPurgeModule extends PrivateModule {
   private static final Logger LOG = LoggerFactory.getLogger(VarnishPurgeModule.class);
   private static final int DEFAULT_HTTP_TIMEOUT_MSECS = 2000;
   private final int httpThreads;
+  private final int queueCapacity;
+  private final long windowMillis;
   private final URI apiRoot;
 
   public VarnishPurgeModule(Properties properties) {
     try {
       apiRoot = URI.create(properties.getProperty("api.url"));
       httpThreads = Integer.valueOf(properties.getProperty("purging.threads", "100").trim());
+      queueCapacity = Integer.valueOf(properties.getProperty("purging.queueCapacity", "10000").trim());
+      windowMillis = Long.valueOf(properties.getProperty("purging.windowMillis", "1000").trim());
     } catch (RuntimeException e) {
       LOG.error("Failed to initialize varnish purger because of invalid properties", e.getMessage());
       throw e;
@@ -34,10 +38,15 @@ public class VarnishPurgeModule extends PrivateModule {
   protected void configure() {
     if (httpThreads > 0) {
       bind(URI.class).toInstance(apiRoot);
-      bind(CloseableHttpClient.class).toInstance(HttpUtil.newMultithreadedClient(
-        DEFAULT_HTTP_TIMEOUT_MSECS, httpThreads, httpThreads));
+      CloseableHttpClient client =
+        HttpUtil.newMultithreadedClient(DEFAULT_HTTP_TIMEOUT_MSECS, httpThreads, httpThreads);
+      // exposed so the servlet listener can send the pending invalidations on shutdown
+      bind(VarnishPurger.class)
+        .toInstance(new VarnishPurger(client, apiRoot, windowMillis, httpThreads, queueCapacity));
+      expose(VarnishPurger.class);
       bind(VarnishPurgeListener.class).asEagerSingleton();
-      LOG.info("Varnish purging enabled with {} threads and API {}", httpThreads, apiRoot);
+      LOG.info("Varnish purging enabled with {} threads, a window of {}ms and API {}", httpThreads, windowMillis,
+        apiRoot);
     } else {
       LOG.warn("No varnish purging configured. Please set purging.threads greater than zero if you want it");
     }
@@ -0,0 +1,296 @@
+package org.gbif.registry.events;
+
+import java.io.IOException;
+import java.net.URI;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.google.common.base.Joiner;
+import com.google.common.base.Preconditions;
+import com.google.common.collect.Iterables;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.apache.http.annotation.NotThreadSafe;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpRequestBase;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Collects the varnish invalidations requested within a short window and sends them asynchronously.
+ * <p/>
+ * PURGE requests for the same URL are sent once per window. BANs with the same pattern are merged into a single
+ * regular expression matching all keys collected for the pattern, so a bulk change of thousands of datasets results
+ * in a handful of requests instead of several per dataset. The requests are sent through the pooled http client by a
+ * separate thread pool, so the event listener never waits for varnish. The requests waiting for a sending thread are
+ * bounded: once the queue is full the window flushing sends the request itself, delaying the next window whose
+ * invalidations keep being merged meanwhile.
+ * <p/>
+ * Sent, merged and failed requests are counted since creation and logged every hour and on shutdown.
+ */
+public class VarnishPurger {
+
+  private static final Logger LOG = LoggerFactory.getLogger(VarnishPurger.class);
+  // keeps the ban header well below the default varnish header size limit of 8KB
+  private static final int MAX_KEYS_PER_BAN = 100;
+  private static final long REPORT_INTERVAL_MILLIS = TimeUnit.HOURS.toMillis(1);
+
+  private final CloseableHttpClient client;
+  private final URI apiBaseUrl;
+  private final ScheduledExecutorService scheduler;
+  private final ThreadPoolExecutor sender;
+
+  // invalidations of the current window, guarded by this
+  private Set<URI> purges = Sets.newLinkedHashSet();
+  private Set<String> bans = Sets.newLinkedHashSet();
+  private Map<String, Set<UUID>> keyedBans = Maps.newLinkedHashMap();
+  private long requested;
+  private long lastReport = System.currentTimeMillis();
+
+  private final AtomicLong sent = new AtomicLong();
+  private final AtomicLong merged = new AtomicLong();
+  private final AtomicLong failed = new AtomicLong();
+
+  /**
+   * @param apiBaseUrl the url varnish is serving the API from, used as the target of BAN requests
+   * @param windowMillis how long invalidations are collected before they are sent
+   * @param threads the number of requests sent concurrently
+   * @param queueCapacity the number of requests waiting for a sending thread
+   */
+  public VarnishPurger(CloseableHttpClient client, URI apiBaseUrl, long windowMillis, int threads,
+    int queueCapacity) {
+    Preconditions.checkArgument(windowMillis > 0, "The purging window must be positive");
+    Preconditions.checkArgument(threads > 0, "At least one sending thread is required");
+    Preconditions.checkArgument(queueCapacity > 0, "The sending queue capacity must be positive");
+    this.client = client;
+    this.apiBaseUrl = apiBaseUrl;
+    sender = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+      new ArrayBlockingQueue<Runnable>(queueCapacity),
+      new ThreadFactoryBuilder().setNameFormat("varnish-purge-%d").setDaemon(true).build(),
+      new ThreadPoolExecutor.CallerRunsPolicy());
+    scheduler = Executors.newSingleThreadScheduledExecutor(
+      new ThreadFactoryBuilder().setNameFormat("varnish-purge-window").setDaemon(true).build());
+    scheduler.scheduleWithFixedDelay(new Runnable() {
+      @Override
+      public void run() {
+        try {
+          flush();
+        } catch (RuntimeException e) {
+          LOG.error("Failed to flush varnish invalidations", e);
+        }
+      }
+    }, windowMillis, windowMillis, TimeUnit.MILLISECONDS);
+  }
+
+  /**
+   * Purges a single resource.
+   */
+  public synchronized void purge(URI uri) {
+    requested++;
+    purges.add(uri);
+  }
+
+  /**
+   * Bans all resources matching the regular expression.
+   */
+  public synchronized void ban(String regex) {
+    requested++;
+    bans.add(regex);
+  }
+
+  /**
+   * Bans all resources matching the pattern for any of the given keys. The keys of all bans with the same pattern
+   * within a window are merged.
+   *
+   * @param pattern a regular expression with a single %s placeholder for the keys
+   * @param keys the keys to ban, ignored if empty
+   */
+  public synchronized void ban(String pattern, Collection<UUID> keys) {
+    if (keys.isEmpty()) {
+      return;
+    }
+    requested++;
+    Set<UUID> collected = keyedBans.get(pattern);
+    if (collected == null) {
+      collected = Sets.newLinkedHashSet();
+      keyedBans.put(pattern, collected);
+    }
+    collected.addAll(keys);
+  }
+
+  /**
+   * Sends all invalidations collected so far without waiting for the responses, unless the sending queue is full in
+   * which case the calling thread sends the remaining requests itself.
+   */
+  public void flush() {
+    Set<URI> windowPurges;
+    Set<String> windowBans;
+    Map<String, Set<UUID>> windowKeyedBans;
+    long windowRequested;
+    synchronized (this) {
+      if (System.currentTimeMillis() - lastReport >= REPORT_INTERVAL_MILLIS) {
+        lastReport = System.currentTimeMillis();
+        LOG.info("Varnish purging: {}", this);
+      }
+      if (requested == 0) {
+        return;
+      }
+      windowPurges = purges;
+      windowBans = bans;
+      windowKeyedBans = keyedBans;
+      windowRequested = requested;
+      purges = Sets.newLinkedHashSet();
+      bans = Sets.newLinkedHashSet();
+      keyedBans = Maps.newLinkedHashMap();
+      requested = 0;
+    }
+
+    List<HttpRequestBase> requests = Lists.newArrayList();
+    for (URI uri : windowPurges) {
+      requests.add(new HttpPurge(uri));
+    }
+    for (String regex : windowBans) {
+      requests.add(new HttpBan(apiBaseUrl, regex));
+    }
+    for (Map.Entry<String, Set<UUID>> ban : windowKeyedBans.entrySet()) {
+      for (List<UUID> keys : Iterables.partition(ban.getValue(), MAX_KEYS_PER_BAN)) {
+        requests.add(new HttpBan(apiBaseUrl, String.format(ban.getKey(), anyKey(keys))));
+      }
+    }
+    merged.addAndGet(windowRequested - requests.size());
+    LOG.debug("Sending {} varnish invalidations merged from {} requested", requests.size(), windowRequested);
+
+    for (final HttpRequestBase request : requests) {
+      sender.execute(new Runnable() {
+        @Override
+        public void run() {
+          send(request);
+        }
+      });
+    }
+  }
+
+  private void send(HttpRequestBase request) {
+    try (CloseableHttpResponse resp = client.execute(request)) {
+      int status = resp.getStatusLine().getStatusCode();
+      if (status >= 400) {
+        failed.incrementAndGet();
+        LOG.warn("Varnish {} {} failed with status {}", request.getMethod(), describe(request), status);
+      } else {
+        sent.incrementAndGet();
+      }
+    } catch (IOException e) {
+      failed.incrementAndGet();
+      LOG.error("Failed to {} {}", request.getMethod(), describe(request), e);
+    }
+  }
+
+  private static String describe(HttpRequestBase request) {
+    return request instanceof HttpBan ? request.getFirstHeader(HttpBan.BAN_HEADER).getValue()
+      : request.getURI().toString();
+  }
+
+  private static String anyKey(List<UUID> keys) {
+    if (keys.size() == 1) {
+      return keys.get(0).toString();
+    }
+    return "(" + Joiner.on("|").join(keys) + ")";
+  }
+
+  /**
+   * Sends the invalidations collected so far and waits for them to complete before the threads are stopped.
+   */
+  public void shutdown() {
+    scheduler.shutdownNow();
+    flush();
+    sender.shutdown();
+    try {
+      if (!sender.awaitTermination(10, TimeUnit.SECONDS)) {
+        LOG.warn("Varnish invalidations still pending on shutdown");
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+    LOG.info("Varnish purging stopped: {}", this);
+  }
+
+  /**
+   * @return the number of requests varnish accepted
+   */
+  public long getSent() {
+    return sent.get();
+  }
+
+  /**
+   * @return the number of requested invalidations that were merged into others and needed no request of their own
+   */
+  public long getMerged() {
+    return merged.get();
+  }
+
+  /**
+   * @return the number of requests that failed or were rejected by varnish
+   */
+  public long getFailed() {
+    return failed.get();
+  }
+
+  @Override
+  public String toString() {
+    return "sent " + sent + ", merged " + merged + ", failed " + failed + ", queued " + sender.getQueue().size();
+  }
+
+  /**
+   * The HTTP PURGE method is used by varnish to flush its cache via http.
+   */
+  @NotThreadSafe
+  public static class HttpPurge extends HttpRequestBase {
+
+    public static final String METHOD_NAME = "PURGE";
+
+    public HttpPurge(final URI uri) {
+      super();
+      setURI(uri);
+    }
+
+    @Override
+    public String getMethod() {
+      return METHOD_NAME;
+    }
+
+  }
+
+  /**
+   * The HTTP BAN method is used by varnish to flush its cache via http.
+   */
+  @NotThreadSafe
+  public static class HttpBan extends HttpRequestBase {
+
+    public static final String METHOD_NAME = "BAN";
+    public static final String BAN_HEADER = "x-ban-url";
+
+    public HttpBan(URI apiBaseUrl, String banRegex) {
+      super();
+      setURI(apiBaseUrl);
+      setHeader(BAN_HEADER, banRegex);
+    }
+
+    @Override
+    public String getMethod() {
+      return METHOD_NAME;
+    }
+
+  }
+}
@@ -2,6 +2,8 @@ package org.gbif.registry.ims;
 
 import org.gbif.api.model.registry.Node;
 
+import java.util.List;
+
 public interface Augmenter {
 
   /**
@@ -10,4 +12,11 @@ public interface Augmenter {
    * @return same node with IMS data added
    */
   Node augment(Node node);
+
+  /**
+   * Adds all IMS infos found to existing node instances, looking up all participants of the nodes together.
+   * @param nodes with country field filled
+   * @return same nodes with IMS data added
+   */
+  List<Node> augment(List<Node> nodes);
 }
@@ -5,20 +5,79 @@ import org.gbif.api.model.registry.Node;
 import org.gbif.api.vocabulary.IdentifierType;
 import org.gbif.drupal.mybatis.ImsNodeMapper;
 
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Optional;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.LoadingCache;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import com.google.inject.Inject;
 import com.google.inject.Singleton;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+/**
+ * Augments nodes from an in memory snapshot of the IMS participants, as the IMS is a slow external database and its
+ * node information rarely changes.
+ * <p/>
+ * Participants are read from the IMS the first time they are needed, all participants of a page of nodes together.
+ * From then on they are only served from memory, while the whole snapshot is reloaded in the background
+ * periodically. If the IMS is unavailable during a reload the previous participant information is kept.
+ */
 @Singleton
 public class AugmenterImpl implements Augmenter {
-  private static Logger LOG = LoggerFactory.getLogger(AugmenterImpl.class);
+  private static final Logger LOG = LoggerFactory.getLogger(AugmenterImpl.class);
+  private static final long REFRESH_MINUTES = 10;
+  private static final int MAX_PARTICIPANTS = 10000;
 
-  private ImsNodeMapper mapper;
+  private final LoadingCache<Integer, Optional<Node>> participants;
 
   @Inject
-  public AugmenterImpl(ImsNodeMapper mapper) {
-    this.mapper = mapper;
+  public AugmenterImpl(final ImsNodeMapper mapper) {
+    participants = CacheBuilder.newBuilder()
+      .maximumSize(MAX_PARTICIPANTS)
+      .build(new CacheLoader<Integer, Optional<Node>>() {
+        @Override
+        public Optional<Node> load(Integer imsId) {
+          // the IMS mapper only supports single participant queries, loadAll falls back to this
+          return Optional.fromNullable(mapper.get(imsId));
+        }
+      });
+    ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(
+      new ThreadFactoryBuilder().setNameFormat("ims-refresh").setDaemon(true).build());
+    scheduler.scheduleWithFixedDelay(new Runnable() {
+      @Override
+      public void run() {
+        try {
+          refresh();
+        } catch (RuntimeException e) {
+          LOG.error("Failed to refresh the IMS participants", e);
+        }
+      }
+    }, REFRESH_MINUTES, REFRESH_MINUTES, TimeUnit.MINUTES);
+  }
+
+  /**
+   * Reloads all participants known so far, keeping the previous information of participants failing to load.
+   */
+  @VisibleForTesting
+  void refresh() {
+    Set<Integer> imsIds = ImmutableSet.copyOf(participants.asMap().keySet());
+    for (Integer imsId : imsIds) {
+      participants.refresh(imsId);
+    }
+    LOG.debug("Refreshed {} IMS participants", imsIds.size());
   }
 
   private Integer findImsParticipantID(Node node) {
@@ -27,7 +86,7 @@ public class AugmenterImpl implements Augmenter {
         try {
           return Integer.parseInt(id.getIdentifier());
         } catch (NumberFormatException e) {
-          LOG.error("IMS Participant ID is no integer: %s", id.getIdentifier());
+          LOG.error("IMS Participant ID is no integer: {}", id.getIdentifier());
         }
       }
     }
@@ -37,32 +96,57 @@ public class AugmenterImpl implements Augmenter {
   @Override
   public Node augment(Node node) {
     if (node != null) {
-      try {
-        Integer imsId = findImsParticipantID(node);
-        if (imsId != null) {
-          Node imsNode = mapper.get(imsId);
-          if (imsNode != null) {
-            // update node with IMS info if it exists
-            node.setParticipantTitle(imsNode.getParticipantTitle());
-            node.setContacts(imsNode.getContacts());
-            node.setAbbreviation(imsNode.getAbbreviation());
-            node.setDescription(imsNode.getDescription());
-            node.setParticipantSince(imsNode.getParticipantSince());
-            node.setOrganization(imsNode.getOrganization());
-            node.setAddress(imsNode.getAddress());
-            node.setPostalCode(imsNode.getPostalCode());
-            node.setCity(imsNode.getCity());
-            node.setProvince(imsNode.getProvince());
-            node.setEmail(imsNode.getEmail());
-            node.setPhone(imsNode.getPhone());
-            node.setHomepage(imsNode.getHomepage());
-          }
-        }
-      } catch (Exception e) {
-        LOG.error("Failed to augment node %s with IMS information", node.getKey(), e);
+      augment(Lists.newArrayList(node));
+    }
+    return node;
+  }
+
+  @Override
+  public List<Node> augment(List<Node> nodes) {
+    Map<Node, Integer> imsIds = Maps.newIdentityHashMap();
+    for (Node node : nodes) {
+      Integer imsId = node == null ? null : findImsParticipantID(node);
+      if (imsId != null) {
+        imsIds.put(node, imsId);
       }
     }
+    if (imsIds.isEmpty()) {
+      return nodes;
+    }
 
-    return node;
+    Map<Integer, Optional<Node>> imsNodes;
+    try {
+      imsNodes = participants.getAll(Sets.newHashSet(imsIds.values()));
+    } catch (Exception e) {
+      LOG.error("Failed to augment {} nodes with IMS information", imsIds.size(), e);
+      return nodes;
+    }
+    for (Map.Entry<Node, Integer> entry : imsIds.entrySet()) {
+      Optional<Node> imsNode = imsNodes.get(entry.getValue());
+      if (imsNode != null && imsNode.isPresent()) {
+        copy(imsNode.get(), entry.getKey());
+      }
+    }
+    return nodes;
+  }
+
+  /**
+   * Updates the node with the IMS info. The contact list is copied, so the cached participant cannot be modified
+   * through the node.
+   */
+  private static void copy(Node imsNode, Node node) {
+    node.setParticipantTitle(imsNode.getParticipantTitle());
+    node.setContacts(imsNode.getContacts() == null ? null : Lists.newArrayList(imsNode.getContacts()));
+    node.setAbbreviation(imsNode.getAbbreviation());
+    node.setDescription(imsNode.getDescription());
+    node.setParticipantSince(imsNode.getParticipantSince());
+    node.setOrganization(imsNode.getOrganization());
+    node.setAddress(imsNode.getAddress());
+    node.setPostalCode(imsNode.getPostalCode());
+    node.setCity(imsNode.getCity());
+    node.setProvince(imsNode.getProvince());
+    node.setEmail(imsNode.getEmail());
+    node.setPhone(imsNode.getPhone());
+    node.setHomepage(imsNode.getHomepage());
   }
 }
@@ -0,0 +1,241 @@
+/*
+ * Copyright 2013 Global Biodiversity Information Facility (GBIF)
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gbif.registry.persistence;
+
+import org.gbif.api.model.registry.Comment;
+import org.gbif.api.model.registry.Commentable;
+import org.gbif.api.model.registry.Contact;
+import org.gbif.api.model.registry.Contactable;
+import org.gbif.api.model.registry.Dataset;
+import org.gbif.api.model.registry.Endpoint;
+import org.gbif.api.model.registry.Endpointable;
+import org.gbif.api.model.registry.Identifiable;
+import org.gbif.api.model.registry.Identifier;
+import org.gbif.api.model.registry.MachineTag;
+import org.gbif.api.model.registry.MachineTaggable;
+import org.gbif.api.model.registry.Network;
+import org.gbif.api.model.registry.NetworkEntity;
+import org.gbif.api.model.registry.Organization;
+import org.gbif.api.model.registry.Tag;
+import org.gbif.api.model.registry.Taggable;
+import org.gbif.registry.persistence.mapper.BaseNetworkEntityMapper;
+import org.gbif.registry.persistence.mapper.DatasetMapper;
+import org.gbif.registry.persistence.mapper.EndpointMapper;
+import org.gbif.registry.persistence.mapper.NetworkMapper;
+import org.gbif.registry.persistence.mapper.NodeMapper;
+import org.gbif.registry.persistence.mapper.OrganizationMapper;
+import org.gbif.registry.persistence.mapper.handler.KeyedComponent;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+
+import com.google.common.collect.ArrayListMultimap;
+import com.google.common.collect.ListMultimap;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+import com.google.inject.name.Named;
+
+/**
+ * Populates the sub resources of lists of network entities, i.e. contacts, endpoints, machine tags, tags, identifiers,
+ * comments and the dataset counts.
+ * <p/>
+ * The list queries of the mappers return the entities only, as nested selects in the result maps cost one statement
+ * per sub resource and row. In batched mode each sub resource is instead loaded for the whole list with a single keyed
+ * query, so a page costs a fixed number of statements regardless of its size. Otherwise the sub resources are
+ * loaded entity by entity, exactly as the nested selects did before.
+ * <p/>
+ * The loaded sub resources match those of the full result map of each mapper, so listed entities look the same as
+ * entities retrieved individually.
+ */
+@Singleton
+public class ComponentLoader {
+
+  public static final String BATCH_LOADING = "batchLoading";
+
+  private final EndpointMapper endpointMapper;
+  private final boolean batched;
+
+  @Inject
+  public ComponentLoader(EndpointMapper endpointMapper, @Named(BATCH_LOADING) boolean batched) {
+    this.endpointMapper = endpointMapper;
+    this.batched = batched;
+  }
+
+  public boolean isBatched() {
+    return batched;
+  }
+
+  /**
+   * Populates the sub resources of the given entities.
+   *
+   * @param mapper the mapper the entities were listed with
+   * @param entities the entities to populate, which may be null or empty
+   * @return the given entities for convenience
+   */
+  public <T extends NetworkEntity> List<T> load(BaseNetworkEntityMapper<T> mapper, List<T> entities) {
+    if (entities == null || entities.isEmpty()) {
+      return entities;
+    }
+    if (batched) {
+      loadBatched(mapper, entities);
+    } else {
+      loadEach(mapper, entities);
+    }
+    return entities;
+  }
+
+  private <T extends NetworkEntity> void loadBatched(BaseNetworkEntityMapper<T> mapper, List<T> entities) {
+    Set<UUID> keys = Sets.newLinkedHashSet();
+    for (T entity : entities) {
+      keys.add(entity.getKey());
+    }
+
+    if (hasContacts(mapper)) {
+      ListMultimap<UUID, Contact> contacts = group(mapper.listContactsByKeys(keys));
+      for (T entity : entities) {
+        ((Contactable) entity).setContacts(Lists.newArrayList(contacts.get(entity.getKey())));
+      }
+    }
+
+    ListMultimap<UUID, Endpoint> endpoints = group(mapper.listEndpointsByKeys(keys));
+    loadEndpointMachineTags(endpoints.values());
+    for (T entity : entities) {
+      ((Endpointable) entity).setEndpoints(Lists.newArrayList(endpoints.get(entity.getKey())));
+    }
+
+    ListMultimap<UUID, MachineTag> machineTags = group(mapper.listMachineTagsByKeys(keys));
+    for (T entity : entities) {
+      ((MachineTaggable) entity).setMachineTags(Lists.newArrayList(machineTags.get(entity.getKey())));
+    }
+
+    ListMultimap<UUID, Tag> tags = group(mapper.listTagsByKeys(keys));
+    for (T entity : entities) {
+      ((Taggable) entity).setTags(Lists.newArrayList(tags.get(entity.getKey())));
+    }
+
+    if (hasIdentifiers(mapper)) {
+      ListMultimap<UUID, Identifier> identifiers = group(mapper.listIdentifiersByKeys(keys));
+      for (T entity : entities) {
+        ((Identifiable) entity).setIdentifiers(Lists.newArrayList(identifiers.get(entity.getKey())));
+      }
+    }
+
+    ListMultimap<UUID, Comment> comments = group(mapper.listCommentsByKeys(keys));
+    for (T entity : entities) {
+      ((Commentable) entity).setComments(Lists.newArrayList(comments.get(entity.getKey())));
+    }
+
+    if (mapper instanceof DatasetMapper) {
+      Map<UUID, Integer> counts = index(((DatasetMapper) mapper).countConstituentsByKeys(keys));
+      for (T entity : entities) {
+        ((Dataset) entity).setNumConstituents(count(counts, entity.getKey()));
+      }
+    } else if (mapper instanceof OrganizationMapper) {
+      Map<UUID, Integer> counts = index(((OrganizationMapper) mapper).countPublishedDatasetsByKeys(keys));
+      for (T entity : entities) {
+        ((Organization) entity).setNumPublishedDatasets(count(counts, entity.getKey()));
+      }
+    } else if (mapper instanceof NetworkMapper) {
+      Map<UUID, Integer> counts = index(((NetworkMapper) mapper).countDatasetsInNetworkByKeys(keys));
+      for (T entity : entities) {
+        ((Network) entity).setNumConstituents(count(counts, entity.getKey()));
+      }
+    }
+  }
+
+  /**
+   * Endpoints carry machine tags of their own, which are loaded for all endpoints of the list at once as well.
+   */
+  private void loadEndpointMachineTags(Collection<Endpoint> endpoints) {
+    if (endpoints.isEmpty()) {
+      return;
+    }
+    Set<Integer> keys = Sets.newLinkedHashSet();
+    for (Endpoint endpoint : endpoints) {
+      keys.add(endpoint.getKey());
+    }
+    ListMultimap<Integer, MachineTag> machineTags = group(endpointMapper.listMachineTagsByEndpointKeys(keys));
+    for (Endpoint endpoint : endpoints) {
+      endpoint.setMachineTags(Lists.newArrayList(machineTags.get(endpoint.getKey())));
+    }
+  }
+
+  private <T extends NetworkEntity> void loadEach(BaseNetworkEntityMapper<T> mapper, List<T> entities) {
+    for (T entity : entities) {
+      UUID key = entity.getKey();
+      if (hasContacts(mapper)) {
+        ((Contactable) entity).setContacts(mapper.listContacts(key));
+      }
+      // the endpoint machine tags are loaded by the nested select of the endpoint result map
+      ((Endpointable) entity).setEndpoints(mapper.listEndpoints(key));
+      ((MachineTaggable) entity).setMachineTags(mapper.listMachineTags(key));
+      ((Taggable) entity).setTags(mapper.listTags(key));
+      if (hasIdentifiers(mapper)) {
+        ((Identifiable) entity).setIdentifiers(mapper.listIdentifiers(key));
+      }
+      ((Commentable) entity).setComments(mapper.listComments(key));
+
+      if (mapper instanceof DatasetMapper) {
+        ((Dataset) entity).setNumConstituents(((DatasetMapper) mapper).countConstituents(key));
+      } else if (mapper instanceof OrganizationMapper) {
+        ((Organization) entity).setNumPublishedDatasets(((OrganizationMapper) mapper).countPublishedDatasets(key));
+      } else if (mapper instanceof NetworkMapper) {
+        ((Network) entity).setNumConstituents(((NetworkMapper) mapper).countDatasetsInNetwork(key));
+      }
+    }
+  }
+
+  /**
+   * Nodes have no contacts in the registry, they are augmented with the contacts of the IMS instead.
+   */
+  private static boolean hasContacts(BaseNetworkEntityMapper<?> mapper) {
+    return !(mapper instanceof NodeMapper);
+  }
+
+  /**
+   * Only datasets, organizations and nodes expose their identifiers.
+   */
+  private static boolean hasIdentifiers(BaseNetworkEntityMapper<?> mapper) {
+    return mapper instanceof DatasetMapper || mapper instanceof OrganizationMapper || mapper instanceof NodeMapper;
+  }
+
+  /**
+   * Groups the components by their target key, keeping the order of the query within each group.
+   */
+  private static <K, T> ListMultimap<K, T> group(List<KeyedComponent<K, T>> rows) {
+    ListMultimap<K, T> grouped = ArrayListMultimap.create();
+    for (KeyedComponent<K, T> row : rows) {
+      grouped.put(row.getTargetKey(), row.getComponent());
+    }
+    return grouped;
+  }
+
+  private static Map<UUID, Integer> index(List<KeyedComponent<UUID, Integer>> rows) {
+    Map<UUID, Integer> counts = Maps.newHashMap();
+    for (KeyedComponent<UUID, Integer> row : rows) {
+      counts.put(row.getTargetKey(), row.getComponent());
+    }
+    return counts;
+  }
+
+  private static int count(Map<UUID, Integer> counts, UUID key) {
+    Integer count = counts.get(key);
+    return count == null ? 0 : count;
+  }
+}
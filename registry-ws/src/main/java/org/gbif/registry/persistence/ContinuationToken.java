@@ -0,0 +1,108 @@
+/*
+ * Copyright 2013 Global Biodiversity Information Facility (GBIF)
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gbif.registry.persistence;
+
+import org.gbif.api.model.registry.NetworkEntity;
+
+import java.util.Date;
+import java.util.UUID;
+import javax.annotation.Nullable;
+
+import com.google.common.base.Charsets;
+import com.google.common.base.Objects;
+import com.google.common.base.Preconditions;
+import com.google.common.base.Strings;
+import com.google.common.io.BaseEncoding;
+
+/**
+ * The position of the last entity of a page listed in the default order of newest entities first, i.e. by created
+ * descending and key ascending. The next page continues right after this entity without counting the entities
+ * before, so deep pages cost the same as the first one.
+ * <p/>
+ * The token is handed to clients as an opaque, url safe string.
+ */
+public class ContinuationToken {
+
+  private static final BaseEncoding ENCODING = BaseEncoding.base64Url().omitPadding();
+  private static final char SEPARATOR = ':';
+
+  private final Date created;
+  private final UUID key;
+
+  public ContinuationToken(Date created, UUID key) {
+    this.created = Preconditions.checkNotNull(created, "created can't be null");
+    this.key = Preconditions.checkNotNull(key, "key can't be null");
+  }
+
+  /**
+   * @return the token continuing after the given entity
+   */
+  public static ContinuationToken after(NetworkEntity entity) {
+    return new ContinuationToken(entity.getCreated(), entity.getKey());
+  }
+
+  /**
+   * Decodes a token as created by {@link #encode()}.
+   *
+   * @return the decoded token or null for the first page if no token is given
+   * @throws IllegalArgumentException if the token is invalid
+   */
+  @Nullable
+  public static ContinuationToken decode(@Nullable String token) {
+    if (Strings.isNullOrEmpty(token)) {
+      return null;
+    }
+    try {
+      String decoded = new String(ENCODING.decode(token), Charsets.UTF_8);
+      int separator = decoded.indexOf(SEPARATOR);
+      return new ContinuationToken(new Date(Long.parseLong(decoded.substring(0, separator))),
+                                   UUID.fromString(decoded.substring(separator + 1)));
+    } catch (RuntimeException e) {
+      throw new IllegalArgumentException("Invalid continuation token " + token, e);
+    }
+  }
+
+  public String encode() {
+    return ENCODING.encode((String.valueOf(created.getTime()) + SEPARATOR + key).getBytes(Charsets.UTF_8));
+  }
+
+  public Date getCreated() {
+    return created;
+  }
+
+  public UUID getKey() {
+    return key;
+  }
+
+  @Override
+  public boolean equals(Object obj) {
+    if (this == obj) {
+      return true;
+    }
+    if (!(obj instanceof ContinuationToken)) {
+      return false;
+    }
+    ContinuationToken that = (ContinuationToken) obj;
+    return Objects.equal(created, that.created) && Objects.equal(key, that.key);
+  }
+
+  @Override
+  public int hashCode() {
+    return Objects.hashCode(created, key);
+  }
+
+  @Override
+  public String toString() {
+    return encode();
+  }
+}
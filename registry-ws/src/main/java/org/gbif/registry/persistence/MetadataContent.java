@@ -0,0 +1,80 @@
+/*
+ * Copyright 2013 Global Biodiversity Information Facility (GBIF)
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gbif.registry.persistence;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import com.google.common.hash.Hashing;
+import com.google.common.io.ByteStreams;
+
+/**
+ * Metadata documents are stored gzip compressed together with the SHA-256 hash of the original document, so an
+ * identical upload can be recognised without reading the stored content.
+ * <p/>
+ * Documents stored before compression was introduced are returned as they are, recognised by the missing gzip header.
+ */
+public final class MetadataContent {
+
+  private static final int BUFFER_SIZE = 8192;
+
+  private MetadataContent() {
+  }
+
+  /**
+   * @return the hex encoded SHA-256 hash of the original, uncompressed document
+   */
+  public static String hash(byte[] document) {
+    return Hashing.sha256().hashBytes(document).toString();
+  }
+
+  public static byte[] compress(byte[] document) {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream(document.length / 4 + 64);
+    try (GZIPOutputStream out = new GZIPOutputStream(bytes, BUFFER_SIZE)) {
+      out.write(document);
+    } catch (IOException e) {
+      // cannot happen writing to memory
+      throw new IllegalStateException("Failed to compress metadata document", e);
+    }
+    return bytes.toByteArray();
+  }
+
+  /**
+   * @return a stream decompressing the stored content while it is read
+   */
+  public static InputStream open(byte[] content) throws IOException {
+    InputStream in = new ByteArrayInputStream(content);
+    return isCompressed(content) ? new GZIPInputStream(in, BUFFER_SIZE) : in;
+  }
+
+  /**
+   * @return the original document of the stored content
+   */
+  public static byte[] decompress(byte[] content) throws IOException {
+    if (!isCompressed(content)) {
+      return content;
+    }
+    try (InputStream in = open(content)) {
+      return ByteStreams.toByteArray(in);
+    }
+  }
+
+  public static boolean isCompressed(byte[] content) {
+    return content.length >= 2 && (content[0] & 0xff) == (GZIPInputStream.GZIP_MAGIC & 0xff)
+           && (content[1] & 0xff) == (GZIPInputStream.GZIP_MAGIC >> 8);
+  }
+}
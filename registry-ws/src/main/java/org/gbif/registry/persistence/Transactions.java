@@ -0,0 +1,49 @@
+/*
+ * Copyright 2013 Global Biodiversity Information Facility (GBIF)
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gbif.registry.persistence;
+
+import com.google.common.base.Supplier;
+import com.google.inject.Singleton;
+import org.mybatis.guice.transactional.Transactional;
+
+/**
+ * Runs work within a transaction where annotating the method itself does not help, as the method is called on the
+ * same instance or outside of the Guice managed call of a resource method. Bound within the MyBatis module so its
+ * transactions apply to the mappers; all mapper calls of the current thread share the transaction.
+ * <p/>
+ * Queries streaming their rows to a {@link org.apache.ibatis.session.ResultHandler} must run within a transaction, as
+ * the Postgres driver only uses a cursor for a statement with a fetch size while auto commit is disabled, and
+ * otherwise reads the whole result into memory before the first row is handled. This includes the
+ * {@link javax.ws.rs.core.StreamingOutput} written after a resource method returned.
+ */
+@Singleton
+public class Transactions {
+
+  /**
+   * Runs the work within a transaction, joining the transaction already open in this thread if any.
+   */
+  @Transactional
+  public void run(Runnable work) {
+    work.run();
+  }
+
+  /**
+   * Runs the work within a transaction, joining the transaction already open in this thread if any.
+   *
+   * @return the result of the work
+   */
+  @Transactional
+  public <T> T call(Supplier<T> work) {
+    return work.get();
+  }
+}
@@ -43,6 +43,9 @@ import org.gbif.mybatis.type.StringArrayTypeHandler;
 import org.gbif.mybatis.type.UriArrayTypeHandler;
 import org.gbif.mybatis.type.UriTypeHandler;
 import org.gbif.mybatis.type.UuidTypeHandler;
+import org.gbif.registry.persistence.ComponentLoader;
+import org.gbif.registry.persistence.OrganizationLocation;
+import org.gbif.registry.persistence.Transactions;
 import org.gbif.registry.persistence.mapper.CommentMapper;
 import org.gbif.registry.persistence.mapper.ContactMapper;
 import org.gbif.registry.persistence.mapper.DatasetMapper;
@@ -62,14 +65,19 @@ import org.gbif.registry.persistence.mapper.OrganizationMapper;
 import org.gbif.registry.persistence.mapper.TagMapper;
 import org.gbif.registry.persistence.mapper.UserRightsMapper;
 import org.gbif.registry.persistence.mapper.handler.DOITypeHandler;
+import org.gbif.registry.persistence.mapper.handler.KeyArrayTypeHandler;
+import org.gbif.registry.persistence.mapper.handler.KeyedComponent;
 import org.gbif.registry.persistence.mapper.handler.OccurrenceDownloadStatusTypeHandler;
 import org.gbif.registry.persistence.mapper.handler.PredicateTypeHandler;
+import org.gbif.registry.ws.model.DatasetDownloadStatistics;
 import org.gbif.service.guice.PrivateServiceModule;
 
 import java.net.URI;
 import java.util.Properties;
 import java.util.UUID;
 
+import com.google.inject.name.Names;
+
 /**
  * Sets up the persistence layer using the properties supplied.
  */
@@ -153,6 +161,10 @@ public class RegistryMyBatisModule extends PrivateServiceModule {
       addAlias("PredicateTypeHandler").to(PredicateTypeHandler.class);
       addAlias("StringArrayTypeHandler").to(StringArrayTypeHandler.class);
       addAlias("UriArrayTypeHandler").to(UriArrayTypeHandler.class);
+      addAlias("KeyArrayTypeHandler").to(KeyArrayTypeHandler.class);
+      addAlias("KeyedComponent").to(KeyedComponent.class);
+      addAlias("OrganizationLocation").to(OrganizationLocation.class);
+      addAlias("DatasetDownloadStatistics").to(DatasetDownloadStatistics.class);
     }
 
     @Override
@@ -168,6 +180,8 @@ public class RegistryMyBatisModule extends PrivateServiceModule {
   }
 
   private static final String PREFIX = "registry.db.";
+  // kept outside of the db prefix, as all those properties are handed to the datasource
+  private static final String BATCH_LOADING_PROPERTY = "registry.persistence.batchLoading";
   private final Properties properties;
 
   public RegistryMyBatisModule(Properties properties) {
@@ -199,6 +213,15 @@ public class RegistryMyBatisModule extends PrivateServiceModule {
     expose(MetasyncHistoryMapper.class);
     expose(UserRightsMapper.class);
     expose(DoiMapper.class);
+
+    // the sub resources of listed entities are loaded in batches unless disabled explicitly
+    bindConstant().annotatedWith(Names.named(ComponentLoader.BATCH_LOADING))
+      .to(Boolean.parseBoolean(properties.getProperty(BATCH_LOADING_PROPERTY, "true")));
+    bind(ComponentLoader.class);
+    expose(ComponentLoader.class);
+    // bound here for its transactions to apply to the mappers
+    bind(Transactions.class);
+    expose(Transactions.class);
   }
 
 }
@@ -0,0 +1,104 @@
+/*
+ * Copyright 2013 Global Biodiversity Information Facility (GBIF)
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gbif.registry.persistence.liquibase;
+
+import org.gbif.registry.persistence.MetadataContent;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Statement;
+
+import liquibase.change.custom.CustomTaskChange;
+import liquibase.database.Database;
+import liquibase.database.jvm.JdbcConnection;
+import liquibase.exception.CustomChangeException;
+import liquibase.exception.ValidationErrors;
+import liquibase.resource.ResourceAccessor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Compresses the content of all metadata documents not compressed yet and stores the hash of the original document.
+ * The documents are read with a cursor and updated in batches, so the migration does not need to hold all documents
+ * in memory. The space saved is logged and reported as the confirmation message.
+ */
+public class CompressMetadataChange implements CustomTaskChange {
+
+  private static final Logger LOG = LoggerFactory.getLogger(CompressMetadataChange.class);
+  private static final int BATCH_SIZE = 100;
+
+  private long documents;
+  private long bytesBefore;
+  private long bytesAfter;
+
+  @Override
+  public void execute(Database database) throws CustomChangeException {
+    Connection con = ((JdbcConnection) database.getConnection()).getUnderlyingConnection();
+    try (Statement select = con.createStatement();
+      PreparedStatement update = con.prepareStatement("UPDATE metadata SET content=?, content_hash=? WHERE key=?")) {
+      // a cursor is only used by postgres outside of auto commit mode
+      select.setFetchSize(BATCH_SIZE);
+      ResultSet rs = select.executeQuery("SELECT key, content FROM metadata WHERE content_hash IS NULL");
+      int batched = 0;
+      while (rs.next()) {
+        byte[] content = rs.getBytes("content");
+        if (content == null) {
+          continue;
+        }
+        byte[] document = MetadataContent.decompress(content);
+        byte[] compressed = MetadataContent.isCompressed(content) ? content : MetadataContent.compress(document);
+        update.setBytes(1, compressed);
+        update.setString(2, MetadataContent.hash(document));
+        update.setInt(3, rs.getInt("key"));
+        update.addBatch();
+        documents++;
+        bytesBefore += content.length;
+        bytesAfter += compressed.length;
+        if (++batched == BATCH_SIZE) {
+          update.executeBatch();
+          batched = 0;
+        }
+      }
+      if (batched > 0) {
+        update.executeBatch();
+      }
+      rs.close();
+    } catch (Exception e) {
+      throw new CustomChangeException("Failed to compress metadata documents", e);
+    }
+    LOG.info(getConfirmationMessage());
+  }
+
+  @Override
+  public String getConfirmationMessage() {
+    long saved = bytesBefore - bytesAfter;
+    return String.format("Compressed %,d metadata documents from %,d to %,d bytes, saving %,d bytes (%.1f%%)",
+      documents, bytesBefore, bytesAfter, saved, bytesBefore == 0 ? 0d : 100d * saved / bytesBefore);
+  }
+
+  @Override
+  public void setUp() {
+    // nothing to set up
+  }
+
+  @Override
+  public void setFileOpener(ResourceAccessor resourceAccessor) {
+    // no resources needed
+  }
+
+  @Override
+  public ValidationErrors validate(Database database) {
+    return new ValidationErrors();
+  }
+}
@@ -14,7 +14,9 @@ package org.gbif.registry.persistence.mapper;
 
 import org.gbif.api.model.registry.Contact;
 import org.gbif.api.vocabulary.ContactType;
+import org.gbif.registry.persistence.mapper.handler.KeyedComponent;
 
+import java.util.Collection;
 import java.util.List;
 import java.util.UUID;
 
@@ -49,6 +51,12 @@ public interface ContactableMapper {
 
   List<Contact> listContacts(@Param("targetEntityKey") UUID targetEntityKey);
 
+  /**
+   * Lists the contacts of all given entities in a single query, keyed by the entity they belong to.
+   */
+  List<KeyedComponent<UUID, Contact>> listContactsByKeys(
+    @Param("targetEntityKeys") Collection<UUID> targetEntityKeys);
+
   /**
    * Checks if the contact is associated with the entity.
    * 
@@ -16,7 +16,10 @@ import org.gbif.api.model.common.paging.Pageable;
 import org.gbif.api.model.registry.Dataset;
 import org.gbif.api.vocabulary.Country;
 import org.gbif.api.vocabulary.DatasetType;
+import org.gbif.registry.persistence.mapper.handler.KeyedComponent;
 
+import java.util.Collection;
+import java.util.Date;
 import java.util.List;
 import java.util.UUID;
 
@@ -88,8 +91,26 @@ public interface DatasetMapper extends BaseNetworkEntityMapper<Dataset> {
   // sigh - int required by the model object, but the paging is long
   int countConstituents(@Param("key") UUID datasetKey);
 
+  /**
+   * Counts the constituents of all given datasets in a single query, omitting datasets without constituents.
+   */
+  List<KeyedComponent<UUID, Integer>> countConstituentsByKeys(
+    @Param("targetEntityKeys") Collection<UUID> datasetKeys);
+
   List<Dataset> deleted(@Nullable @Param("page") Pageable page);
 
+  /**
+   * Lists the keys of all datasets not deleted whose search index document might have changed since the given date,
+   * i.e. if the dataset, its publishing organization, installation, hosting organization or tags changed. Removing a tag
+   * marks its dataset as modified.
+   */
+  List<UUID> listKeysChangedSince(@Param("since") Date since);
+
+  /**
+   * Lists the keys of all datasets deleted since the given date.
+   */
+  List<UUID> listKeysDeletedSince(@Param("since") Date since);
+
   long countDeleted();
 
   List<Dataset> duplicates(@Nullable @Param("page") Pageable page);
@@ -103,4 +124,13 @@ public interface DatasetMapper extends BaseNetworkEntityMapper<Dataset> {
   List<Dataset> withNoEndpoint(@Nullable @Param("page") Pageable page);
 
   long countWithNoEndpoint();
+
+  /**
+   * Reads the key of the publishing organization of the dataset only, without loading the
+   * entity. Deleted entities are included.
+   *
+   * @return the key or null if the dataset does not exist
+   */
+  @Nullable
+  UUID getPublishingOrganizationKey(@Param("key") UUID key);
 }
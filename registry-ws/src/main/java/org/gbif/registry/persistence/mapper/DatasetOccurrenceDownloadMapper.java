@@ -14,6 +14,7 @@ package org.gbif.registry.persistence.mapper;
 
 import org.gbif.api.model.common.paging.Pageable;
 import org.gbif.api.model.registry.DatasetOccurrenceDownloadUsage;
+import org.gbif.registry.ws.model.DatasetDownloadStatistics;
 
 import java.util.List;
 import java.util.UUID;
@@ -21,6 +22,7 @@ import java.util.UUID;
 import javax.annotation.Nullable;
 
 import org.apache.ibatis.annotations.Param;
+import org.apache.ibatis.session.ResultHandler;
 
 /**
  * Mapper that perform operations on dataset usages in occurrence downloads.
@@ -29,11 +31,31 @@ public interface DatasetOccurrenceDownloadMapper {
 
   void create(DatasetOccurrenceDownloadUsage downloadDataset);
 
+  /**
+   * Inserts several usages of the same download with a single statement.
+   */
+  void createAll(@Param("downloadKey") String downloadKey,
+    @Param("usages") List<DatasetOccurrenceDownloadUsage> usages);
+
   List<DatasetOccurrenceDownloadUsage> listByDataset(@Param("datasetKey") UUID datasetKey,
     @Nullable @Param("page") Pageable page);
 
+  /**
+   * @return the number of downloads using the dataset, read from the monthly statistics
+   */
   int countByDataset(@Param("datasetKey") UUID datasetKey);
 
+  /**
+   * @return the monthly download statistics of the dataset, latest month first
+   */
+  List<DatasetDownloadStatistics> statisticsByDataset(@Param("datasetKey") UUID datasetKey);
+
   List<DatasetOccurrenceDownloadUsage> listByDownload(@Param("downloadKey") String downloadKey,
                                                      @Nullable @Param("page") Pageable page);
+
+  /**
+   * Passes all dataset usages of a download to the handler while they are read, largest usages first.
+   * The usages are returned without their download.
+   */
+  void streamByDownload(@Param("downloadKey") String downloadKey, ResultHandler handler);
 }
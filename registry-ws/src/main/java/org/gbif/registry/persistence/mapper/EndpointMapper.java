@@ -13,6 +13,11 @@
 package org.gbif.registry.persistence.mapper;
 
 import org.gbif.api.model.registry.Endpoint;
+import org.gbif.api.model.registry.MachineTag;
+import org.gbif.registry.persistence.mapper.handler.KeyedComponent;
+
+import java.util.Collection;
+import java.util.List;
 
 import org.apache.ibatis.annotations.Param;
 
@@ -22,4 +27,12 @@ public interface EndpointMapper {
 
   void addMachineTag(@Param("endpointKey") int endpointKey, @Param("machineTagKey") int machineTagKey);
 
+  List<MachineTag> listEndpointMachineTags(@Param("key") int endpointKey);
+
+  /**
+   * Lists the machine tags of all given endpoints in a single query, keyed by the endpoint they belong to.
+   */
+  List<KeyedComponent<Integer, MachineTag>> listMachineTagsByEndpointKeys(
+    @Param("endpointKeys") Collection<Integer> endpointKeys);
+
 }
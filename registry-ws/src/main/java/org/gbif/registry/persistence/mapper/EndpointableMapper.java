@@ -16,7 +16,9 @@
 package org.gbif.registry.persistence.mapper;
 
 import org.gbif.api.model.registry.Endpoint;
+import org.gbif.registry.persistence.mapper.handler.KeyedComponent;
 
+import java.util.Collection;
 import java.util.List;
 import java.util.UUID;
 
@@ -30,4 +32,11 @@ public interface EndpointableMapper {
 
   List<Endpoint> listEndpoints(@Param("targetEntityKey") UUID targetEntityKey);
 
+  /**
+   * Lists the endpoints of all given entities in a single query, keyed by the entity they belong to.
+   * Endpoint machine tags are not loaded.
+   */
+  List<KeyedComponent<UUID, Endpoint>> listEndpointsByKeys(
+    @Param("targetEntityKeys") Collection<UUID> targetEntityKeys);
+
 }
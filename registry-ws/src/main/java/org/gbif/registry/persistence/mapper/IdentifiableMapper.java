@@ -16,7 +16,9 @@
 package org.gbif.registry.persistence.mapper;
 
 import org.gbif.api.model.registry.Identifier;
+import org.gbif.registry.persistence.mapper.handler.KeyedComponent;
 
+import java.util.Collection;
 import java.util.List;
 import java.util.UUID;
 
@@ -30,4 +32,10 @@ public interface IdentifiableMapper {
 
   List<Identifier> listIdentifiers(@Param("targetEntityKey") UUID identifierKey);
 
+  /**
+   * Lists the identifiers of all given entities in a single query, keyed by the entity they belong to.
+   */
+  List<KeyedComponent<UUID, Identifier>> listIdentifiersByKeys(
+    @Param("targetEntityKeys") Collection<UUID> targetEntityKeys);
+
 }
@@ -42,4 +42,21 @@ public interface InstallationMapper extends BaseNetworkEntityMapper<Installation
 
   List<Installation> nonPublishing(@Nullable @Param("page") Pageable page);
 
+  /**
+   * Reads the key of the organization hosting the installation only, without loading the
+   * entity. Deleted entities are included.
+   *
+   * @return the key or null if the installation does not exist
+   */
+  @Nullable
+  UUID getOrganizationKey(@Param("key") UUID key);
+
+  /**
+   * Reads the password of the installation only, without loading the entity. Used to authenticate legacy web service
+   * requests. Deleted entities are included.
+   *
+   * @return the password or null if the installation does not exist or has none
+   */
+  @Nullable
+  String getPassword(@Param("key") UUID key);
 }
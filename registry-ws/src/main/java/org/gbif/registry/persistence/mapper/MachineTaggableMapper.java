@@ -16,7 +16,9 @@
 package org.gbif.registry.persistence.mapper;
 
 import org.gbif.api.model.registry.MachineTag;
+import org.gbif.registry.persistence.mapper.handler.KeyedComponent;
 
+import java.util.Collection;
 import java.util.List;
 import java.util.UUID;
 
@@ -30,4 +32,10 @@ public interface MachineTaggableMapper {
 
   List<MachineTag> listMachineTags(@Param("targetEntityKey") UUID targetEntityKey);
 
+  /**
+   * Lists the machine tags of all given entities in a single query, keyed by the entity they belong to.
+   */
+  List<KeyedComponent<UUID, MachineTag>> listMachineTagsByKeys(
+    @Param("targetEntityKeys") Collection<UUID> targetEntityKeys);
+
 }
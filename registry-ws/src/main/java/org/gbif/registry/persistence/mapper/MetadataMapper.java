@@ -17,7 +17,6 @@ package org.gbif.registry.persistence.mapper;
 
 import org.gbif.api.model.registry.Metadata;
 import org.gbif.api.vocabulary.MetadataType;
-import org.gbif.registry.persistence.mapper.handler.ByteArrayWrapper;
 
 import java.util.List;
 import java.util.UUID;
@@ -35,17 +34,27 @@ public interface MetadataMapper {
   Metadata get(@Param("key") int key);
 
   /**
-   * Return the content of a metadata entry.
+   * Return the stored content of a metadata entry, which is gzip compressed unless it was stored before compression
+   * was introduced. Use {@link org.gbif.registry.persistence.MetadataContent} to read it.
    *
    * @param key of the metadata record to fetch
-   * @return either the requested metadata or {@code null} if it couldn't be found
+   * @return either the stored content or {@code null} if it couldn't be found
+   */
+  byte[] getDocument(@Param("key") int key);
+
+  /**
+   * Stores a new metadata document with its compressed source document and the hash of the uncompressed one.
    */
-  ByteArrayWrapper getDocument(@Param("key") int key);
+  int create(@Param("meta") Metadata metadata, @Param("data") byte[] compressedContent,
+    @Param("hash") String contentHash);
 
   /**
-   * Stores a new metadata document with its source document as a byte array exactly as it was.
+   * @return the key of a metadata entry of the dataset with the given type and content hash or {@code null} if none
+   * exists
    */
-  int create(@Param("meta") Metadata metadata, @Param("data") byte[] content);
+  @Nullable
+  Integer getKeyByHash(@Param("key") UUID datasetKey, @Param("type") MetadataType type,
+    @Param("hash") String contentHash);
 
   void delete(@Param("key") int key);
 
@@ -16,12 +16,14 @@ import org.gbif.api.model.common.paging.Pageable;
 import org.gbif.api.model.registry.NetworkEntity;
 import org.gbif.api.vocabulary.IdentifierType;
 
+import java.util.Date;
 import java.util.List;
 import java.util.UUID;
 
 import javax.annotation.Nullable;
 
 import org.apache.ibatis.annotations.Param;
+import org.apache.ibatis.session.ResultHandler;
 
 /**
  * Mappers that perform operations on network entities.
@@ -44,6 +46,25 @@ public interface NetworkEntityMapper<T extends NetworkEntity> {
 
   List<T> list(@Nullable @Param("page") Pageable page);
 
+  /**
+   * Lists the entities not deleted in the order of {@link #list(Pageable)}, starting right after the entity with the
+   * given key. The exact creation date of that entity is read from the database, as the given creation date has only
+   * millisecond precision, which is used only if the entity does not exist anymore.
+   *
+   * @param created the creation date of the last entity of the previous page, null for the first page
+   * @param key the key of the last entity of the previous page, null for the first page
+   */
+  List<T> listAfter(@Nullable @Param("created") Date created, @Nullable @Param("key") UUID key,
+    @Param("limit") int limit);
+
+  /**
+   * Passes all entities not deleted to the handler one by one, oldest first, without holding them in memory.
+   * The sub resources are not populated.
+   *
+   * @param modifiedSince only entities modified at or after this date, all if null
+   */
+  void export(@Nullable @Param("modifiedSince") Date modifiedSince, ResultHandler handler);
+
   List<T> search(@Nullable @Param("query") String query, @Nullable @Param("page") Pageable page);
 
   int count();
@@ -16,7 +16,9 @@
 package org.gbif.registry.persistence.mapper;
 
 import org.gbif.api.model.registry.Network;
+import org.gbif.registry.persistence.mapper.handler.KeyedComponent;
 
+import java.util.Collection;
 import java.util.List;
 import java.util.UUID;
 
@@ -26,6 +28,12 @@ public interface NetworkMapper extends BaseNetworkEntityMapper<Network> {
 
   int countDatasetsInNetwork(@Param("networkKey") UUID networkKey);
 
+  /**
+   * Counts the constituents of all given networks in a single query, omitting networks without constituents.
+   */
+  List<KeyedComponent<UUID, Integer>> countDatasetsInNetworkByKeys(
+    @Param("targetEntityKeys") Collection<UUID> networkKeys);
+
   void addDatasetConstituent(@Param("networkKey") UUID networkKey, @Param("datasetKey") UUID datasetKey);
 
   void deleteDatasetConstituent(@Param("networkKey") UUID networkKey, @Param("datasetKey") UUID datasetKey);
@@ -16,6 +16,7 @@ import org.gbif.api.model.common.DOI;
 import org.gbif.api.model.common.paging.Pageable;
 import org.gbif.api.model.occurrence.Download;
 
+import java.util.Date;
 import java.util.List;
 
 import javax.annotation.Nullable;
@@ -43,4 +44,13 @@ public interface OccurrenceDownloadMapper {
 
   int countByUser(@Param("creator") String creator);
 
+  /**
+   * Lists the succeeded downloads modified since the given date whose DOI has not been queued for registration yet,
+   * i.e. is still new and without target, ordered by key.
+   *
+   * @param after the key of the last download of the previous page, null for the first page
+   */
+  List<Download> listWithNewDOI(@Param("since") Date since, @Nullable @Param("after") String after,
+    @Param("limit") int limit);
+
 }
@@ -16,8 +16,11 @@ import org.gbif.api.model.common.paging.Pageable;
 import org.gbif.api.model.registry.Organization;
 import org.gbif.api.vocabulary.Country;
 import org.gbif.api.vocabulary.InstallationType;
+import org.gbif.registry.persistence.OrganizationLocation;
+import org.gbif.registry.persistence.mapper.handler.KeyedComponent;
 import org.gbif.registry.ws.model.LegacyOrganizationBriefResponse;
 
+import java.util.Collection;
 import java.util.List;
 import java.util.UUID;
 import javax.annotation.Nullable;
@@ -86,13 +89,45 @@ public interface OrganizationMapper extends BaseNetworkEntityMapper<Organization
   List<Organization> hostingInstallationsOf(@Param("type") InstallationType type,
     @Nullable @Param("georeferenced") Boolean georeferencedOnly);
 
+  /**
+   * @return The georeferenced organizations that have an installation of the given type, each with the number of
+   *         such installations
+   */
+  List<OrganizationLocation> hostingLocationsOf(@Param("type") InstallationType type);
+
   /**
    * @return a count of endorsed, non deleted organizations that publish data.
    */
   int countPublishing();
 
+  int countPublishedDatasets(@Param("key") UUID organizationKey);
+
+  /**
+   * Counts the published datasets of all given organizations in a single query, omitting organizations without any.
+   */
+  List<KeyedComponent<UUID, Integer>> countPublishedDatasetsByKeys(
+    @Param("targetEntityKeys") Collection<UUID> organizationKeys);
+
   /**
    * @return The list of organizations, with only their key and title populated.
    */
   List<LegacyOrganizationBriefResponse> listLegacyOrganizationsBrief();
+
+  /**
+   * Reads the key of the node endorsing the organization only, without loading the
+   * entity. Deleted entities are included.
+   *
+   * @return the key or null if the organization does not exist
+   */
+  @Nullable
+  UUID getEndorsingNodeKey(@Param("key") UUID key);
+
+  /**
+   * Reads the password of the organization only, without loading the entity. Used to authenticate legacy web service
+   * requests. Deleted entities are included.
+   *
+   * @return the password or null if the organization does not exist or has none
+   */
+  @Nullable
+  String getPassword(@Param("key") UUID key);
 }
@@ -16,7 +16,9 @@
 package org.gbif.registry.persistence.mapper;
 
 import org.gbif.api.model.registry.Tag;
+import org.gbif.registry.persistence.mapper.handler.KeyedComponent;
 
+import java.util.Collection;
 import java.util.List;
 import java.util.UUID;
 
@@ -30,4 +32,10 @@ public interface TaggableMapper {
 
   List<Tag> listTags(@Param("targetEntityKey") UUID targetEntityKey);
 
+  /**
+   * Lists the tags of all given entities in a single query, keyed by the entity they belong to.
+   */
+  List<KeyedComponent<UUID, Tag>> listTagsByKeys(
+    @Param("targetEntityKeys") Collection<UUID> targetEntityKeys);
+
 }
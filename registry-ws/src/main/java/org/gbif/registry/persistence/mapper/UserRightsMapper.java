@@ -1,5 +1,6 @@
 package org.gbif.registry.persistence.mapper;
 
+import java.util.List;
 import java.util.UUID;
 
 import org.apache.ibatis.annotations.Param;
@@ -8,6 +9,11 @@ public interface UserRightsMapper {
 
   boolean keyExistsForUser(@Param("username") String username, @Param("key") UUID key);
 
+  /**
+   * @return the keys of all entities the user has editor rights on
+   */
+  List<UUID> listKeysForUser(@Param("username") String username);
+
   boolean namespaceExistsForUser(@Param("username") String username, @Param("ns") String namespace);
 
   boolean allowedToDeleteMachineTag(@Param("username") String username, @Param("key") int machineTagKey);
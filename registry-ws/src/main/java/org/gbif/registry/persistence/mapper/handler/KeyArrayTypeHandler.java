@@ -0,0 +1,76 @@
+/*
+ * Copyright 2013 Global Biodiversity Information Facility (GBIF)
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gbif.registry.persistence.mapper.handler;
+
+import java.sql.Array;
+import java.sql.CallableStatement;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.util.Collection;
+import java.util.UUID;
+
+import com.google.common.collect.Lists;
+import org.apache.ibatis.type.JdbcType;
+import org.apache.ibatis.type.TypeHandler;
+
+/**
+ * Binds a collection of UUID or integer keys as a single postgres array parameter, so a whole page of entities can be
+ * addressed with {@code column = ANY(#{keys,typeHandler=KeyArrayTypeHandler})} using one prepared statement
+ * regardless of the page size.
+ * Null or empty collections are bound as NULL, which matches no rows.
+ * Array columns are read back as a list of the keys.
+ */
+public class KeyArrayTypeHandler implements TypeHandler<Collection<?>> {
+
+  @Override
+  public void setParameter(PreparedStatement ps, int i, Collection<?> parameter, JdbcType jdbcType)
+    throws SQLException {
+    if (parameter == null || parameter.isEmpty()) {
+      ps.setNull(i, Types.ARRAY);
+    } else {
+      String type = parameter.iterator().next() instanceof UUID ? "uuid" : "int4";
+      ps.setArray(i, ps.getConnection().createArrayOf(type, parameter.toArray()));
+    }
+  }
+
+  @Override
+  public Collection<?> getResult(ResultSet rs, String columnName) throws SQLException {
+    return toKeys(rs.getArray(columnName));
+  }
+
+  @Override
+  public Collection<?> getResult(ResultSet rs, int columnIndex) throws SQLException {
+    return toKeys(rs.getArray(columnIndex));
+  }
+
+  @Override
+  public Collection<?> getResult(CallableStatement cs, int columnIndex) throws SQLException {
+    return toKeys(cs.getArray(columnIndex));
+  }
+
+  /**
+   * Reads a postgres uuid[] or int4[] into a list of UUID or Integer keys.
+   */
+  private static Collection<?> toKeys(Array array) throws SQLException {
+    if (array == null) {
+      return null;
+    }
+    try {
+      return Lists.newArrayList((Object[]) array.getArray());
+    } finally {
+      array.free();
+    }
+  }
+}
@@ -0,0 +1,52 @@
+/*
+ * Copyright 2013 Global Biodiversity Information Facility (GBIF)
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gbif.registry.persistence.mapper.handler;
+
+/**
+ * A component row loaded for many entities at once, carrying the key of the entity it belongs to.
+ * MyBatis cannot return a component together with a column that is not part of it, so the keyed queries map into
+ * this wrapper and the rows are grouped by target key afterwards.
+ * The component key is only mapped to tell rows of the same entity apart, as MyBatis would merge them otherwise.
+ *
+ * @param <K> the type of the target key
+ * @param <T> the type of the component, e.g. Contact or a count
+ */
+public class KeyedComponent<K, T> {
+  private K targetKey;
+  private Integer componentKey;
+  private T component;
+
+  public K getTargetKey() {
+    return targetKey;
+  }
+
+  public void setTargetKey(K targetKey) {
+    this.targetKey = targetKey;
+  }
+
+  public Integer getComponentKey() {
+    return componentKey;
+  }
+
+  public void setComponentKey(Integer componentKey) {
+    this.componentKey = componentKey;
+  }
+
+  public T getComponent() {
+    return component;
+  }
+
+  public void setComponent(T component) {
+    this.component = component;
+  }
+}
@@ -119,7 +119,11 @@ class DatasetDocConverter {
 
       if (stream != null) {
         FullTextSaxHandler handler = new FullTextSaxHandler();
-        SAXParser p = saxFactory.newSAXParser();
+        SAXParser p;
+        // documents are converted concurrently while building the index, but parser factories are not thread safe
+        synchronized (saxFactory) {
+          p = saxFactory.newSAXParser();
+        }
         // parse does close the stream
         p.parse(stream, handler);
         doc.addField("metadata", handler.getFullText());
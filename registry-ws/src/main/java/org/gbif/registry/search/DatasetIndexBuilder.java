@@ -1,7 +1,6 @@
 package org.gbif.registry.search;
 
 import org.gbif.api.model.common.paging.Pageable;
-import org.gbif.api.model.common.paging.PagingRequest;
 import org.gbif.api.model.common.paging.PagingResponse;
 import org.gbif.api.model.registry.Comment;
 import org.gbif.api.model.registry.Contact;
@@ -17,21 +16,35 @@ import org.gbif.api.service.registry.InstallationService;
 import org.gbif.api.service.registry.NetworkEntityService;
 import org.gbif.api.service.registry.OrganizationService;
 import org.gbif.api.vocabulary.IdentifierType;
+import org.gbif.registry.persistence.ContinuationToken;
+import org.gbif.registry.persistence.mapper.DatasetMapper;
 
 import java.io.IOException;
+import java.util.Date;
 import java.util.List;
 import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
 
 import javax.annotation.Nullable;
 import javax.validation.constraints.NotNull;
 
+import com.google.common.base.Preconditions;
 import com.google.common.base.Stopwatch;
+import com.google.common.base.Throwables;
 import com.google.common.cache.CacheBuilder;
 import com.google.common.cache.CacheLoader;
 import com.google.common.cache.LoadingCache;
 import com.google.common.collect.Lists;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import com.google.inject.Inject;
 import com.google.inject.Singleton;
 import com.google.inject.name.Named;
@@ -43,23 +56,42 @@ import org.slf4j.LoggerFactory;
 
 
 /**
- * A builder that will clear and build a new dataset index by paging over the given service.
+ * A builder that will clear and build a new dataset index by paging over all datasets, or update an existing
+ * persistent index with the datasets changed since a given date.
+ * <p/>
+ * A full build runs as a pipeline of three stages: the calling thread pages over the dataset keys in creation order, a
+ * pool of converters reads the datasets with their metadata and builds the SOLR documents in parallel, and a single
+ * writer
+ * sends the documents to SOLR in batches. The bounded queue between converters and writer keeps the reader from
+ * running ahead too far. The index is committed once at the end.
  */
 @Singleton
 public class DatasetIndexBuilder {
 
-  // controls how many results we request while paging over the WS
+  // controls how many results we request while paging over the datasets
   private static final int WS_PAGE_SIZE = 100;
+  private static final int REPORT_INTERVAL_SECONDS = 30;
   private static final Logger LOG = LoggerFactory.getLogger(DatasetIndexBuilder.class);
+  // marks the end of the documents for the writer
+  private static final Future<SolrInputDocument> END = Futures.immediateFuture(null);
   private final SolrServer solrServer;
   private final DatasetService datasetService;
+  private final DatasetMapper datasetMapper;
   private final DatasetDocConverter docConverter;
+  private final int threads;
+  private final int batchSize;
 
   @Inject
   public DatasetIndexBuilder(@Named("Dataset") SolrServer solrServer, DatasetService datasetService,
-    InstallationService installationService, OrganizationService organizationService) {
+    InstallationService installationService, OrganizationService organizationService, DatasetMapper datasetMapper,
+    @Named("indexBuilderThreads") int threads, @Named("indexBatchSize") int batchSize) {
+    Preconditions.checkArgument(threads > 0, "At least one index builder thread is required");
+    Preconditions.checkArgument(batchSize > 0, "The index batch size must be positive");
     this.solrServer = solrServer;
     this.datasetService = datasetService;
+    this.datasetMapper = datasetMapper;
+    this.threads = threads;
+    this.batchSize = batchSize;
     // We can use a cache at startup
     this.docConverter =
       new DatasetDocConverter(new CachingNetworkEntityService<Organization>(organizationService),
@@ -67,35 +99,166 @@ public class DatasetIndexBuilder {
   }
 
   public void build() throws SolrServerException, IOException {
-    LOG.info("Building a new Dataset index");
+    LOG.info("Building a new Dataset index with {} converter threads", threads);
     Stopwatch stopwatch = Stopwatch.createStarted();
-    pageAndIndex();
+    // a persistent index might still hold datasets deleted in the meantime
+    solrServer.deleteByQuery("*:*");
+    long indexed = pageAndIndex();
     solrServer.commit();
     solrServer.optimize();
-    LOG.info("Finished building Dataset index in {} secs", stopwatch.elapsed(TimeUnit.SECONDS));
+    LOG.info("Finished building Dataset index of {} datasets in {} secs", indexed,
+             stopwatch.elapsed(TimeUnit.SECONDS));
   }
 
   /**
-   * Pages over all datasets and adds to SOLR.
+   * Updates an existing index with all datasets created, modified or deleted since the given date, including those
+   * affected by changes of their organizations and installations.
    */
-  private void pageAndIndex() throws IOException, SolrServerException {
-    PagingRequest page = new PagingRequest(0, WS_PAGE_SIZE);
-    PagingResponse<Dataset> response = null;
-    do {
-      LOG.debug("Requesting {} datasets starting at offset {}", page.getLimit(), page.getOffset());
-      response = datasetService.list(page);
-      // Batching updates to SOLR proves quicker with batches of 100 - 1000 showing similar performance
+  public void sync(Date since) throws SolrServerException, IOException {
+    LOG.info("Updating Dataset index with changes since {}", since);
+    Stopwatch stopwatch = Stopwatch.createStarted();
+
+    List<UUID> deleted = datasetMapper.listKeysDeletedSince(since);
+    if (!deleted.isEmpty()) {
+      List<String> ids = Lists.newArrayList();
+      for (UUID key : deleted) {
+        ids.add(key.toString());
+      }
+      solrServer.deleteById(ids);
+    }
+
+    List<UUID> changed = datasetMapper.listKeysChangedSince(since);
+    for (List<UUID> keys : Lists.partition(changed, WS_PAGE_SIZE)) {
       List<SolrInputDocument> batch = Lists.newArrayList();
-      for (Dataset ds : response.getResults()) {
-        batch.add(docConverter.build(ds));
+      for (UUID key : keys) {
+        Dataset ds = datasetService.get(key);
+        if (ds != null) {
+          batch.add(docConverter.build(ds));
+        }
       }
       if (!batch.isEmpty()) {
         solrServer.add(batch);
-        solrServer.commit(); // to allow eager users (or impatient developers) to see search data on startup quickly
       }
-      page.nextPage();
+    }
+    solrServer.commit();
+    LOG.info("Updated {} and deleted {} datasets of the Dataset index in {} secs", changed.size(), deleted.size(),
+             stopwatch.elapsed(TimeUnit.SECONDS));
+  }
+
+  /**
+   * Pages over all datasets by keyset and feeds their keys through the converters to the writer.
+   *
+   * @return the number of indexed datasets
+   */
+  private long pageAndIndex() throws IOException, SolrServerException {
+    ForkJoinPool converters = new ForkJoinPool(threads);
+    BlockingQueue<Future<SolrInputDocument>> documents =
+      new ArrayBlockingQueue<Future<SolrInputDocument>>(Math.max(batchSize, threads * WS_PAGE_SIZE));
+    ExecutorService writerExecutor = Executors.newSingleThreadExecutor(
+      new ThreadFactoryBuilder().setNameFormat("dataset-index-writer").setDaemon(true).build());
+    Future<Long> writer = writerExecutor.submit(new Writer(documents));
+
+    try {
+      ContinuationToken after = null;
+      List<Dataset> page;
+      do {
+        LOG.debug("Requesting {} datasets after {}", WS_PAGE_SIZE, after);
+        page = after == null
+          ? datasetMapper.listAfter(null, null, WS_PAGE_SIZE)
+          : datasetMapper.listAfter(after.getCreated(), after.getKey(), WS_PAGE_SIZE);
+        for (final Dataset ds : page) {
+          enqueue(documents, converters.submit(new Callable<SolrInputDocument>() {
+            @Override
+            public SolrInputDocument call() {
+              // read through the service to include the components and the metadata documents
+              Dataset dataset = datasetService.get(ds.getKey());
+              return dataset == null ? null : docConverter.build(dataset);
+            }
+          }), writer);
+        }
+        if (!page.isEmpty()) {
+          after = ContinuationToken.after(page.get(page.size() - 1));
+        }
+      } while (page.size() == WS_PAGE_SIZE);
+
+      enqueue(documents, END, writer);
+      return writer.get();
+
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IllegalStateException("Interrupted while building the Dataset index", e);
+    } catch (ExecutionException e) {
+      Throwables.propagateIfPossible(e.getCause(), IOException.class, SolrServerException.class);
+      throw Throwables.propagate(e.getCause());
+    } finally {
+      converters.shutdownNow();
+      writerExecutor.shutdownNow();
+    }
+  }
+
+  /**
+   * Waits for room in the queue, failing with the writer error should the writer have stopped.
+   */
+  private static void enqueue(BlockingQueue<Future<SolrInputDocument>> documents, Future<SolrInputDocument> doc,
+    Future<Long> writer) throws InterruptedException, ExecutionException {
+    while (!documents.offer(doc, 1, TimeUnit.SECONDS)) {
+      if (writer.isDone()) {
+        writer.get();
+        throw new IllegalStateException("Dataset index writer stopped unexpectedly");
+      }
+    }
+  }
+
+  /**
+   * Takes the converted documents in the order of the datasets and adds them to SOLR in batches, without committing.
+   * Datasets deleted since they were listed have no document and are skipped.
+   */
+  private class Writer implements Callable<Long> {
+
+    private final BlockingQueue<Future<SolrInputDocument>> documents;
 
-    } while (!response.isEndOfRecords());
+    private Writer(BlockingQueue<Future<SolrInputDocument>> documents) {
+      this.documents = documents;
+    }
+
+    @Override
+    public Long call() throws Exception {
+      Stopwatch stopwatch = Stopwatch.createStarted();
+      long lastReport = 0;
+      long written = 0;
+      List<SolrInputDocument> batch = Lists.newArrayListWithCapacity(batchSize);
+      Future<SolrInputDocument> doc;
+      while ((doc = documents.take()) != END) {
+        SolrInputDocument converted;
+        try {
+          converted = doc.get();
+        } catch (ExecutionException e) {
+          // a dataset failed to convert
+          throw Throwables.propagate(e.getCause());
+        }
+        if (converted == null) {
+          continue;
+        }
+        batch.add(converted);
+        if (batch.size() >= batchSize) {
+          solrServer.add(batch);
+          written += batch.size();
+          batch = Lists.newArrayListWithCapacity(batchSize);
+        }
+
+        long elapsed = stopwatch.elapsed(TimeUnit.SECONDS);
+        if (elapsed - lastReport >= REPORT_INTERVAL_SECONDS) {
+          LOG.info("Indexed {} datasets in {} secs, {} datasets per second", written, elapsed,
+                   elapsed == 0 ? written : written / elapsed);
+          lastReport = elapsed;
+        }
+      }
+      if (!batch.isEmpty()) {
+        solrServer.add(batch);
+        written += batch.size();
+      }
+      return written;
+    }
   }
 
   /**
@@ -13,17 +13,29 @@ import org.gbif.api.service.registry.OrganizationService;
 import org.gbif.registry.events.ChangedComponentEvent;
 import org.gbif.registry.events.CreateEvent;
 import org.gbif.registry.events.DeleteEvent;
+import org.gbif.registry.events.OrderedAsyncEventBus;
 import org.gbif.registry.events.UpdateEvent;
 
+import java.util.Date;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.UUID;
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Objects;
+import com.google.common.base.Optional;
+import com.google.common.base.Preconditions;
+import com.google.common.base.Stopwatch;
 import com.google.common.base.Throwables;
 import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
 import com.google.common.eventbus.EventBus;
 import com.google.common.eventbus.Subscribe;
 import com.google.inject.Inject;
@@ -50,6 +62,8 @@ public class DatasetIndexUpdateListener {
   // Used to build a new index before consuming if required
   private final DatasetIndexBuilder indexBuilder;
   private final boolean performIndexSync;
+  // The time up to which a persistent index is known to be in sync
+  private final IndexHighWaterMark highWaterMark;
 
   // The backlog of mutations to apply to the index
   private final BlockingQueue<Object> queue = new LinkedBlockingQueue<Object>();
@@ -63,10 +77,27 @@ public class DatasetIndexUpdateListener {
   private final OrganizationService organizationService;
   private final InstallationService installationService;
   private final DatasetService datasetService;
+  private final EventBus eventBus;
+
+  // The maximum number of events applied at once and the minimum time between two commits
+  private final int batchSize;
+  private final long commitIntervalMillis;
+
+  // Throughput counters, logged every few minutes
+  private static final int REPORT_INTERVAL_MINUTES = 10;
+  private final AtomicLong events = new AtomicLong();
+  private final AtomicLong collapsed = new AtomicLong();
+  private final AtomicLong added = new AtomicLong();
+  private final AtomicLong deleted = new AtomicLong();
+  private final AtomicLong batches = new AtomicLong();
+  private final AtomicLong commits = new AtomicLong();
 
   @Inject
   public DatasetIndexUpdateListener(DatasetIndexBuilder indexBuilder,
     @Named("performIndexSync") boolean performIndexSync,
+    @Named("indexBatchSize") int batchSize,
+    @Named("commitIntervalMillis") long commitIntervalMillis,
+    IndexHighWaterMark highWaterMark,
     @Named("Dataset") SolrServer solrServer,
     OrganizationService organizationService,
     InstallationService installationService,
@@ -74,11 +105,16 @@ public class DatasetIndexUpdateListener {
     EventBus eventBus) {
     this.indexBuilder = indexBuilder;
     this.performIndexSync = performIndexSync;
+    Preconditions.checkArgument(batchSize > 0, "The index batch size must be positive");
+    this.batchSize = batchSize;
+    this.commitIntervalMillis = commitIntervalMillis;
+    this.highWaterMark = highWaterMark;
     this.solrServer = solrServer;
     this.docConverter = new DatasetDocConverter(organizationService, installationService, datasetService);
     this.organizationService = organizationService;
     this.installationService = installationService;
     this.datasetService = datasetService;
+    this.eventBus = eventBus;
     eventBus.register(this);
     Thread updateThread = new Thread(new Consumer());
     updateThread.start();
@@ -122,83 +158,156 @@ public class DatasetIndexUpdateListener {
    * Allows an external process to observe if there are pending actions in the queue. It is only anticipated that
    * integration tests will use this method.
    *
-   * @return The number of events on the backlog to process.
+   * @return The number of events on the backlog to process, including those not yet delivered by the event bus.
    */
   @VisibleForTesting
   public int queuedUpdates() {
-    return Math.max(queue.size(), queuedUpdates.get()); // for safety
+    long undelivered = eventBus instanceof OrderedAsyncEventBus ? ((OrderedAsyncEventBus) eventBus).pending(this) : 0;
+    return (int) undelivered + Math.max(queue.size(), queuedUpdates.get()); // for safety
+  }
+
+  /**
+   * @return the counters of the index updates since startup
+   */
+  public IndexUpdateStats stats() {
+    return new IndexUpdateStats(events.get(), collapsed.get(), added.get(), deleted.get(), batches.get(),
+                                commits.get());
   }
 
   /**
    * The queue consumer updates the SOLR index.
    * Before subscribing to real time changes, if instructed will synchronize the SOLR cube with the database.
+   * <p/>
+   * Events are drained from the queue in batches of up to {@link #batchSize} events. All events of a batch concerning
+   * the same dataset are collapsed so the dataset document is built and written only once, reflecting the latest
+   * change. The changes are made visible with a soft commit at most once per commit interval, or immediately after a
+   * batch if the previous commit is older than that. Once the queue is drained a hard commit is used instead, so the
+   * changes are durable before the high water mark moves past them. Events stay counted in {@link #queuedUpdates()}
+   * until committed.
    */
   private class Consumer implements Runnable {
 
+    // the pending changes of the current batch by dataset key, an absent dataset marks a deletion
+    private final Map<UUID, Optional<Dataset>> changes = Maps.newLinkedHashMap();
+    // datasets whose components changed, which are read again once per batch
+    private final Set<UUID> reload = Sets.newLinkedHashSet();
+    private long lastCommit;
+    private int uncommitted;
+
     @Override
     public void run() {
       // Rebuild the index before consuming changes unless instructed to skip
+      // A persistent index only needs the changes since it was last in sync
       if (performIndexSync) {
         try {
-          indexBuilder.build();
+          Date started = new Date();
+          Date since = highWaterMark.get();
+          if (since == null) {
+            indexBuilder.build();
+          } else {
+            indexBuilder.sync(since);
+          }
+          highWaterMark.set(started);
         } catch (Exception e) {
           throw Throwables.propagate(e);
         }
       }
 
       LOG.info("Starting dataset index queue consumer.  Current queue size[{}]", queue.size());
+      Stopwatch sinceReport = Stopwatch.createStarted();
+      List<Object> batch = Lists.newArrayListWithCapacity(batchSize);
       try {
         while (true) {
-          Object event = queue.take();
+          Object event = uncommitted == 0
+            ? queue.take()
+            : queue.poll(Math.max(0, lastCommit + commitIntervalMillis - System.currentTimeMillis()),
+                         TimeUnit.MILLISECONDS);
+
+          if (event != null) {
+            batch.add(event);
+            queue.drainTo(batch, batchSize - 1);
+            for (Object e : batch) {
+              collapse(e);
+            }
+            flush();
+            events.addAndGet(batch.size());
+            batches.incrementAndGet();
+            uncommitted += batch.size();
+            batch.clear();
+          }
+
+          if (uncommitted > 0 && System.currentTimeMillis() >= lastCommit + commitIntervalMillis) {
+            boolean drained = queue.isEmpty();
+            if (commit(drained) && drained) {
+              highWaterMark.set(new Date(lastCommit));
+            }
+            // and now we can safely declare update the queued event count, since it is serviced
+            queuedUpdates.addAndGet(-uncommitted);
+            uncommitted = 0;
+          }
+
+          if (sinceReport.elapsed(TimeUnit.MINUTES) >= REPORT_INTERVAL_MINUTES) {
+            LOG.info("Dataset index updates: {}", stats());
+            sinceReport.reset().start();
+          }
+        }
+      } catch (InterruptedException ex) {
+        LOG.warn("Received interupt request, index synchronization stopped");
+      }
+    }
 
-          if (event.getClass().equals(CreateEvent.class)) {
-            @SuppressWarnings("unchecked")
-            CreateEvent<Dataset> dsEvent = (CreateEvent<Dataset>) event;
-            createOrReplaceDataset(dsEvent.getNewObject());
+    /**
+     * Records the dataset changes caused by a single event, replacing earlier changes to the same datasets.
+     */
+    private void collapse(Object event) {
+      if (event.getClass().equals(CreateEvent.class)) {
+        @SuppressWarnings("unchecked")
+        CreateEvent<Dataset> dsEvent = (CreateEvent<Dataset>) event;
+        update(dsEvent.getNewObject());
 
-          } else if (event.getClass().equals(UpdateEvent.class)) {
-            // Handle dataset, organization and installation updates
-            if (((UpdateEvent<?>) event).getObjectClass().equals(Dataset.class)) {
-              @SuppressWarnings("unchecked")
-              UpdateEvent<Dataset> dsEvent = (UpdateEvent<Dataset>) event;
-              createOrReplaceDataset(dsEvent.getNewObject());
+      } else if (event.getClass().equals(UpdateEvent.class)) {
+        // Handle dataset, organization and installation updates
+        if (((UpdateEvent<?>) event).getObjectClass().equals(Dataset.class)) {
+          @SuppressWarnings("unchecked")
+          UpdateEvent<Dataset> dsEvent = (UpdateEvent<Dataset>) event;
+          update(dsEvent.getNewObject());
 
-            } else if (((UpdateEvent<?>) event).getObjectClass().equals(Organization.class)) {
+        } else if (((UpdateEvent<?>) event).getObjectClass().equals(Organization.class)) {
 
-              @SuppressWarnings("unchecked")
-              UpdateEvent<Organization> oEvent = (UpdateEvent<Organization>) event;
-              handleOrganizationUpdate(oEvent);
+          @SuppressWarnings("unchecked")
+          UpdateEvent<Organization> oEvent = (UpdateEvent<Organization>) event;
+          handleOrganizationUpdate(oEvent);
 
-            } else if (((UpdateEvent<?>) event).getObjectClass().equals(Installation.class)) {
+        } else if (((UpdateEvent<?>) event).getObjectClass().equals(Installation.class)) {
 
-              @SuppressWarnings("unchecked")
-              UpdateEvent<Installation> iEvent = (UpdateEvent<Installation>) event;
-              handleInstallationUpdate(iEvent);
+          @SuppressWarnings("unchecked")
+          UpdateEvent<Installation> iEvent = (UpdateEvent<Installation>) event;
+          handleInstallationUpdate(iEvent);
 
-            }
+        }
 
-          } else if (event.getClass().equals(ChangedComponentEvent.class)) {
-            // we only put tagged datasets onto the queue for this event type!
-            UUID key = ((ChangedComponentEvent)event).getTargetEntityKey();
-            try {
-              Dataset d = datasetService.get( key );
-              createOrReplaceDataset(d);
-            } catch (NotFoundException e) {
-              LOG.error("Cannot update missing dataset {}", key);
-            }
+      } else if (event.getClass().equals(ChangedComponentEvent.class)) {
+        // we only put tagged datasets onto the queue for this event type!
+        UUID key = ((ChangedComponentEvent) event).getTargetEntityKey();
+        countCollapsed(changes.remove(key) != null | !reload.add(key));
 
-          } else if (event.getClass().equals(DeleteEvent.class)) {
-            @SuppressWarnings("unchecked")
-            DeleteEvent<Dataset> dsEvent = (DeleteEvent<Dataset>) event;
-            deleteDataset(dsEvent.getOldObject());
-          }
+      } else if (event.getClass().equals(DeleteEvent.class)) {
+        @SuppressWarnings("unchecked")
+        DeleteEvent<Dataset> dsEvent = (DeleteEvent<Dataset>) event;
+        UUID key = dsEvent.getOldObject().getKey();
+        countCollapsed(reload.remove(key) | changes.put(key, Optional.<Dataset>absent()) != null);
+      }
+    }
 
-          // and now we can safely declare update the queued event count, since it is serviced
-          queuedUpdates.decrementAndGet();
+    private void update(Dataset dataset) {
+      if (dataset != null) {
+        countCollapsed(reload.remove(dataset.getKey()) | changes.put(dataset.getKey(), Optional.of(dataset)) != null);
+      }
+    }
 
-        }
-      } catch (InterruptedException ex) {
-        LOG.warn("Received interupt request, index synchronization stopped");
+    private void countCollapsed(boolean replacedEarlierChange) {
+      if (replacedEarlierChange) {
+        collapsed.incrementAndGet();
       }
     }
 
@@ -251,39 +360,136 @@ public class DatasetIndexUpdateListener {
       } while (!results.isEndOfRecords());
     }
 
-    private void createOrReplaceDataset(Dataset dataset) {
-      if (dataset != null) {
-        SolrInputDocument doc = docConverter.build(dataset);
+    /**
+     * Adds the datasets to the batch, writing the batch early if large organizations exceed the batch size.
+     */
+    private void updateDatasets(List<Dataset> datasets) {
+      for (Dataset d : datasets) {
+        update(d);
+      }
+      if (changes.size() >= batchSize) {
+        flush();
+      }
+    }
+
+    /**
+     * Writes the collapsed changes of the batch to SOLR without committing them.
+     */
+    private void flush() {
+      for (UUID key : reload) {
         try {
-          solrServer.add(doc);
-          solrServer.commit();
-        } catch (Exception e) {
-          LOG.error("CRITICAL: Unable to update SOLR - index is now out of sync", e);
+          changes.put(key, Optional.fromNullable(datasetService.get(key)));
+        } catch (NotFoundException e) {
+          LOG.error("Cannot update missing dataset {}", key);
         }
       }
-    }
+      reload.clear();
 
-    private void updateDatasets(List<Dataset> datasets) {
-      LOG.debug("Batch updating {} datasets in SOLR", datasets.size());
       List<SolrInputDocument> docs = Lists.newArrayList();
-      for (Dataset d : datasets) {
-        docs.add(docConverter.build(d));
+      List<String> deletes = Lists.newArrayList();
+      for (Map.Entry<UUID, Optional<Dataset>> change : changes.entrySet()) {
+        if (change.getValue().isPresent()) {
+          docs.add(docConverter.build(change.getValue().get()));
+        } else {
+          deletes.add(String.valueOf(change.getKey()));
+        }
       }
+      changes.clear();
+
+      LOG.debug("Batch updating {} and deleting {} datasets in SOLR", docs.size(), deletes.size());
       try {
-        solrServer.add(docs);
-        solrServer.commit();
+        if (!docs.isEmpty()) {
+          solrServer.add(docs);
+          added.addAndGet(docs.size());
+        }
+        if (!deletes.isEmpty()) {
+          solrServer.deleteById(deletes);
+          deleted.addAndGet(deletes.size());
+        }
       } catch (Exception e) {
         LOG.error("CRITICAL: Unable to update SOLR - index is now out of sync", e);
       }
     }
 
-    private void deleteDataset(Dataset dataset) {
+    /**
+     * Opens a new searcher to make the written changes visible. A soft commit does not wait for the changes to be
+     * flushed to disk, a hard commit does and so survives a restart of SOLR.
+     *
+     * @return true if the commit succeeded
+     */
+    private boolean commit(boolean hard) {
+      boolean committed = false;
       try {
-        solrServer.deleteById(String.valueOf(dataset.getKey()));
-        solrServer.commit();
+        if (hard) {
+          solrServer.commit(true, true, false);
+        } else {
+          solrServer.commit(false, true, true);
+        }
+        commits.incrementAndGet();
+        committed = true;
       } catch (Exception e) {
-        LOG.error("CRITICAL: Unable to delete from SOLR - index is now out of sync", e);
+        LOG.error("CRITICAL: Unable to commit SOLR - index is now out of sync", e);
       }
+      lastCommit = System.currentTimeMillis();
+      return committed;
+    }
+  }
+
+  /**
+   * Counters of the index updates, where collapsed events are those replaced by a later event of the same batch.
+   */
+  public static class IndexUpdateStats {
+
+    private final long events;
+    private final long collapsed;
+    private final long added;
+    private final long deleted;
+    private final long batches;
+    private final long commits;
+
+    IndexUpdateStats(long events, long collapsed, long added, long deleted, long batches, long commits) {
+      this.events = events;
+      this.collapsed = collapsed;
+      this.added = added;
+      this.deleted = deleted;
+      this.batches = batches;
+      this.commits = commits;
+    }
+
+    public long getEvents() {
+      return events;
+    }
+
+    public long getCollapsed() {
+      return collapsed;
+    }
+
+    public long getAdded() {
+      return added;
+    }
+
+    public long getDeleted() {
+      return deleted;
+    }
+
+    public long getBatches() {
+      return batches;
+    }
+
+    public long getCommits() {
+      return commits;
+    }
+
+    @Override
+    public String toString() {
+      return Objects.toStringHelper(this)
+        .add("events", events)
+        .add("collapsed", collapsed)
+        .add("added", added)
+        .add("deleted", deleted)
+        .add("batches", batches)
+        .add("commits", commits)
+        .toString();
     }
   }
 }
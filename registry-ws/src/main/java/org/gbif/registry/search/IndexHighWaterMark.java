@@ -0,0 +1,99 @@
+/*
+ * Copyright 2013 Global Biodiversity Information Facility (GBIF)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gbif.registry.search;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+import javax.annotation.Nullable;
+
+import com.google.common.base.Charsets;
+import com.google.common.io.Files;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The time up to which all dataset changes are known to be in a persistent dataset index, stored next to the index.
+ * <p/>
+ * On startup only the datasets changed since the mark need to be indexed again, instead of all datasets. The mark
+ * is taken from the clock of the webservice while dataset modification dates come from the database and events of
+ * changes reach the index with a delay, so the mark returned is moved back by a safety margin. Datasets changed
+ * within that margin are indexed twice, which is harmless.
+ * <p/>
+ * An in memory index starts empty every time, so it has no mark at all.
+ */
+public class IndexHighWaterMark {
+
+  private static final Logger LOG = LoggerFactory.getLogger(IndexHighWaterMark.class);
+  public static final String FILENAME = "highWaterMark";
+  private static final long SAFETY_MARGIN_MILLIS = TimeUnit.MINUTES.toMillis(10);
+
+  @Nullable
+  private final File file;
+
+  /**
+   * @param indexDir the data directory of a persistent index, null for an in memory index
+   */
+  public IndexHighWaterMark(@Nullable File indexDir) {
+    file = indexDir == null ? null : new File(indexDir, FILENAME);
+  }
+
+  public boolean isPersistent() {
+    return file != null;
+  }
+
+  /**
+   * @return the time since which datasets need to be indexed again, or null if the whole index needs to be built
+   */
+  @Nullable
+  public Date get() {
+    if (file == null || !file.exists()) {
+      return null;
+    }
+    try {
+      long mark = Long.parseLong(Files.toString(file, Charsets.UTF_8).trim());
+      return new Date(mark - SAFETY_MARGIN_MILLIS);
+    } catch (IOException e) {
+      LOG.warn("Cannot read index high water mark from {}", file, e);
+    } catch (NumberFormatException e) {
+      LOG.warn("Invalid index high water mark in {}", file);
+    }
+    return null;
+  }
+
+  /**
+   * Stores the time up to which all changes are committed to the index. Does nothing for an in memory index.
+   */
+  public void set(Date mark) {
+    if (file == null) {
+      return;
+    }
+    // write and rename so a crash never leaves a partially written mark behind
+    File tmp = new File(file.getParentFile(), FILENAME + ".tmp");
+    try {
+      Files.createParentDirs(tmp);
+      Files.write(String.valueOf(mark.getTime()), tmp, Charsets.UTF_8);
+      if (!tmp.renameTo(file)) {
+        Files.copy(tmp, file);
+        tmp.delete();
+      }
+      LOG.debug("Index high water mark set to {}", mark);
+    } catch (IOException e) {
+      LOG.warn("Cannot store index high water mark in {}", file, e);
+    }
+  }
+}
@@ -8,10 +8,12 @@ import org.gbif.api.service.registry.OrganizationService;
 import org.gbif.registry.search.DatasetIndexBuilder;
 import org.gbif.registry.search.DatasetIndexUpdateListener;
 import org.gbif.registry.search.DatasetSearchServiceSolr;
+import org.gbif.registry.search.IndexHighWaterMark;
 import org.gbif.registry.ws.resources.DatasetResource;
 import org.gbif.registry.ws.resources.InstallationResource;
 import org.gbif.registry.ws.resources.NodeResource;
 import org.gbif.registry.ws.resources.OrganizationResource;
+import org.gbif.registry.ws.util.DatasetMetadataCache;
 import org.gbif.service.guice.PrivateServiceModule;
 
 import java.io.File;
@@ -24,8 +26,12 @@ import java.net.URL;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.Properties;
+import javax.annotation.Nullable;
 
+import com.google.common.base.Charsets;
 import com.google.common.io.Closer;
+import com.google.common.io.Files;
+import com.google.common.xml.XmlEscapers;
 import com.google.inject.Exposed;
 import com.google.inject.Provides;
 import com.google.inject.Scopes;
@@ -64,6 +70,12 @@ import org.apache.solr.core.CoreContainer;
 public class RegistrySearchModule extends PrivateServiceModule {
 
   private static final String REGISTRY_PROPERTY_PREFIX = "registry.search.";
+  private static final String METADATA_CACHE_PROPERTY = "registry.metadata.cacheBytes";
+  // 64MB of source documents by default
+  private static final long DEFAULT_METADATA_CACHE_BYTES = 64 * 1024 * 1024;
+  private static final String INDEX_DIR_PROPERTY = "registry.search.indexDir";
+  // memory mapped files perform best on 64bit systems, solr.NIOFSDirectoryFactory being the alternative otherwise
+  private static final String PERSISTENT_DIRECTORY_FACTORY = "solr.MMapDirectoryFactory";
 
   public RegistrySearchModule(Properties properties) {
     super(REGISTRY_PROPERTY_PREFIX, properties);
@@ -85,6 +97,13 @@ public class RegistrySearchModule extends PrivateServiceModule {
     expose(DatasetService.class); // for testing
     expose(NodeService.class); // for testing
 
+    // the sync state of a persistent index, kept next to the index itself
+    bind(IndexHighWaterMark.class).toInstance(new IndexHighWaterMark(indexDir()));
+
+    // parsed metadata documents used to augment datasets, bounded by the size of the source documents
+    bind(DatasetMetadataCache.class).toInstance(new DatasetMetadataCache(metadataCacheBytes()));
+    expose(DatasetMetadataCache.class); // for testing
+
     // 6 email properties:
     // use dev email?
     mapAndExposeBool("mail.devemail.enabled","useDevEmail");
@@ -102,6 +121,23 @@ public class RegistrySearchModule extends PrivateServiceModule {
     mapAndExpose("solr.home","solr.home");
   }
 
+  /**
+   * @return the configured maximum size of the metadata cache in bytes, 0 to disable it
+   */
+  private long metadataCacheBytes() {
+    String bytes = getVerbatimProperties().getProperty(METADATA_CACHE_PROPERTY);
+    return bytes == null ? DEFAULT_METADATA_CACHE_BYTES : Long.valueOf(bytes.trim());
+  }
+
+  /**
+   * @return the configured data directory of a persistent index or null to keep the index in memory
+   */
+  @Nullable
+  private File indexDir() {
+    String dir = getVerbatimProperties().getProperty(INDEX_DIR_PROPERTY);
+    return dir == null || dir.trim().isEmpty() ? null : new File(dir.trim());
+  }
+
   /**
    * Map the String property "fromProperty" to and String named annotation "name".
    */
@@ -143,9 +179,30 @@ public class RegistrySearchModule extends PrivateServiceModule {
   public SolrServer datasetSolr(@Named("solr.home") String solrHome) throws URISyntaxException, IOException {
     Path tmpSolrHome = createTempSolrDirectory(solrHome);
     File conf = new File(tmpSolrHome.toFile().getAbsolutePath(), "solr.xml");
+    File indexDir = indexDir();
+    if (indexDir != null) {
+      writePersistentSolrXml(conf, indexDir);
+    }
     return new EmbeddedSolrServer(CoreContainer.createAndLoad(tmpSolrHome.toFile().getAbsolutePath(), conf), "dataset");
   }
 
+  /**
+   * Replaces the in memory core definition with one keeping the index in the given directory, which unlike the solr
+   * home is not cleaned on startup.
+   */
+  private static void writePersistentSolrXml(File solrXml, File indexDir) throws IOException {
+    indexDir.mkdirs();
+    String dataDir = XmlEscapers.xmlAttributeEscaper().escape(indexDir.getAbsolutePath());
+    Files.write(
+      "<solr persistent=\"false\">\n"
+      + "  <cores defaultCoreName=\"dataset\">\n"
+      + "    <core name=\"dataset\" instanceDir=\"dataset\" dataDir=\"" + dataDir + "\">\n"
+      + "      <property name=\"solr.directoryFactory\" value=\"" + PERSISTENT_DIRECTORY_FACTORY + "\"/>\n"
+      + "    </core>\n"
+      + "  </cores>\n"
+      + "</solr>\n", solrXml, Charsets.UTF_8);
+  }
+
   /**
    * Creates a temporary Solr directory containing all the Solr configuration files.
    */
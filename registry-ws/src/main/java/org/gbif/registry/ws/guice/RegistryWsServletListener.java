@@ -16,11 +16,15 @@ import org.gbif.drupal.guice.DrupalMyBatisModule;
 import org.gbif.occurrence.query.TitleLookupModule;
 import org.gbif.registry.doi.DoiModule;
 import org.gbif.registry.events.EventModule;
+import org.gbif.registry.events.MessageSendingEventListener;
+import org.gbif.registry.events.OrderedAsyncEventBus;
 import org.gbif.registry.events.VarnishPurgeModule;
+import org.gbif.registry.events.VarnishPurger;
 import org.gbif.registry.ims.ImsModule;
 import org.gbif.registry.persistence.guice.RegistryMyBatisModule;
 import org.gbif.registry.search.guice.RegistrySearchModule;
 import org.gbif.registry.ws.filter.AuthResponseCodeOverwriteFilter;
+import org.gbif.registry.ws.resources.OccurrenceDownloadResource;
 import org.gbif.registry.ws.security.EditorAuthorizationFilter;
 import org.gbif.registry.ws.security.LegacyAuthorizationFilter;
 import org.gbif.utils.file.properties.PropertiesUtil;
@@ -30,10 +34,14 @@ import org.gbif.ws.server.guice.GbifServletListener;
 import java.io.IOException;
 import java.util.List;
 import java.util.Properties;
+import javax.servlet.ServletContextEvent;
 
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.collect.Lists;
+import com.google.common.eventbus.EventBus;
+import com.google.inject.Binding;
 import com.google.inject.Injector;
+import com.google.inject.Key;
 import com.google.inject.Module;
 import com.sun.jersey.spi.container.ContainerRequestFilter;
 import com.sun.jersey.spi.container.ContainerResponseFilter;
@@ -83,6 +91,30 @@ public class RegistryWsServletListener extends GbifServletListener {
                               new TitleLookupModule(true, properties.getProperty(API_URL_PROPERTY)));
   }
 
+  /**
+   * Stops the event delivery and download DOI registration and sends the registry change messages and varnish
+   * invalidations still collected before the context goes away.
+   */
+  @Override
+  public void contextDestroyed(ServletContextEvent servletContextEvent) {
+    Injector injector = getInjector();
+    injector.getInstance(OccurrenceDownloadResource.class).shutdown();
+    EventBus eventBus = injector.getInstance(EventBus.class);
+    if (eventBus instanceof OrderedAsyncEventBus) {
+      ((OrderedAsyncEventBus) eventBus).shutdown();
+    }
+    Binding<MessageSendingEventListener> messages =
+      injector.getExistingBinding(Key.get(MessageSendingEventListener.class));
+    if (messages != null) {
+      messages.getProvider().get().shutdown();
+    }
+    Binding<VarnishPurger> purger = injector.getExistingBinding(Key.get(VarnishPurger.class));
+    if (purger != null) {
+      purger.getProvider().get().shutdown();
+    }
+    super.contextDestroyed(servletContextEvent);
+  }
+
   @VisibleForTesting
   @Override
   protected Injector getInjector() {
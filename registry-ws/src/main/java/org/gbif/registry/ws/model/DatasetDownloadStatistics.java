@@ -0,0 +1,40 @@
+package org.gbif.registry.ws.model;
+
+import java.util.Date;
+
+/**
+ * The number of occurrence downloads using a dataset within one month, and the number of records downloaded from it.
+ */
+public class DatasetDownloadStatistics {
+
+  private Date month;
+  private long downloads;
+  private long records;
+
+  /**
+   * @return the first day of the month the downloads were created in
+   */
+  public Date getMonth() {
+    return month;
+  }
+
+  public void setMonth(Date month) {
+    this.month = month;
+  }
+
+  public long getDownloads() {
+    return downloads;
+  }
+
+  public void setDownloads(long downloads) {
+    this.downloads = downloads;
+  }
+
+  public long getRecords() {
+    return records;
+  }
+
+  public void setRecords(long records) {
+    this.records = records;
+  }
+}
@@ -30,6 +30,9 @@ import org.gbif.registry.events.ChangedComponentEvent;
 import org.gbif.registry.events.CreateEvent;
 import org.gbif.registry.events.DeleteEvent;
 import org.gbif.registry.events.UpdateEvent;
+import org.gbif.registry.persistence.ComponentLoader;
+import org.gbif.registry.persistence.ContinuationToken;
+import org.gbif.registry.persistence.Transactions;
 import org.gbif.registry.persistence.WithMyBatis;
 import org.gbif.registry.persistence.mapper.BaseNetworkEntityMapper;
 import org.gbif.registry.persistence.mapper.CommentMapper;
@@ -41,11 +44,14 @@ import org.gbif.registry.persistence.mapper.TagMapper;
 import org.gbif.registry.ws.guice.Trim;
 import org.gbif.registry.ws.security.EditorAuthorizationService;
 import org.gbif.registry.ws.security.UserRoles;
+import org.gbif.registry.ws.util.NdjsonExport;
 import org.gbif.ws.server.interceptor.NullToNotFound;
 import org.gbif.ws.util.ExtraMediaTypes;
 
+import java.util.Date;
 import java.util.List;
 import java.util.UUID;
+import java.util.concurrent.TimeUnit;
 import javax.annotation.Nullable;
 import javax.annotation.security.RolesAllowed;
 import javax.validation.Valid;
@@ -53,7 +59,9 @@ import javax.validation.constraints.NotNull;
 import javax.validation.groups.Default;
 import javax.ws.rs.Consumes;
 import javax.ws.rs.DELETE;
+import javax.ws.rs.DefaultValue;
 import javax.ws.rs.GET;
+import javax.ws.rs.HeaderParam;
 import javax.ws.rs.POST;
 import javax.ws.rs.PUT;
 import javax.ws.rs.Path;
@@ -62,13 +70,19 @@ import javax.ws.rs.Produces;
 import javax.ws.rs.QueryParam;
 import javax.ws.rs.WebApplicationException;
 import javax.ws.rs.core.Context;
+import javax.ws.rs.core.HttpHeaders;
 import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.Response;
 import javax.ws.rs.core.SecurityContext;
+import javax.xml.bind.DatatypeConverter;
 
 import com.google.common.base.CharMatcher;
+import com.google.common.base.Function;
 import com.google.common.base.Preconditions;
 import com.google.common.base.Strings;
+import com.google.common.base.Supplier;
+import com.google.common.base.Suppliers;
+import com.google.common.collect.Lists;
 import com.google.common.eventbus.EventBus;
 import org.apache.bval.guice.Validate;
 import org.mybatis.guice.transactional.Transactional;
@@ -97,6 +111,10 @@ import static com.google.common.base.Preconditions.checkArgument;
 @Consumes(MediaType.APPLICATION_JSON)
 public class BaseNetworkEntityResource<T extends NetworkEntity> implements NetworkEntityService<T> {
 
+  public static final String CONTINUATION_TOKEN_HEADER = "X-Continuation-Token";
+  private static final int MAX_KEYSET_LIMIT = 1000;
+  private static final long COUNT_CACHE_MINUTES = 5;
+
   private final BaseNetworkEntityMapper<T> mapper;
   private final CommentMapper commentMapper;
   private final MachineTagMapper machineTagMapper;
@@ -107,9 +125,13 @@ public class BaseNetworkEntityResource<T extends NetworkEntity> implements Netwo
   private final Class<T> objectClass;
   private final EventBus eventBus;
   private final EditorAuthorizationService userAuthService;
+  private final ComponentLoader componentLoader;
+  private final Transactions transactions;
+  private final Supplier<Long> cachedCount;
+  private final ThreadLocal<List<Object>> deferredEvents = new ThreadLocal<List<Object>>();
 
   protected BaseNetworkEntityResource(
-    BaseNetworkEntityMapper<T> mapper,
+    final BaseNetworkEntityMapper<T> mapper,
     CommentMapper commentMapper,
     ContactMapper contactMapper,
     EndpointMapper endpointMapper,
@@ -118,7 +140,9 @@ public class BaseNetworkEntityResource<T extends NetworkEntity> implements Netwo
     TagMapper tagMapper,
     Class<T> objectClass,
     EventBus eventBus,
-    EditorAuthorizationService userAuthService) {
+    EditorAuthorizationService userAuthService,
+    ComponentLoader componentLoader,
+    Transactions transactions) {
     this.mapper = mapper;
     this.commentMapper = commentMapper;
     this.machineTagMapper = machineTagMapper;
@@ -129,6 +153,15 @@ public class BaseNetworkEntityResource<T extends NetworkEntity> implements Netwo
     this.objectClass = objectClass;
     this.eventBus = eventBus;
     this.userAuthService = userAuthService;
+    this.componentLoader = componentLoader;
+    this.transactions = transactions;
+    // counting all entities is expensive and an exact number is rarely needed when paging by keyset
+    this.cachedCount = Suppliers.memoizeWithExpiration(new Supplier<Long>() {
+      @Override
+      public Long get() {
+        return (long) mapper.count();
+      }
+    }, COUNT_CACHE_MINUTES, TimeUnit.MINUTES);
   }
 
   /**
@@ -168,7 +201,7 @@ public class BaseNetworkEntityResource<T extends NetworkEntity> implements Netwo
   @Override
   public UUID create(@Valid T entity) {
     WithMyBatis.create(mapper, entity);
-    eventBus.post(CreateEvent.newInstance(entity, objectClass));
+    post(CreateEvent.newInstance(entity, objectClass));
     return entity.getKey();
   }
 
@@ -188,7 +221,7 @@ public class BaseNetworkEntityResource<T extends NetworkEntity> implements Netwo
   public void delete(@PathParam("key") UUID key) {
     T objectToDelete = get(key);
     WithMyBatis.delete(mapper, key);
-    eventBus.post(DeleteEvent.newInstance(objectToDelete, objectClass));
+    post(DeleteEvent.newInstance(objectToDelete, objectClass));
   }
 
   @GET
@@ -210,19 +243,105 @@ public class BaseNetworkEntityResource<T extends NetworkEntity> implements Netwo
     page = page == null ? new PagingRequest() : page;
     // trim and handle null from given input
     String q = Strings.nullToEmpty(CharMatcher.WHITESPACE.trimFrom(query));
-    return WithMyBatis.search(mapper, q, page);
+    return withComponents(WithMyBatis.search(mapper, q, page));
   }
 
   @Override
   public PagingResponse<T> list(@Nullable Pageable page) {
     page = page == null ? new PagingRequest() : page;
-    return WithMyBatis.list(mapper, page);
+    return withComponents(WithMyBatis.list(mapper, page));
+  }
+
+  /**
+   * Lists entities in the order of {@link #list(Pageable)} using keyset paging: each page continues right after the
+   * last entity of the previous page, so deep pages cost the same as the first one. The token continuing the listing
+   * is returned in the {@link #CONTINUATION_TOKEN_HEADER} header and is missing once the last page is reached.
+   * <p/>
+   * The total count is only included on request and is then served from a cache, so it might be slightly outdated.
+   *
+   * @param token the continuation token of the previous page, none for the first page
+   */
+  @GET
+  @Path("keyset")
+  public Response listKeyset(@Nullable @QueryParam("continuationToken") String token,
+    @QueryParam("limit") @DefaultValue("20") int limit, @QueryParam("count") @DefaultValue("false") boolean count) {
+    checkArgument(limit > 0 && limit <= MAX_KEYSET_LIMIT, "Limit must be between 1 and " + MAX_KEYSET_LIMIT);
+    List<T> results = augment(listAfter(ContinuationToken.decode(token), limit));
+    PagingResponse<T> response = new PagingResponse<T>(0, limit, count ? cachedCount.get() : null, results);
+    response.setEndOfRecords(results.size() < limit);
+    Response.ResponseBuilder builder = Response.ok(response);
+    if (!response.isEndOfRecords()) {
+      builder.header(CONTINUATION_TOKEN_HEADER, ContinuationToken.after(results.get(results.size() - 1)).encode());
+    }
+    return builder.build();
+  }
+
+  /**
+   * Lists the entities with their sub resources following the given position, see {@link #listKeyset}. The entities
+   * are not passed through {@link #augment(List)}, which is left to the caller.
+   *
+   * @param after the position of the last entity of the previous page, null for the first page
+   */
+  public List<T> listAfter(@Nullable ContinuationToken after, int limit) {
+    List<T> results = after == null
+      ? mapper.listAfter(null, null, limit)
+      : mapper.listAfter(after.getCreated(), after.getKey(), limit);
+    return componentLoader.load(mapper, results);
+  }
+
+  /**
+   * Streams all entities as newline delimited JSON in creation order, optionally only those modified since a given
+   * date. Unlike paging over the list this reads the entities in a single query, writing them while they are read.
+   * The response is gzip compressed if the client accepts it.
+   *
+   * @param modifiedSince ISO 8601 date or timestamp, all entities if not given
+   */
+  @GET
+  @Path("export")
+  @Produces(NdjsonExport.MEDIA_TYPE)
+  public Response export(@Nullable @QueryParam("modifiedSince") String modifiedSince,
+    @Nullable @HeaderParam(HttpHeaders.ACCEPT_ENCODING) String acceptEncoding) {
+    Date since = null;
+    if (!Strings.isNullOrEmpty(modifiedSince)) {
+      try {
+        since = DatatypeConverter.parseDateTime(modifiedSince).getTime();
+      } catch (IllegalArgumentException e) {
+        throw new IllegalArgumentException("Invalid modifiedSince date " + modifiedSince, e);
+      }
+    }
+    boolean gzip = NdjsonExport.acceptsGzip(acceptEncoding);
+    Response.ResponseBuilder builder = Response.ok(new NdjsonExport<T>(mapper, componentLoader, transactions,
+      new Function<List<T>, List<T>>() {
+        @Override
+        public List<T> apply(List<T> entities) {
+          return augment(entities);
+        }
+      }, since, gzip));
+    if (gzip) {
+      builder.header(HttpHeaders.CONTENT_ENCODING, "gzip");
+    }
+    return builder.build();
+  }
+
+  /**
+   * Hook to complete listed entities before they are returned, returning them unchanged by default.
+   */
+  protected List<T> augment(List<T> entities) {
+    return entities;
   }
 
   @Override
   public PagingResponse<T> listByIdentifier(IdentifierType type, String identifier, @Nullable Pageable page) {
     page = page == null ? new PagingRequest() : page;
-    return WithMyBatis.listByIdentifier(mapper, type, identifier, page);
+    return withComponents(WithMyBatis.listByIdentifier(mapper, type, identifier, page));
+  }
+
+  /**
+   * The list queries return the entities without their sub resources, which are loaded for the whole page here.
+   */
+  private PagingResponse<T> withComponents(PagingResponse<T> response) {
+    componentLoader.load(mapper, response.getResults());
+    return response;
   }
 
   @Override
@@ -257,7 +376,7 @@ public class BaseNetworkEntityResource<T extends NetworkEntity> implements Netwo
     WithMyBatis.update(mapper, entity);
     // get complete entity with components populated, so subscribers of UpdateEvent can compare new and old entities
     T newEntity = get(entity.getKey());
-    eventBus.post(UpdateEvent.newInstance(newEntity, oldEntity, objectClass));
+    post(UpdateEvent.newInstance(newEntity, oldEntity, objectClass));
   }
 
   /**
@@ -285,7 +404,7 @@ public class BaseNetworkEntityResource<T extends NetworkEntity> implements Netwo
   @Override
   public int addComment(UUID targetEntityKey, @Valid Comment comment) {
     int key = WithMyBatis.addComment(commentMapper, mapper, targetEntityKey, comment);
-    eventBus.post(ChangedComponentEvent.newInstance(targetEntityKey, objectClass, Comment.class));
+    post(ChangedComponentEvent.newInstance(targetEntityKey, objectClass, Comment.class));
     return key;
   }
 
@@ -302,7 +421,7 @@ public class BaseNetworkEntityResource<T extends NetworkEntity> implements Netwo
   @Override
   public void deleteComment(@NotNull @PathParam("key") UUID targetEntityKey, @PathParam("commentKey") int commentKey) {
     WithMyBatis.deleteComment(mapper, targetEntityKey, commentKey);
-    eventBus.post(ChangedComponentEvent.newInstance(targetEntityKey, objectClass, Comment.class));
+    post(ChangedComponentEvent.newInstance(targetEntityKey, objectClass, Comment.class));
   }
 
   @GET
@@ -430,7 +549,7 @@ public class BaseNetworkEntityResource<T extends NetworkEntity> implements Netwo
   @Override
   public int addTag(UUID targetEntityKey, @Valid Tag tag) {
     int key = WithMyBatis.addTag(tagMapper, mapper, targetEntityKey, tag);
-    eventBus.post(ChangedComponentEvent.newInstance(targetEntityKey, objectClass, Tag.class));
+    post(ChangedComponentEvent.newInstance(targetEntityKey, objectClass, Tag.class));
     return key;
   }
 
@@ -447,7 +566,7 @@ public class BaseNetworkEntityResource<T extends NetworkEntity> implements Netwo
   @Override
   public void deleteTag(@PathParam("key") UUID targetEntityKey, @PathParam("tagKey") int tagKey) {
     WithMyBatis.deleteTag(mapper, targetEntityKey, tagKey);
-    eventBus.post(ChangedComponentEvent.newInstance(targetEntityKey, objectClass, Tag.class));
+    post(ChangedComponentEvent.newInstance(targetEntityKey, objectClass, Tag.class));
   }
 
   @GET
@@ -482,7 +601,7 @@ public class BaseNetworkEntityResource<T extends NetworkEntity> implements Netwo
   @Override
   public int addContact(UUID targetEntityKey, @Valid Contact contact) {
     int key = WithMyBatis.addContact(contactMapper, mapper, targetEntityKey, contact);
-    eventBus.post(ChangedComponentEvent.newInstance(targetEntityKey, objectClass, Contact.class));
+    post(ChangedComponentEvent.newInstance(targetEntityKey, objectClass, Contact.class));
     return key;
   }
 
@@ -513,7 +632,7 @@ public class BaseNetworkEntityResource<T extends NetworkEntity> implements Netwo
   @Override
   public void updateContact(UUID targetEntityKey, @Valid Contact contact) {
     WithMyBatis.updateContact(contactMapper, mapper, targetEntityKey, contact);
-    eventBus.post(ChangedComponentEvent.newInstance(targetEntityKey, objectClass, Contact.class));
+    post(ChangedComponentEvent.newInstance(targetEntityKey, objectClass, Contact.class));
   }
 
   /**
@@ -529,7 +648,7 @@ public class BaseNetworkEntityResource<T extends NetworkEntity> implements Netwo
   @Override
   public void deleteContact(@PathParam("key") UUID targetEntityKey, @PathParam("contactKey") int contactKey) {
     WithMyBatis.deleteContact(mapper, targetEntityKey, contactKey);
-    eventBus.post(ChangedComponentEvent.newInstance(targetEntityKey, objectClass, Contact.class));
+    post(ChangedComponentEvent.newInstance(targetEntityKey, objectClass, Contact.class));
   }
 
   @GET
@@ -568,7 +687,7 @@ public class BaseNetworkEntityResource<T extends NetworkEntity> implements Netwo
     T newEntity = get(targetEntityKey);
     // posts an UpdateEvent instead of a ChangedComponentEvent, otherwise the crawler would have to start subscribing
     // to ChangedComponentEvent instead just to detect when an endpoint has been added to a Dataset
-    eventBus.post(UpdateEvent.newInstance(newEntity, oldEntity, objectClass));
+    post(UpdateEvent.newInstance(newEntity, oldEntity, objectClass));
     return key;
   }
 
@@ -585,7 +704,7 @@ public class BaseNetworkEntityResource<T extends NetworkEntity> implements Netwo
   @Override
   public void deleteEndpoint(@PathParam("key") UUID targetEntityKey, @PathParam("endpointKey") int endpointKey) {
     WithMyBatis.deleteEndpoint(mapper, targetEntityKey, endpointKey);
-    eventBus.post(ChangedComponentEvent.newInstance(targetEntityKey, objectClass, Endpoint.class));
+    post(ChangedComponentEvent.newInstance(targetEntityKey, objectClass, Endpoint.class));
   }
 
   @GET
@@ -619,7 +738,7 @@ public class BaseNetworkEntityResource<T extends NetworkEntity> implements Netwo
   @Override
   public int addIdentifier(UUID targetEntityKey, @Valid Identifier identifier) {
       int key = WithMyBatis.addIdentifier(identifierMapper, mapper, targetEntityKey, identifier);
-      eventBus.post(ChangedComponentEvent.newInstance(targetEntityKey, objectClass, Identifier.class));
+      post(ChangedComponentEvent.newInstance(targetEntityKey, objectClass, Identifier.class));
       return key;
   }
 
@@ -636,7 +755,7 @@ public class BaseNetworkEntityResource<T extends NetworkEntity> implements Netwo
   @Override
   public void deleteIdentifier(@PathParam("key") UUID targetEntityKey, @PathParam("identifierKey") int identifierKey) {
     WithMyBatis.deleteIdentifier(mapper, targetEntityKey, identifierKey);
-    eventBus.post(ChangedComponentEvent.newInstance(targetEntityKey, objectClass, Identifier.class));
+    post(ChangedComponentEvent.newInstance(targetEntityKey, objectClass, Identifier.class));
   }
 
 
@@ -647,6 +766,57 @@ public class BaseNetworkEntityResource<T extends NetworkEntity> implements Netwo
     return WithMyBatis.listIdentifiers(mapper, targetEntityKey);
   }
 
+  /**
+   * Posts the event, unless events are collected by {@link #withCoalescedEvent(UUID, Supplier)}.
+   */
+  protected void post(Object event) {
+    List<Object> deferred = deferredEvents.get();
+    if (deferred == null) {
+      eventBus.post(event);
+    } else {
+      deferred.add(event);
+    }
+  }
+
+  /**
+   * Runs several changes of a single entity and its sub resources in a single transaction, posting a single event for
+   * all of them instead of one per change: a CreateEvent for a new entity, a DeleteEvent for a deleted one and an
+   * UpdateEvent otherwise. Subscribers like the search index or the cache purging then act once on the final state of
+   * the entity.
+   * <p/>
+   * The event is posted once the transaction committed, so subscribers never see uncommitted or rolled back changes.
+   * This must therefore not be called within a transaction, which the changes would join.
+   *
+   * @param key the key of the entity changed, null if the changes create a new entity
+   * @param changes applying all changes and returning the key of the entity
+   * @return the key of the entity
+   */
+  protected UUID withCoalescedEvent(@Nullable UUID key, Supplier<UUID> changes) {
+    T oldEntity = key == null ? null : get(key);
+    List<Object> events = Lists.newArrayList();
+    deferredEvents.set(events);
+    UUID changedKey;
+    try {
+      changedKey = transactions.call(changes);
+    } finally {
+      deferredEvents.remove();
+    }
+    if (events.isEmpty()) {
+      return changedKey;
+    }
+    T newEntity = get(changedKey);
+    if (newEntity == null || newEntity.getDeleted() != null) {
+      if (oldEntity != null) {
+        post(DeleteEvent.newInstance(oldEntity, objectClass));
+      }
+    } else if (oldEntity == null) {
+      post(CreateEvent.newInstance(newEntity, objectClass));
+    } else {
+      post(UpdateEvent.newInstance(newEntity, oldEntity, objectClass));
+    }
+    return changedKey;
+  }
+
   /**
    * Null safe builder to construct a paging response.
    *
@@ -6,9 +6,14 @@ import org.gbif.api.model.registry.DatasetOccurrenceDownloadUsage;
 import org.gbif.api.model.registry.PrePersist;
 import org.gbif.api.service.registry.DatasetOccurrenceDownloadUsageService;
 import org.gbif.registry.persistence.mapper.DatasetOccurrenceDownloadMapper;
+import org.gbif.registry.persistence.mapper.OccurrenceDownloadMapper;
+import org.gbif.registry.ws.model.DatasetDownloadStatistics;
+import org.gbif.registry.ws.util.NdjsonExport;
 import org.gbif.ws.server.interceptor.NullToNotFound;
 import org.gbif.ws.util.ExtraMediaTypes;
 
+import java.io.IOException;
+import java.io.InputStream;
 import java.util.List;
 import java.util.UUID;
 
@@ -26,11 +31,20 @@ import javax.ws.rs.core.Context;
 import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.SecurityContext;
 
+import com.google.common.collect.Lists;
 import com.google.inject.Inject;
 import com.google.inject.Singleton;
 import org.apache.bval.guice.Validate;
+import org.codehaus.jackson.JsonParser;
+import org.codehaus.jackson.JsonProcessingException;
+import org.codehaus.jackson.JsonToken;
+import org.codehaus.jackson.map.DeserializationConfig;
+import org.codehaus.jackson.map.ObjectMapper;
 import org.mybatis.guice.transactional.Transactional;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
+import static com.google.common.base.Preconditions.checkArgument;
 import static org.gbif.registry.ws.security.UserRoles.ADMIN_ROLE;
 import static org.gbif.registry.ws.util.DownloadSecurityUtils.clearSensitiveData;
 
@@ -43,14 +57,23 @@ import static org.gbif.registry.ws.util.DownloadSecurityUtils.clearSensitiveData
 @Consumes(MediaType.APPLICATION_JSON)
 public class DatasetOccurrenceDownloadUsageResource implements DatasetOccurrenceDownloadUsageService {
 
+  private static final Logger LOG = LoggerFactory.getLogger(DatasetOccurrenceDownloadUsageResource.class);
+  // rows per insert statement, keeping the statement parameters well below the postgres limit
+  private static final int BATCH_SIZE = 1000;
+  private static final ObjectMapper MAPPER =
+    new ObjectMapper().configure(DeserializationConfig.Feature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+
   private final DatasetOccurrenceDownloadMapper datasetOccurrenceDownloadMapper;
+  private final OccurrenceDownloadMapper occurrenceDownloadMapper;
 
   @Context
   private SecurityContext securityContext;
 
   @Inject
-  public DatasetOccurrenceDownloadUsageResource(DatasetOccurrenceDownloadMapper datasetOccurrenceDownloadMapper) {
+  public DatasetOccurrenceDownloadUsageResource(DatasetOccurrenceDownloadMapper datasetOccurrenceDownloadMapper,
+    OccurrenceDownloadMapper occurrenceDownloadMapper) {
     this.datasetOccurrenceDownloadMapper = datasetOccurrenceDownloadMapper;
+    this.occurrenceDownloadMapper = occurrenceDownloadMapper;
   }
 
 
@@ -63,6 +86,66 @@ public class DatasetOccurrenceDownloadUsageResource implements DatasetOccurrence
     datasetOccurrenceDownloadMapper.create(downloadDataset);
   }
 
+  /**
+   * Creates all dataset usages of a download in a single transaction. The usages are read from the request body
+   * while they are inserted in batches, either as a JSON array or as newline delimited JSON, so the request size is not
+   * limited by memory.
+   *
+   * @param downloadKey the download all usages belong to
+   * @param usages a JSON array or newline delimited JSON of dataset usages
+   *
+   * @return the number of usages created
+   */
+  @POST
+  @Path("bulk/{downloadKey}")
+  @Consumes({MediaType.APPLICATION_JSON, NdjsonExport.MEDIA_TYPE})
+  @Transactional
+  @RolesAllowed(ADMIN_ROLE)
+  public int createAll(@PathParam("downloadKey") String downloadKey, InputStream usages) {
+    if (occurrenceDownloadMapper.get(downloadKey) == null) {
+      throw new IllegalArgumentException("Download " + downloadKey + " not existing");
+    }
+    int count = 0;
+    try {
+      JsonParser parser = MAPPER.getJsonFactory().createJsonParser(usages);
+      JsonToken token = parser.nextToken();
+      if (token == JsonToken.START_ARRAY) {
+        token = parser.nextToken();
+      }
+      // newline delimited JSON is a sequence of root level objects, so both formats continue with objects here
+      List<DatasetOccurrenceDownloadUsage> batch = Lists.newArrayListWithCapacity(BATCH_SIZE);
+      while (token == JsonToken.START_OBJECT) {
+        DatasetOccurrenceDownloadUsage usage = MAPPER.readValue(parser, DatasetOccurrenceDownloadUsage.class);
+        checkArgument(usage.getDatasetKey() != null, "Dataset usage without dataset key");
+        checkArgument(usage.getDownloadKey() == null || downloadKey.equals(usage.getDownloadKey()),
+          "Dataset usage of download %s posted to download %s", usage.getDownloadKey(), downloadKey);
+        batch.add(usage);
+        if (batch.size() == BATCH_SIZE) {
+          count += insert(downloadKey, batch);
+        }
+        token = parser.nextToken();
+      }
+      checkArgument(token == null || token == JsonToken.END_ARRAY, "Unexpected %s in dataset usages", token);
+      count += insert(downloadKey, batch);
+    } catch (JsonProcessingException e) {
+      throw new IllegalArgumentException("Unreadable dataset usages", e);
+    } catch (IOException e) {
+      throw new IllegalStateException("Failed to read dataset usages of download " + downloadKey, e);
+    }
+    LOG.info("Created {} dataset usages of download {}", count, downloadKey);
+    return count;
+  }
+
+  private int insert(String downloadKey, List<DatasetOccurrenceDownloadUsage> batch) {
+    if (batch.isEmpty()) {
+      return 0;
+    }
+    datasetOccurrenceDownloadMapper.createAll(downloadKey, batch);
+    int inserted = batch.size();
+    batch.clear();
+    return inserted;
+  }
+
   @GET
   @Path("/{datasetKey}")
   @NullToNotFound
@@ -75,4 +158,15 @@ public class DatasetOccurrenceDownloadUsageResource implements DatasetOccurrence
       (long) datasetOccurrenceDownloadMapper.countByDataset(datasetKey), usages);
   }
 
+  /**
+   * Lists the number of downloads using the dataset and the records downloaded from it per month, latest month first.
+   * The statistics are maintained when usages are created, so they are cheap to read for datasets used by very many
+   * downloads.
+   */
+  @GET
+  @Path("/{datasetKey}/statistics")
+  public List<DatasetDownloadStatistics> statisticsByDataset(@PathParam("datasetKey") UUID datasetKey) {
+    return datasetOccurrenceDownloadMapper.statisticsByDataset(datasetKey);
+  }
+
 }
@@ -18,10 +18,13 @@ import org.gbif.api.model.common.paging.Pageable;
 import org.gbif.api.model.common.paging.PagingResponse;
 import org.gbif.api.model.common.search.SearchResponse;
 import org.gbif.api.model.crawler.DatasetProcessStatus;
+import org.gbif.api.model.registry.Comment;
 import org.gbif.api.model.registry.Contact;
 import org.gbif.api.model.registry.Dataset;
+import org.gbif.api.model.registry.Endpoint;
 import org.gbif.api.model.registry.Identifier;
 import org.gbif.api.model.registry.LenientEquals;
+import org.gbif.api.model.registry.MachineTag;
 import org.gbif.api.model.registry.Metadata;
 import org.gbif.api.model.registry.Network;
 import org.gbif.api.model.registry.Organization;
@@ -50,6 +53,9 @@ import org.gbif.doi.service.InvalidMetadataException;
 import org.gbif.registry.doi.DoiGenerator;
 import org.gbif.registry.metadata.EMLWriter;
 import org.gbif.registry.metadata.parse.DatasetParser;
+import org.gbif.registry.persistence.ComponentLoader;
+import org.gbif.registry.persistence.MetadataContent;
+import org.gbif.registry.persistence.Transactions;
 import org.gbif.registry.persistence.WithMyBatis;
 import org.gbif.registry.persistence.mapper.CommentMapper;
 import org.gbif.registry.persistence.mapper.ContactMapper;
@@ -62,15 +68,21 @@ import org.gbif.registry.persistence.mapper.MetadataMapper;
 import org.gbif.registry.persistence.mapper.NetworkMapper;
 import org.gbif.registry.persistence.mapper.OrganizationMapper;
 import org.gbif.registry.persistence.mapper.TagMapper;
+import org.gbif.registry.ws.client.DatasetChangeset;
 import org.gbif.registry.ws.guice.Trim;
 import org.gbif.registry.ws.security.EditorAuthorizationService;
 import org.gbif.registry.ws.util.DataCiteConverter;
+import org.gbif.registry.ws.util.DatasetMetadataCache;
 import org.gbif.ws.server.interceptor.NullToNotFound;
 
+import java.io.BufferedWriter;
 import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.StringWriter;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
 import java.util.Collection;
 import java.util.Date;
 import java.util.List;
@@ -91,12 +103,20 @@ import javax.ws.rs.PathParam;
 import javax.ws.rs.Produces;
 import javax.ws.rs.QueryParam;
 import javax.ws.rs.core.Context;
+import javax.ws.rs.core.EntityTag;
 import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Request;
+import javax.ws.rs.core.Response;
 import javax.ws.rs.core.SecurityContext;
+import javax.ws.rs.core.StreamingOutput;
 
+import com.google.common.base.Charsets;
 import com.google.common.base.Strings;
+import com.google.common.base.Supplier;
 import com.google.common.collect.Lists;
 import com.google.common.eventbus.EventBus;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
 import com.google.common.io.ByteStreams;
 import com.google.common.io.Closeables;
 import com.google.inject.Inject;
@@ -133,7 +153,9 @@ public class DatasetResource extends BaseNetworkEntityResource<Dataset>
   private final NetworkMapper networkMapper;
   private final OrganizationMapper organizationMapper;
   private final DatasetProcessStatusMapper datasetProcessStatusMapper;
+  private final ComponentLoader componentLoader;
   private final DoiGenerator doiGenerator;
+  private final DatasetMetadataCache metadataCache;
 
   /**
    * The messagePublisher can be optional, and optional is not supported in constructor injection.
@@ -146,9 +168,10 @@ public class DatasetResource extends BaseNetworkEntityResource<Dataset>
     MachineTagMapper machineTagMapper, TagMapper tagMapper, IdentifierMapper identifierMapper,
     CommentMapper commentMapper, EventBus eventBus, DatasetSearchService searchService, MetadataMapper metadataMapper,
     DatasetProcessStatusMapper datasetProcessStatusMapper, NetworkMapper networkMapper,
-    EditorAuthorizationService userAuthService, OrganizationMapper organizationMapper, DoiGenerator doiGenerator) {
+    EditorAuthorizationService userAuthService, OrganizationMapper organizationMapper, DoiGenerator doiGenerator,
+    DatasetMetadataCache metadataCache, ComponentLoader componentLoader, Transactions transactions) {
     super(datasetMapper, commentMapper, contactMapper, endpointMapper, identifierMapper, machineTagMapper, tagMapper,
-      Dataset.class, eventBus, userAuthService);
+      Dataset.class, eventBus, userAuthService, componentLoader, transactions);
     this.searchService = searchService;
     this.metadataMapper = metadataMapper;
     this.datasetMapper = datasetMapper;
@@ -159,6 +182,8 @@ public class DatasetResource extends BaseNetworkEntityResource<Dataset>
     this.networkMapper = networkMapper;
     this.organizationMapper = organizationMapper;
     this.doiGenerator = doiGenerator;
+    this.metadataCache = metadataCache;
+    this.componentLoader = componentLoader;
   }
 
   @GET
@@ -220,13 +245,15 @@ public class DatasetResource extends BaseNetworkEntityResource<Dataset>
   @Override
   public PagingResponse<Dataset> listByCountry(Country country, DatasetType type, Pageable page) {
     long total = datasetMapper.countWithFilter(country, type);
-    return pagingResponse(page, total, datasetMapper.listWithFilter(country, type, page));
+    return pagingResponse(page, total,
+      componentLoader.load(datasetMapper, datasetMapper.listWithFilter(country, type, page)));
   }
 
   @Override
   public PagingResponse<Dataset> listByType(DatasetType type, Pageable page) {
     long total = datasetMapper.countWithFilter(null, type);
-    return pagingResponse(page, total, datasetMapper.listWithFilter(null, type, page));
+    return pagingResponse(page, total,
+      componentLoader.load(datasetMapper, datasetMapper.listWithFilter(null, type, page)));
   }
 
 
@@ -240,10 +267,64 @@ public class DatasetResource extends BaseNetworkEntityResource<Dataset>
     return augmentWithMetadata(super.list(page));
   }
 
+  /**
+   * Keyset pages are augmented with the metadata documents like all other listings.
+   */
+  @Override
+  protected List<Dataset> augment(List<Dataset> datasets) {
+    List<Dataset> augmented = Lists.newArrayListWithCapacity(datasets.size());
+    for (Dataset d : datasets) {
+      augmented.add(augmentWithMetadata(d));
+    }
+    return augmented;
+  }
+
+  /**
+   * Augments a single dataset with information from its preferred metadata document.
+   *
+   * @return the augmented dataset, which might be a new instance
+   */
+  public Dataset augmentWithMetadata(Dataset d) {
+    return merge(getPreferredMetadataDataset(d.getKey()), d);
+  }
+
   /**
    * Returns the parsed, preferred metadata document as a dataset.
+   * The parsed document is served from the metadata cache, so the nested EML components of the returned dataset must
+   * not be modified.
    */
   private Dataset getPreferredMetadataDataset(UUID key) {
+    return getPreferredMetadataDataset(listMetadata(key, null));
+  }
+
+  /**
+   * @param docs the metadata of a dataset as listed by {@link #listMetadata(UUID, MetadataType)}
+   */
+  private Dataset getPreferredMetadataDataset(List<Metadata> docs) {
+    if (!docs.isEmpty()) {
+      // the list is sorted by priority already, just pick the first!
+      return metadataCache.get(docs.get(0).getKey(), new DatasetMetadataCache.DocumentLoader() {
+        @Override
+        public byte[] load(int metadataKey) {
+          byte[] content = metadataMapper.getDocument(metadataKey);
+          try {
+            return content == null ? null : MetadataContent.decompress(content);
+          } catch (IOException e) {
+            LOG.error("Stored metadata document {} cannot be decompressed", metadataKey, e);
+            return null;
+          }
+        }
+      });
+    }
+
+    return null;
+  }
+
+  /**
+   * Returns a freshly parsed, preferred metadata document as a dataset which can be modified without affecting the
+   * metadata cache.
+   */
+  private Dataset parsePreferredMetadataDataset(UUID key) {
     List<Metadata> docs = listMetadata(key, null);
     if (!docs.isEmpty()) {
       InputStream stream = null;
@@ -267,11 +348,7 @@ public class DatasetResource extends BaseNetworkEntityResource<Dataset>
    * @return a the same paging response with a new list of augmented dataset instances
    */
   private PagingResponse<Dataset> augmentWithMetadata(PagingResponse<Dataset> resp) {
-    List<Dataset> augmented = Lists.newArrayList();
-    for (Dataset d : resp.getResults()) {
-      augmented.add(merge(getPreferredMetadataDataset(d.getKey()), d));
-    }
-    resp.setResults(augmented);
+    resp.setResults(augment(resp.getResults()));
     return resp;
   }
 
@@ -339,20 +416,18 @@ public class DatasetResource extends BaseNetworkEntityResource<Dataset>
     return target;
   }
 
-  @Path("{key}/document")
-  @GET
-  @Produces(MediaType.APPLICATION_XML)
+  /**
+   * Generates the EML document of the fully augmented dataset for callers within the same JVM. Http clients are served
+   * by {@link #getMetadataDocument(UUID, Request)} which streams the document instead.
+   */
   @Override
-  public InputStream getMetadataDocument(@PathParam("key") UUID datasetKey) {
-    // the fully augmented dataset
+  public InputStream getMetadataDocument(UUID datasetKey) {
     Dataset dataset = get(datasetKey);
     if (dataset != null) {
-      // generate new EML
       try {
-        StringWriter eml = new StringWriter();
-        EMLWriter.write(dataset, eml);
-        return new ByteArrayInputStream(eml.toString().getBytes("UTF-8"));
-
+        ByteArrayOutputStream eml = new ByteArrayOutputStream();
+        writeEml(dataset, eml);
+        return new ByteArrayInputStream(eml.toByteArray());
       } catch (Exception e) {
         throw new ServiceUnavailableException("Failed to serialize dataset " + datasetKey, e);
       }
@@ -360,6 +435,115 @@ public class DatasetResource extends BaseNetworkEntityResource<Dataset>
     return null;
   }
 
+  /**
+   * Writes the EML document of the fully augmented dataset directly to the response while it is generated.
+   * The document only changes when the dataset or its sub resources change, or another metadata document becomes the
+   * preferred one, so the ETag and Last-Modified headers are derived from those and conditional requests are answered
+   * without generating the document again.
+   */
+  @Path("{key}/document")
+  @GET
+  @Produces(MediaType.APPLICATION_XML)
+  @NullToNotFound
+  public Response getMetadataDocument(@PathParam("key") final UUID datasetKey, @Context Request request) {
+    Dataset persisted = super.get(datasetKey);
+    if (persisted == null) {
+      return null;
+    }
+    List<Metadata> docs = listMetadata(datasetKey, null);
+    Metadata preferred = docs.isEmpty() ? null : docs.get(0);
+    EntityTag etag = documentTag(persisted, preferred);
+    Date lastModified = lastModified(persisted, preferred);
+
+    Response.ResponseBuilder notModified = request.evaluatePreconditions(lastModified, etag);
+    if (notModified != null) {
+      return notModified.tag(etag).build();
+    }
+
+    final Dataset dataset = merge(getPreferredMetadataDataset(docs), persisted);
+    StreamingOutput eml = new StreamingOutput() {
+      @Override
+      public void write(OutputStream output) throws IOException {
+        writeEml(dataset, output);
+      }
+    };
+    return Response.ok(eml).tag(etag).lastModified(lastModified).build();
+  }
+
+  /**
+   * Fingerprints the dataset and its sub resources, which change without modifying the dataset itself. Sub resources
+   * are included by key so removed ones change the tag too, and by modification date if they can be updated.
+   */
+  private static EntityTag documentTag(Dataset persisted, @Nullable Metadata preferred) {
+    Hasher hasher = Hashing.murmur3_128().newHasher()
+      .putLong(persisted.getModified().getTime())
+      .putInt(preferred == null ? -1 : preferred.getKey());
+    hasher.putChar('c');
+    for (Contact contact : persisted.getContacts()) {
+      hasher.putInt(contact.getKey()).putLong(time(contact.getModified()));
+    }
+    hasher.putChar('e');
+    for (Endpoint endpoint : persisted.getEndpoints()) {
+      hasher.putInt(endpoint.getKey()).putLong(time(endpoint.getModified()));
+    }
+    hasher.putChar('i');
+    for (Identifier identifier : persisted.getIdentifiers()) {
+      hasher.putInt(identifier.getKey());
+    }
+    hasher.putChar('m');
+    for (MachineTag machineTag : persisted.getMachineTags()) {
+      hasher.putInt(machineTag.getKey());
+    }
+    hasher.putChar('t');
+    for (Tag tag : persisted.getTags()) {
+      hasher.putInt(tag.getKey());
+    }
+    hasher.putChar('n');
+    for (Comment comment : persisted.getComments()) {
+      hasher.putInt(comment.getKey()).putLong(time(comment.getModified()));
+    }
+    return new EntityTag(hasher.hash().toString());
+  }
+
+  /**
+   * @return the latest change of the dataset, its sub resources and its preferred metadata document
+   */
+  private static Date lastModified(Dataset persisted, @Nullable Metadata preferred) {
+    long latest = persisted.getModified().getTime();
+    if (preferred != null) {
+      latest = Math.max(latest, time(preferred.getCreated()));
+    }
+    for (Contact contact : persisted.getContacts()) {
+      latest = Math.max(latest, time(contact.getModified()));
+    }
+    for (Endpoint endpoint : persisted.getEndpoints()) {
+      latest = Math.max(latest, time(endpoint.getModified()));
+    }
+    for (Identifier identifier : persisted.getIdentifiers()) {
+      latest = Math.max(latest, time(identifier.getCreated()));
+    }
+    for (MachineTag machineTag : persisted.getMachineTags()) {
+      latest = Math.max(latest, time(machineTag.getCreated()));
+    }
+    for (Tag tag : persisted.getTags()) {
+      latest = Math.max(latest, time(tag.getCreated()));
+    }
+    for (Comment comment : persisted.getComments()) {
+      latest = Math.max(latest, time(comment.getModified()));
+    }
+    return new Date(latest);
+  }
+
+  private static long time(@Nullable Date date) {
+    return date == null ? 0 : date.getTime();
+  }
+
+  private static void writeEml(Dataset dataset, OutputStream output) throws IOException {
+    Writer writer = new BufferedWriter(new OutputStreamWriter(output, Charsets.UTF_8));
+    EMLWriter.write(dataset, writer);
+    writer.flush();
+  }
+
   @Path("{key}/document")
   @POST
   @Consumes(MediaType.APPLICATION_XML)
@@ -397,6 +581,14 @@ public class DatasetResource extends BaseNetworkEntityResource<Dataset>
       throw new IllegalArgumentException("Unreadable document", e);
     }
 
+    // an identical document is kept as it is, so repeated uploads neither rewrite it nor update the dataset
+    String hash = MetadataContent.hash(data);
+    Integer existingKey = metadataMapper.getKeyByHash(datasetKey, type, hash);
+    if (existingKey != null) {
+      LOG.debug("Identical {} document exists already as metadata {} of dataset {}", type, existingKey, datasetKey);
+      return metadataMapper.get(existingKey);
+    }
+
     Metadata metadata = new Metadata();
     metadata.setDatasetKey(datasetKey);
     metadata.setType(type);
@@ -408,8 +600,8 @@ public class DatasetResource extends BaseNetworkEntityResource<Dataset>
     for (Metadata exist : listMetadata(datasetKey, type)) {
       deleteMetadata(exist.getKey());
     }
-    int metaKey = metadataMapper.create(metadata, data);
-    metadata.setKey(metaKey);
+    // the generated key is set on the metadata, the returned int is the number of rows inserted
+    metadataMapper.create(metadata, MetadataContent.compress(data), hash);
 
     // check if we should update our registered base information
     if (dataset.isLockedForAutoUpdate()) {
@@ -420,7 +612,8 @@ public class DatasetResource extends BaseNetworkEntityResource<Dataset>
     } else {
       // we retrieve the preferred document and only update if this new metadata is the preferred one
       // e.g. we could put a DC document while an EML document exists that takes preference
-      Dataset updDataset = getPreferredMetadataDataset(datasetKey);
+      // parse it freshly as we modify the contacts, identifiers and tags below
+      Dataset updDataset = parsePreferredMetadataDataset(datasetKey);
       // keep some of the original properties
       updDataset.setKey(dataset.getKey());
       updDataset.setParentDatasetKey(dataset.getParentDatasetKey());
@@ -448,7 +641,7 @@ public class DatasetResource extends BaseNetworkEntityResource<Dataset>
       updDataset.getMachineTags().clear();
       update(updDataset);
 
-      LOG.info("Dataset {} updated with base information from metadata document {}", datasetKey, metaKey);
+      LOG.info("Dataset {} updated with base information from metadata document {}", datasetKey, metadata.getKey());
     }
 
     return metadata;
@@ -697,21 +890,22 @@ public class DatasetResource extends BaseNetworkEntityResource<Dataset>
   @Override
   public PagingResponse<Dataset> listConstituents(@PathParam("key") UUID datasetKey, @Context Pageable page) {
     return pagingResponse(page, (long) datasetMapper.countConstituents(datasetKey),
-      datasetMapper.listConstituents(datasetKey, page));
+      componentLoader.load(datasetMapper, datasetMapper.listConstituents(datasetKey, page)));
   }
 
   @Path("{key}/networks")
   @GET
   @Override
   public List<Network> listNetworks(@PathParam("key") UUID datasetKey) {
-    return networkMapper.listByDataset(datasetKey);
+    return componentLoader.load(networkMapper, networkMapper.listByDataset(datasetKey));
   }
 
   @GET
   @Path("constituents")
   @Override
   public PagingResponse<Dataset> listConstituents(@Context Pageable page) {
-    return pagingResponse(page, datasetMapper.countSubdatasets(), datasetMapper.subdatasets(page));
+    return pagingResponse(page, datasetMapper.countSubdatasets(),
+      componentLoader.load(datasetMapper, datasetMapper.subdatasets(page)));
   }
 
   @Path("{key}/metadata")
@@ -733,8 +927,18 @@ public class DatasetResource extends BaseNetworkEntityResource<Dataset>
   @GET
   @Produces(MediaType.APPLICATION_XML)
   @Override
+  @NullToNotFound
   public InputStream getMetadataDocument(@PathParam("key") int metadataKey) {
-    return new ByteArrayInputStream(metadataMapper.getDocument(metadataKey).getData());
+    byte[] content = metadataMapper.getDocument(metadataKey);
+    if (content == null) {
+      return null;
+    }
+    try {
+      // only the compressed content is held in memory, the document is decompressed while it is written
+      return MetadataContent.open(content);
+    } catch (IOException e) {
+      throw new ServiceUnavailableException("Failed to read metadata document " + metadataKey, e);
+    }
   }
 
   @Path("metadata/{key}")
@@ -742,27 +946,142 @@ public class DatasetResource extends BaseNetworkEntityResource<Dataset>
   @Override
   public void deleteMetadata(@PathParam("key") int metadataKey) {
     metadataMapper.delete(metadataKey);
+    metadataCache.invalidate(metadataKey);
   }
 
   @GET
   @Path("deleted")
   @Override
   public PagingResponse<Dataset> listDeleted(@Context Pageable page) {
-    return pagingResponse(page, datasetMapper.countDeleted(), datasetMapper.deleted(page));
+    return pagingResponse(page, datasetMapper.countDeleted(),
+      componentLoader.load(datasetMapper, datasetMapper.deleted(page)));
   }
 
   @GET
   @Path("duplicate")
   @Override
   public PagingResponse<Dataset> listDuplicates(@Context Pageable page) {
-    return pagingResponse(page, datasetMapper.countDuplicates(), datasetMapper.duplicates(page));
+    return pagingResponse(page, datasetMapper.countDuplicates(),
+      componentLoader.load(datasetMapper, datasetMapper.duplicates(page)));
   }
 
   @GET
   @Path("withNoEndpoint")
   @Override
   public PagingResponse<Dataset> listDatasetsWithNoEndpoint(@Context Pageable page) {
-    return pagingResponse(page, datasetMapper.countWithNoEndpoint(), datasetMapper.withNoEndpoint(page));
+    return pagingResponse(page, datasetMapper.countWithNoEndpoint(),
+      componentLoader.load(datasetMapper, datasetMapper.withNoEndpoint(page)));
+  }
+
+  /**
+   * This is a REST only (e.g. not part of the Java API) method that applies the changes of several datasets with a
+   * single request, as done by the metadata synchroniser. All changes of a dataset are written in a transaction of
+   * their own and subscribers are notified with a single event per dataset instead of one per sub resource changed,
+   * once the changes are committed. Should a changeset fail, the changesets before it stay applied.
+   *
+   * @return the keys of the datasets changed, in the order of the changesets
+   */
+  @POST
+  @Path("changeset")
+  @Consumes(MediaType.APPLICATION_JSON)
+  @RolesAllowed(ADMIN_ROLE)
+  public List<UUID> applyChangesets(@NotNull List<DatasetChangeset> changesets, @Context SecurityContext security) {
+    String user = security.getUserPrincipal().getName();
+    List<UUID> keys = Lists.newArrayListWithCapacity(changesets.size());
+    for (DatasetChangeset changeset : changesets) {
+      keys.add(applyChangeset(changeset, user));
+    }
+    return keys;
+  }
+
+  /**
+   * Applies the changes of a single dataset and its sub resources, see {@link DatasetChangeset}.
+   *
+   * @param changeset the changes to apply
+   * @param user the user applying the changes
+   *
+   * @return the key of the dataset created, updated or deleted
+   */
+  public UUID applyChangeset(final DatasetChangeset changeset, final String user) {
+    checkNotNull(changeset.getDataset(), "Changeset must have a dataset");
+    final UUID key = changeset.getDataset().getKey();
+    checkArgument(key != null || !changeset.isDeleted(), "Changeset must have a dataset key to delete it");
+    return withCoalescedEvent(key, new Supplier<UUID>() {
+      @Override
+      public UUID get() {
+        if (changeset.isDeleted()) {
+          delete(key);
+          return key;
+        }
+        Dataset dataset = changeset.getDataset();
+        dataset.setModifiedBy(user);
+        UUID datasetKey = key;
+        if (key == null) {
+          dataset.setCreatedBy(user);
+          datasetKey = create(dataset);
+        } else {
+          update(dataset);
+        }
+        applySubResources(datasetKey, changeset, user);
+        return datasetKey;
+      }
+    });
+  }
+
+  private void applySubResources(UUID datasetKey, DatasetChangeset changeset, String user) {
+    if (changeset.getContacts() != null) {
+      for (Contact contact : listContacts(datasetKey)) {
+        deleteContact(datasetKey, contact.getKey());
+      }
+      for (Contact contact : changeset.getContacts()) {
+        contact.setCreatedBy(user);
+        contact.setModifiedBy(user);
+        addContact(datasetKey, contact);
+      }
+    }
+
+    if (changeset.getMachineTags() != null) {
+      String namespace = changeset.getMachineTagNamespace();
+      for (MachineTag machineTag : listMachineTags(datasetKey)) {
+        if (namespace == null || namespace.equalsIgnoreCase(machineTag.getNamespace())) {
+          deleteMachineTag(datasetKey, machineTag.getKey());
+        }
+      }
+      for (MachineTag machineTag : changeset.getMachineTags()) {
+        machineTag.setCreatedBy(user);
+        addMachineTag(datasetKey, machineTag);
+      }
+    }
+
+    if (changeset.getEndpoints() != null) {
+      for (Endpoint endpoint : listEndpoints(datasetKey)) {
+        deleteEndpoint(datasetKey, endpoint.getKey());
+      }
+      for (Endpoint endpoint : changeset.getEndpoints()) {
+        endpoint.setCreatedBy(user);
+        endpoint.setModifiedBy(user);
+        addEndpoint(datasetKey, endpoint);
+      }
+    }
+
+    if (changeset.getIdentifiers() != null) {
+      List<Identifier> existing = listIdentifiers(datasetKey);
+      for (Identifier identifier : changeset.getIdentifiers()) {
+        if (!containsLenient(existing, identifier)) {
+          identifier.setCreatedBy(user);
+          addIdentifier(datasetKey, identifier);
+        }
+      }
+    }
+  }
+
+  private static boolean containsLenient(List<Identifier> identifiers, Identifier identifier) {
+    for (Identifier existing : identifiers) {
+      if (identifier.lenientEquals(existing)) {
+        return true;
+      }
+    }
+    return false;
   }
 
   /**
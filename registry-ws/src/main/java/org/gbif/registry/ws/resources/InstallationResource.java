@@ -16,7 +16,6 @@ import org.gbif.api.model.common.paging.Pageable;
 import org.gbif.api.model.common.paging.PagingResponse;
 import org.gbif.api.model.registry.Dataset;
 import org.gbif.api.model.registry.Installation;
-import org.gbif.api.model.registry.Organization;
 import org.gbif.api.model.registry.metasync.MetasyncHistory;
 import org.gbif.api.service.registry.InstallationService;
 import org.gbif.api.service.registry.MetasyncHistoryService;
@@ -24,6 +23,8 @@ import org.gbif.api.vocabulary.IdentifierType;
 import org.gbif.api.vocabulary.InstallationType;
 import org.gbif.common.messaging.api.MessagePublisher;
 import org.gbif.common.messaging.api.messages.StartMetasyncMessage;
+import org.gbif.registry.persistence.ComponentLoader;
+import org.gbif.registry.persistence.Transactions;
 import org.gbif.registry.persistence.mapper.CommentMapper;
 import org.gbif.registry.persistence.mapper.ContactMapper;
 import org.gbif.registry.persistence.mapper.DatasetMapper;
@@ -36,13 +37,10 @@ import org.gbif.registry.persistence.mapper.OrganizationMapper;
 import org.gbif.registry.persistence.mapper.TagMapper;
 import org.gbif.registry.ws.guice.Trim;
 import org.gbif.registry.ws.security.EditorAuthorizationService;
+import org.gbif.registry.ws.util.InstallationLocationCache;
 
 import java.io.IOException;
-import java.math.BigDecimal;
-import java.util.List;
-import java.util.Map;
 import java.util.UUID;
-import java.util.concurrent.atomic.AtomicInteger;
 import javax.annotation.Nullable;
 import javax.annotation.security.RolesAllowed;
 import javax.validation.Valid;
@@ -53,17 +51,14 @@ import javax.ws.rs.Path;
 import javax.ws.rs.PathParam;
 import javax.ws.rs.QueryParam;
 import javax.ws.rs.core.Context;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Request;
+import javax.ws.rs.core.Response;
 
 import com.google.common.base.Strings;
-import com.google.common.collect.ImmutableList;
-import com.google.common.collect.ImmutableMap;
-import com.google.common.collect.Lists;
-import com.google.common.collect.Maps;
 import com.google.common.eventbus.EventBus;
 import com.google.inject.Inject;
 import com.google.inject.Singleton;
-import org.codehaus.jettison.json.JSONException;
-import org.codehaus.jettison.json.JSONObject;
 import org.mybatis.guice.transactional.Transactional;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -85,7 +80,8 @@ public class InstallationResource extends BaseNetworkEntityResource<Installation
   private final InstallationMapper installationMapper;
   private final OrganizationMapper organizationMapper;
   private final MetasyncHistoryMapper metasyncHistoryMapper;
-
+  private final ComponentLoader componentLoader;
+  private final InstallationLocationCache installationLocations;
 
   /**
    * The messagePublisher can be optional, and optional is not supported in constructor injection.
@@ -106,7 +102,10 @@ public class InstallationResource extends BaseNetworkEntityResource<Installation
     OrganizationMapper organizationMapper,
     MetasyncHistoryMapper metasyncHistoryMapper,
     EventBus eventBus,
-    EditorAuthorizationService userAuthService) {
+    EditorAuthorizationService userAuthService,
+    ComponentLoader componentLoader,
+    Transactions transactions,
+    InstallationLocationCache installationLocations) {
     super(installationMapper,
       commentMapper,
       contactMapper,
@@ -116,11 +115,15 @@ public class InstallationResource extends BaseNetworkEntityResource<Installation
       tagMapper,
       Installation.class,
       eventBus,
-      userAuthService);
+      userAuthService,
+      componentLoader,
+      transactions);
     this.datasetMapper = datasetMapper;
     this.installationMapper = installationMapper;
     this.organizationMapper = organizationMapper;
     this.metasyncHistoryMapper = metasyncHistoryMapper;
+    this.componentLoader = componentLoader;
+    this.installationLocations = installationLocations;
   }
 
 
@@ -151,21 +154,23 @@ public class InstallationResource extends BaseNetworkEntityResource<Installation
   @Override
   public PagingResponse<Dataset> getHostedDatasets(@PathParam("key") UUID installationKey, @Context Pageable page) {
     return new PagingResponse<Dataset>(page, datasetMapper.countDatasetsByInstallation(installationKey),
-      datasetMapper.listDatasetsByInstallation(installationKey, page));
+      componentLoader.load(datasetMapper, datasetMapper.listDatasetsByInstallation(installationKey, page)));
   }
 
   @GET
   @Path("deleted")
   @Override
   public PagingResponse<Installation> listDeleted(@Context Pageable page) {
-    return pagingResponse(page, installationMapper.countDeleted(), installationMapper.deleted(page));
+    return pagingResponse(page, installationMapper.countDeleted(),
+      componentLoader.load(installationMapper, installationMapper.deleted(page)));
   }
 
   @GET
   @Path("nonPublishing")
   @Override
   public PagingResponse<Installation> listNonPublishing(@Context Pageable page) {
-    return pagingResponse(page, installationMapper.countNonPublishing(), installationMapper.nonPublishing(page));
+    return pagingResponse(page, installationMapper.countNonPublishing(),
+      componentLoader.load(installationMapper, installationMapper.nonPublishing(page)));
   }
 
   /**
@@ -198,44 +203,13 @@ public class InstallationResource extends BaseNetworkEntityResource<Installation
    */
   @GET
   @Path("location/{type}")
-  public String organizationsAsGeoJSON(@PathParam("type") InstallationType type) {
-    List<Organization> orgs = organizationMapper.hostingInstallationsOf(type, true);
-
-    // to increment the count on duplicates
-    Map<Organization, AtomicInteger> counts = Maps.newHashMap();
-    for (Organization o : orgs) {
-      if (counts.containsKey(o)) {
-        counts.get(o).incrementAndGet();
-      } else {
-        counts.put(o, new AtomicInteger(1));
-      }
-    }
-
-    JSONObject featureCollection = new JSONObject();
-    try {
-      featureCollection.put("type", "FeatureCollection");
-
-      List<JSONObject> features = Lists.newArrayList();
-      for (Organization o : counts.keySet()) {
-        JSONObject feature = new JSONObject();
-        feature.put("type", "Feature");
-        feature.put("properties", ImmutableMap.<String, Object>of(
-          "key", o.getKey(),
-          "title", o.getTitle(),
-          "count", counts.get(o).get()));
-        JSONObject geom = new JSONObject();
-        geom.put("type", "Point");
-        geom.put("coordinates", ImmutableList.<BigDecimal>of(
-          o.getLongitude(), o.getLatitude()));
-        feature.put("geometry", geom);
-        features.add(feature);
-      }
-      featureCollection.put("features", features);
-    } catch (JSONException e) {
-      LOG.error("Unable to build GeoJSON", e);
+  public Response organizationsAsGeoJSON(@PathParam("type") InstallationType type, @Context Request request) {
+    InstallationLocationCache.GeoJson geoJson = installationLocations.get(type);
+    Response.ResponseBuilder notModified = request.evaluatePreconditions(geoJson.getEtag());
+    if (notModified != null) {
+      return notModified.build();
     }
-
-    return featureCollection.toString();
+    return Response.ok(geoJson.getContent(), MediaType.APPLICATION_JSON_TYPE).tag(geoJson.getEtag()).build();
   }
 
   @POST
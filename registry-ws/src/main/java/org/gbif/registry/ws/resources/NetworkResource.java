@@ -18,6 +18,8 @@ import org.gbif.api.model.registry.Dataset;
 import org.gbif.api.model.registry.Network;
 import org.gbif.api.service.registry.NetworkService;
 import org.gbif.api.vocabulary.IdentifierType;
+import org.gbif.registry.persistence.ComponentLoader;
+import org.gbif.registry.persistence.Transactions;
 import org.gbif.registry.persistence.mapper.CommentMapper;
 import org.gbif.registry.persistence.mapper.ContactMapper;
 import org.gbif.registry.persistence.mapper.DatasetMapper;
@@ -55,6 +57,7 @@ public class NetworkResource extends BaseNetworkEntityResource<Network> implemen
 
   private final DatasetMapper datasetMapper;
   private final NetworkMapper networkMapper;
+  private final ComponentLoader componentLoader;
 
   @Inject
   public NetworkResource(
@@ -67,7 +70,9 @@ public class NetworkResource extends BaseNetworkEntityResource<Network> implemen
     CommentMapper commentMapper,
     DatasetMapper datasetMapper,
     EventBus eventBus,
-    EditorAuthorizationService userAuthService) {
+    EditorAuthorizationService userAuthService,
+    ComponentLoader componentLoader,
+    Transactions transactions) {
     super(networkMapper,
       commentMapper,
       contactMapper,
@@ -77,9 +82,12 @@ public class NetworkResource extends BaseNetworkEntityResource<Network> implemen
       tagMapper,
       Network.class,
       eventBus,
-      userAuthService);
+      userAuthService,
+      componentLoader,
+      transactions);
     this.datasetMapper = datasetMapper;
     this.networkMapper = networkMapper;
+    this.componentLoader = componentLoader;
   }
 
 
@@ -110,7 +118,7 @@ public class NetworkResource extends BaseNetworkEntityResource<Network> implemen
   @Override
   public PagingResponse<Dataset> listConstituents(@PathParam("key") UUID networkKey, @Context Pageable page) {
     return pagingResponse(page, (long) networkMapper.countDatasetsInNetwork(networkKey),
-      datasetMapper.listDatasetsInNetwork(networkKey, page));
+      componentLoader.load(datasetMapper, datasetMapper.listDatasetsInNetwork(networkKey, page)));
   }
 
   @Path("{key}/constituents/{datasetKey}")
@@ -23,6 +23,8 @@ import org.gbif.api.service.registry.NodeService;
 import org.gbif.api.vocabulary.Country;
 import org.gbif.api.vocabulary.IdentifierType;
 import org.gbif.registry.ims.Augmenter;
+import org.gbif.registry.persistence.ComponentLoader;
+import org.gbif.registry.persistence.Transactions;
 import org.gbif.registry.persistence.mapper.CommentMapper;
 import org.gbif.registry.persistence.mapper.ContactMapper;
 import org.gbif.registry.persistence.mapper.DatasetMapper;
@@ -65,6 +67,7 @@ public class NodeResource extends BaseNetworkEntityResource<Node> implements Nod
   private final OrganizationMapper organizationMapper;
   private final InstallationMapper installationMapper;
   private final DatasetMapper datasetMapper;
+  private final ComponentLoader componentLoader;
   private final Augmenter nodeAugmenter;
 
   @Inject
@@ -81,14 +84,17 @@ public class NodeResource extends BaseNetworkEntityResource<Node> implements Nod
     InstallationMapper installationMapper,
     EventBus eventBus,
     Augmenter nodeAugmenter,
-    EditorAuthorizationService userAuthService) {
+    EditorAuthorizationService userAuthService,
+    ComponentLoader componentLoader,
+    Transactions transactions) {
     super(nodeMapper, commentMapper, contactMapper, endpointMapper, identifierMapper, machineTagMapper, tagMapper,
-      Node.class, eventBus, userAuthService);
+      Node.class, eventBus, userAuthService, componentLoader, transactions);
     this.nodeMapper = nodeMapper;
     this.organizationMapper = organizationMapper;
     this.nodeAugmenter = nodeAugmenter;
     this.datasetMapper = datasetMapper;
     this.installationMapper = installationMapper;
+    this.componentLoader = componentLoader;
   }
 
   @GET
@@ -127,18 +133,24 @@ public class NodeResource extends BaseNetworkEntityResource<Node> implements Nod
   @Override
   public PagingResponse<Node> list(@Nullable Pageable page) {
     PagingResponse<Node> resp = super.list(page);
-    for (Node n : resp.getResults()) {
-      nodeAugmenter.augment(n);
-    }
+    nodeAugmenter.augment(resp.getResults());
     return resp;
   }
 
+  /**
+   * Keyset pages are augmented with the IMS information like the regular listing.
+   */
+  @Override
+  protected List<Node> augment(List<Node> nodes) {
+    return nodeAugmenter.augment(nodes);
+  }
+
   @GET
   @Path("{key}/organization")
   @Override
   public PagingResponse<Organization> endorsedOrganizations(@PathParam("key") UUID nodeKey, @Context Pageable page) {
     return new PagingResponse<Organization>(page, organizationMapper.countOrganizationsEndorsedBy(nodeKey),
-      organizationMapper.organizationsEndorsedBy(nodeKey, page));
+      componentLoader.load(organizationMapper, organizationMapper.organizationsEndorsedBy(nodeKey, page)));
   }
 
   @GET
@@ -146,7 +158,7 @@ public class NodeResource extends BaseNetworkEntityResource<Node> implements Nod
   @Override
   public PagingResponse<Organization> pendingEndorsements(@Context Pageable page) {
     return new PagingResponse<Organization>(page, organizationMapper.countPendingEndorsements(null),
-      organizationMapper.pendingEndorsements(null, page));
+      componentLoader.load(organizationMapper, organizationMapper.pendingEndorsements(null, page)));
   }
 
   @GET
@@ -154,7 +166,7 @@ public class NodeResource extends BaseNetworkEntityResource<Node> implements Nod
   @Override
   public PagingResponse<Organization> pendingEndorsements(@PathParam("key") UUID nodeKey, @Context Pageable page) {
     return new PagingResponse<Organization>(page, organizationMapper.countPendingEndorsements(nodeKey),
-      organizationMapper.pendingEndorsements(nodeKey, page));
+      componentLoader.load(organizationMapper, organizationMapper.pendingEndorsements(nodeKey, page)));
   }
 
   @GET
@@ -189,7 +201,7 @@ public class NodeResource extends BaseNetworkEntityResource<Node> implements Nod
   @Path("{key}/dataset")
   public PagingResponse<Dataset> endorsedDatasets(@PathParam("key") UUID nodeKey, @Context Pageable page) {
     return pagingResponse(page, datasetMapper.countDatasetsEndorsedBy(nodeKey),
-      datasetMapper.listDatasetsEndorsedBy(nodeKey, page));
+      componentLoader.load(datasetMapper, datasetMapper.listDatasetsEndorsedBy(nodeKey, page)));
   }
 
   @GET
@@ -217,6 +229,6 @@ public class NodeResource extends BaseNetworkEntityResource<Node> implements Nod
   @Override
   public PagingResponse<Installation> installations(@PathParam("key") UUID nodeKey, @Context Pageable page) {
     return pagingResponse(page, installationMapper.countInstallationsEndorsedBy(nodeKey),
-      installationMapper.listInstallationsEndorsedBy(nodeKey, page));
+      componentLoader.load(installationMapper, installationMapper.listInstallationsEndorsedBy(nodeKey, page)));
   }
 }
\ No newline at end of file
@@ -2,46 +2,62 @@ package org.gbif.registry.ws.resources;
 
 import org.gbif.api.model.common.User;
 import org.gbif.api.model.common.paging.Pageable;
-import org.gbif.api.model.common.paging.PagingRequest;
 import org.gbif.api.model.common.paging.PagingResponse;
 import org.gbif.api.model.occurrence.Download;
+import org.gbif.api.model.occurrence.predicate.Predicate;
 import org.gbif.api.model.registry.DatasetOccurrenceDownloadUsage;
 import org.gbif.api.model.registry.PrePersist;
 import org.gbif.api.service.common.UserService;
 import org.gbif.api.service.registry.OccurrenceDownloadService;
 import org.gbif.doi.metadata.datacite.DataCiteMetadata;
 import org.gbif.doi.service.InvalidMetadataException;
+import org.gbif.occurrence.query.HumanFilterBuilder;
 import org.gbif.occurrence.query.TitleLookup;
 import org.gbif.registry.doi.DoiGenerator;
+import org.gbif.registry.persistence.Transactions;
 import org.gbif.registry.persistence.mapper.DatasetOccurrenceDownloadMapper;
 import org.gbif.registry.persistence.mapper.OccurrenceDownloadMapper;
 import org.gbif.registry.ws.guice.Trim;
 import org.gbif.registry.ws.util.DataCiteConverter;
+import org.gbif.registry.ws.util.DownloadUsageCollector;
 import org.gbif.ws.server.interceptor.NullToNotFound;
 import org.gbif.ws.util.ExtraMediaTypes;
 
+import java.util.Date;
 import java.util.EnumSet;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
 import javax.annotation.Nullable;
 import javax.annotation.security.RolesAllowed;
 import javax.validation.Valid;
 import javax.validation.constraints.NotNull;
 import javax.validation.groups.Default;
 import javax.ws.rs.Consumes;
+import javax.ws.rs.DefaultValue;
 import javax.ws.rs.GET;
 import javax.ws.rs.POST;
 import javax.ws.rs.PUT;
 import javax.ws.rs.Path;
 import javax.ws.rs.PathParam;
 import javax.ws.rs.Produces;
+import javax.ws.rs.QueryParam;
 import javax.ws.rs.core.Context;
 import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.SecurityContext;
 
-import com.beust.jcommander.internal.Lists;
 import com.google.common.base.Preconditions;
+import com.google.common.base.Throwables;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.google.common.util.concurrent.UncheckedExecutionException;
 import com.google.inject.Inject;
 import com.google.inject.Singleton;
+import com.google.inject.name.Named;
 import com.sun.jersey.api.NotFoundException;
 import org.apache.bval.guice.Validate;
 import org.mybatis.guice.transactional.Transactional;
@@ -68,12 +84,24 @@ public class OccurrenceDownloadResource implements OccurrenceDownloadService {
   private final TitleLookup titleLookup;
   private final UserService userService;
   private final DoiGenerator doiGenerator;
+  private final Transactions transactions;
+  private final int maxDoiDatasets;
+  private final Cache<Predicate, String> queryDescriptions = CacheBuilder.newBuilder()
+    .maximumSize(MAX_QUERY_DESCRIPTIONS)
+    .expireAfterWrite(1, TimeUnit.HOURS)
+    .build();
+  private final ExecutorService doiRegistration = Executors.newSingleThreadExecutor(
+    new ThreadFactoryBuilder().setNameFormat("download-doi-registration").setDaemon(true).build());
 
   //Download final/failed states
   private final EnumSet<Download.Status> FAILED_STATES = EnumSet.of(Download.Status.KILLED, Download.Status.CANCELLED,
                                                                     Download.Status.FAILED);
-  //Page size to iterate over dataset usages
-  private static final int USAGES_PAGE_SIZE = 400;
+  //Human readable download queries kept
+  private static final int MAX_QUERY_DESCRIPTIONS = 1000;
+  //Downloads read per page when registering new DOIs again
+  private static final int NEW_DOI_PAGE_SIZE = 100;
+  //Time given to the queued DOI registrations on shutdown
+  private static final long SHUTDOWN_TIMEOUT_SECONDS = 30;
 
   //DOI logging marker
   private static Marker DOI_SMTP = MarkerFactory.getMarker("DOI_SMTP");
@@ -86,12 +114,15 @@ public class OccurrenceDownloadResource implements OccurrenceDownloadService {
 
   @Inject
   public OccurrenceDownloadResource(OccurrenceDownloadMapper occurrenceDownloadMapper, DatasetOccurrenceDownloadMapper datasetOccurrenceDownloadMapper,
-    DoiGenerator doiGenerator, UserService userService, TitleLookup titleLookup) {
+    DoiGenerator doiGenerator, UserService userService, TitleLookup titleLookup, Transactions transactions,
+    @Named("doi.download.maxDatasets") int maxDoiDatasets) {
     this.occurrenceDownloadMapper = occurrenceDownloadMapper;
     this.datasetOccurrenceDownloadMapper = datasetOccurrenceDownloadMapper;
     this.doiGenerator = doiGenerator;
+    this.transactions = transactions;
     this.userService = userService;
     this.titleLookup = titleLookup;
+    this.maxDoiDatasets = maxDoiDatasets;
   }
 
 
@@ -155,16 +186,12 @@ public class OccurrenceDownloadResource implements OccurrenceDownloadService {
 
   /**
    * Updates the download DOI according to the download status.
-   * If the download succeeded its DOI is registered; if the download status is one the FAILED_STATES
+   * If the download succeeded its DOI is registered in the background; if the download status is one the FAILED_STATES
    * the DOI is removed, otherwise doesn't nothing.
    */
   private void updateDownloadDOI(Download download, Download previousDownload, User user){
     if(download.isAvailable() && previousDownload.getStatus() != Download.Status.SUCCEEDED){
-      try {
-        doiGenerator.registerDownload(download.getDoi(), buildMetadata(download, user), download.getKey());
-      } catch(InvalidMetadataException error) {
-        LOG.error(DOI_SMTP, "Invalid metadata for download {} with doi {} ", download.getKey(), download.getDoi(),  error);
-      }
+      registerDownloadDOI(download, user);
 
     } else if(FAILED_STATES.contains(download.getStatus())){
       doiGenerator.delete(download.getDoi());
@@ -172,20 +199,110 @@ public class OccurrenceDownloadResource implements OccurrenceDownloadService {
   }
 
   /**
-   * Creates the DataCite metadata for a download object.
+   * Builds the DataCite metadata and registers the DOI of a download on a background thread, as reading the usages of
+   * downloads spanning many datasets takes a while. Until the registration is queued the DOI stays new without a
+   * target, so registrations lost in a restart can be sent again by {@link #registerNewDOIs(int)}. A DOI with invalid
+   * metadata is marked as failed.
+   */
+  private void registerDownloadDOI(final Download download, final User user) {
+    doiRegistration.execute(new Runnable() {
+      @Override
+      public void run() {
+        try {
+          doiGenerator.registerDownload(download.getDoi(), buildMetadata(download, user), download.getKey());
+        } catch (InvalidMetadataException error) {
+          LOG.error(DOI_SMTP, "Invalid metadata for download {} with doi {} ", download.getKey(), download.getDoi(),
+            error);
+          doiGenerator.failed(download.getDoi(), error);
+        } catch (RuntimeException error) {
+          LOG.error(DOI_SMTP, "Failed to register download {} with doi {} ", download.getKey(), download.getDoi(),
+            error);
+        }
+      }
+    });
+  }
+
+  /**
+   * This is a REST only (e.g. not part of the Java API) method that allows an admin to register the DOIs of the
+   * succeeded downloads not queued for registration yet, e.g. as the registry was stopped before their background
+   * registration ran. Only downloads modified within the given number of hours are read, page by page.
+   *
+   * @return the number of DOI registrations scheduled
+   */
+  @POST
+  @Path("doi/registerNew")
+  @RolesAllowed(ADMIN_ROLE)
+  public int registerNewDOIs(@QueryParam("hours") @DefaultValue("24") int hours) {
+    Preconditions.checkArgument(hours > 0, "hours has to be greater than 0");
+    Date since = new Date(System.currentTimeMillis() - TimeUnit.HOURS.toMillis(hours));
+    int scheduled = 0;
+    String after = null;
+    List<Download> downloads;
+    do {
+      downloads = occurrenceDownloadMapper.listWithNewDOI(since, after, NEW_DOI_PAGE_SIZE);
+      for (Download download : downloads) {
+        registerDownloadDOI(download, userService.get(download.getRequest().getCreator()));
+        after = download.getKey();
+      }
+      scheduled += downloads.size();
+    } while (downloads.size() == NEW_DOI_PAGE_SIZE);
+    LOG.info("Scheduled the DOI registration of {} succeeded downloads modified since {}", scheduled, since);
+    return scheduled;
+  }
+
+  /**
+   * Stops the background registration, waiting for the registrations already queued. Those not sent in time can be
+   * sent by {@link #registerNewDOIs(int)} after the next start.
    */
-  private DataCiteMetadata buildMetadata(Download download, User user) {
-    List<DatasetOccurrenceDownloadUsage> response = null;
-    List<DatasetOccurrenceDownloadUsage> usages = Lists.newArrayList();
-    PagingRequest pagingRequest = new PagingRequest(0, USAGES_PAGE_SIZE);
-
-    while (response == null || !response.isEmpty()) {
-      response = datasetOccurrenceDownloadMapper.listByDownload(download.getKey(), pagingRequest);
-      usages.addAll(response);
-      pagingRequest.nextPage();
+  public void shutdown() {
+    doiRegistration.shutdown();
+    try {
+      if (!doiRegistration.awaitTermination(SHUTDOWN_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+        LOG.warn("Stopped with {} download DOI registrations pending, they remain new until registered again",
+          doiRegistration.shutdownNow().size());
+      }
+    } catch (InterruptedException e) {
+      doiRegistration.shutdownNow();
+      Thread.currentThread().interrupt();
     }
+  }
+
+  /**
+   * Creates the DataCite metadata for a download object. The dataset usages are read with a cursor, keeping only the
+   * largest ones up to the configured maximum and summarizing the others. The cursor needs a transaction, as the
+   * driver otherwise reads all usages at once.
+   */
+  private DataCiteMetadata buildMetadata(final Download download, User user) {
+    final DownloadUsageCollector usages = new DownloadUsageCollector(maxDoiDatasets);
+    transactions.run(new Runnable() {
+      @Override
+      public void run() {
+        datasetOccurrenceDownloadMapper.streamByDownload(download.getKey(), usages);
+      }
+    });
+    return DataCiteConverter.convert(download, user, usages.getUsages(), usages.getOmittedDatasets(),
+      usages.getOmittedRecords(), describeQuery(download.getRequest().getPredicate()));
+  }
 
-    return DataCiteConverter.convert(download, user, usages, titleLookup);
+  /**
+   * @return the human readable query, cached as it requires remote title lookups
+   */
+  private String describeQuery(@Nullable final Predicate predicate) {
+    if (predicate == null) {
+      return new HumanFilterBuilder(titleLookup).humanFilterString(predicate);
+    }
+    try {
+      return queryDescriptions.get(predicate, new Callable<String>() {
+        @Override
+        public String call() {
+          return new HumanFilterBuilder(titleLookup).humanFilterString(predicate);
+        }
+      });
+    } catch (ExecutionException e) {
+      throw new IllegalStateException("Failed to describe download query " + predicate, e.getCause());
+    } catch (UncheckedExecutionException e) {
+      throw Throwables.propagate(e.getCause());
+    }
   }
 
   @GET
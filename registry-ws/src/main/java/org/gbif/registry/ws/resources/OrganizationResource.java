@@ -20,6 +20,8 @@ import org.gbif.api.model.registry.Organization;
 import org.gbif.api.service.registry.OrganizationService;
 import org.gbif.api.vocabulary.Country;
 import org.gbif.api.vocabulary.IdentifierType;
+import org.gbif.registry.persistence.ComponentLoader;
+import org.gbif.registry.persistence.Transactions;
 import org.gbif.registry.persistence.mapper.CommentMapper;
 import org.gbif.registry.persistence.mapper.ContactMapper;
 import org.gbif.registry.persistence.mapper.DatasetMapper;
@@ -68,6 +70,7 @@ public class OrganizationResource extends BaseNetworkEntityResource<Organization
   private final DatasetMapper datasetMapper;
   private final OrganizationMapper organizationMapper;
   private final InstallationMapper installationMapper;
+  private final ComponentLoader componentLoader;
 
   @Inject
   public OrganizationResource(
@@ -81,7 +84,9 @@ public class OrganizationResource extends BaseNetworkEntityResource<Organization
     DatasetMapper datasetMapper,
     InstallationMapper installationMapper,
     EventBus eventBus,
-    EditorAuthorizationService userAuthService) {
+    EditorAuthorizationService userAuthService,
+    ComponentLoader componentLoader,
+    Transactions transactions) {
     super(organizationMapper,
       commentMapper,
       contactMapper,
@@ -91,10 +96,13 @@ public class OrganizationResource extends BaseNetworkEntityResource<Organization
       tagMapper,
       Organization.class,
       eventBus,
-      userAuthService);
+      userAuthService,
+      componentLoader,
+      transactions);
     this.datasetMapper = datasetMapper;
     this.organizationMapper = organizationMapper;
     this.installationMapper = installationMapper;
+    this.componentLoader = componentLoader;
   }
 
   /**
@@ -145,7 +153,7 @@ public class OrganizationResource extends BaseNetworkEntityResource<Organization
   @Override
   public PagingResponse<Dataset> hostedDatasets(@PathParam("key") UUID organizationKey, @Context Pageable page) {
     return pagingResponse(page, datasetMapper.countDatasetsHostedBy(organizationKey),
-      datasetMapper.listDatasetsHostedBy(organizationKey, page));
+      componentLoader.load(datasetMapper, datasetMapper.listDatasetsHostedBy(organizationKey, page)));
   }
 
   @GET
@@ -153,7 +161,7 @@ public class OrganizationResource extends BaseNetworkEntityResource<Organization
   @Override
   public PagingResponse<Dataset> publishedDatasets(@PathParam("key") UUID organizationKey, @Context Pageable page) {
     return pagingResponse(page, datasetMapper.countDatasetsPublishedBy(organizationKey),
-      datasetMapper.listDatasetsPublishedBy(organizationKey, page));
+      componentLoader.load(datasetMapper, datasetMapper.listDatasetsPublishedBy(organizationKey, page)));
   }
 
   /**
@@ -169,7 +177,7 @@ public class OrganizationResource extends BaseNetworkEntityResource<Organization
   @Override
   public PagingResponse<Organization> listByCountry(Country country, @Nullable Pageable page) {
     return pagingResponse(page, organizationMapper.countOrganizationsByCountry(country),
-      organizationMapper.organizationsByCountry(country, page));
+      componentLoader.load(organizationMapper, organizationMapper.organizationsByCountry(country, page)));
   }
 
   @GET
@@ -177,14 +185,16 @@ public class OrganizationResource extends BaseNetworkEntityResource<Organization
   @Override
   public PagingResponse<Installation> installations(@PathParam("key") UUID organizationKey, @Context Pageable page) {
     return pagingResponse(page, installationMapper.countInstallationsByOrganization(organizationKey),
-      installationMapper.listInstallationsByOrganization(organizationKey, page));
+      componentLoader.load(installationMapper,
+        installationMapper.listInstallationsByOrganization(organizationKey, page)));
   }
 
   @GET
   @Path("deleted")
   @Override
   public PagingResponse<Organization> listDeleted(@Context Pageable page) {
-    return pagingResponse(page, organizationMapper.countDeleted(), organizationMapper.deleted(page));
+    return pagingResponse(page, organizationMapper.countDeleted(),
+      componentLoader.load(organizationMapper, organizationMapper.deleted(page)));
   }
 
   @GET
@@ -192,14 +202,15 @@ public class OrganizationResource extends BaseNetworkEntityResource<Organization
   @Override
   public PagingResponse<Organization> listPendingEndorsement(@Context Pageable page) {
     return pagingResponse(page, organizationMapper.countPendingEndorsements(null),
-      organizationMapper.pendingEndorsements(null, page));
+      componentLoader.load(organizationMapper, organizationMapper.pendingEndorsements(null, page)));
   }
 
   @GET
   @Path("nonPublishing")
   @Override
   public PagingResponse<Organization> listNonPublishing(@Context Pageable page) {
-    return pagingResponse(page, organizationMapper.countNonPublishing(), organizationMapper.nonPublishing(page));
+    return pagingResponse(page, organizationMapper.countNonPublishing(),
+      componentLoader.load(organizationMapper, organizationMapper.nonPublishing(page)));
   }
 
   /**
@@ -2,55 +2,168 @@ package org.gbif.registry.ws.security;
 
 import org.gbif.api.model.registry.Dataset;
 import org.gbif.api.model.registry.Installation;
+import org.gbif.api.model.registry.NetworkEntity;
 import org.gbif.api.model.registry.Organization;
-import org.gbif.api.service.registry.DatasetService;
-import org.gbif.api.service.registry.InstallationService;
-import org.gbif.api.service.registry.OrganizationService;
+import org.gbif.registry.events.CreateEvent;
+import org.gbif.registry.events.DeleteEvent;
+import org.gbif.registry.events.OrderedAsyncEventBus;
+import org.gbif.registry.events.UpdateEvent;
+import org.gbif.registry.persistence.mapper.DatasetMapper;
+import org.gbif.registry.persistence.mapper.InstallationMapper;
+import org.gbif.registry.persistence.mapper.OrganizationMapper;
 import org.gbif.registry.persistence.mapper.UserRightsMapper;
 
 import java.security.Principal;
+import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.TimeUnit;
 
+import com.google.common.base.Optional;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.LoadingCache;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.eventbus.EventBus;
+import com.google.common.eventbus.Subscribe;
 import com.google.inject.Inject;
 
+/**
+ * Checks editor rights against the rights of a user on an entity or any of its parents, i.e. the publishing or
+ * hosting organization and the node endorsing that organization.
+ * <p/>
+ * A single write usually checks the same user and entity several times, so the rights of a user are cached for a
+ * short time. Only granted rights are served from the cache: editor rights are granted in the database at any time,
+ * so a right missing from the cached rights is always looked up again, while revoked rights take effect once the
+ * cached rights expire. The parents of entities are read with key only queries and cached until the entity is created,
+ * updated or deleted. Missing parents are not cached either, as the entity might not have been created yet.
+ * <p/>
+ * The caches are invalidated within the thread posting the change, so a change of the hierarchy applies to the very
+ * next authorization even if the other listeners receive their events asynchronously.
+ */
 public class EditorAuthorizationServiceImpl implements EditorAuthorizationService {
 
-  private UserRightsMapper userRightsMapper;
-  private DatasetService datasetService;
-  private InstallationService installationService;
-  private OrganizationService organizationService;
+  private static final long RIGHTS_TTL_SECONDS = 30;
+  private static final long PARENTS_TTL_MINUTES = 10;
+  private static final int MAX_CACHED = 10000;
+
+  private final UserRightsMapper userRightsMapper;
+  private final LoadingCache<String, Set<UUID>> rights;
+  private final LoadingCache<UUID, Optional<UUID>> datasetOrganizations;
+  private final LoadingCache<UUID, Optional<UUID>> installationOrganizations;
+  private final LoadingCache<UUID, Optional<UUID>> organizationNodes;
 
   @Inject
-  public EditorAuthorizationServiceImpl(DatasetService datasetService, InstallationService installationService,
-    OrganizationService organizationService, UserRightsMapper userRightsMapper) {
-    this.datasetService = datasetService;
-    this.installationService = installationService;
-    this.organizationService = organizationService;
+  public EditorAuthorizationServiceImpl(final DatasetMapper datasetMapper,
+    final InstallationMapper installationMapper, final OrganizationMapper organizationMapper,
+    final UserRightsMapper userRightsMapper, EventBus eventBus) {
     this.userRightsMapper = userRightsMapper;
+    rights = CacheBuilder.newBuilder()
+      .expireAfterWrite(RIGHTS_TTL_SECONDS, TimeUnit.SECONDS)
+      .maximumSize(MAX_CACHED)
+      .build(new CacheLoader<String, Set<UUID>>() {
+        @Override
+        public Set<UUID> load(String username) {
+          return ImmutableSet.copyOf(userRightsMapper.listKeysForUser(username));
+        }
+      });
+    datasetOrganizations = newParentCache(new CacheLoader<UUID, Optional<UUID>>() {
+      @Override
+      public Optional<UUID> load(UUID key) {
+        return Optional.fromNullable(datasetMapper.getPublishingOrganizationKey(key));
+      }
+    });
+    installationOrganizations = newParentCache(new CacheLoader<UUID, Optional<UUID>>() {
+      @Override
+      public Optional<UUID> load(UUID key) {
+        return Optional.fromNullable(installationMapper.getOrganizationKey(key));
+      }
+    });
+    organizationNodes = newParentCache(new CacheLoader<UUID, Optional<UUID>>() {
+      @Override
+      public Optional<UUID> load(UUID key) {
+        return Optional.fromNullable(organizationMapper.getEndorsingNodeKey(key));
+      }
+    });
+    if (eventBus instanceof OrderedAsyncEventBus) {
+      ((OrderedAsyncEventBus) eventBus).registerSynchronous(this);
+    } else {
+      eventBus.register(this);
+    }
   }
 
-    @Override
-    public boolean allowedToModifyNamespace(Principal user, String ns) {
-        if (user == null) {
-            return false;
-        }
-        return userRightsMapper.namespaceExistsForUser(user.getName(), ns);
+  private static LoadingCache<UUID, Optional<UUID>> newParentCache(CacheLoader<UUID, Optional<UUID>> loader) {
+    return CacheBuilder.newBuilder()
+      .expireAfterWrite(PARENTS_TTL_MINUTES, TimeUnit.MINUTES)
+      .maximumSize(MAX_CACHED)
+      .build(loader);
+  }
+
+  @Subscribe
+  public final <T extends NetworkEntity> void created(CreateEvent<T> event) {
+    invalidate(event.getObjectClass(), event.getNewObject().getKey());
+  }
+
+  @Subscribe
+  public final <T extends NetworkEntity> void updated(UpdateEvent<T> event) {
+    invalidate(event.getObjectClass(), event.getOldObject().getKey());
+  }
+
+  @Subscribe
+  public final <T extends NetworkEntity> void deleted(DeleteEvent<T> event) {
+    invalidate(event.getObjectClass(), event.getOldObject().getKey());
+  }
+
+  private void invalidate(Class<?> objectClass, UUID key) {
+    if (Dataset.class.equals(objectClass)) {
+      datasetOrganizations.invalidate(key);
+    } else if (Installation.class.equals(objectClass)) {
+      installationOrganizations.invalidate(key);
+    } else if (Organization.class.equals(objectClass)) {
+      organizationNodes.invalidate(key);
     }
+  }
 
-    @Override
-    public boolean allowedToDeleteMachineTag(Principal user, int machineTagKey) {
-        if (user == null) {
-            return false;
-        }
-        return userRightsMapper.allowedToDeleteMachineTag(user.getName(), machineTagKey);
+  /**
+   * @return the parent of the entity, which is only cached if it exists
+   */
+  private static Optional<UUID> parentOf(LoadingCache<UUID, Optional<UUID>> parents, UUID key) {
+    Optional<UUID> parent = parents.getUnchecked(key);
+    if (!parent.isPresent()) {
+      parents.invalidate(key);
     }
+    return parent;
+  }
 
-    @Override
-  public boolean allowedToModifyEntity(Principal user, UUID key) {
+  @Override
+  public boolean allowedToModifyNamespace(Principal user, String ns) {
     if (user == null) {
       return false;
     }
-    return userRightsMapper.keyExistsForUser(user.getName(), key);
+    return userRightsMapper.namespaceExistsForUser(user.getName(), ns);
+  }
+
+  @Override
+  public boolean allowedToDeleteMachineTag(Principal user, int machineTagKey) {
+    if (user == null) {
+      return false;
+    }
+    return userRightsMapper.allowedToDeleteMachineTag(user.getName(), machineTagKey);
+  }
+
+  @Override
+  public boolean allowedToModifyEntity(Principal user, UUID key) {
+    if (user == null || key == null) {
+      return false;
+    }
+    if (rights.getUnchecked(user.getName()).contains(key)) {
+      return true;
+    }
+    // the right might have been granted since the rights were cached
+    if (userRightsMapper.keyExistsForUser(user.getName(), key)) {
+      rights.invalidate(user.getName());
+      return true;
+    }
+    return false;
   }
 
   @Override
@@ -62,8 +175,8 @@ public class EditorAuthorizationServiceImpl implements EditorAuthorizationServic
       return true;
     }
     // try higher organization or node rights
-    Dataset d = datasetService.get(datasetKey);
-    return d == null ? false : allowedToModifyOrganization(user, d.getPublishingOrganizationKey());
+    Optional<UUID> orgKey = parentOf(datasetOrganizations, datasetKey);
+    return orgKey.isPresent() && allowedToModifyOrganization(user, orgKey.get());
   }
 
   @Override
@@ -75,8 +188,8 @@ public class EditorAuthorizationServiceImpl implements EditorAuthorizationServic
       return true;
     }
     // try endorsing node
-    Organization o = organizationService.get(orgKey);
-    return o == null ? false : allowedToModifyEntity(user, o.getEndorsingNodeKey());
+    Optional<UUID> nodeKey = parentOf(organizationNodes, orgKey);
+    return nodeKey.isPresent() && allowedToModifyEntity(user, nodeKey.get());
   }
 
   @Override
@@ -88,7 +201,7 @@ public class EditorAuthorizationServiceImpl implements EditorAuthorizationServic
       return true;
     }
     // try higher organization or node rights
-    Installation inst = installationService.get(installationKey);
-    return inst == null ? false : allowedToModifyOrganization(user, inst.getOrganizationKey());
+    Optional<UUID> orgKey = parentOf(installationOrganizations, installationKey);
+    return orgKey.isPresent() && allowedToModifyOrganization(user, orgKey.get());
   }
 }
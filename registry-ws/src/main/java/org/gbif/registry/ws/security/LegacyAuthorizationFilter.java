@@ -1,8 +1,7 @@
 package org.gbif.registry.ws.security;
 
-import org.gbif.api.service.registry.DatasetService;
-import org.gbif.api.service.registry.InstallationService;
-import org.gbif.api.service.registry.OrganizationService;
+import org.gbif.registry.persistence.mapper.DatasetMapper;
+import org.gbif.registry.persistence.mapper.InstallationMapper;
 import org.gbif.registry.ws.util.LegacyResourceConstants;
 
 import java.util.UUID;
@@ -28,9 +27,9 @@ public class LegacyAuthorizationFilter implements ContainerRequestFilter {
 
   private static final Logger LOG = LoggerFactory.getLogger(LegacyAuthorizationFilter.class);
 
-  private final InstallationService installationService;
-  private final OrganizationService organizationService;
-  private final DatasetService datasetService;
+  private final LegacyCredentials credentials;
+  private final DatasetMapper datasetMapper;
+  private final InstallationMapper installationMapper;
 
   // request HttpContext to access HTTP Headers during authorization
   @Context
@@ -39,11 +38,11 @@ public class LegacyAuthorizationFilter implements ContainerRequestFilter {
   private UriInfo uriInfo;
 
   @Inject
-  public LegacyAuthorizationFilter(InstallationService installationService, OrganizationService organizationService,
-    DatasetService datasetService) {
-    this.installationService = installationService;
-    this.organizationService = organizationService;
-    this.datasetService = datasetService;
+  public LegacyAuthorizationFilter(LegacyCredentials credentials, DatasetMapper datasetMapper,
+    InstallationMapper installationMapper) {
+    this.credentials = credentials;
+    this.datasetMapper = datasetMapper;
+    this.installationMapper = installationMapper;
   }
 
   @Override
@@ -119,7 +118,7 @@ public class LegacyAuthorizationFilter implements ContainerRequestFilter {
   }
 
   private LegacyRequestAuthorization newAuthorization() {
-    return new LegacyRequestAuthorization(httpContext, organizationService, datasetService, installationService);
+    return new LegacyRequestAuthorization(httpContext, credentials, datasetMapper, installationMapper);
   }
   /**
    * Authorize request can make a change to an organization, setting the request security context specifying the
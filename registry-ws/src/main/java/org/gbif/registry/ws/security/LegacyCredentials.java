@@ -0,0 +1,102 @@
+package org.gbif.registry.ws.security;
+
+import org.gbif.api.model.registry.Installation;
+import org.gbif.api.model.registry.NetworkEntity;
+import org.gbif.api.model.registry.Organization;
+import org.gbif.registry.events.DeleteEvent;
+import org.gbif.registry.events.OrderedAsyncEventBus;
+import org.gbif.registry.events.UpdateEvent;
+import org.gbif.registry.persistence.mapper.InstallationMapper;
+import org.gbif.registry.persistence.mapper.OrganizationMapper;
+
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import com.google.common.base.Charsets;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.eventbus.EventBus;
+import com.google.common.eventbus.Subscribe;
+import com.google.common.hash.HashCode;
+import com.google.common.hash.Hashing;
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+
+/**
+ * Verifies the organization or installation credentials of legacy web service (GBRDS/IPT) requests.
+ * <p/>
+ * The stored password is read with a key only query instead of loading the entity. Verified credentials are
+ * remembered for a short time as a hash only, so the many requests of an IPT registering in bulk are verified from
+ * memory. The remembered credentials of an entity are dropped when it is updated or deleted, e.g. when its password
+ * changes. Failed attempts are never remembered.
+ */
+@Singleton
+public class LegacyCredentials {
+
+  private static final long VERIFIED_TTL_SECONDS = 60;
+  private static final int MAX_VERIFIED = 10000;
+
+  private final OrganizationMapper organizationMapper;
+  private final InstallationMapper installationMapper;
+  private final Cache<UUID, HashCode> verified = CacheBuilder.newBuilder()
+    .expireAfterWrite(VERIFIED_TTL_SECONDS, TimeUnit.SECONDS)
+    .maximumSize(MAX_VERIFIED)
+    .build();
+
+  @Inject
+  public LegacyCredentials(OrganizationMapper organizationMapper, InstallationMapper installationMapper,
+    EventBus eventBus) {
+    this.organizationMapper = organizationMapper;
+    this.installationMapper = installationMapper;
+    // invalidated within the posting thread, so a changed password is rejected as soon as the change is committed
+    if (eventBus instanceof OrderedAsyncEventBus) {
+      ((OrderedAsyncEventBus) eventBus).registerSynchronous(this);
+    } else {
+      eventBus.register(this);
+    }
+  }
+
+  /**
+   * @param key the key of an organization, or of an installation if no such organization exists
+   * @return true if the password matches the one registered for the entity
+   */
+  public boolean verify(UUID key, String password) {
+    HashCode hash = hash(key, password);
+    if (hash.equals(verified.getIfPresent(key))) {
+      return true;
+    }
+    // try to validate organization key first, then installations
+    String registered = organizationMapper.getPassword(key);
+    if (registered == null) {
+      registered = installationMapper.getPassword(key);
+    }
+    if (password.equals(registered)) {
+      verified.put(key, hash);
+      return true;
+    }
+    return false;
+  }
+
+  private static HashCode hash(UUID key, String password) {
+    return Hashing.sha256().newHasher()
+      .putString(key.toString(), Charsets.UTF_8)
+      .putString(password, Charsets.UTF_8)
+      .hash();
+  }
+
+  @Subscribe
+  public final <T extends NetworkEntity> void updated(UpdateEvent<T> event) {
+    invalidate(event.getObjectClass(), event.getOldObject().getKey());
+  }
+
+  @Subscribe
+  public final <T extends NetworkEntity> void deleted(DeleteEvent<T> event) {
+    invalidate(event.getObjectClass(), event.getOldObject().getKey());
+  }
+
+  private void invalidate(Class<?> objectClass, UUID key) {
+    if (Organization.class.equals(objectClass) || Installation.class.equals(objectClass)) {
+      verified.invalidate(key);
+    }
+  }
+}
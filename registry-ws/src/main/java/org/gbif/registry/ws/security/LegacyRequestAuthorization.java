@@ -1,11 +1,7 @@
 package org.gbif.registry.ws.security;
 
-import org.gbif.api.model.registry.Dataset;
-import org.gbif.api.model.registry.Installation;
-import org.gbif.api.model.registry.Organization;
-import org.gbif.api.service.registry.DatasetService;
-import org.gbif.api.service.registry.InstallationService;
-import org.gbif.api.service.registry.OrganizationService;
+import org.gbif.registry.persistence.mapper.DatasetMapper;
+import org.gbif.registry.persistence.mapper.InstallationMapper;
 import org.gbif.registry.ws.util.LegacyResourceConstants;
 
 import java.security.Principal;
@@ -20,7 +16,6 @@ import javax.ws.rs.core.SecurityContext;
 import com.google.common.base.Splitter;
 import com.google.common.base.Strings;
 import com.google.inject.Inject;
-import com.sun.jersey.api.NotFoundException;
 import com.sun.jersey.api.core.HttpContext;
 import com.sun.jersey.core.util.Base64;
 import com.sun.jersey.spi.container.ContainerRequest;
@@ -36,19 +31,20 @@ public class LegacyRequestAuthorization implements SecurityContext {
   private static final Logger LOG = LoggerFactory.getLogger(LegacyRequestAuthorization.class);
   private static final Splitter COLON_SPLITTER = Splitter.on(":").limit(2);
 
-  private final OrganizationService organizationService;
-  private final InstallationService installationService;
-  private final DatasetService datasetService;
+  private final LegacyCredentials credentials;
+  private final DatasetMapper datasetMapper;
+  private final InstallationMapper installationMapper;
 
   private final UUID userKey;
   private final HttpContext httpContext;
 
   @Inject
-  public LegacyRequestAuthorization(HttpContext httpContext, OrganizationService organizationService, DatasetService datasetService, InstallationService installationService) {
+  public LegacyRequestAuthorization(HttpContext httpContext, LegacyCredentials credentials,
+    DatasetMapper datasetMapper, InstallationMapper installationMapper) {
     this.httpContext = httpContext;
-    this.organizationService = organizationService;
-    this.datasetService = datasetService;
-    this.installationService = installationService;
+    this.credentials = credentials;
+    this.datasetMapper = datasetMapper;
+    this.installationMapper = installationMapper;
     userKey = authenticateUser(httpContext);
   }
 
@@ -70,28 +66,11 @@ public class LegacyRequestAuthorization implements SecurityContext {
       UUID user = UUID.fromString(iter.next());
       String password = iter.next();
 
-      // try to validate organization key first
-      try {
-        Organization org = organizationService.get(user);
-        if (password.equals(org.getPassword())) {
-          return user;
-        } else {
-          throw new WebApplicationException(Response.Status.UNAUTHORIZED);
-        }
-
-      } catch (NotFoundException e) {
-        // maybe an installation?
-        try {
-          Installation installation = installationService.get(user);
-          if (password.equals(installation.getPassword())) {
-            return user;
-          }
-        } catch (NotFoundException e1) {
-          // throw
-        }
-        throw new WebApplicationException(Response.Status.UNAUTHORIZED);
+      // organization keys are tried first, then installation keys
+      if (credentials.verify(user, password)) {
+        return user;
       }
-
+      throw new WebApplicationException(Response.Status.UNAUTHORIZED);
 
     } catch (NoSuchElementException e) {
       LOG.warn("Invalid Basic Authentication syntax: {}", authentication);
@@ -124,9 +103,8 @@ public class LegacyRequestAuthorization implements SecurityContext {
     if (organizationKey == null) {
       return false;
     }
-    // validate installation key belongs to an existing installation
-    Organization org = organizationService.get(organizationKey);
-    return org != null && org.getKey().equals(userKey);
+    // the user key has been verified against the registered organizations and installations already
+    return organizationKey.equals(userKey);
   }
 
 
@@ -170,15 +148,15 @@ public class LegacyRequestAuthorization implements SecurityContext {
       LOG.error("Dataset key was null");
       return false;
     }
-    // retrieve dataset to ensure it exists
-    Dataset dataset = datasetService.get(datasetKey);
-    if (dataset == null) {
+    // read the publishing organization only, which also ensures the dataset exists
+    UUID publishingOrganizationKey = datasetMapper.getPublishingOrganizationKey(datasetKey);
+    if (publishingOrganizationKey == null) {
       LOG.error("Dataset with key={} does not exist", datasetKey.toString());
       return false;
     }
 
     // check the dataset belongs to organization
-    if (dataset.getPublishingOrganizationKey().compareTo(userKey) != 0) {
+    if (!publishingOrganizationKey.equals(userKey)) {
       LOG.error("The Dataset is not owned by the organization specified in the credentials");
       return false;
     }
@@ -208,9 +186,12 @@ public class LegacyRequestAuthorization implements SecurityContext {
     if (installationKey == null) {
       return false;
     }
-    // validate installation key belongs to an existing installation
-    Installation installation = installationService.get(installationKey);
-    return installation != null && installation.getKey().equals(userKey);
+    // validate installation key belongs to an existing installation, reading its hosting organization key only
+    if (installationMapper.getOrganizationKey(installationKey) == null) {
+      LOG.error("Installation with key={} does not exist", installationKey);
+      return false;
+    }
+    return installationKey.equals(userKey);
   }
 
   @Override
@@ -195,6 +195,21 @@ public class DataCiteConverter {
    */
   public static DataCiteMetadata convert(Download d, User creator, List<DatasetOccurrenceDownloadUsage> usedDatasets,
     TitleLookup titleLookup) {
+    Preconditions.checkNotNull(d.getRequest(), "Download request required to build valid DOI metadata");
+    return convert(d, creator, usedDatasets, 0, 0,
+      new HumanFilterBuilder(titleLookup).humanFilterString(d.getRequest().getPredicate()));
+  }
+
+  /**
+   * Convert a download and some of its dataset usages into a datacite metadata instance. The usages left out are
+   * only summarized in the description.
+   *
+   * @param omittedDatasets the number of dataset usages not given
+   * @param omittedRecords the number of records from the dataset usages not given
+   * @param query the human readable query of the download
+   */
+  public static DataCiteMetadata convert(Download d, User creator, List<DatasetOccurrenceDownloadUsage> usedDatasets,
+    long omittedDatasets, long omittedRecords, String query) {
     Preconditions.checkNotNull(d.getDoi(), "Download DOI required to build valid DOI metadata");
     Preconditions.checkNotNull(d.getCreated(), "Download created date required to build valid DOI metadata");
     Preconditions.checkNotNull(creator, "Download creator required to build valid DOI metadata");
@@ -224,7 +239,6 @@ public class DataCiteConverter {
       .withRightsList()
       .addRights(DataCiteMetadata.RightsList.Rights.builder().withValue(RIGHTS).withRightsURI(RIGHTS_URL).build()).end();
 
-    String query = new HumanFilterBuilder(titleLookup).humanFilterString(d.getRequest().getPredicate());
     final DataCiteMetadata.Descriptions.Description.Builder db = b.withDescriptions()
       .addDescription().withDescriptionType(DescriptionType.ABSTRACT).withLang(ENGLISH)
         .addContent(String.format("A dataset containing %s species occurrences available in GBIF matching the query: %s.",
@@ -247,6 +261,9 @@ public class DataCiteConverter {
         }
       }
     }
+    if (omittedDatasets > 0) {
+      db.addContent("\n " + omittedRecords + " records from " + omittedDatasets + " further datasets.");
+    }
 
     return b.build();
   }
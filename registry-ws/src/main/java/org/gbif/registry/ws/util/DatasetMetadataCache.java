@@ -0,0 +1,193 @@
+/*
+ * Copyright 2013 Global Biodiversity Information Facility (GBIF)
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gbif.registry.ws.util;
+
+import org.gbif.api.model.registry.Dataset;
+import org.gbif.registry.metadata.parse.DatasetParser;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.annotation.Nullable;
+
+import com.google.common.base.Throwables;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+import com.google.common.cache.Weigher;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+import org.apache.commons.beanutils.PropertyUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A bounded cache of parsed metadata documents, keyed by the metadata key.
+ * <p/>
+ * Stored metadata documents are never modified, only deleted and inserted again with a new key, so a parsed view stays
+ * valid until its document gets deleted. The cache is bounded by the total size of the cached source documents in
+ * bytes, which is a reasonable approximation of the memory needed by the parsed datasets.
+ * <p/>
+ * Cached datasets are never handed out directly. Callers get a shallow copy which they can modify freely, but the
+ * nested EML components (coverages, keywords, project etc) are shared with the cached instance and must not be
+ * modified. Callers that need to modify those should parse the document themselves.
+ * <p/>
+ * The hit, miss and eviction counters are logged once an hour, checked on lookups.
+ */
+public class DatasetMetadataCache {
+
+  private static final Logger LOG = LoggerFactory.getLogger(DatasetMetadataCache.class);
+  private static final long REPORT_INTERVAL_MILLIS = TimeUnit.HOURS.toMillis(1);
+
+  /**
+   * Loads the raw bytes of a stored metadata document.
+   */
+  public interface DocumentLoader {
+
+    @Nullable
+    byte[] load(int metadataKey);
+  }
+
+  private static class ParsedDocument {
+
+    private final Dataset dataset;
+    private final int size;
+
+    private ParsedDocument(Dataset dataset, int size) {
+      this.dataset = dataset;
+      this.size = size;
+    }
+  }
+
+  private final boolean enabled;
+  private final Cache<Integer, ParsedDocument> cache;
+  private final AtomicLong lastReport = new AtomicLong(System.currentTimeMillis());
+
+  /**
+   * @param maxBytes the maximum accumulated size of the cached source documents, 0 to disable caching
+   */
+  public DatasetMetadataCache(long maxBytes) {
+    enabled = maxBytes > 0;
+    cache = CacheBuilder.newBuilder()
+      .maximumWeight(Math.max(maxBytes, 0))
+      .weigher(new Weigher<Integer, ParsedDocument>() {
+        @Override
+        public int weigh(Integer key, ParsedDocument value) {
+          return value.size;
+        }
+      })
+      .recordStats()
+      .build();
+    LOG.info("Parsed metadata cache {} with a maximum of {} bytes", enabled ? "enabled" : "disabled", maxBytes);
+  }
+
+  /**
+   * Returns the parsed view of a metadata document, using the loader to read the document if it is not yet cached.
+   *
+   * @return a copy of the parsed dataset or null if the document does not exist or cannot be parsed
+   */
+  @Nullable
+  public Dataset get(final int metadataKey, final DocumentLoader loader) {
+    if (!enabled) {
+      ParsedDocument doc = parse(metadataKey, loader);
+      return doc == null ? null : doc.dataset;
+    }
+
+    report();
+    try {
+      return copy(cache.get(metadataKey, new Callable<ParsedDocument>() {
+        @Override
+        public ParsedDocument call() throws Exception {
+          ParsedDocument doc = parse(metadataKey, loader);
+          if (doc == null) {
+            // guava caches do not allow null values
+            throw new IOException("Metadata document " + metadataKey + " cannot be read");
+          }
+          return doc;
+        }
+      }).dataset);
+
+    } catch (ExecutionException e) {
+      LOG.debug("Metadata document {} not cached", metadataKey, e.getCause());
+    } catch (UncheckedExecutionException e) {
+      throw Throwables.propagate(e.getCause());
+    }
+    return null;
+  }
+
+  /**
+   * Removes the parsed view of a metadata document, to be called whenever a document is deleted.
+   */
+  public void invalidate(int metadataKey) {
+    cache.invalidate(metadataKey);
+  }
+
+  public void invalidateAll() {
+    cache.invalidateAll();
+  }
+
+  public boolean isEnabled() {
+    return enabled;
+  }
+
+  /**
+   * @return the hit, miss and eviction counters of the cache since its creation
+   */
+  public CacheStats stats() {
+    return cache.stats();
+  }
+
+  public long size() {
+    return cache.size();
+  }
+
+  /**
+   * Logs the counters if the report interval passed, only once when called concurrently.
+   */
+  private void report() {
+    long last = lastReport.get();
+    long now = System.currentTimeMillis();
+    if (now - last >= REPORT_INTERVAL_MILLIS && lastReport.compareAndSet(last, now)) {
+      LOG.info("Parsed metadata cache with {} documents: {}", cache.size(), cache.stats());
+    }
+  }
+
+  @Nullable
+  private static ParsedDocument parse(int metadataKey, DocumentLoader loader) {
+    byte[] data = loader.load(metadataKey);
+    if (data == null) {
+      return null;
+    }
+    try {
+      return new ParsedDocument(DatasetParser.build(new ByteArrayInputStream(data)), data.length);
+    } catch (IOException e) {
+      LOG.error("Stored metadata document {} cannot be read", metadataKey, e);
+    }
+    return null;
+  }
+
+  /**
+   * Creates a shallow copy of the dataset so the cached instance is not modified when merged with the persisted one.
+   */
+  private static Dataset copy(Dataset dataset) {
+    Dataset copy = new Dataset();
+    try {
+      PropertyUtils.copyProperties(copy, dataset);
+    } catch (Exception e) {
+      throw new IllegalStateException("Cannot copy cached dataset " + dataset.getKey(), e);
+    }
+    return copy;
+  }
+}
@@ -0,0 +1,60 @@
+package org.gbif.registry.ws.util;
+
+import org.gbif.api.model.registry.DatasetOccurrenceDownloadUsage;
+
+import java.util.List;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.Lists;
+import org.apache.ibatis.session.ResultContext;
+import org.apache.ibatis.session.ResultHandler;
+
+/**
+ * Collects the dataset usages of a download while they are read from the database. Only the first usages up to a
+ * maximum are kept, the remaining ones are just counted. This bounds the memory needed for downloads spanning tens of
+ * thousands of datasets.
+ */
+public class DownloadUsageCollector implements ResultHandler {
+
+  private final int maxUsages;
+  private final List<DatasetOccurrenceDownloadUsage> usages = Lists.newArrayList();
+  private long omittedDatasets;
+  private long omittedRecords;
+
+  /**
+   * @param maxUsages the maximum number of usages kept
+   */
+  public DownloadUsageCollector(int maxUsages) {
+    Preconditions.checkArgument(maxUsages >= 0, "The maximum number of usages must not be negative");
+    this.maxUsages = maxUsages;
+  }
+
+  @Override
+  public void handleResult(ResultContext context) {
+    DatasetOccurrenceDownloadUsage usage = (DatasetOccurrenceDownloadUsage) context.getResultObject();
+    if (usages.size() < maxUsages) {
+      usages.add(usage);
+    } else {
+      omittedDatasets++;
+      omittedRecords += usage.getNumberRecords();
+    }
+  }
+
+  public List<DatasetOccurrenceDownloadUsage> getUsages() {
+    return usages;
+  }
+
+  /**
+   * @return the number of usages exceeding the maximum
+   */
+  public long getOmittedDatasets() {
+    return omittedDatasets;
+  }
+
+  /**
+   * @return the number of records of all usages exceeding the maximum
+   */
+  public long getOmittedRecords() {
+    return omittedRecords;
+  }
+}
@@ -0,0 +1,154 @@
+/*
+ * Copyright 2013 Global Biodiversity Information Facility (GBIF)
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gbif.registry.ws.util;
+
+import org.gbif.api.model.registry.Installation;
+import org.gbif.api.model.registry.NetworkEntity;
+import org.gbif.api.model.registry.Organization;
+import org.gbif.api.vocabulary.InstallationType;
+import org.gbif.registry.events.CreateEvent;
+import org.gbif.registry.events.DeleteEvent;
+import org.gbif.registry.events.UpdateEvent;
+import org.gbif.registry.persistence.OrganizationLocation;
+import org.gbif.registry.persistence.mapper.OrganizationMapper;
+
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import javax.ws.rs.core.EntityTag;
+
+import com.google.common.base.Charsets;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.LoadingCache;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Lists;
+import com.google.common.eventbus.EventBus;
+import com.google.common.eventbus.Subscribe;
+import com.google.common.hash.Hashing;
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+import org.codehaus.jettison.json.JSONException;
+import org.codehaus.jettison.json.JSONObject;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Keeps the GeoJSON of the organizations hosting installations of each type, as used by the portal maps.
+ * <p/>
+ * The GeoJSON of a type is serialised once and kept until an organization or installation is created, updated or
+ * deleted. It is tagged with a hash of its content, so clients can revalidate it cheaply.
+ */
+@Singleton
+public class InstallationLocationCache {
+
+  private static final Logger LOG = LoggerFactory.getLogger(InstallationLocationCache.class);
+  // a safety net only, the cache is invalidated by events
+  private static final long EXPIRY_HOURS = 1;
+
+  /**
+   * A serialised GeoJSON feature collection with its entity tag.
+   */
+  public static class GeoJson {
+
+    private final byte[] content;
+    private final EntityTag etag;
+
+    private GeoJson(byte[] content) {
+      this.content = content;
+      etag = new EntityTag(Hashing.md5().hashBytes(content).toString());
+    }
+
+    /**
+     * @return the UTF-8 encoded GeoJSON, not to be modified
+     */
+    public byte[] getContent() {
+      return content;
+    }
+
+    public EntityTag getEtag() {
+      return etag;
+    }
+  }
+
+  private final LoadingCache<InstallationType, GeoJson> cache;
+
+  @Inject
+  public InstallationLocationCache(final OrganizationMapper organizationMapper, EventBus eventBus) {
+    cache = CacheBuilder.newBuilder()
+      .expireAfterWrite(EXPIRY_HOURS, TimeUnit.HOURS)
+      .build(new CacheLoader<InstallationType, GeoJson>() {
+        @Override
+        public GeoJson load(InstallationType type) {
+          return new GeoJson(toGeoJson(organizationMapper.hostingLocationsOf(type)));
+        }
+      });
+    eventBus.register(this);
+  }
+
+  /**
+   * @return the GeoJSON of the organizations hosting installations of the given type
+   */
+  public GeoJson get(InstallationType type) {
+    return cache.getUnchecked(type);
+  }
+
+  private static byte[] toGeoJson(List<OrganizationLocation> locations) {
+    JSONObject featureCollection = new JSONObject();
+    try {
+      featureCollection.put("type", "FeatureCollection");
+
+      List<JSONObject> features = Lists.newArrayListWithCapacity(locations.size());
+      for (OrganizationLocation o : locations) {
+        JSONObject feature = new JSONObject();
+        feature.put("type", "Feature");
+        feature.put("properties", ImmutableMap.<String, Object>of(
+          "key", o.getKey(),
+          "title", o.getTitle(),
+          "count", o.getCount()));
+        JSONObject geom = new JSONObject();
+        geom.put("type", "Point");
+        geom.put("coordinates", ImmutableList.<BigDecimal>of(
+          o.getLongitude(), o.getLatitude()));
+        feature.put("geometry", geom);
+        features.add(feature);
+      }
+      featureCollection.put("features", features);
+    } catch (JSONException e) {
+      LOG.error("Unable to build GeoJSON", e);
+    }
+    return featureCollection.toString().getBytes(Charsets.UTF_8);
+  }
+
+  @Subscribe
+  public final <T extends NetworkEntity> void created(CreateEvent<T> event) {
+    invalidate(event.getObjectClass());
+  }
+
+  @Subscribe
+  public final <T extends NetworkEntity> void updated(UpdateEvent<T> event) {
+    invalidate(event.getObjectClass());
+  }
+
+  @Subscribe
+  public final <T extends NetworkEntity> void deleted(DeleteEvent<T> event) {
+    invalidate(event.getObjectClass());
+  }
+
+  private void invalidate(Class<?> objectClass) {
+    if (Organization.class.equals(objectClass) || Installation.class.equals(objectClass)) {
+      cache.invalidateAll();
+    }
+  }
+}
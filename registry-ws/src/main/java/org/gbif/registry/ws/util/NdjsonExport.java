@@ -0,0 +1,152 @@
+/*
+ * Copyright 2013 Global Biodiversity Information Facility (GBIF)
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gbif.registry.ws.util;
+
+import org.gbif.api.model.registry.NetworkEntity;
+import org.gbif.registry.persistence.ComponentLoader;
+import org.gbif.registry.persistence.Transactions;
+import org.gbif.registry.persistence.mapper.BaseNetworkEntityMapper;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.Date;
+import java.util.List;
+import java.util.zip.GZIPOutputStream;
+import javax.annotation.Nullable;
+import javax.ws.rs.core.StreamingOutput;
+
+import com.google.common.base.Charsets;
+import com.google.common.base.Function;
+import com.google.common.collect.Lists;
+import org.apache.ibatis.session.ResultContext;
+import org.apache.ibatis.session.ResultHandler;
+import org.codehaus.jackson.map.ObjectMapper;
+import org.codehaus.jackson.map.annotate.JsonSerialize;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Writes all entities of a mapper as newline delimited JSON, one entity per line, while they are read from the
+ * database. The entities are collected in small batches only to load their sub resources, so the memory needed does
+ * not grow with the number of entities exported. The query runs through {@link Transactions} as the output is
+ * written after the resource method returned, outside of any transaction.
+ */
+public class NdjsonExport<T extends NetworkEntity> implements StreamingOutput {
+
+  public static final String MEDIA_TYPE = "application/x-ndjson";
+
+  private static final Logger LOG = LoggerFactory.getLogger(NdjsonExport.class);
+  private static final int BATCH_SIZE = 500;
+  private static final ObjectMapper MAPPER =
+    new ObjectMapper().setSerializationInclusion(JsonSerialize.Inclusion.NON_NULL);
+
+  private final BaseNetworkEntityMapper<T> mapper;
+  private final ComponentLoader componentLoader;
+  private final Transactions transactions;
+  private final Function<List<T>, List<T>> augment;
+  private final Date modifiedSince;
+  private final boolean gzip;
+
+  /**
+   * @param augment completes each batch of entities with their sub resources loaded before they are written
+   * @param modifiedSince only export entities modified since, all if null
+   * @param gzip whether to compress the output
+   */
+  public NdjsonExport(BaseNetworkEntityMapper<T> mapper, ComponentLoader componentLoader,
+    Transactions transactions, Function<List<T>, List<T>> augment, @Nullable Date modifiedSince, boolean gzip) {
+    this.mapper = mapper;
+    this.componentLoader = componentLoader;
+    this.transactions = transactions;
+    this.augment = augment;
+    this.modifiedSince = modifiedSince;
+    this.gzip = gzip;
+  }
+
+  /**
+   * @return true if the given Accept-Encoding header allows a gzip compressed response
+   */
+  public static boolean acceptsGzip(@Nullable String acceptEncoding) {
+    return acceptEncoding != null && acceptEncoding.toLowerCase().contains("gzip");
+  }
+
+  @Override
+  public void write(OutputStream output) throws IOException {
+    OutputStream out = gzip ? new GZIPOutputStream(output, 8192) : output;
+    Writer writer = new BufferedWriter(new OutputStreamWriter(out, Charsets.UTF_8));
+    final BatchWriter handler = new BatchWriter(writer);
+    transactions.run(new Runnable() {
+      @Override
+      public void run() {
+        mapper.export(modifiedSince, handler);
+        // the last batch loads its sub resources, which needs the transaction still
+        handler.flushQuietly();
+      }
+    });
+    if (handler.failure != null) {
+      // the client went away, which also stopped reading from the database
+      LOG.info("Export aborted after {} entities: {}", handler.written, handler.failure.getMessage());
+      throw handler.failure;
+    }
+    writer.flush();
+    if (gzip) {
+      ((GZIPOutputStream) out).finish();
+    }
+    LOG.debug("Exported {} entities modified since {}", handler.written, modifiedSince);
+  }
+
+  /**
+   * Writes the entities batch by batch, stopping the query at the first failure to write.
+   */
+  private class BatchWriter implements ResultHandler {
+
+    private final Writer writer;
+    private final List<T> batch = Lists.newArrayListWithCapacity(BATCH_SIZE);
+    private long written;
+    private IOException failure;
+
+    private BatchWriter(Writer writer) {
+      this.writer = writer;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public void handleResult(ResultContext context) {
+      batch.add((T) context.getResultObject());
+      if (batch.size() >= BATCH_SIZE) {
+        flushQuietly();
+        if (failure != null) {
+          context.stop();
+        }
+      }
+    }
+
+    private void flushQuietly() {
+      if (failure != null || batch.isEmpty()) {
+        return;
+      }
+      try {
+        for (T entity : augment.apply(componentLoader.load(mapper, batch))) {
+          writer.write(MAPPER.writeValueAsString(entity));
+          writer.write('\n');
+          written++;
+        }
+      } catch (IOException e) {
+        failure = e;
+      }
+      batch.clear();
+    }
+  }
+}
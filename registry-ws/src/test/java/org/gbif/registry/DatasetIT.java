@@ -17,6 +17,7 @@ import org.gbif.api.model.common.paging.PagingRequest;
 import org.gbif.api.model.common.paging.PagingResponse;
 import org.gbif.api.model.common.search.SearchResponse;
 import org.gbif.api.model.registry.Dataset;
+import org.gbif.api.model.registry.Endpoint;
 import org.gbif.api.model.registry.Installation;
 import org.gbif.api.model.registry.Metadata;
 import org.gbif.api.model.registry.Organization;
@@ -31,14 +32,24 @@ import org.gbif.api.service.registry.OrganizationService;
 import org.gbif.api.vocabulary.Country;
 import org.gbif.api.vocabulary.DatasetType;
 import org.gbif.api.vocabulary.MetadataType;
+import org.gbif.registry.events.ChangedComponentEvent;
+import org.gbif.registry.events.CreateEvent;
+import org.gbif.registry.events.DeleteEvent;
+import org.gbif.registry.events.OrderedAsyncEventBus;
+import org.gbif.registry.events.UpdateEvent;
 import org.gbif.registry.grizzly.RegistryServer;
+import org.gbif.registry.metadata.parse.DatasetParser;
 import org.gbif.registry.search.DatasetIndexUpdateListener;
 import org.gbif.registry.search.DatasetSearchUpdateUtils;
 import org.gbif.registry.search.SolrInitializer;
+import org.gbif.registry.utils.Contacts;
 import org.gbif.registry.utils.Datasets;
+import org.gbif.registry.utils.Endpoints;
 import org.gbif.registry.utils.Installations;
 import org.gbif.registry.utils.Nodes;
 import org.gbif.registry.utils.Organizations;
+import org.gbif.registry.ws.client.DatasetChangeset;
+import org.gbif.registry.ws.client.DatasetWsClient;
 import org.gbif.registry.ws.resources.DatasetResource;
 import org.gbif.registry.ws.resources.InstallationResource;
 import org.gbif.registry.ws.resources.NodeResource;
@@ -52,8 +63,13 @@ import java.util.List;
 import java.util.UUID;
 import javax.annotation.Nullable;
 import javax.validation.ValidationException;
+import javax.ws.rs.core.SecurityContext;
 
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import com.google.common.eventbus.EventBus;
+import com.google.common.eventbus.Subscribe;
+import com.google.common.io.ByteStreams;
 import com.google.inject.Injector;
 import com.google.inject.Key;
 import com.google.inject.name.Names;
@@ -69,12 +85,14 @@ import static org.gbif.registry.guice.RegistryTestModules.webservice;
 import static org.gbif.registry.guice.RegistryTestModules.webserviceClient;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotEquals;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
 /**
  * This is parameterized to run the same test routines for the following:
@@ -470,6 +488,30 @@ public class DatasetIT extends NetworkEntityTest<Dataset> {
     assertEquals("Created data should not change", d1.getCreated(), d3.getCreated());
   }
 
+  @Test
+  public void testIdenticalMetadataUpload() throws IOException {
+    Dataset d1 = create(newEntity(), 1);
+    Metadata m1 = service.insertMetadata(d1.getKey(), FileUtils.classpathStream("metadata/sample.xml"));
+    Dataset d2 = service.get(d1.getKey());
+
+    // the same document again neither replaces the stored one nor updates the dataset
+    Metadata m2 = service.insertMetadata(d1.getKey(), FileUtils.classpathStream("metadata/sample.xml"));
+    assertEquals(m1.getKey(), m2.getKey());
+    assertEquals(d2.getModified(), service.get(d1.getKey()).getModified());
+
+    // the stored document is returned exactly as it was uploaded
+    assertArrayEquals(ByteStreams.toByteArray(FileUtils.classpathStream("metadata/sample.xml")),
+      ByteStreams.toByteArray(service.getMetadataDocument(m2.getKey())));
+  }
+
+  @Test
+  public void testGeneratedMetadataDocument() throws IOException {
+    Dataset d1 = create(newEntity(), 1);
+    service.insertMetadata(d1.getKey(), FileUtils.classpathStream("metadata/sample.xml"));
+    Dataset generated = DatasetParser.build(service.getMetadataDocument(d1.getKey()));
+    assertEquals("Tanzanian Entomological Collection", generated.getTitle());
+  }
+
   @Test
   public void testByCountry() {
     createCountryDatasets(DatasetType.OCCURRENCE, Country.ANDORRA, 3);
@@ -524,6 +566,127 @@ public class DatasetIT extends NetworkEntityTest<Dataset> {
     assertSearch(null, Country.DJIBOUTI, 3);
   }
 
+  @Test
+  public void testFailingChangesetRollsBackOnlyItself() {
+    Dataset first = create(newEntity(), 1);
+    Dataset failing = create(newEntity(), 2);
+    String failingTitle = failing.getTitle();
+
+    first.setTitle("Changed by the first changeset");
+    failing.setTitle("Changed by the failing changeset");
+    DatasetChangeset failingChangeset = changeset(failing);
+    Endpoint invalid = Endpoints.newInstance();
+    // rejected by the database once the dataset itself was updated
+    invalid.setDescription("short");
+    failingChangeset.setEndpoints(Lists.newArrayList(invalid));
+    try {
+      applyChangesets(ImmutableList.of(changeset(first), failingChangeset));
+      fail("The changeset with the invalid endpoint must fail");
+    } catch (RuntimeException e) {
+      // expected
+    }
+
+    assertEquals("Changed by the first changeset", service.get(first.getKey()).getTitle());
+    assertEquals(failingTitle, service.get(failing.getKey()).getTitle());
+    assertTrue(service.listEndpoints(failing.getKey()).isEmpty());
+  }
+
+  @Test
+  public void testChangesetEvents() {
+    // events are only observable within the web service
+    if (!(service instanceof DatasetResource)) {
+      return;
+    }
+    Dataset updated = create(newEntity(), 1);
+    Dataset deleted = create(newEntity(), 2);
+
+    DatasetChangeset create = changeset(newEntity());
+    create.setContacts(Lists.newArrayList(Contacts.newInstance(), Contacts.newInstance()));
+    create.setEndpoints(Lists.newArrayList(Endpoints.newInstance()));
+    updated.setTitle("Updated by a changeset");
+    DatasetChangeset update = changeset(updated);
+    update.setContacts(Lists.newArrayList(Contacts.newInstance()));
+    DatasetChangeset delete = changeset(deleted);
+    delete.setDeleted(true);
+
+    EventBus eventBus = webservice().getInstance(EventBus.class);
+    DatasetEventRecorder recorder = new DatasetEventRecorder((DatasetResource) service);
+    if (eventBus instanceof OrderedAsyncEventBus) {
+      ((OrderedAsyncEventBus) eventBus).registerSynchronous(recorder);
+    } else {
+      eventBus.register(recorder);
+    }
+    List<UUID> keys;
+    try {
+      keys = applyChangesets(ImmutableList.of(create, update, delete));
+    } finally {
+      eventBus.unregister(recorder);
+    }
+
+    // a single event per changeset, none per sub resource
+    assertEquals(ImmutableList.of("create " + keys.get(0), "update " + updated.getKey(), "delete " + deleted.getKey()),
+      recorder.events);
+    // the sub resources were committed once the event was posted
+    assertEquals(Integer.valueOf(1), recorder.endpointsOnCreate);
+  }
+
+  /**
+   * Records the dataset events posted, reading the endpoints of a created dataset when its event arrives.
+   */
+  private static class DatasetEventRecorder {
+
+    private final DatasetResource resource;
+    private final List<String> events = Lists.newArrayList();
+    private Integer endpointsOnCreate;
+
+    private DatasetEventRecorder(DatasetResource resource) {
+      this.resource = resource;
+    }
+
+    @Subscribe
+    public void created(CreateEvent<?> event) {
+      if (event.getObjectClass() == Dataset.class) {
+        UUID key = event.getNewObject().getKey();
+        events.add("create " + key);
+        endpointsOnCreate = resource.listEndpoints(key).size();
+      }
+    }
+
+    @Subscribe
+    public void updated(UpdateEvent<?> event) {
+      if (event.getObjectClass() == Dataset.class) {
+        events.add("update " + event.getNewObject().getKey());
+      }
+    }
+
+    @Subscribe
+    public void deleted(DeleteEvent<?> event) {
+      if (event.getObjectClass() == Dataset.class) {
+        events.add("delete " + event.getOldObject().getKey());
+      }
+    }
+
+    @Subscribe
+    public void componentChanged(ChangedComponentEvent event) {
+      if (event.getTargetClass() == Dataset.class) {
+        events.add("component " + event.getTargetEntityKey());
+      }
+    }
+  }
+
+  private List<UUID> applyChangesets(List<DatasetChangeset> changesets) {
+    if (service instanceof DatasetResource) {
+      return ((DatasetResource) service).applyChangesets(changesets, webservice().getInstance(SecurityContext.class));
+    }
+    return ((DatasetWsClient) service).applyChangesets(changesets);
+  }
+
+  private static DatasetChangeset changeset(Dataset dataset) {
+    DatasetChangeset changeset = new DatasetChangeset();
+    changeset.setDataset(dataset);
+    return changeset;
+  }
+
   @Test(expected = ValidationException.class)
   public void createDatasetsWithInvalidUri() {
     Dataset d = newEntity();
@@ -30,6 +30,8 @@ import org.gbif.registry.database.LiquibaseInitializer;
 import org.gbif.registry.grizzly.RegistryServer;
 import org.gbif.registry.guice.RegistryTestModules;
 import org.gbif.registry.persistence.mapper.handler.DOITypeHandler;
+import org.gbif.registry.ws.client.DatasetOccurrenceDownloadUsageWsClient;
+import org.gbif.registry.ws.model.DatasetDownloadStatistics;
 import org.gbif.registry.utils.Datasets;
 import org.gbif.registry.utils.Installations;
 import org.gbif.registry.utils.Nodes;
@@ -42,10 +44,16 @@ import org.gbif.registry.ws.resources.OccurrenceDownloadResource;
 import org.gbif.registry.ws.resources.OrganizationResource;
 import org.gbif.ws.client.filter.SimplePrincipalProvider;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.List;
 import java.util.UUID;
 
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
 import com.google.inject.Injector;
+import org.codehaus.jackson.map.ObjectMapper;
 import org.junit.Before;
 import org.junit.ClassRule;
 import org.junit.Rule;
@@ -176,4 +184,70 @@ public class DatasetOccurrenceDownloadIT {
     assertEquals(occDownload2.getNumberDatasets(), 1);
   }
 
+  /**
+   * Tests creating all dataset usages of a download with a single request.
+   */
+  @Test
+  public void testCreateAll() throws IOException {
+    Download occurrenceDownload = OccurrenceDownloadIT.getTestInstance();
+    occurrenceDownloadService.create(occurrenceDownload);
+    List<DatasetOccurrenceDownloadUsage> usages = Lists.newArrayList();
+    for (int i = 0; i < 3; i++) {
+      Dataset dataset = createTestDataset();
+      DatasetOccurrenceDownloadUsage usage = new DatasetOccurrenceDownloadUsage();
+      usage.setDatasetKey(dataset.getKey());
+      usage.setNumberRecords(10L + i);
+      usage.setDatasetTitle(dataset.getTitle());
+      usage.setDatasetCitation(dataset.getCitation().getText());
+      usages.add(usage);
+    }
+
+    int created;
+    if (datasetOccurrenceDownloadUsageService instanceof DatasetOccurrenceDownloadUsageWsClient) {
+      created = ((DatasetOccurrenceDownloadUsageWsClient) datasetOccurrenceDownloadUsageService)
+        .createAll(occurrenceDownload.getKey(), usages);
+    } else {
+      ByteArrayOutputStream json = new ByteArrayOutputStream();
+      new ObjectMapper().writeValue(json, usages);
+      created = ((DatasetOccurrenceDownloadUsageResource) datasetOccurrenceDownloadUsageService)
+        .createAll(occurrenceDownload.getKey(), new ByteArrayInputStream(json.toByteArray()));
+    }
+
+    assertEquals(3, created);
+    Download download = occurrenceDownloadService.get(occurrenceDownload.getKey());
+    assertEquals(3, download.getNumberDatasets());
+    assertEquals(1, datasetOccurrenceDownloadUsageService.listByDataset(usages.get(0).getDatasetKey(),
+      new PagingRequest(0, 3)).getResults().size());
+  }
+
+  /**
+   * Tests the download statistics maintained while usages are created.
+   */
+  @Test
+  public void testStatistics() {
+    Dataset dataset = createTestDataset();
+    for (int i = 0; i < 2; i++) {
+      Download occurrenceDownload = OccurrenceDownloadIT.getTestInstance();
+      occurrenceDownloadService.create(occurrenceDownload);
+      DatasetOccurrenceDownloadUsage usage = new DatasetOccurrenceDownloadUsage();
+      usage.setDownloadKey(occurrenceDownload.getKey());
+      usage.setDatasetKey(dataset.getKey());
+      usage.setNumberRecords(100L);
+      usage.setDatasetTitle(dataset.getTitle());
+      usage.setDatasetCitation(dataset.getCitation().getText());
+      datasetOccurrenceDownloadUsageService.create(usage);
+    }
+
+    assertEquals(Long.valueOf(2), datasetOccurrenceDownloadUsageService.listByDataset(dataset.getKey(),
+      new PagingRequest(0, 1)).getCount());
+    if (datasetOccurrenceDownloadUsageService instanceof DatasetOccurrenceDownloadUsageResource) {
+      List<DatasetDownloadStatistics> statistics =
+        ((DatasetOccurrenceDownloadUsageResource) datasetOccurrenceDownloadUsageService)
+          .statisticsByDataset(dataset.getKey());
+      assertEquals(1, statistics.size());
+      assertEquals(2, statistics.get(0).getDownloads());
+      assertEquals(200, statistics.get(0).getRecords());
+    }
+  }
+
 }
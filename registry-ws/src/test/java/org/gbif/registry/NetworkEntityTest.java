@@ -40,14 +40,26 @@ import org.gbif.registry.database.DatabaseInitializer;
 import org.gbif.registry.database.LiquibaseInitializer;
 import org.gbif.registry.grizzly.RegistryServer;
 import org.gbif.registry.guice.RegistryTestModules;
+import org.gbif.registry.persistence.ContinuationToken;
 import org.gbif.registry.utils.MachineTags;
+import org.gbif.registry.ws.client.BaseNetworkEntityClient;
+import org.gbif.registry.ws.client.ContinuationPage;
+import org.gbif.registry.ws.client.NdjsonIterator;
+import org.gbif.registry.ws.resources.BaseNetworkEntityResource;
 import org.gbif.ws.client.filter.SimplePrincipalProvider;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.security.AccessControlException;
+import java.util.Calendar;
+import java.util.Date;
+import java.util.Iterator;
 import java.util.List;
 import java.util.UUID;
 import javax.annotation.Nullable;
 import javax.validation.ValidationException;
+import javax.ws.rs.core.StreamingOutput;
+import javax.xml.bind.DatatypeConverter;
 
 import com.google.common.base.Preconditions;
 import com.google.common.base.Throwables;
@@ -253,6 +265,84 @@ public abstract class NetworkEntityTest<T extends NetworkEntity & Contactable &
     }
   }
 
+  /**
+   * Confirm that keyset paging returns all entities in creation time order, whether called directly or via the client.
+   */
+  @Test
+  @SuppressWarnings("unchecked")
+  public void testKeysetPaging() {
+    List<UUID> uuids = Lists.newArrayList();
+    for (int i = 1; i <= 5; i++) {
+      uuids.add(create(newEntity(), i).getKey());
+    }
+    uuids = Lists.reverse(uuids);
+
+    for (int pageSize = 1; pageSize <= uuids.size() + 1; pageSize++) {
+      List<UUID> listed = Lists.newArrayList();
+      String token = null;
+      int pages = 0;
+      do {
+        List<T> results;
+        if (service instanceof BaseNetworkEntityResource) {
+          results = ((BaseNetworkEntityResource<T>) service).listAfter(ContinuationToken.decode(token), pageSize);
+          token = results.size() < pageSize ? null
+            : ContinuationToken.after(results.get(results.size() - 1)).encode();
+        } else {
+          ContinuationPage<T> page = ((BaseNetworkEntityClient<T>) service).listAfter(token, pageSize, pages == 0);
+          if (pages == 0) {
+            assertEquals("Count wrong", Long.valueOf(uuids.size()), page.getCount());
+          }
+          results = page.getResults();
+          token = page.getContinuationToken();
+        }
+        for (T e : results) {
+          listed.add(e.getKey());
+        }
+        pages++;
+      } while (token != null);
+      assertEquals("Keyset paging with pages of size " + pageSize + " is not in creation order", uuids, listed);
+      assertEquals(uuids.size() / pageSize + 1, pages);
+    }
+  }
+
+  /**
+   * Confirm that the export streams all entities in creation order and filters them by modification date.
+   */
+  @Test
+  public void testExport() throws Exception {
+    List<UUID> uuids = Lists.newArrayList();
+    for (int i = 1; i <= 3; i++) {
+      uuids.add(create(newEntity(), i).getKey());
+    }
+    service.delete(uuids.remove(1));
+
+    List<UUID> exported = Lists.newArrayList();
+    Iterator<T> iter = export(null);
+    while (iter.hasNext()) {
+      T e = iter.next();
+      assertNotNull(e.getCreated());
+      exported.add(e.getKey());
+    }
+    assertEquals(uuids, exported);
+    assertTrue(!export(new Date(System.currentTimeMillis() + 60000)).hasNext());
+  }
+
+  @SuppressWarnings("unchecked")
+  private Iterator<T> export(@Nullable Date modifiedSince) throws Exception {
+    if (service instanceof BaseNetworkEntityClient) {
+      return ((BaseNetworkEntityClient<T>) service).export(modifiedSince);
+    }
+    String since = null;
+    if (modifiedSince != null) {
+      Calendar cal = Calendar.getInstance();
+      cal.setTime(modifiedSince);
+      since = DatatypeConverter.printDateTime(cal);
+    }
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    ((StreamingOutput) ((BaseNetworkEntityResource<T>) service).export(since, null).getEntity()).write(out);
+    return new NdjsonIterator<T>((Class<T>) newEntity().getClass(), new ByteArrayInputStream(out.toByteArray()));
+  }
+
   /**
    * Simple search test including when the entity is updated.
    */
@@ -0,0 +1,114 @@
+package org.gbif.registry.events;
+
+import org.gbif.api.model.registry.Dataset;
+import org.gbif.common.messaging.api.Message;
+import org.gbif.common.messaging.api.MessagePublisher;
+import org.gbif.common.messaging.api.messages.RegistryChangeMessage;
+
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import com.google.common.collect.Lists;
+import com.google.common.eventbus.EventBus;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+public class MessageSendingEventListenerTest {
+
+  private static final int EMBARGO_SECONDS = 60;
+
+  private final MessagePublisher publisher = mock(MessagePublisher.class);
+
+  @Test
+  public void testCoalescing() throws Exception {
+    MessageSendingEventListener listener =
+      new MessageSendingEventListener(publisher, new EventBus(), EMBARGO_SECONDS, 1000);
+    List<Dataset> datasets = Lists.newArrayList();
+    for (int i = 0; i < 10; i++) {
+      Dataset d = dataset(UUID.randomUUID(), "created");
+      datasets.add(d);
+      listener.sendCreatedEvent(CreateEvent.newInstance(d, Dataset.class));
+    }
+    for (int round = 0; round < 100; round++) {
+      for (Dataset d : datasets) {
+        listener.sendUpdatedEvent(UpdateEvent.newInstance(dataset(d.getKey(), "round " + round), d, Dataset.class));
+      }
+    }
+    Dataset deleted = datasets.get(0);
+    listener.sendDeletedEvent(DeleteEvent.newInstance(deleted, Dataset.class));
+    assertEquals(10, listener.getPending());
+    assertEquals(1011, listener.getReceived());
+    assertEquals(1001, listener.getCoalesced());
+
+    // nothing is sent during the embargo
+    listener.publishDue(System.currentTimeMillis());
+    verify(publisher, never()).send(any(Message.class));
+
+    listener.publishDue(System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(EMBARGO_SECONDS + 1));
+    ArgumentCaptor<Message> messages = ArgumentCaptor.forClass(Message.class);
+    verify(publisher, times(10)).send(messages.capture());
+    assertEquals(0, listener.getPending());
+    assertEquals(10, listener.getSent());
+
+    RegistryChangeMessage first = (RegistryChangeMessage) messages.getAllValues().get(0);
+    assertEquals(RegistryChangeMessage.ChangeType.DELETED, first.getChangeType());
+    assertNull(first.getNewObject());
+    RegistryChangeMessage last = (RegistryChangeMessage) messages.getAllValues().get(9);
+    assertEquals(RegistryChangeMessage.ChangeType.CREATED, last.getChangeType());
+    assertNull(last.getOldObject());
+    assertEquals("round 99", ((Dataset) last.getNewObject()).getTitle());
+  }
+
+  @Test
+  public void testShutdownSendsWaitingMessages() throws Exception {
+    MessageSendingEventListener listener =
+      new MessageSendingEventListener(publisher, new EventBus(), EMBARGO_SECONDS, 1000);
+    for (int i = 0; i < 5; i++) {
+      Dataset d = dataset(UUID.randomUUID(), "dataset " + i);
+      listener.sendCreatedEvent(CreateEvent.newInstance(d, Dataset.class));
+    }
+
+    listener.shutdown();
+    verify(publisher, times(5)).send(any(Message.class));
+    assertEquals(0, listener.getPending());
+
+    // events delivered late are sent right away
+    Dataset late = dataset(UUID.randomUUID(), "late");
+    listener.sendCreatedEvent(CreateEvent.newInstance(late, Dataset.class));
+    verify(publisher, times(6)).send(any(Message.class));
+    assertEquals(0, listener.getPending());
+  }
+
+  @Test
+  public void testBoundedPending() throws Exception {
+    MessageSendingEventListener listener =
+      new MessageSendingEventListener(publisher, new EventBus(), EMBARGO_SECONDS, 100);
+    for (int i = 0; i < 250; i++) {
+      Dataset d = dataset(UUID.randomUUID(), "dataset " + i);
+      listener.sendUpdatedEvent(UpdateEvent.newInstance(d, d, Dataset.class));
+    }
+    // the posting thread waited for the publishing thread to send the oldest messages early
+    assertTrue(listener.getPending() <= 100);
+    assertTrue(listener.getForced() >= 150);
+    assertEquals(250, listener.getPending() + listener.getForced());
+    verify(publisher, timeout(5000).times((int) listener.getForced())).send(any(Message.class));
+  }
+
+  private static Dataset dataset(UUID key, String title) {
+    Dataset d = new Dataset();
+    d.setKey(key);
+    d.setTitle(title);
+    return d;
+  }
+}
@@ -0,0 +1,233 @@
+package org.gbif.registry.events;
+
+import org.gbif.api.model.registry.Dataset;
+import org.gbif.api.model.registry.Tag;
+
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.google.common.base.Stopwatch;
+import com.google.common.collect.ArrayListMultimap;
+import com.google.common.collect.ListMultimap;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Multimaps;
+import com.google.common.eventbus.AllowConcurrentEvents;
+import com.google.common.eventbus.Subscribe;
+import org.junit.After;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class OrderedAsyncEventBusTest {
+
+  private OrderedAsyncEventBus bus;
+
+  /**
+   * Records the update events received per dataset, in order of arrival.
+   */
+  public static class RecordingListener {
+
+    private final ListMultimap<UUID, String> titles =
+      Multimaps.synchronizedListMultimap(ArrayListMultimap.<UUID, String>create());
+
+    @Subscribe
+    @AllowConcurrentEvents
+    public void updated(UpdateEvent<Dataset> event) {
+      titles.put(event.getNewObject().getKey(), event.getNewObject().getTitle());
+    }
+  }
+
+  /**
+   * Blocks on every event until released, counting the events it received.
+   */
+  public static class BlockingListener {
+
+    private final CountDownLatch release = new CountDownLatch(1);
+    private final List<Object> received = new CopyOnWriteArrayList<Object>();
+
+    @Subscribe
+    public void changed(ChangedComponentEvent event) throws InterruptedException {
+      release.await();
+      received.add(event);
+    }
+  }
+
+  /**
+   * Records the highest number of events it was handling at the same time.
+   */
+  public static class ConcurrencyListener {
+
+    private final AtomicInteger active = new AtomicInteger();
+    private final AtomicInteger maxActive = new AtomicInteger();
+
+    @Subscribe
+    public void changed(ChangedComponentEvent event) throws InterruptedException {
+      int current = active.incrementAndGet();
+      while (maxActive.get() < current) {
+        maxActive.compareAndSet(maxActive.get(), current);
+      }
+      Thread.sleep(5);
+      active.decrementAndGet();
+    }
+  }
+
+  public static class FailingListener {
+
+    @Subscribe
+    public void changed(ChangedComponentEvent event) {
+      throw new IllegalStateException("Failing on purpose");
+    }
+  }
+
+  @After
+  public void shutdown() {
+    if (bus != null) {
+      bus.shutdown();
+    }
+  }
+
+  @Test
+  public void testOrderPerEntity() throws Exception {
+    bus = new OrderedAsyncEventBus(4, 1000, 1000);
+    RecordingListener listener = new RecordingListener();
+    bus.register(listener);
+
+    List<UUID> keys = Lists.newArrayList();
+    for (int i = 0; i < 20; i++) {
+      keys.add(UUID.randomUUID());
+    }
+    for (int version = 0; version < 50; version++) {
+      for (UUID key : keys) {
+        bus.post(UpdateEvent.newInstance(dataset(key, "v" + version), dataset(key, "old"), Dataset.class));
+      }
+    }
+    awaitDelivery(listener);
+
+    for (UUID key : keys) {
+      List<String> titles = listener.titles.get(key);
+      assertEquals(50, titles.size());
+      for (int version = 0; version < 50; version++) {
+        assertEquals("Events of " + key + " out of order", "v" + version, titles.get(version));
+      }
+    }
+    OrderedAsyncEventBus.DispatchStats stats = bus.stats().get(RecordingListener.class.getName());
+    assertEquals(1000, stats.getPosted());
+    assertEquals(1000, stats.getDelivered());
+    assertEquals(0, stats.getBlocked());
+  }
+
+  /**
+   * A full lane blocks the poster until the listener catches up, without dropping events and without delaying the
+   * other listeners.
+   */
+  @Test
+  public void testFullLaneBlocksPoster() throws Exception {
+    bus = new OrderedAsyncEventBus(1, 10, 10);
+    final BlockingListener slow = new BlockingListener();
+    RecordingListener fast = new RecordingListener();
+    bus.register(slow);
+    bus.register(fast);
+
+    final UUID key = UUID.randomUUID();
+    Thread poster = new Thread(new Runnable() {
+      @Override
+      public void run() {
+        for (int i = 0; i < 20; i++) {
+          bus.post(ChangedComponentEvent.newInstance(key, Dataset.class, Tag.class));
+          bus.post(UpdateEvent.newInstance(dataset(key, "v" + i), dataset(key, "old"), Dataset.class));
+        }
+      }
+    });
+    poster.setDaemon(true);
+    poster.start();
+    poster.join(500);
+    // one event is in process, 10 wait in the queue and the poster waits for the next one to fit before it can
+    // post that event to the fast listener
+    assertTrue(poster.isAlive());
+    assertEquals(12, bus.stats().get(BlockingListener.class.getName()).getPosted());
+    assertEquals(5, fast.titles.get(key).size());
+
+    slow.release.countDown();
+    poster.join(10000);
+    assertFalse(poster.isAlive());
+    awaitDelivery(slow);
+    awaitDelivery(fast);
+
+    OrderedAsyncEventBus.DispatchStats slowStats = bus.stats().get(BlockingListener.class.getName());
+    assertEquals(40, slowStats.getPosted());
+    // update events are not handled by the slow listener, but still need to pass its lane
+    assertEquals(40, slowStats.getDelivered());
+    assertTrue(slowStats.getBlocked() > 0);
+    assertEquals(20, slow.received.size());
+    assertEquals(20, fast.titles.get(key).size());
+  }
+
+  /**
+   * Listeners not marked as thread safe receive one event at a time, whatever the number of lanes.
+   */
+  @Test
+  public void testSingleLaneForNonConcurrentListener() throws Exception {
+    bus = new OrderedAsyncEventBus(4, 100, 1000);
+    ConcurrencyListener listener = new ConcurrencyListener();
+    bus.register(listener);
+    for (int i = 0; i < 40; i++) {
+      bus.post(ChangedComponentEvent.newInstance(UUID.randomUUID(), Dataset.class, Tag.class));
+    }
+    awaitDelivery(listener);
+    assertEquals(40, bus.stats().get(ConcurrencyListener.class.getName()).getDelivered());
+    assertEquals(1, listener.maxActive.get());
+
+    assertFalse(OrderedAsyncEventBus.allowsConcurrentEvents(ConcurrencyListener.class));
+    assertFalse(OrderedAsyncEventBus.allowsConcurrentEvents(Object.class));
+    assertTrue(OrderedAsyncEventBus.allowsConcurrentEvents(RecordingListener.class));
+  }
+
+  @Test
+  public void testFailuresAreCounted() throws Exception {
+    bus = new OrderedAsyncEventBus(2, 10, 1000);
+    FailingListener listener = new FailingListener();
+    bus.register(listener);
+    for (int i = 0; i < 5; i++) {
+      bus.post(ChangedComponentEvent.newInstance(UUID.randomUUID(), Dataset.class, Tag.class));
+    }
+    awaitDelivery(listener);
+    OrderedAsyncEventBus.DispatchStats stats = bus.stats().get(FailingListener.class.getName());
+    assertEquals(5, stats.getDelivered());
+    assertEquals(5, stats.getFailed());
+  }
+
+  @Test
+  public void testUnregister() throws Exception {
+    bus = new OrderedAsyncEventBus(1, 10, 1000);
+    RecordingListener listener = new RecordingListener();
+    bus.register(listener);
+    bus.unregister(listener);
+    bus.post(UpdateEvent.newInstance(dataset(UUID.randomUUID(), "v"), dataset(UUID.randomUUID(), "old"),
+                                     Dataset.class));
+    assertTrue(bus.stats().isEmpty());
+    assertTrue(listener.titles.isEmpty());
+  }
+
+  private void awaitDelivery(Object listener) throws InterruptedException {
+    Stopwatch watch = Stopwatch.createStarted();
+    while (bus.pending(listener) > 0) {
+      Thread.sleep(5);
+      if (watch.elapsed(TimeUnit.SECONDS) > 10) {
+        throw new IllegalStateException("Events not delivered within 10 seconds");
+      }
+    }
+  }
+
+  private static Dataset dataset(UUID key, String title) {
+    Dataset d = new Dataset();
+    d.setKey(key);
+    d.setTitle(title);
+    return d;
+  }
+}
@@ -0,0 +1,91 @@
+package org.gbif.registry.events;
+
+import java.net.URI;
+import java.util.List;
+import java.util.UUID;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import org.apache.http.HttpVersion;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpUriRequest;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.message.BasicStatusLine;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.atLeastOnce;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class VarnishPurgerTest {
+
+  private static final URI API = URI.create("http://api.gbif.org/v1/");
+
+  private final CloseableHttpClient client = mock(CloseableHttpClient.class);
+  private VarnishPurger purger;
+
+  @Before
+  public void setup() throws Exception {
+    CloseableHttpResponse resp = mock(CloseableHttpResponse.class);
+    when(resp.getStatusLine()).thenReturn(new BasicStatusLine(HttpVersion.HTTP_1_1, 200, "OK"));
+    when(client.execute(any(HttpUriRequest.class))).thenReturn(resp);
+    // a long window, the test flushes explicitly
+    purger = new VarnishPurger(client, API, 60000, 4, 2);
+  }
+
+  @Test
+  public void testMergeAndDeduplicate() throws Exception {
+    UUID installationKey = UUID.randomUUID();
+    List<UUID> orgKeys = Lists.newArrayList();
+    for (int i = 0; i < 250; i++) {
+      UUID orgKey = UUID.randomUUID();
+      orgKeys.add(orgKey);
+      purger.purge(API.resolve("dataset/" + installationKey));
+      purger.ban("/v1/network/.+/constituents");
+      purger.ban("/v1/installation/%s/dataset", ImmutableList.of(installationKey));
+      purger.ban("/v1/organization/%s/publishedDataset", ImmutableList.of(orgKey));
+    }
+    purger.ban("/v1/node/%s/dataset", ImmutableList.<UUID>of());
+    purger.shutdown();
+
+    // 1 purge, 1 network ban, 1 installation ban and 3 organization bans of at most 100 keys
+    ArgumentCaptor<HttpUriRequest> requests = ArgumentCaptor.forClass(HttpUriRequest.class);
+    verify(client, atLeastOnce()).execute(requests.capture());
+    assertEquals(6, requests.getAllValues().size());
+    assertEquals(6, purger.getSent());
+    assertEquals(1000 - 6, purger.getMerged());
+    assertEquals(0, purger.getFailed());
+
+    int orgKeysBanned = 0;
+    for (HttpUriRequest request : requests.getAllValues()) {
+      if (request instanceof VarnishPurger.HttpBan) {
+        String regex = request.getFirstHeader(VarnishPurger.HttpBan.BAN_HEADER).getValue();
+        for (UUID orgKey : orgKeys) {
+          if (regex.contains(orgKey.toString())) {
+            orgKeysBanned++;
+          }
+        }
+        assertTrue(regex.length() < 8192);
+      }
+    }
+    assertEquals(orgKeys.size(), orgKeysBanned);
+  }
+
+  @Test
+  public void testFailures() throws Exception {
+    CloseableHttpResponse resp = mock(CloseableHttpResponse.class);
+    when(resp.getStatusLine()).thenReturn(new BasicStatusLine(HttpVersion.HTTP_1_1, 503, "Unavailable"));
+    when(client.execute(any(HttpUriRequest.class))).thenReturn(resp);
+    purger.purge(API.resolve("dataset"));
+    purger.ban("/v1/dataset");
+    purger.shutdown();
+    assertEquals(0, purger.getSent());
+    assertEquals(2, purger.getFailed());
+  }
+}
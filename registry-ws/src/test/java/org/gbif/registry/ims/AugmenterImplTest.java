@@ -0,0 +1,79 @@
+package org.gbif.registry.ims;
+
+import org.gbif.api.model.registry.Identifier;
+import org.gbif.api.model.registry.Node;
+import org.gbif.api.vocabulary.IdentifierType;
+import org.gbif.drupal.mybatis.ImsNodeMapper;
+
+import java.util.List;
+
+import com.google.common.collect.Lists;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class AugmenterImplTest {
+
+  private final ImsNodeMapper mapper = mock(ImsNodeMapper.class);
+
+  @Test
+  public void testParticipantsAreCached() {
+    for (int imsId = 1; imsId <= 5; imsId++) {
+      when(mapper.get(imsId)).thenReturn(imsNode("City " + imsId));
+    }
+    Augmenter augmenter = new AugmenterImpl(mapper);
+
+    for (int round = 0; round < 3; round++) {
+      List<Node> nodes = Lists.newArrayList();
+      for (int i = 0; i < 50; i++) {
+        nodes.add(node(String.valueOf(i % 5 + 1)));
+      }
+      nodes.add(node("not a number"));
+      augmenter.augment(nodes);
+      assertEquals("City 1", nodes.get(0).getCity());
+      assertEquals("City 5", nodes.get(49).getCity());
+      assertNull(nodes.get(50).getCity());
+      assertEquals("City 2", augmenter.augment(node("2")).getCity());
+    }
+    // each participant is read once only
+    verify(mapper, times(5)).get(anyInt());
+  }
+
+  @Test
+  public void testRefresh() {
+    when(mapper.get(1)).thenReturn(imsNode("Copenhagen"));
+    AugmenterImpl augmenter = new AugmenterImpl(mapper);
+    assertEquals("Copenhagen", augmenter.augment(node("1")).getCity());
+
+    when(mapper.get(1)).thenReturn(imsNode("Madrid"));
+    assertEquals("Copenhagen", augmenter.augment(node("1")).getCity());
+    augmenter.refresh();
+    assertEquals("Madrid", augmenter.augment(node("1")).getCity());
+
+    // the IMS is unavailable, the snapshot is kept
+    when(mapper.get(1)).thenThrow(new RuntimeException("IMS down"));
+    augmenter.refresh();
+    assertEquals("Madrid", augmenter.augment(node("1")).getCity());
+  }
+
+  private static Node node(String participantId) {
+    Node node = new Node();
+    Identifier id = new Identifier();
+    id.setType(IdentifierType.GBIF_PARTICIPANT);
+    id.setIdentifier(participantId);
+    node.getIdentifiers().add(id);
+    return node;
+  }
+
+  private static Node imsNode(String city) {
+    Node node = new Node();
+    node.setCity(city);
+    return node;
+  }
+}
@@ -0,0 +1,190 @@
+/*
+ * Copyright 2013 Global Biodiversity Information Facility (GBIF)
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.gbif.registry.persistence;
+
+import org.gbif.api.model.common.paging.PagingRequest;
+import org.gbif.api.model.registry.Dataset;
+import org.gbif.api.model.registry.Installation;
+import org.gbif.api.model.registry.NetworkEntity;
+import org.gbif.api.model.registry.Organization;
+import org.gbif.registry.database.DatabaseInitializer;
+import org.gbif.registry.database.LiquibaseInitializer;
+import org.gbif.registry.guice.RegistryTestModules;
+import org.gbif.registry.persistence.mapper.BaseNetworkEntityMapper;
+import org.gbif.registry.persistence.mapper.DatasetMapper;
+import org.gbif.registry.persistence.mapper.EndpointMapper;
+import org.gbif.registry.persistence.mapper.InstallationMapper;
+import org.gbif.registry.persistence.mapper.OrganizationMapper;
+import org.gbif.registry.utils.Comments;
+import org.gbif.registry.utils.Contacts;
+import org.gbif.registry.utils.Datasets;
+import org.gbif.registry.utils.Endpoints;
+import org.gbif.registry.utils.Identifiers;
+import org.gbif.registry.utils.Installations;
+import org.gbif.registry.utils.MachineTags;
+import org.gbif.registry.utils.Organizations;
+import org.gbif.registry.ws.resources.DatasetResource;
+
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.Logger;
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.core.AppenderBase;
+import com.google.inject.Injector;
+import org.junit.Before;
+import org.junit.ClassRule;
+import org.junit.Rule;
+import org.junit.Test;
+import org.slf4j.LoggerFactory;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Counts the statements needed to list a page of entities with their sub resources, in batched and per entity mode.
+ */
+public class ComponentLoaderIT {
+
+  private static final int PAGE_SIZE = 20;
+
+  @ClassRule
+  public static final LiquibaseInitializer liquibaseRule = new LiquibaseInitializer(RegistryTestModules.database());
+
+  @Rule
+  public final DatabaseInitializer databaseRule = new DatabaseInitializer(RegistryTestModules.database());
+
+  private DatasetResource datasetResource;
+  private DatasetMapper datasetMapper;
+  private OrganizationMapper organizationMapper;
+  private InstallationMapper installationMapper;
+  private ComponentLoader batched;
+  private ComponentLoader perEntity;
+
+  /**
+   * Counts the statements prepared by MyBatis, which logs every statement at debug level using the statement id as
+   * logger name.
+   */
+  private static class StatementCounter extends AppenderBase<ILoggingEvent> {
+
+    private final Logger logger = (Logger) LoggerFactory.getLogger("org.gbif.registry.persistence.mapper");
+    private final AtomicInteger statements = new AtomicInteger();
+    private Level level;
+
+    @Override
+    protected void append(ILoggingEvent event) {
+      if (event.getFormattedMessage().contains("Preparing:")) {
+        statements.incrementAndGet();
+      }
+    }
+
+    private void attach() {
+      level = logger.getLevel();
+      logger.setLevel(Level.DEBUG);
+      logger.setAdditive(false);
+      logger.addAppender(this);
+      start();
+    }
+
+    private int detach() {
+      stop();
+      logger.detachAppender(this);
+      logger.setAdditive(true);
+      logger.setLevel(level);
+      return statements.get();
+    }
+  }
+
+  @Before
+  public void setup() {
+    Injector injector = RegistryTestModules.webservice();
+    datasetResource = injector.getInstance(DatasetResource.class);
+    datasetMapper = injector.getInstance(DatasetMapper.class);
+    organizationMapper = injector.getInstance(OrganizationMapper.class);
+    installationMapper = injector.getInstance(InstallationMapper.class);
+    EndpointMapper endpointMapper = injector.getInstance(EndpointMapper.class);
+    batched = new ComponentLoader(endpointMapper, true);
+    perEntity = new ComponentLoader(endpointMapper, false);
+  }
+
+  @Test
+  public void testDatasetPage() {
+    Organization organization = Organizations.newPersistedInstance();
+    Installation installation = Installations.newPersistedInstance(organization.getKey());
+    for (int i = 0; i < PAGE_SIZE; i++) {
+      UUID key = Datasets.newPersistedInstance(organization.getKey(), installation.getKey()).getKey();
+      datasetResource.addContact(key, Contacts.newInstance());
+      datasetResource.addEndpoint(key, Endpoints.newInstance());
+      datasetResource.addMachineTag(key, MachineTags.newInstance());
+      datasetResource.addTag(key, "tag" + i);
+      datasetResource.addIdentifier(key, Identifiers.newInstance());
+      datasetResource.addComment(key, Comments.newInstance());
+    }
+
+    // the list itself, contacts, endpoints, endpoint machine tags, machine tags, tags, identifiers, comments and the
+    // constituent counts
+    List<Dataset> page = assertStatements(datasetMapper, batched, 1 + 8);
+    // the same 8 statements for every dataset, as done by the nested selects of the full result map
+    List<Dataset> expected = assertStatements(datasetMapper, perEntity, 1 + 8 * PAGE_SIZE);
+
+    assertEquals(PAGE_SIZE, page.size());
+    assertEquals(expected, page);
+    for (Dataset dataset : page) {
+      assertEquals(1, dataset.getContacts().size());
+      assertEquals(1, dataset.getEndpoints().size());
+      assertEquals(1, dataset.getEndpoints().get(0).getMachineTags().size());
+      assertEquals(datasetMapper.get(dataset.getKey()), dataset);
+    }
+  }
+
+  @Test
+  public void testOrganizationAndInstallationPage() {
+    for (int i = 0; i < PAGE_SIZE; i++) {
+      Organization organization = Organizations.newPersistedInstance();
+      Installation installation = Installations.newPersistedInstance(organization.getKey());
+      Datasets.newPersistedInstance(organization.getKey(), installation.getKey());
+    }
+
+    // the list itself, contacts, endpoints, machine tags, tags, identifiers, comments and the dataset counts
+    List<Organization> organizations = assertStatements(organizationMapper, batched, 1 + 7);
+    assertEquals(PAGE_SIZE, organizations.size());
+    for (Organization organization : organizations) {
+      assertEquals(1, organization.getNumPublishedDatasets());
+      assertEquals(organizationMapper.get(organization.getKey()), organization);
+    }
+
+    // the list itself, contacts, endpoints, machine tags, tags and comments, as installations have no identifiers
+    List<Installation> installations = assertStatements(installationMapper, batched, 1 + 5);
+    assertEquals(PAGE_SIZE, installations.size());
+    for (Installation installation : installations) {
+      assertEquals(installationMapper.get(installation.getKey()), installation);
+    }
+  }
+
+  /**
+   * Lists the first page using the given loader and verifies the number of statements needed.
+   */
+  private <T extends NetworkEntity> List<T> assertStatements(BaseNetworkEntityMapper<T> mapper, ComponentLoader loader,
+    int expectedStatements) {
+    StatementCounter counter = new StatementCounter();
+    counter.attach();
+    List<T> page;
+    try {
+      page = loader.load(mapper, mapper.list(new PagingRequest(0, PAGE_SIZE)));
+    } finally {
+      assertEquals("Statements to list a page of " + PAGE_SIZE, expectedStatements, counter.detach());
+    }
+    return page;
+  }
+}
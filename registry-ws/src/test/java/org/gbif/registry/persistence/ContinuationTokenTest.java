@@ -0,0 +1,37 @@
+package org.gbif.registry.persistence;
+
+import java.util.Date;
+import java.util.UUID;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class ContinuationTokenTest {
+
+  @Test
+  public void testRoundTrip() {
+    ContinuationToken token = new ContinuationToken(new Date(1400000000123L), UUID.randomUUID());
+    String encoded = token.encode();
+    assertEquals(token, ContinuationToken.decode(encoded));
+    // safe to use in urls without escaping
+    assertEquals(encoded, encoded.replaceAll("[^A-Za-z0-9_-]", ""));
+  }
+
+  @Test
+  public void testFirstPage() {
+    assertNull(ContinuationToken.decode(null));
+    assertNull(ContinuationToken.decode(""));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testInvalidToken() {
+    ContinuationToken.decode("bm90LWEtdG9rZW4");
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testInvalidEncoding() {
+    ContinuationToken.decode("not a token!");
+  }
+}
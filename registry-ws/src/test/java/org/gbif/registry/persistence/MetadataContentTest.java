@@ -0,0 +1,48 @@
+package org.gbif.registry.persistence;
+
+import org.gbif.utils.file.FileUtils;
+
+import java.io.InputStream;
+
+import com.google.common.io.ByteStreams;
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+public class MetadataContentTest {
+
+  @Test
+  public void testRoundTrip() throws Exception {
+    byte[] document = ByteStreams.toByteArray(FileUtils.classpathStream("metadata/sample.xml"));
+    byte[] compressed = MetadataContent.compress(document);
+    assertTrue(MetadataContent.isCompressed(compressed));
+    assertTrue("EML should compress well", compressed.length < document.length / 2);
+    assertArrayEquals(document, MetadataContent.decompress(compressed));
+    try (InputStream in = MetadataContent.open(compressed)) {
+      assertArrayEquals(document, ByteStreams.toByteArray(in));
+    }
+  }
+
+  @Test
+  public void testUncompressedContent() throws Exception {
+    // documents stored before compression was introduced
+    byte[] document = "<eml/>".getBytes("UTF-8");
+    assertFalse(MetadataContent.isCompressed(document));
+    assertArrayEquals(document, MetadataContent.decompress(document));
+    try (InputStream in = MetadataContent.open(document)) {
+      assertArrayEquals(document, ByteStreams.toByteArray(in));
+    }
+  }
+
+  @Test
+  public void testHash() throws Exception {
+    byte[] document = "<eml/>".getBytes("UTF-8");
+    assertEquals(64, MetadataContent.hash(document).length());
+    assertEquals(MetadataContent.hash(document), MetadataContent.hash("<eml/>".getBytes("UTF-8")));
+    assertNotEquals(MetadataContent.hash(document), MetadataContent.hash("<eml />".getBytes("UTF-8")));
+  }
+}
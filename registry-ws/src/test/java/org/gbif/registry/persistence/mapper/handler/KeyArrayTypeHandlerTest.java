@@ -0,0 +1,34 @@
+package org.gbif.registry.persistence.mapper.handler;
+
+import java.sql.Array;
+import java.sql.ResultSet;
+import java.util.UUID;
+
+import com.google.common.collect.ImmutableList;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class KeyArrayTypeHandlerTest {
+
+  private final KeyArrayTypeHandler handler = new KeyArrayTypeHandler();
+
+  @Test
+  public void testGetResult() throws Exception {
+    UUID key1 = UUID.randomUUID();
+    UUID key2 = UUID.randomUUID();
+    Array array = mock(Array.class);
+    when(array.getArray()).thenReturn(new UUID[] {key1, key2});
+    ResultSet rs = mock(ResultSet.class);
+    when(rs.getArray("keys")).thenReturn(array);
+    when(rs.getArray(1)).thenReturn(null);
+
+    assertEquals(ImmutableList.of(key1, key2), handler.getResult(rs, "keys"));
+    verify(array).free();
+    assertNull(handler.getResult(rs, 1));
+  }
+}
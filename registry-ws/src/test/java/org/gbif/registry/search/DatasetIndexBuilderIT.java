@@ -0,0 +1,105 @@
+package org.gbif.registry.search;
+
+import org.gbif.api.model.registry.Dataset;
+import org.gbif.api.model.registry.Installation;
+import org.gbif.api.model.registry.Organization;
+import org.gbif.api.service.registry.DatasetService;
+import org.gbif.api.service.registry.InstallationService;
+import org.gbif.api.service.registry.OrganizationService;
+import org.gbif.registry.database.DatabaseInitializer;
+import org.gbif.registry.database.LiquibaseInitializer;
+import org.gbif.registry.guice.RegistryTestModules;
+import org.gbif.registry.persistence.mapper.DatasetMapper;
+import org.gbif.registry.utils.Datasets;
+import org.gbif.registry.utils.Installations;
+import org.gbif.registry.utils.Organizations;
+import org.gbif.registry.ws.resources.DatasetResource;
+
+import java.util.Date;
+import java.util.List;
+
+import com.google.common.collect.Lists;
+import com.google.inject.Injector;
+import com.google.inject.Key;
+import com.google.inject.name.Names;
+import org.apache.solr.client.solrj.SolrQuery;
+import org.apache.solr.client.solrj.SolrServer;
+import org.junit.Before;
+import org.junit.ClassRule;
+import org.junit.Rule;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Builds the index of more datasets than fit in a single page and converter batch.
+ */
+public class DatasetIndexBuilderIT {
+
+  @ClassRule
+  public static final LiquibaseInitializer liquibaseRule = new LiquibaseInitializer(RegistryTestModules.database());
+
+  @Rule
+  public final DatabaseInitializer databaseRule = new DatabaseInitializer(RegistryTestModules.database());
+
+  @Rule
+  public final SolrInitializer solrRule;
+
+  private final Injector injector = RegistryTestModules.webservice();
+  private final SolrServer solrServer = injector.getInstance(Key.get(SolrServer.class, Names.named("Dataset")));
+  private DatasetIndexBuilder builder;
+
+  public DatasetIndexBuilderIT() {
+    solrRule = new SolrInitializer(solrServer, injector.getInstance(DatasetIndexUpdateListener.class));
+  }
+
+  @Before
+  public void setup() {
+    builder = new DatasetIndexBuilder(solrServer, injector.getInstance(DatasetService.class),
+      injector.getInstance(InstallationService.class), injector.getInstance(OrganizationService.class),
+      injector.getInstance(DatasetMapper.class), 4, 30);
+  }
+
+  @Test
+  public void testBuild() throws Exception {
+    Organization organization = Organizations.newPersistedInstance();
+    Installation installation = Installations.newPersistedInstance(organization.getKey());
+    List<Dataset> datasets = Lists.newArrayList();
+    for (int i = 0; i < 250; i++) {
+      datasets.add(Datasets.newPersistedInstance(organization.getKey(), installation.getKey()));
+    }
+    injector.getInstance(DatasetResource.class).delete(datasets.get(0).getKey());
+    // let the updates of the created datasets pass, so only the builder fills the index
+    DatasetSearchUpdateUtils.awaitUpdates(injector.getInstance(DatasetIndexUpdateListener.class));
+    solrServer.deleteByQuery("*:*");
+    solrServer.commit();
+
+    builder.build();
+
+    assertEquals(249, solrServer.query(new SolrQuery("*:*")).getResults().getNumFound());
+    assertEquals(1, solrServer.query(new SolrQuery("key:\"" + datasets.get(1).getKey() + "\"")).getResults()
+      .getNumFound());
+    assertEquals(0, solrServer.query(new SolrQuery("key:\"" + datasets.get(0).getKey() + "\"")).getResults()
+      .getNumFound());
+  }
+
+  @Test
+  public void testTagDeletionMarksDatasetChanged() throws Exception {
+    Organization organization = Organizations.newPersistedInstance();
+    Installation installation = Installations.newPersistedInstance(organization.getKey());
+    Dataset dataset = Datasets.newPersistedInstance(organization.getKey(), installation.getKey());
+    DatasetResource resource = injector.getInstance(DatasetResource.class);
+    DatasetMapper mapper = injector.getInstance(DatasetMapper.class);
+    int tagKey = resource.addTag(dataset.getKey(), "removed soon");
+    Thread.sleep(10);
+    Date since = new Date();
+    Thread.sleep(10);
+    assertFalse(mapper.listKeysChangedSince(since).contains(dataset.getKey()));
+
+    resource.deleteTag(dataset.getKey(), tagKey);
+
+    assertTrue(mapper.listKeysChangedSince(since).contains(dataset.getKey()));
+  }
+}
@@ -0,0 +1,146 @@
+package org.gbif.registry.search;
+
+import org.gbif.api.model.registry.Dataset;
+import org.gbif.api.model.registry.Tag;
+import org.gbif.api.service.registry.DatasetService;
+import org.gbif.api.service.registry.InstallationService;
+import org.gbif.api.service.registry.OrganizationService;
+import org.gbif.registry.events.ChangedComponentEvent;
+import org.gbif.registry.events.CreateEvent;
+import org.gbif.registry.events.DeleteEvent;
+import org.gbif.registry.events.UpdateEvent;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import com.google.common.collect.Lists;
+import com.google.common.eventbus.EventBus;
+import org.apache.solr.client.solrj.SolrServer;
+import org.apache.solr.common.SolrInputDocument;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.anyCollectionOf;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.atLeastOnce;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class DatasetIndexUpdateListenerTest {
+
+  /**
+   * Holds the consumer in the first write until released, so the following events queue up and form a single batch.
+   */
+  private static class BlockingWrite implements Answer<Object> {
+
+    private final CountDownLatch writing = new CountDownLatch(1);
+    private final CountDownLatch release = new CountDownLatch(1);
+
+    @Override
+    public Object answer(InvocationOnMock invocation) throws Throwable {
+      writing.countDown();
+      release.await();
+      return null;
+    }
+  }
+
+  @Test
+  @SuppressWarnings("unchecked")
+  public void testBatchesAreCollapsed() throws Exception {
+    SolrServer solr = mock(SolrServer.class);
+    DatasetService datasetService = mock(DatasetService.class);
+    BlockingWrite blocking = new BlockingWrite();
+    doAnswer(blocking).when(solr).add(anyCollectionOf(SolrInputDocument.class));
+
+    EventBus bus = new EventBus();
+    DatasetIndexUpdateListener listener = new DatasetIndexUpdateListener(mock(DatasetIndexBuilder.class), false, 1000,
+      0, new IndexHighWaterMark(null), solr, mock(OrganizationService.class), mock(InstallationService.class),
+      datasetService, bus);
+
+    bus.post(CreateEvent.newInstance(dataset(UUID.randomUUID(), "first"), Dataset.class));
+    assertTrue(blocking.writing.await(10, TimeUnit.SECONDS));
+
+    // 10 datasets updated 20 times each, tagged and finally 2 of them deleted
+    List<UUID> keys = Lists.newArrayList();
+    for (int i = 0; i < 10; i++) {
+      keys.add(UUID.randomUUID());
+    }
+    for (int version = 0; version < 20; version++) {
+      for (UUID key : keys) {
+        bus.post(UpdateEvent.newInstance(dataset(key, "v" + version), dataset(key, "old"), Dataset.class));
+      }
+    }
+    when(datasetService.get(keys.get(0))).thenReturn(dataset(keys.get(0), "tagged"));
+    bus.post(ChangedComponentEvent.newInstance(keys.get(0), Dataset.class, Tag.class));
+    bus.post(DeleteEvent.newInstance(dataset(keys.get(8), "v19"), Dataset.class));
+    bus.post(DeleteEvent.newInstance(dataset(keys.get(9), "v19"), Dataset.class));
+    assertEquals(1 + 200 + 3, listener.queuedUpdates());
+
+    blocking.release.countDown();
+    DatasetSearchUpdateUtils.awaitUpdates(listener);
+
+    ArgumentCaptor<Collection> docs = ArgumentCaptor.forClass(Collection.class);
+    verify(solr, atLeastOnce()).add(docs.capture());
+    assertEquals(2, docs.getAllValues().size());
+    List<SolrInputDocument> batch = Lists.newArrayList(docs.getAllValues().get(1));
+    assertEquals("All updates of a dataset must be collapsed into one document", 8, batch.size());
+    int latest = 0;
+    for (SolrInputDocument doc : batch) {
+      if (keys.get(0).equals(doc.getFieldValue("key"))) {
+        assertEquals("Tagged datasets must be read again", "tagged", doc.getFieldValue("dataset_title"));
+      } else if (doc.getFieldValue("dataset_title").equals("v19")) {
+        latest++;
+      }
+    }
+    assertEquals(7, latest);
+    verify(solr).deleteById(eq(Lists.newArrayList(keys.get(8).toString(), keys.get(9).toString())));
+    verify(datasetService).get(keys.get(0));
+
+    DatasetIndexUpdateListener.IndexUpdateStats stats = listener.stats();
+    assertEquals(204, stats.getEvents());
+    assertEquals(2, stats.getBatches());
+    assertEquals(9, stats.getAdded());
+    assertEquals(2, stats.getDeleted());
+    assertEquals(204 - 1 - 10, stats.getCollapsed());
+    assertTrue(stats.getCommits() <= 2);
+  }
+
+  /**
+   * A commit interval longer than the test makes the events of a single commit visible only after the interval.
+   */
+  @Test
+  public void testCommitInterval() throws Exception {
+    SolrServer solr = mock(SolrServer.class);
+    EventBus bus = new EventBus();
+    DatasetIndexUpdateListener listener = new DatasetIndexUpdateListener(mock(DatasetIndexBuilder.class), false, 1000,
+      500, new IndexHighWaterMark(null), solr, mock(OrganizationService.class), mock(InstallationService.class),
+      mock(DatasetService.class), bus);
+
+    for (int i = 0; i < 10; i++) {
+      bus.post(CreateEvent.newInstance(dataset(UUID.randomUUID(), "d" + i), Dataset.class));
+      Thread.sleep(10);
+    }
+    DatasetSearchUpdateUtils.awaitUpdates(listener);
+    // the first event is committed at once, all others within the following interval
+    verify(solr, atLeastOnce()).add(anyCollectionOf(SolrInputDocument.class));
+    assertEquals(2, listener.stats().getCommits());
+    // the queue is drained after the last commit, which therefore must be a hard one
+    verify(solr, atLeastOnce()).commit(true, true, false);
+  }
+
+  private static Dataset dataset(UUID key, String title) {
+    Dataset d = new Dataset();
+    d.setKey(key);
+    d.setTitle(title);
+    return d;
+  }
+}
@@ -0,0 +1,52 @@
+package org.gbif.registry.search;
+
+import java.io.File;
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+
+import com.google.common.base.Charsets;
+import com.google.common.io.Files;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class IndexHighWaterMarkTest {
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  @Test
+  public void testPersistentMark() throws Exception {
+    File indexDir = new File(folder.getRoot(), "index");
+    IndexHighWaterMark mark = new IndexHighWaterMark(indexDir);
+    assertTrue(mark.isPersistent());
+    // a new index needs to be built entirely
+    assertNull(mark.get());
+
+    Date synced = new Date();
+    mark.set(synced);
+    Date since = new IndexHighWaterMark(indexDir).get();
+    // moved back by the safety margin
+    assertEquals(TimeUnit.MINUTES.toMillis(10), synced.getTime() - since.getTime());
+    assertFalse(new File(indexDir, IndexHighWaterMark.FILENAME + ".tmp").exists());
+  }
+
+  @Test
+  public void testInvalidMark() throws Exception {
+    Files.write("garbage", folder.newFile(IndexHighWaterMark.FILENAME), Charsets.UTF_8);
+    assertNull(new IndexHighWaterMark(folder.getRoot()).get());
+  }
+
+  @Test
+  public void testInMemory() {
+    IndexHighWaterMark mark = new IndexHighWaterMark(null);
+    assertFalse(mark.isPersistent());
+    mark.set(new Date());
+    assertNull(mark.get());
+  }
+}
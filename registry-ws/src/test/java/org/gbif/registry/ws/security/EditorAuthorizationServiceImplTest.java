@@ -0,0 +1,124 @@
+package org.gbif.registry.ws.security;
+
+import org.gbif.api.model.registry.Dataset;
+import org.gbif.registry.events.OrderedAsyncEventBus;
+import org.gbif.registry.events.UpdateEvent;
+import org.gbif.registry.persistence.mapper.DatasetMapper;
+import org.gbif.registry.persistence.mapper.InstallationMapper;
+import org.gbif.registry.persistence.mapper.OrganizationMapper;
+import org.gbif.registry.persistence.mapper.UserRightsMapper;
+
+import java.security.Principal;
+import java.util.UUID;
+
+import com.google.common.collect.Lists;
+import com.google.common.eventbus.EventBus;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@RunWith(MockitoJUnitRunner.class)
+public class EditorAuthorizationServiceImplTest {
+
+  private final Principal nodeEditor = new Principal() {
+    @Override
+    public String getName() {
+      return "node";
+    }
+  };
+  private final UUID nodeKey = UUID.randomUUID();
+  private final UUID orgKey = UUID.randomUUID();
+  private final UUID otherOrgKey = UUID.randomUUID();
+  private final UUID datasetKey = UUID.randomUUID();
+
+  @Mock
+  DatasetMapper datasetMapper;
+  @Mock
+  InstallationMapper installationMapper;
+  @Mock
+  OrganizationMapper organizationMapper;
+  @Mock
+  UserRightsMapper userRightsMapper;
+  private final EventBus eventBus = new EventBus();
+  private EditorAuthorizationService service;
+
+  @Before
+  public void setup() {
+    when(userRightsMapper.listKeysForUser("node")).thenReturn(Lists.newArrayList(nodeKey));
+    when(datasetMapper.getPublishingOrganizationKey(datasetKey)).thenReturn(orgKey);
+    when(organizationMapper.getEndorsingNodeKey(orgKey)).thenReturn(nodeKey);
+    service = new EditorAuthorizationServiceImpl(datasetMapper, installationMapper, organizationMapper,
+      userRightsMapper, eventBus);
+  }
+
+  @Test
+  public void testHierarchyIsCached() {
+    for (int i = 0; i < 3; i++) {
+      assertTrue(service.allowedToModifyDataset(nodeEditor, datasetKey));
+      assertTrue(service.allowedToModifyOrganization(nodeEditor, orgKey));
+      assertFalse(service.allowedToModifyDataset(null, datasetKey));
+      assertFalse(service.allowedToModifyInstallation(nodeEditor, UUID.randomUUID()));
+    }
+    verify(userRightsMapper, times(1)).listKeysForUser("node");
+    verify(datasetMapper, times(1)).getPublishingOrganizationKey(datasetKey);
+    verify(organizationMapper, times(1)).getEndorsingNodeKey(orgKey);
+  }
+
+  @Test
+  public void testUpdateInvalidatesHierarchy() {
+    assertTrue(service.allowedToModifyDataset(nodeEditor, datasetKey));
+
+    // the dataset moves to an organization endorsed by another node
+    when(datasetMapper.getPublishingOrganizationKey(datasetKey)).thenReturn(otherOrgKey);
+    Dataset dataset = new Dataset();
+    dataset.setKey(datasetKey);
+    eventBus.post(UpdateEvent.newInstance(dataset, dataset, Dataset.class));
+
+    assertFalse(service.allowedToModifyDataset(nodeEditor, datasetKey));
+  }
+
+  @Test
+  public void testGrantedRightsApplyImmediately() {
+    assertFalse(service.allowedToModifyOrganization(nodeEditor, otherOrgKey));
+    when(userRightsMapper.keyExistsForUser("node", otherOrgKey)).thenReturn(true);
+    assertTrue(service.allowedToModifyOrganization(nodeEditor, otherOrgKey));
+  }
+
+  @Test
+  public void testMissingParentIsNotCached() {
+    UUID newDatasetKey = UUID.randomUUID();
+    assertFalse(service.allowedToModifyDataset(nodeEditor, newDatasetKey));
+    when(datasetMapper.getPublishingOrganizationKey(newDatasetKey)).thenReturn(orgKey);
+    assertTrue(service.allowedToModifyDataset(nodeEditor, newDatasetKey));
+  }
+
+  /**
+   * The hierarchy is invalidated before the poster continues, even if the other listeners are called asynchronously.
+   */
+  @Test
+  public void testInvalidationIsSynchronous() {
+    OrderedAsyncEventBus asyncBus = new OrderedAsyncEventBus(1, 10, 1000);
+    try {
+      service = new EditorAuthorizationServiceImpl(datasetMapper, installationMapper, organizationMapper,
+        userRightsMapper, asyncBus);
+      assertTrue(service.allowedToModifyDataset(nodeEditor, datasetKey));
+
+      when(datasetMapper.getPublishingOrganizationKey(datasetKey)).thenReturn(otherOrgKey);
+      Dataset dataset = new Dataset();
+      dataset.setKey(datasetKey);
+      asyncBus.post(UpdateEvent.newInstance(dataset, dataset, Dataset.class));
+
+      assertFalse(service.allowedToModifyDataset(nodeEditor, datasetKey));
+    } finally {
+      asyncBus.shutdown();
+    }
+  }
+}
@@ -0,0 +1,84 @@
+package org.gbif.registry.ws.security;
+
+import org.gbif.api.model.registry.Organization;
+import org.gbif.registry.events.OrderedAsyncEventBus;
+import org.gbif.registry.events.UpdateEvent;
+import org.gbif.registry.persistence.mapper.InstallationMapper;
+import org.gbif.registry.persistence.mapper.OrganizationMapper;
+
+import java.util.UUID;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@RunWith(MockitoJUnitRunner.class)
+public class LegacyCredentialsTest {
+
+  private final UUID orgKey = UUID.randomUUID();
+  private final UUID installationKey = UUID.randomUUID();
+
+  @Mock
+  OrganizationMapper organizationMapper;
+  @Mock
+  InstallationMapper installationMapper;
+  // asynchronous as in the registry, the invalidation must still apply right after the post
+  private final OrderedAsyncEventBus eventBus = new OrderedAsyncEventBus(2, 100, 1000);
+  private LegacyCredentials credentials;
+
+  @Before
+  public void setup() {
+    when(organizationMapper.getPassword(orgKey)).thenReturn("orgPassword");
+    when(installationMapper.getPassword(installationKey)).thenReturn("installationPassword");
+    credentials = new LegacyCredentials(organizationMapper, installationMapper, eventBus);
+  }
+
+  @After
+  public void shutdown() {
+    eventBus.shutdown();
+  }
+
+  @Test
+  public void testVerifiedCredentialsAreCached() {
+    for (int i = 0; i < 3; i++) {
+      assertTrue(credentials.verify(orgKey, "orgPassword"));
+      assertTrue(credentials.verify(installationKey, "installationPassword"));
+    }
+    verify(organizationMapper, times(1)).getPassword(orgKey);
+    verify(installationMapper, never()).getPassword(orgKey);
+    verify(installationMapper, times(1)).getPassword(installationKey);
+  }
+
+  @Test
+  public void testWrongCredentials() {
+    assertTrue(credentials.verify(orgKey, "orgPassword"));
+    assertFalse(credentials.verify(orgKey, "installationPassword"));
+    assertFalse(credentials.verify(installationKey, "orgPassword"));
+    assertFalse(credentials.verify(UUID.randomUUID(), "orgPassword"));
+    // an organization password is never checked against installations
+    verify(installationMapper, never()).getPassword(orgKey);
+  }
+
+  @Test
+  public void testUpdateInvalidatesCredentials() {
+    assertTrue(credentials.verify(orgKey, "orgPassword"));
+
+    when(organizationMapper.getPassword(orgKey)).thenReturn("newPassword");
+    Organization org = new Organization();
+    org.setKey(orgKey);
+    eventBus.post(UpdateEvent.newInstance(org, org, Organization.class));
+
+    assertFalse(credentials.verify(orgKey, "orgPassword"));
+    assertTrue(credentials.verify(orgKey, "newPassword"));
+  }
+}
@@ -24,9 +24,11 @@ import java.util.UUID;
 import com.beust.jcommander.internal.Lists;
 import com.google.common.base.Charsets;
 import com.google.common.io.Resources;
+import org.apache.ibatis.session.ResultContext;
 import org.junit.Test;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 import static org.mockito.Matchers.anyString;
@@ -134,6 +136,43 @@ public class DataCiteConverterTest {
     assertTrue(xml.contains(String.valueOf(du2.getNumberRecords())));
   }
 
+  @Test
+  public void testConvertLargeDownload() throws Exception {
+    DownloadUsageCollector collector = new DownloadUsageCollector(2);
+    ResultContext context = mock(ResultContext.class);
+    for (int i = 1; i <= 5; i++) {
+      DatasetOccurrenceDownloadUsage du = new DatasetOccurrenceDownloadUsage();
+      du.setDatasetKey(UUID.randomUUID());
+      du.setDatasetTitle("dataset #" + i);
+      du.setDatasetDOI(new DOI("10.1234/dataset" + i));
+      du.setNumberRecords(1000 - i);
+      when(context.getResultObject()).thenReturn(du);
+      collector.handleResult(context);
+    }
+    assertEquals(2, collector.getUsages().size());
+    assertEquals(3, collector.getOmittedDatasets());
+    assertEquals(997 + 996 + 995, collector.getOmittedRecords());
+
+    Download download = new Download();
+    download.setCreated(new Date());
+    download.setDoi(new DOI("10.1234/5678"));
+    download.setKey("1");
+    download.setModified(new Date());
+    download.setNumberDatasets(5l);
+    download.setStatus(Download.Status.SUCCEEDED);
+    download.setRequest(new DownloadRequest());
+    User user = new User();
+    user.setUserName("peta");
+    user.setFirstName("Pete");
+
+    DataCiteMetadata metadata = DataCiteConverter.convert(download, user, collector.getUsages(),
+      collector.getOmittedDatasets(), collector.getOmittedRecords(), "all occurrences");
+    String xml = DataCiteValidator.toXml(download.getDoi(), metadata);
+    assertTrue(xml.contains("10.1234/dataset2"));
+    assertFalse(xml.contains("10.1234/dataset3"));
+    assertTrue(xml.contains("2988 records from 3 further datasets."));
+  }
+
   @Test
   public void testTruncateDesription() throws Exception{
     DOI doi = new DOI("10.15468/dl.v8zc57");
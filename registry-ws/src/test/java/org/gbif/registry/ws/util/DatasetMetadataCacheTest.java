@@ -0,0 +1,119 @@
+package org.gbif.registry.ws.util;
+
+import org.gbif.api.model.registry.Dataset;
+import org.gbif.utils.file.FileUtils;
+
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.google.common.io.ByteStreams;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class DatasetMetadataCacheTest {
+
+  /**
+   * Serves the sample EML document for every key and counts the loaded documents.
+   */
+  private static class CountingLoader implements DatasetMetadataCache.DocumentLoader {
+
+    private final byte[] data;
+    private final AtomicInteger loaded = new AtomicInteger();
+
+    private CountingLoader(String resource) throws IOException {
+      data = ByteStreams.toByteArray(FileUtils.classpathStream(resource));
+    }
+
+    @Override
+    public byte[] load(int metadataKey) {
+      loaded.incrementAndGet();
+      return data;
+    }
+  }
+
+  @Test
+  public void testCaching() throws Exception {
+    CountingLoader loader = new CountingLoader("metadata/sample.xml");
+    DatasetMetadataCache cache = new DatasetMetadataCache(10 * 1024 * 1024);
+
+    Dataset d1 = cache.get(1, loader);
+    Dataset d2 = cache.get(1, loader);
+    assertNotNull(d1);
+    assertEquals("Tanzanian Entomological Collection", d2.getTitle());
+    assertNotSame("Cached datasets must be copied", d1, d2);
+    assertEquals(1, loader.loaded.get());
+    assertEquals(1, cache.stats().hitCount());
+    assertEquals(1, cache.stats().missCount());
+
+    // modifying a copy must not change the cached instance
+    d1.setTitle("Changed");
+    assertEquals("Tanzanian Entomological Collection", cache.get(1, loader).getTitle());
+
+    cache.invalidate(1);
+    cache.get(1, loader);
+    assertEquals(2, loader.loaded.get());
+  }
+
+  @Test
+  public void testEviction() throws Exception {
+    CountingLoader loader = new CountingLoader("metadata/sample.xml");
+    // room for 10 documents only
+    DatasetMetadataCache cache = new DatasetMetadataCache(loader.data.length * 10);
+    for (int key = 0; key < 100; key++) {
+      cache.get(key, loader);
+    }
+    // the weight limit is shared across the cache segments, so the cache might hold less than 10 documents
+    assertTrue(cache.size() <= 10);
+    assertEquals(100, cache.size() + cache.stats().evictionCount());
+  }
+
+  @Test
+  public void testDisabled() throws Exception {
+    CountingLoader loader = new CountingLoader("metadata/sample.xml");
+    DatasetMetadataCache cache = new DatasetMetadataCache(0);
+    cache.get(1, loader);
+    cache.get(1, loader);
+    assertEquals(2, loader.loaded.get());
+    assertEquals(0, cache.size());
+  }
+
+  @Test
+  public void testMissingDocument() {
+    DatasetMetadataCache cache = new DatasetMetadataCache(1024);
+    DatasetMetadataCache.DocumentLoader missing = new DatasetMetadataCache.DocumentLoader() {
+      @Override
+      public byte[] load(int metadataKey) {
+        return null;
+      }
+    };
+    assertNull(cache.get(1, missing));
+    assertEquals(0, cache.size());
+  }
+
+  /**
+   * Augments a page of 1000 datasets as done by the dataset list, referring to 100 distinct documents similar to
+   * repeated listings of the same datasets. Each document is loaded once only.
+   */
+  @Test
+  public void testListAugmentation() throws Exception {
+    CountingLoader loader = new CountingLoader("metadata/sample.xml");
+    DatasetMetadataCache cache = new DatasetMetadataCache(64 * 1024 * 1024);
+    augmentPage(cache, loader);
+    augmentPage(cache, loader);
+
+    assertEquals(100, loader.loaded.get());
+    assertEquals(100, cache.stats().missCount());
+    assertEquals(1900, cache.stats().hitCount());
+  }
+
+  private static void augmentPage(DatasetMetadataCache cache, CountingLoader loader) {
+    for (int row = 0; row < 1000; row++) {
+      assertNotNull(cache.get(row % 100, loader));
+    }
+  }
+}
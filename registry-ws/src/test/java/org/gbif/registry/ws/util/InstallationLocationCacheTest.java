@@ -0,0 +1,81 @@
+package org.gbif.registry.ws.util;
+
+import org.gbif.api.model.registry.Dataset;
+import org.gbif.api.model.registry.Organization;
+import org.gbif.api.vocabulary.InstallationType;
+import org.gbif.registry.events.UpdateEvent;
+import org.gbif.registry.persistence.OrganizationLocation;
+import org.gbif.registry.persistence.mapper.OrganizationMapper;
+
+import java.math.BigDecimal;
+import java.util.UUID;
+
+import com.google.common.base.Charsets;
+import com.google.common.collect.ImmutableList;
+import com.google.common.eventbus.EventBus;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class InstallationLocationCacheTest {
+
+  private final OrganizationMapper mapper = mock(OrganizationMapper.class);
+  private final EventBus eventBus = new EventBus();
+
+  @Test
+  public void testCachedUntilChanged() {
+    when(mapper.hostingLocationsOf(InstallationType.IPT_INSTALLATION)).thenReturn(
+      ImmutableList.of(location("Copenhagen", 3)));
+    InstallationLocationCache cache = new InstallationLocationCache(mapper, eventBus);
+
+    InstallationLocationCache.GeoJson geoJson = cache.get(InstallationType.IPT_INSTALLATION);
+    String json = new String(geoJson.getContent(), Charsets.UTF_8);
+    assertTrue(json.contains("FeatureCollection"));
+    assertTrue(json.contains("Copenhagen"));
+    assertSame(geoJson, cache.get(InstallationType.IPT_INSTALLATION));
+    verify(mapper, times(1)).hostingLocationsOf(InstallationType.IPT_INSTALLATION);
+
+    // datasets are not part of the locations
+    Dataset d = new Dataset();
+    eventBus.post(UpdateEvent.newInstance(d, d, Dataset.class));
+    assertSame(geoJson, cache.get(InstallationType.IPT_INSTALLATION));
+
+    when(mapper.hostingLocationsOf(InstallationType.IPT_INSTALLATION)).thenReturn(
+      ImmutableList.of(location("Copenhagen", 4)));
+    Organization o = new Organization();
+    eventBus.post(UpdateEvent.newInstance(o, o, Organization.class));
+    InstallationLocationCache.GeoJson updated = cache.get(InstallationType.IPT_INSTALLATION);
+    assertFalse(geoJson.getEtag().equals(updated.getEtag()));
+    verify(mapper, times(2)).hostingLocationsOf(InstallationType.IPT_INSTALLATION);
+  }
+
+  @Test
+  public void testStableEtag() {
+    when(mapper.hostingLocationsOf(InstallationType.IPT_INSTALLATION)).thenReturn(
+      ImmutableList.of(location("Madrid", 1)));
+    InstallationLocationCache cache = new InstallationLocationCache(mapper, eventBus);
+    InstallationLocationCache.GeoJson geoJson = cache.get(InstallationType.IPT_INSTALLATION);
+
+    Organization o = new Organization();
+    eventBus.post(UpdateEvent.newInstance(o, o, Organization.class));
+    // unchanged content keeps its tag, so clients can still revalidate
+    assertEquals(geoJson.getEtag(), cache.get(InstallationType.IPT_INSTALLATION).getEtag());
+  }
+
+  private static OrganizationLocation location(String title, int count) {
+    OrganizationLocation location = new OrganizationLocation();
+    location.setKey(UUID.fromString("9e3e2d4a-0000-4000-8000-000000000001"));
+    location.setTitle(title);
+    location.setLatitude(new BigDecimal("55.7"));
+    location.setLongitude(new BigDecimal("12.6"));
+    location.setCount(count);
+    return location;
+  }
+}
@@ -0,0 +1,140 @@
+package org.gbif.registry.ws.util;
+
+import org.gbif.api.model.registry.Dataset;
+import org.gbif.registry.persistence.ComponentLoader;
+import org.gbif.registry.persistence.Transactions;
+import org.gbif.registry.persistence.mapper.DatasetMapper;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Date;
+import java.util.List;
+import java.util.UUID;
+
+import com.google.common.base.Charsets;
+import com.google.common.base.Functions;
+import org.apache.ibatis.executor.result.DefaultResultContext;
+import org.apache.ibatis.session.ResultHandler;
+import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyListOf;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class NdjsonExportTest {
+
+  /**
+   * Records whether a query is running within the transaction.
+   */
+  private static class RecordingTransactions extends Transactions {
+
+    private boolean inTransaction;
+
+    @Override
+    public void run(Runnable query) {
+      inTransaction = true;
+      try {
+        query.run();
+      } finally {
+        inTransaction = false;
+      }
+    }
+  }
+
+  /**
+   * Hands the given number of datasets to the result handler, asserting the query runs within the transaction and
+   * recording how much was written to the output while the query was still producing rows.
+   */
+  private static class Rows implements Answer<Void> {
+
+    private final RecordingTransactions transactions;
+    private final ByteArrayOutputStream output;
+    private final int count;
+    private DefaultResultContext context;
+    private int writtenDuringQuery;
+
+    private Rows(RecordingTransactions transactions, ByteArrayOutputStream output, int count) {
+      this.transactions = transactions;
+      this.output = output;
+      this.count = count;
+    }
+
+    @Override
+    public Void answer(InvocationOnMock invocation) {
+      assertTrue("The export query must run within a transaction to stream", transactions.inTransaction);
+      ResultHandler handler = (ResultHandler) invocation.getArguments()[1];
+      context = new DefaultResultContext();
+      for (int i = 0; i < count && !context.isStopped(); i++) {
+        Dataset d = new Dataset();
+        d.setKey(UUID.randomUUID());
+        d.setTitle("Dataset " + i);
+        context.nextResultObject(d);
+        handler.handleResult(context);
+      }
+      writtenDuringQuery = output == null ? 0 : output.size();
+      return null;
+    }
+  }
+
+  private final DatasetMapper mapper = mock(DatasetMapper.class);
+  private final ComponentLoader componentLoader = mock(ComponentLoader.class);
+  private final RecordingTransactions transactions = new RecordingTransactions();
+
+  public NdjsonExportTest() {
+    when(componentLoader.load(eq(mapper), anyListOf(Dataset.class))).thenAnswer(new Answer<List<Dataset>>() {
+      @Override
+      @SuppressWarnings("unchecked")
+      public List<Dataset> answer(InvocationOnMock invocation) {
+        return (List<Dataset>) invocation.getArguments()[1];
+      }
+    });
+  }
+
+  @Test
+  public void testStreamsWithinTransaction() throws Exception {
+    ByteArrayOutputStream output = new ByteArrayOutputStream();
+    Rows rows = new Rows(transactions, output, 1200);
+    doAnswer(rows).when(mapper).export(any(Date.class), any(ResultHandler.class));
+
+    new NdjsonExport<Dataset>(mapper, componentLoader, transactions, Functions.<List<Dataset>>identity(), null, false)
+      .write(output);
+
+    String[] lines = new String(output.toByteArray(), Charsets.UTF_8).split("\n");
+    assertEquals(1200, lines.length);
+    assertTrue(lines[1199].contains("Dataset 1199"));
+    // the full batches are written while the rows are read, not after the query completed
+    assertTrue(rows.writtenDuringQuery > 0);
+    assertTrue(rows.writtenDuringQuery < output.size());
+  }
+
+  @Test
+  public void testFailingClientStopsQuery() throws Exception {
+    Rows rows = new Rows(transactions, null, 10000);
+    doAnswer(rows).when(mapper).export(any(Date.class), any(ResultHandler.class));
+    OutputStream broken = new OutputStream() {
+      @Override
+      public void write(int b) throws IOException {
+        throw new IOException("Connection reset by peer");
+      }
+    };
+
+    try {
+      new NdjsonExport<Dataset>(mapper, componentLoader, transactions, Functions.<List<Dataset>>identity(), null, false)
+        .write(broken);
+      fail("The write failure must be passed on");
+    } catch (IOException e) {
+      assertEquals("Connection reset by peer", e.getMessage());
+    }
+    assertTrue(rows.context.isStopped());
+    assertTrue(rows.context.getResultCount() < 10000);
+  }
+}